@@ -0,0 +1,51 @@
+package com.ericbouchut.springboot.safetynet.actuator;
+
+import com.ericbouchut.springboot.safetynet.data.Checkpointer;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Actuator endpoint to checkpoint the person mutations on demand.
+ * <ul>
+ *     <li><code>GET /actuator/checkpoint</code>: the outcome of the last checkpoint</li>
+ *     <li><code>POST /actuator/checkpoint</code>: write a snapshot of the latest dataset,
+ *     then compact the write-ahead log</li>
+ * </ul>
+ */
+@Component
+@Endpoint(id = "checkpoint")
+public class CheckpointEndpoint {
+    private final Checkpointer checkpointer;
+
+    public CheckpointEndpoint(Checkpointer checkpointer) {
+        this.checkpointer = checkpointer;
+    }
+
+    @ReadOperation
+    public Map<String, Object> lastCheckpoint() {
+        return describe(checkpointer.getLastResult());
+    }
+
+    @WriteOperation
+    public Map<String, Object> checkpoint() {
+        return describe(checkpointer.checkpoint());
+    }
+
+    private static Map<String, Object> describe(Optional<Checkpointer.Result> result) {
+        Map<String, Object> description = new LinkedHashMap<>();
+        description.put("checkpointed", result.isPresent());
+        result.ifPresent(checkpoint -> {
+            description.put("lsn", checkpoint.lsn());
+            description.put("durationMs", checkpoint.durationMs());
+            description.put("snapshotBytes", checkpoint.snapshotBytes());
+            description.put("bytesReclaimed", checkpoint.bytesReclaimed());
+        });
+        return description;
+    }
+}
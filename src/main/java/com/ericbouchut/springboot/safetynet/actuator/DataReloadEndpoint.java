@@ -0,0 +1,72 @@
+package com.ericbouchut.springboot.safetynet.actuator;
+
+import com.ericbouchut.springboot.safetynet.data.DataReloader;
+import com.ericbouchut.springboot.safetynet.repository.DataStore;
+import com.ericbouchut.springboot.safetynet.repository.Dataset;
+import org.springframework.boot.actuate.endpoint.InvalidEndpointRequestException;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Selector;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Actuator endpoint to reload the data file on demand.
+ * <ul>
+ *     <li><code>GET /actuator/datareload</code>: the current dataset version and entity counts</li>
+ *     <li><code>POST /actuator/datareload</code>: reload the data file, then publish the new dataset</li>
+ *     <li><code>POST /actuator/datareload/{mode}</code>: same, with the given reload mode
+ *     (<code>full</code> or <code>incremental</code>) instead of <code>app.data.reload.mode</code></li>
+ * </ul>
+ */
+@Component
+@Endpoint(id = "datareload")
+public class DataReloadEndpoint {
+    private final DataReloader dataReloader;
+    private final DataStore dataStore;
+
+    public DataReloadEndpoint(DataReloader dataReloader, DataStore dataStore) {
+        this.dataReloader = dataReloader;
+        this.dataStore    = dataStore;
+    }
+
+    @ReadOperation
+    public Map<String, Object> dataset() {
+        return describe(dataStore.latest());
+    }
+
+    @WriteOperation
+    public Map<String, Object> reload() {
+        return reload(null);
+    }
+
+    @WriteOperation
+    public Map<String, Object> reloadWithMode(@Selector String mode) {
+        try {
+            return reload(DataReloader.Mode.valueOf(mode.toUpperCase()));
+        } catch (IllegalArgumentException e) {
+            // 400 Bad Request
+            throw new InvalidEndpointRequestException("Unknown reload mode: " + mode, "Unknown reload mode");
+        }
+    }
+
+    private Map<String, Object> reload(DataReloader.Mode mode) {
+        long start = System.nanoTime();
+        Dataset dataset = (mode == null) ? dataReloader.reload() : dataReloader.reload(mode);
+        Map<String, Object> result = describe(dataset);
+        result.put("durationMs", (System.nanoTime() - start) / 1_000_000);
+        return result;
+    }
+
+    private static Map<String, Object> describe(Dataset dataset) {
+        Map<String, Object> description = new LinkedHashMap<>();
+        description.put("version", dataset.version());
+        description.put("persons", dataset.persons().getAll().size());
+        description.put("fireStations", dataset.fireStations().getAll().size());
+        description.put("medicalRecords", dataset.medicalRecords().size());
+        return description;
+    }
+}
@@ -0,0 +1,52 @@
+package com.ericbouchut.springboot.safetynet.config;
+
+import com.ericbouchut.springboot.safetynet.repository.DataStore;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.core.Ordered;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+
+/**
+ * Pin the current {@link com.ericbouchut.springboot.safetynet.repository.Dataset} for the duration of a request.
+ * <p>
+ * All the repository calls made while handling the request read the same dataset version,
+ * even if a reload publishes a new one in the meantime.
+ * The next requests see the new version.
+ *
+ * @see DataStore#pin()
+ */
+public class DatasetPinningFilter extends OncePerRequestFilter implements Ordered {
+    /**
+     * Before the filters that read the dataset (see {@link JsonResponseCacheFilter}).
+     */
+    public static final int ORDER = Ordered.LOWEST_PRECEDENCE - 10;
+
+    private final DataStore dataStore;
+
+    public DatasetPinningFilter(DataStore dataStore) {
+        this.dataStore = dataStore;
+    }
+
+    @Override
+    public int getOrder() {
+        return ORDER;
+    }
+
+    @Override
+    protected void doFilterInternal(
+            HttpServletRequest request,
+            HttpServletResponse response,
+            FilterChain filterChain
+    ) throws ServletException, IOException {
+        dataStore.pin();
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            dataStore.unpin();
+        }
+    }
+}
@@ -0,0 +1,380 @@
+package com.ericbouchut.springboot.safetynet.config;
+
+import com.ericbouchut.springboot.safetynet.repository.DataStore;
+import com.ericbouchut.springboot.safetynet.repository.Dataset;
+import com.ericbouchut.springboot.safetynet.repository.Dataset.EntityType;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.core.Ordered;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.InvalidMediaTypeException;
+import org.springframework.http.MediaType;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.util.ContentCachingResponseWrapper;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Cache the JSON bytes of large responses that only change with the data
+ * (for instance, <code>GET /person</code>), per generation of the entities they read
+ * (see {@link Dataset#generation(EntityType)}).
+ * <p>
+ * The first request of a generation is handled by the controller, then its JSON (and its gzip compression)
+ * is kept until these entities change: the following requests get these bytes,
+ * without calling the controller nor serializing anything.
+ * A change of the persons recomputes <code>GET /person</code>, but not <code>GET /firestation/all</code>.
+ * <p>
+ * The requests that miss the same generation at the same time wait for the first one,
+ * that calls the controller once for all of them.
+ * <p>
+ * The responses carry a strong <code>ETag</code> (a hash of the JSON),
+ * so a client that sends it back in <code>If-None-Match</code> gets a <code>304 Not Modified</code>, without body,
+ * as long as the data does not change.
+ * <p>
+ * Only the requests that accept JSON (no <code>Accept</code> header, or a media type compatible with
+ * <code>application/json</code>) are served from the cache: the other ones go to the controller,
+ * that negotiates their content type (or answers <code>406 Not Acceptable</code>).
+ * <p>
+ * Runs after the {@link DatasetPinningFilter}: the version of the cached bytes is the one of the request.
+ */
+public class JsonResponseCacheFilter extends OncePerRequestFilter implements Ordered {
+
+    /**
+     * Just after the {@link DatasetPinningFilter}.
+     */
+    public static final int ORDER = DatasetPinningFilter.ORDER + 1;
+
+    private static final String GZIP = "gzip";
+
+    /**
+     * The cached response of a path, for a generation of the entities it reads.
+     *
+     * @param generations the generations of the entities read by the path, by {@link EntityType#ordinal()}
+     *                    (0 for the entities it does not read), when the response was computed
+     * @param contentType the content type of the response
+     * @param json        the JSON bytes
+     * @param etag        the strong entity tag of the JSON bytes
+     * @param gzip        the gzip compression of the JSON bytes, <code>null</code> when disabled
+     * @param gzipEtag    the strong entity tag of the compressed bytes (another representation)
+     */
+    private record CachedResponse(
+            List<Long> generations,
+            String contentType,
+            byte[] json,
+            String etag,
+            byte[] gzip,
+            String gzipEtag
+    ) {}
+
+    /**
+     * A response being computed.
+     *
+     * @param path        the path of the response
+     * @param generations the generations of the entities it reads
+     */
+    private record Computation(String path, List<Long> generations) {}
+
+    private final DataStore dataStore;
+
+    /**
+     * Key: the path of a response to cache (without query string), Value: the entities its response reads.
+     */
+    private final Map<String, Set<EntityType>> paths;
+
+    private final boolean gzip;
+
+    /**
+     * Key: a path, Value: its cached response (only the one of the latest generations seen).
+     */
+    private final Map<String, CachedResponse> cachedResponses = new ConcurrentHashMap<>();
+
+    /**
+     * The responses being computed by a request, that the other requests of the same generations wait for.
+     * Completed with <code>null</code> when the response cannot be cached (for instance, an error).
+     */
+    private final Map<Computation, CompletableFuture<CachedResponse>> computations = new ConcurrentHashMap<>();
+
+    /**
+     * @param dataStore holds the current dataset
+     * @param paths     Key: the path of a response to cache, Value: the entities its response reads
+     *                  (see {@link #paths(Collection)})
+     * @param gzip      <code>true</code> to also cache a gzip compression of the responses,
+     *                  sent to the clients that accept it (<code>app.json-cache.gzip</code>)
+     */
+    public JsonResponseCacheFilter(DataStore dataStore, Map<String, Set<EntityType>> paths, boolean gzip) {
+        this.dataStore = dataStore;
+        this.paths     = Map.copyOf(paths);
+        this.gzip      = gzip;
+    }
+
+    /**
+     * Parse the paths of the responses to cache (<code>app.json-cache.paths</code>).
+     *
+     * @param paths each one is <code>path=ENTITY+ENTITY</code>, the entity types its response reads
+     *              (for instance, <code>/person=PERSONS</code>), or only the path when it reads all of them
+     * @return Key: a path, Value: the entities its response reads
+     * @throws IllegalArgumentException if an entity type is unknown
+     */
+    public static Map<String, Set<EntityType>> paths(Collection<String> paths) {
+        Map<String, Set<EntityType>> reads = new HashMap<>();
+        for (String path : paths) {
+            String[] parts = path.trim().split("=", 2);
+            Set<EntityType> entityTypes = EnumSet.allOf(EntityType.class);
+            if (parts.length == 2) {
+                entityTypes = EnumSet.noneOf(EntityType.class);
+                for (String entityType : parts[1].split("\\+")) {
+                    entityTypes.add(EntityType.valueOf(entityType.trim()));
+                }
+            }
+            reads.put(parts[0].trim(), entityTypes);
+        }
+        return reads;
+    }
+
+    @Override
+    public int getOrder() {
+        return ORDER;
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        String accept = request.getHeader(HttpHeaders.ACCEPT);
+        return !"GET".equals(request.getMethod())
+                || request.getQueryString() != null
+                || !paths.containsKey(request.getRequestURI())
+                // Streamed, see NdjsonHttpMessageConverter
+                || (accept != null && accept.contains(MediaType.APPLICATION_NDJSON_VALUE))
+                || !acceptsJson(accept);
+    }
+
+    /**
+     * @param accept the <code>Accept</code> header, <code>null</code> when missing
+     * @return <code>true</code> if the header is missing, or accepts <code>application/json</code>
+     * (an invalid header is left to the controller)
+     */
+    static boolean acceptsJson(String accept) {
+        if (accept == null || accept.isBlank()) {
+            return true;
+        }
+        try {
+            for (MediaType mediaType : MediaType.parseMediaTypes(accept)) {
+                if (mediaType.getQualityValue() > 0 && mediaType.isCompatibleWith(MediaType.APPLICATION_JSON)) {
+                    return true;
+                }
+            }
+            return false;
+        } catch (InvalidMediaTypeException e) {
+            return false;
+        }
+    }
+
+    @Override
+    protected void doFilterInternal(
+            HttpServletRequest request,
+            HttpServletResponse response,
+            FilterChain filterChain
+    ) throws ServletException, IOException {
+        String path = request.getRequestURI();
+        List<Long> generations = generations(dataStore.current(), paths.get(path));
+
+        CachedResponse cachedResponse = cachedResponses.get(path);
+        if (cachedResponse == null || !cachedResponse.generations().equals(generations)) {
+            Computation computation = new Computation(path, generations);
+            CompletableFuture<CachedResponse> computed = new CompletableFuture<>();
+            CompletableFuture<CachedResponse> pending = computations.putIfAbsent(computation, computed);
+            if (pending != null) {
+                // Another request computes the same response
+                cachedResponse = pending.exceptionally(e -> null).join();
+                if (cachedResponse == null) {
+                    // Not cacheable: computed by this request too
+                    filterChain.doFilter(request, response);
+                    return;
+                }
+            } else {
+                CachedResponse result = null;
+                try {
+                    result = compute(generations, request, response, filterChain);
+                    if (result != null) {
+                        // Keep the newest generations (a request pinned to a previous version can complete later)
+                        cachedResponses.merge(path, result,
+                                (previous, next) -> isOlder(next.generations(), previous.generations()) ? previous : next);
+                    }
+                } finally {
+                    computations.remove(computation, computed);
+                    computed.complete(result);
+                }
+                if (result == null) {
+                    // An error, or not JSON: sent as is, not cached
+                    return;
+                }
+                cachedResponse = result;
+            }
+        }
+        send(cachedResponse, request, response);
+    }
+
+    /**
+     * Call the controller.
+     *
+     * @return the response to cache, or <code>null</code> if it was sent as is (an error, or not JSON)
+     */
+    private CachedResponse compute(
+            List<Long> generations,
+            HttpServletRequest request,
+            HttpServletResponse response,
+            FilterChain filterChain
+    ) throws ServletException, IOException {
+        ContentCachingResponseWrapper responseWrapper = new ContentCachingResponseWrapper(response);
+        filterChain.doFilter(request, responseWrapper);
+
+        String contentType = responseWrapper.getContentType();
+        if (responseWrapper.getStatus() != HttpServletResponse.SC_OK
+                || contentType == null
+                || !MediaType.APPLICATION_JSON.isCompatibleWith(MediaType.parseMediaType(contentType))) {
+            responseWrapper.copyBodyToResponse();
+            return null;
+        }
+        return cache(generations, contentType, responseWrapper.getContentAsByteArray());
+    }
+
+    /**
+     * @return the generations of these entity types in the dataset, by {@link EntityType#ordinal()}
+     */
+    private static List<Long> generations(Dataset dataset, Set<EntityType> reads) {
+        Long[] generations = new Long[EntityType.values().length];
+        Arrays.fill(generations, 0L);
+        for (EntityType entityType : reads) {
+            generations[entityType.ordinal()] = dataset.generation(entityType);
+        }
+        return List.of(generations);
+    }
+
+    /**
+     * @return true if some of the generations are older than the other ones (the generations only increase)
+     */
+    private static boolean isOlder(List<Long> generations, List<Long> otherGenerations) {
+        for (int i = 0; i < generations.size(); i++) {
+            if (generations.get(i) < otherGenerations.get(i)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private CachedResponse cache(List<Long> generations, String contentType, byte[] json) {
+        String hash = sha256(json);
+        return new CachedResponse(
+                generations,
+                contentType,
+                json,
+                "\"" + hash + "\"",
+                gzip ? gzip(json) : null,
+                "\"" + hash + "-" + GZIP + "\""
+        );
+    }
+
+    /**
+     * Send the cached bytes (compressed when the client accepts it),
+     * or <code>304 Not Modified</code> when the client already has them.
+     */
+    private void send(CachedResponse cachedResponse, HttpServletRequest request, HttpServletResponse response)
+            throws IOException {
+        boolean compressed = cachedResponse.gzip() != null && acceptsGzip(request);
+        String etag = compressed ? cachedResponse.gzipEtag() : cachedResponse.etag();
+
+        if (gzip) {
+            // The representation depends on this request header
+            response.setHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        }
+        response.setHeader(HttpHeaders.ETAG, etag);
+        if (matches(request.getHeader(HttpHeaders.IF_NONE_MATCH), etag)) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+
+        byte[] body = compressed ? cachedResponse.gzip() : cachedResponse.json();
+        response.setStatus(HttpServletResponse.SC_OK);
+        response.setContentType(cachedResponse.contentType());
+        if (compressed) {
+            response.setHeader(HttpHeaders.CONTENT_ENCODING, GZIP);
+        }
+        response.setContentLength(body.length);
+        response.getOutputStream().write(body);
+    }
+
+    /**
+     * @param ifNoneMatch the <code>If-None-Match</code> header: <code>*</code> or a list of entity tags
+     * @param etag        the entity tag of the response
+     * @return <code>true</code> if the header matches the entity tag (weak comparison, as required for GET)
+     */
+    static boolean matches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String candidate : ifNoneMatch.split(",")) {
+            String tag = candidate.trim();
+            if (tag.startsWith("W/")) {
+                tag = tag.substring(2);
+            }
+            if (tag.equals("*") || tag.equals(etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return <code>true</code> if the <code>Accept-Encoding</code> header of the request includes gzip
+     * (and does not refuse it with <code>q=0</code>)
+     */
+    static boolean acceptsGzip(HttpServletRequest request) {
+        String acceptEncoding = request.getHeader(HttpHeaders.ACCEPT_ENCODING);
+        if (acceptEncoding == null) {
+            return false;
+        }
+        for (String coding : acceptEncoding.split(",")) {
+            String[] parts = coding.trim().split(";");
+            if (parts[0].trim().equalsIgnoreCase(GZIP)) {
+                return parts.length < 2 || !parts[1].replace(" ", "").matches("q=0(\\.0*)?");
+            }
+        }
+        return false;
+    }
+
+    private static String sha256(byte[] bytes) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(bytes);
+            // 128 bits are enough to tell the versions of a response apart
+            return HexFormat.of().formatHex(digest, 0, 16);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static byte[] gzip(byte[] bytes) {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(bytes.length / 4);
+        try (GZIPOutputStream gzipStream = new GZIPOutputStream(compressed)) {
+            gzipStream.write(bytes);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return compressed.toByteArray();
+    }
+}
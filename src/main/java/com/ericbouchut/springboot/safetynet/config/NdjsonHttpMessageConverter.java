@@ -0,0 +1,63 @@
+package com.ericbouchut.springboot.safetynet.config;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.AbstractHttpMessageConverter;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Write a collection as newline-delimited JSON (<code>application/x-ndjson</code>): one JSON value per line.
+ * <p>
+ * Used when a request asks for it (<code>Accept: application/x-ndjson</code>),
+ * for instance <code>GET /person</code> or <code>GET /communityEmail</code>.
+ * The elements are written one by one with a single Jackson generator, straight from the collection
+ * of the dataset (no copy): the first lines are sent as soon as the buffer of the generator is full,
+ * and the memory used does not depend on the number of elements.
+ * <p>
+ * Write only. Registered after the JSON converter, so that the responses stay JSON by default.
+ */
+public class NdjsonHttpMessageConverter extends AbstractHttpMessageConverter<Iterable<?>> {
+
+    private final ObjectMapper objectMapper;
+
+    public NdjsonHttpMessageConverter(ObjectMapper objectMapper) {
+        super(StandardCharsets.UTF_8, MediaType.APPLICATION_NDJSON);
+        this.objectMapper = objectMapper;
+    }
+
+    @Override
+    protected boolean supports(Class<?> clazz) {
+        return Iterable.class.isAssignableFrom(clazz);
+    }
+
+    @Override
+    protected boolean canRead(MediaType mediaType) {
+        return false;
+    }
+
+    @Override
+    protected Iterable<?> readInternal(Class<? extends Iterable<?>> clazz, HttpInputMessage inputMessage) {
+        throw new HttpMessageNotReadableException("NDJSON request bodies are not supported", inputMessage);
+    }
+
+    @Override
+    protected void writeInternal(Iterable<?> values, HttpOutputMessage outputMessage) throws IOException {
+        JsonGenerator generator = objectMapper.getFactory().createGenerator(outputMessage.getBody());
+        // The output stream belongs to the response
+        generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        // No separator between the root values: each one ends with a new line instead
+        generator.setRootValueSeparator(null);
+        try (generator) {
+            for (Object value : values) {
+                generator.writeObject(value);
+                generator.writeRaw('\n');
+            }
+        }
+    }
+}
@@ -2,15 +2,20 @@ package com.ericbouchut.springboot.safetynet.config;
 
 import com.ericbouchut.springboot.safetynet.data.DataLoader;
 import com.ericbouchut.springboot.safetynet.model.Data;
+import com.ericbouchut.springboot.safetynet.repository.DataStore;
+import com.ericbouchut.springboot.safetynet.repository.MedicalRecordStorage;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.json.JsonMapper;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 import java.time.Clock;
 import java.time.LocalDate;
 import java.time.Period;
+import java.util.Set;
 
 /**
  * This class contains instance methods annotated with <code>@Bean</code>
@@ -21,8 +26,11 @@ import java.time.Period;
  * it searches in all <code>@Configuration</code> classes for
  * and calls the instance method annotated with <code>@Bean</code>
  * that returns this type.
+ * <p>
+ * Also enables the scheduled tasks (for instance, the checkpoints of the person mutations).
  */
 @Configuration
+@EnableScheduling
 public class SafetynetConfiguration {
 
     /**
@@ -46,6 +54,9 @@ public class SafetynetConfiguration {
     }
 
     /**
+     * The current dataset (and its indexes) shared by the repositories,
+     * starting with the data loaded at startup.
+     * <p>
      * Deserialize the <code>Data</code> object from a JSON file
      * containing the data of the Safety Net altering application.
      * That is read and parse the JSON file,to instantiate the corresponding "entities"
@@ -54,15 +65,55 @@ public class SafetynetConfiguration {
      * with the <code>app.data.file</code> property.
      * The default value is <code>classpath:data/data.json</code>
      * which means that by default the JSON file is <code>resources/data/data.json</code>.
+     * <p>
+     * The loaded <code>Data</code> is not a bean: only the dataset references the entities,
+     * so that the medical records stored off-heap are not also kept on the heap.
      *
-     * @param dataLoader The bean in charge of loading the Safety Net alerting application <code>Data</code> from a JSON file
-     * @return the data loaded from the JSON file
+     * @param dataLoader The bean in charge of loading the Safety Net alerting application <code>Data</code> from a JSON file,
+     *                   it also tells which person mutations of the write-ahead log the data already includes
+     * @param medicalRecordStorage where to store the medical records (<code>app.medical-records.storage</code>)
+     * @return the data store
      *
      * @see org.springframework.core.io.Resource
      */
     @Bean
-    public Data data(DataLoader dataLoader) {
-        return dataLoader.load();
+    public DataStore dataStore(DataLoader dataLoader, MedicalRecordStorage medicalRecordStorage) {
+        Data data = dataLoader.load();
+        return new DataStore(data, dataLoader.getLoadedLsn(), medicalRecordStorage);
+    }
+
+    /**
+     * Pin the current dataset for the duration of each request.
+     * <p>
+     * Declared here (not as a <code>@Component</code>)
+     * so that the web slice tests (<code>@WebMvcTest</code>) do not need a <code>DataStore</code>.
+     *
+     * @param dataStore holds the current dataset
+     * @return the filter
+     */
+    @Bean
+    public DatasetPinningFilter datasetPinningFilter(DataStore dataStore) {
+        return new DatasetPinningFilter(dataStore);
+    }
+
+    /**
+     * Cache the JSON of the large responses that only change with the data, with an <code>ETag</code>.
+     * Declared here for the same reason as the {@link #datasetPinningFilter(DataStore)}.
+     *
+     * @param dataStore holds the current dataset
+     * @param paths     the paths of the responses to cache, with the entities they read
+     * @param gzip      <code>true</code> to also cache their gzip compression
+     * @return the filter
+     */
+    @Bean
+    public JsonResponseCacheFilter jsonResponseCacheFilter(
+            DataStore dataStore,
+            @Value("${app.json-cache.paths:/person=PERSONS,/firestation/all=FIRE_STATIONS}")
+            Set<String> paths,
+            @Value("${app.json-cache.gzip:true}")
+            boolean gzip
+    ) {
+        return new JsonResponseCacheFilter(dataStore, JsonResponseCacheFilter.paths(paths), gzip);
     }
 
     /**
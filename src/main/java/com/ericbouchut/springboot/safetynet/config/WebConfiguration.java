@@ -0,0 +1,35 @@
+package com.ericbouchut.springboot.safetynet.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import java.util.List;
+
+/**
+ * Customize Spring MVC: add the NDJSON message converter.
+ * <p>
+ * A <code>@Component</code> (not a method of {@link SafetynetConfiguration})
+ * so that the web slice tests (<code>@WebMvcTest</code>) pick it up without the other beans.
+ */
+@Component
+public class WebConfiguration implements WebMvcConfigurer {
+
+    private final ObjectMapper objectMapper;
+
+    public WebConfiguration(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * Add the NDJSON converter <b>after</b> the default ones,
+     * so that a request that accepts any media type still gets JSON.
+     *
+     * @param converters the message converters of Spring MVC
+     */
+    @Override
+    public void extendMessageConverters(List<HttpMessageConverter<?>> converters) {
+        converters.add(new NdjsonHttpMessageConverter(objectMapper));
+    }
+}
@@ -1,8 +1,11 @@
 package com.ericbouchut.springboot.safetynet.controller;
 
 import com.ericbouchut.springboot.safetynet.dto.FireStationDTO;
+import com.ericbouchut.springboot.safetynet.dto.PageDTO;
 import com.ericbouchut.springboot.safetynet.model.FireStation;
 import com.ericbouchut.springboot.safetynet.service.FireStationService;
+import com.ericbouchut.springboot.safetynet.service.PageCursor;
+import jakarta.validation.constraints.Max;
 import jakarta.validation.constraints.NotNull;
 import jakarta.validation.constraints.Positive;
 import org.springframework.web.bind.annotation.GetMapping;
@@ -35,6 +38,26 @@ public class FireStationController {
         return fireStationService.getAllFireStations();
     }
 
+    /**
+     * List the fire stations page by page, sorted by address then station number.
+     * See {@link PersonController#getPersonsPage(int, String)}.
+     *
+     * @param limit  the maximum number of fire stations of the page
+     * @param cursor the <code>nextCursor</code> of the previous page, none for the first page
+     * @return a page of fire stations, and the cursor of the next page (<code>null</code> on the last page)
+     */
+    @GetMapping(path = "/firestation/all", params = "limit")
+    public PageDTO<FireStation> getFireStationsPage(
+            @RequestParam("limit")
+            @Positive
+            @Max(PageCursor.MAX_LIMIT)
+            int limit,
+            @RequestParam(name = "cursor", required = false)
+            String cursor
+    ) {
+        return fireStationService.getFireStationsPage(cursor, limit);
+    }
+
 
     @GetMapping("/firestation/{id}")
     public List<FireStation> getFireStationsByNumber(
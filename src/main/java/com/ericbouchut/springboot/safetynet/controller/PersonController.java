@@ -2,10 +2,13 @@ package com.ericbouchut.springboot.safetynet.controller;
 
 import com.ericbouchut.springboot.safetynet.dto.ChildAlertDTO;
 import com.ericbouchut.springboot.safetynet.dto.FloodDTO;
+import com.ericbouchut.springboot.safetynet.dto.PageDTO;
 import com.ericbouchut.springboot.safetynet.dto.PersonInfoDTO;
 import com.ericbouchut.springboot.safetynet.model.Person;
+import com.ericbouchut.springboot.safetynet.service.PageCursor;
 import com.ericbouchut.springboot.safetynet.service.PersonService;
 import jakarta.validation.Valid;
+import jakarta.validation.constraints.Max;
 import jakarta.validation.constraints.NotBlank;
 import jakarta.validation.constraints.NotEmpty;
 import jakarta.validation.constraints.Positive;
@@ -44,6 +47,30 @@ public class PersonController {
         return personService.getAllPersons();
     }
 
+    /**
+     * List the persons page by page, sorted by last name, first name, address, city and zip.
+     * <p>
+     * The first page is <code>GET /person?limit=100</code>,
+     * the next ones pass the <code>nextCursor</code> of the previous page:
+     * <code>GET /person?limit=100&cursor=...</code>.
+     * The persons created or deleted between two pages do not shift the next ones.
+     *
+     * @param limit  the maximum number of persons of the page
+     * @param cursor the <code>nextCursor</code> of the previous page, none for the first page
+     * @return a page of persons, and the cursor of the next page (<code>null</code> on the last page)
+     */
+    @GetMapping(path = "/person", params = "limit")
+    public PageDTO<Person> getPersonsPage(
+            @RequestParam("limit")
+            @Positive
+            @Max(PageCursor.MAX_LIMIT)
+            int limit,
+            @RequestParam(name = "cursor", required = false)
+            String cursor
+    ) {
+        return personService.getPersonsPage(cursor, limit);
+    }
+
     /**
      * Create a person
      *
@@ -144,9 +171,10 @@ public class PersonController {
 
     /**
      * Create the custom finder REST endpoint to handle
-     * <code>GET /childAlert?address=ADDRESS_HERE</code> requests
+     * <code>GET /childAlert?address=ADDRESS_HERE&city=CITY_HERE&zip=ZIP_HERE</code> requests
      * The response is a JSON with the list of children (age <= 18)
      * living at this address.
+     * The city and the zip code are optional: they tell apart the same address in different places.
      * Each list entry contains a child's description:
      * <lu>
      * <li>first name</li>
@@ -158,14 +186,19 @@ public class PersonController {
      *
      * @return a list of children (any individual aged 18 or under) living at this address.
      */
-    // TODO: Add zip and city to distinguish children with same fist and last names living in different places
     @GetMapping("/childAlert")
     public List<ChildAlertDTO> getChildAlerts(
             @RequestParam
             @NotBlank
-            String address
+            String address,
+
+            @RequestParam(required = false)
+            String city,
+
+            @RequestParam(required = false)
+            String zip
     ) {
-        return personService.getChildAlerts(address);
+        return personService.getChildAlerts(address, city, zip);
     }
 
     /**
@@ -186,7 +219,7 @@ public class PersonController {
     @GetMapping("/flood/stations")
     public List<FloodDTO> getFloodDTO(
             @RequestParam("stations")
-            @NotBlank
+            @NotEmpty
             List<@Positive Integer> fireStationNumbers
     ) {
         return personService.getFloodDTO(fireStationNumbers);
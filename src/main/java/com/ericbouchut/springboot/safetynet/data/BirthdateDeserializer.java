@@ -0,0 +1,72 @@
+package com.ericbouchut.springboot.safetynet.data;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.deser.std.StdDeserializer;
+
+import java.io.IOException;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+
+/**
+ * Deserialize a date of birth with the format <code>"MM/dd/yyyy"</code>
+ * (example: <code>"12/31/2025"</code>) into a <code>LocalDate</code>.
+ * <p>
+ * The date is parsed by hand (fixed positions, digit by digit)
+ * instead of with a pattern-based <code>DateTimeFormatter</code>,
+ * which is much slower when loading millions of medical records.
+ *
+ * @see com.ericbouchut.springboot.safetynet.model.MedicalRecord#getDateOfBirth()
+ */
+public class BirthdateDeserializer extends StdDeserializer<LocalDate> {
+    private static final int LENGTH = "MM/dd/yyyy".length();
+
+    public BirthdateDeserializer() {
+        super(LocalDate.class);
+    }
+
+    @Override
+    public LocalDate deserialize(JsonParser parser, DeserializationContext context) throws IOException {
+        if (!parser.hasToken(JsonToken.VALUE_STRING)) {
+            return (LocalDate) context.handleUnexpectedToken(LocalDate.class, parser);
+        }
+        String text = parser.getText();
+        try {
+            return parse(text);
+        } catch (DateTimeException e) {
+            return (LocalDate) context.handleWeirdStringValue(LocalDate.class, text, e.getMessage());
+        }
+    }
+
+    /**
+     * Parse a date with the format <code>"MM/dd/yyyy"</code>.
+     *
+     * @param text the date to parse, such as <code>"12/31/2025"</code>
+     * @return the corresponding <code>LocalDate</code>
+     * @throws DateTimeException if the text does not use the expected format or is not a valid date
+     */
+    public static LocalDate parse(CharSequence text) {
+        if (text.length() != LENGTH || text.charAt(2) != '/' || text.charAt(5) != '/') {
+            throw new DateTimeException("Expected a date with the format MM/dd/yyyy, but got: " + text);
+        }
+        int month = digits(text, 0, 2);
+        int day   = digits(text, 3, 5);
+        int year  = digits(text, 6, 10);
+
+        // Checks the ranges (month, day of the month, leap years...)
+        return LocalDate.of(year, month, day);
+    }
+
+    private static int digits(CharSequence text, int start, int end) {
+        int value = 0;
+        for (int i = start; i < end; i++) {
+            int digit = text.charAt(i) - '0';
+            if (digit < 0 || digit > 9) {
+                throw new DateTimeException("Expected a date with the format MM/dd/yyyy, but got: " + text);
+            }
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+}
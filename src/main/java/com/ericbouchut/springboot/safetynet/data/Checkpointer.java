@@ -0,0 +1,192 @@
+package com.ericbouchut.springboot.safetynet.data;
+
+import com.ericbouchut.springboot.safetynet.repository.DataStore;
+import com.ericbouchut.springboot.safetynet.repository.Dataset;
+import com.ericbouchut.springboot.safetynet.repository.WriteAheadLog;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * Checkpoint the person mutations: write a snapshot of the latest dataset,
+ * then compact the {@link WriteAheadLog} up to the last mutation included in this snapshot
+ * (see {@link WriteAheadLog#compact(long)}).
+ * So the log, replayed at startup, only grows with the number of persons changed.
+ * The compacted mutations are still replayed over the data file when it changes
+ * (see {@link DataReloader}), or when the snapshot is stale.
+ * <p>
+ * The dataset is immutable, so the snapshot is consistent
+ * without pausing the readers nor the person writer.
+ * The checkpoint runs every <code>app.person.checkpoint.interval</code>,
+ * and on demand (see {@link com.ericbouchut.springboot.safetynet.actuator.CheckpointEndpoint}).
+ * <p>
+ * A reload of the data file is always checkpointed (see {@link #checkpointReload()}).
+ * The snapshot is consistent with the hash of the data file it was loaded from:
+ * both are read under the {@link DataStore#writeLock()}, held by the reload while it publishes them.
+ * <p>
+ * Metrics:
+ * <ul>
+ *     <li><code>safetynet.checkpoint.duration</code>: the duration of the checkpoints</li>
+ *     <li><code>safetynet.checkpoint.reclaimed</code>: the number of bytes removed from the write-ahead log
+ *     by the compaction</li>
+ * </ul>
+ */
+@Component
+@Log4j2
+public class Checkpointer {
+
+    /**
+     * The outcome of a checkpoint.
+     *
+     * @param lsn            the sequence number of the last person mutation included in the snapshot
+     * @param durationMs     the duration of the checkpoint in milliseconds
+     * @param snapshotBytes  the size of the snapshot
+     * @param bytesReclaimed the number of bytes removed from the write-ahead log
+     */
+    public record Result(long lsn, long durationMs, long snapshotBytes, long bytesReclaimed) {}
+
+    private final DataStore dataStore;
+    private final DataLoader dataLoader;
+    private final SnapshotStore snapshotStore;
+    private final WriteAheadLog writeAheadLog;
+    private final Timer duration;
+    private final Counter reclaimed;
+
+    private volatile Result lastResult;
+
+    /**
+     * True while a reload is not checkpointed yet.
+     */
+    private volatile boolean reloadPending;
+
+    public Checkpointer(
+            DataStore dataStore,
+            DataLoader dataLoader,
+            SnapshotStore snapshotStore,
+            WriteAheadLog writeAheadLog,
+            MeterRegistry meterRegistry
+    ) {
+        this.dataStore     = dataStore;
+        this.dataLoader    = dataLoader;
+        this.snapshotStore = snapshotStore;
+        this.writeAheadLog = writeAheadLog;
+
+        this.duration = Timer.builder("safetynet.checkpoint.duration")
+                .description("Duration of the checkpoints of the person mutations")
+                .register(meterRegistry);
+        this.reclaimed = Counter.builder("safetynet.checkpoint.reclaimed")
+                .description("Number of bytes removed from the write-ahead log by the checkpoints")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+    }
+
+    @Scheduled(
+            initialDelayString = "${app.person.checkpoint.interval:10m}",
+            fixedDelayString = "${app.person.checkpoint.interval:10m}"
+    )
+    public void scheduledCheckpoint() {
+        try {
+            if (reloadPending) {
+                checkpointReload();
+            } else {
+                checkpoint();
+            }
+        } catch (RuntimeException e) {
+            // The mutations stay in the log: the next checkpoint will try again
+            log.error("Checkpoint failed", e);
+        }
+    }
+
+    /**
+     * Write a snapshot of the latest dataset, then compact the write-ahead log.
+     *
+     * @return the outcome of the checkpoint, or empty when there is nothing to do:
+     * no snapshot or no write-ahead log configured, or no new person mutation since the last checkpoint
+     * @throws UncheckedIOException when the snapshot or the log cannot be written
+     */
+    public synchronized Optional<Result> checkpoint() {
+        return checkpoint(false);
+    }
+
+    /**
+     * Checkpoint the latest dataset after a reload of the data file, even without new person mutation,
+     * so that the next startup reads the snapshot of the reloaded data instead of parsing the data file.
+     * <p>
+     * Until it succeeds, the scheduled checkpoints try again.
+     *
+     * @return the outcome of the checkpoint, or empty when no snapshot or no write-ahead log is configured
+     * @throws UncheckedIOException when the snapshot or the log cannot be written
+     */
+    public synchronized Optional<Result> checkpointReload() {
+        reloadPending = true;
+        Optional<Result> result = checkpoint(true);
+        reloadPending = false;
+        return result;
+    }
+
+    /**
+     * @param reload true to checkpoint even without new person mutation
+     */
+    private Optional<Result> checkpoint(boolean reload) {
+        if (!snapshotStore.isEnabled() || !writeAheadLog.isEnabled()) {
+            return Optional.empty();
+        }
+        // The dataset and the hash of the data file it was loaded from, read together:
+        // a reload publishes its dataset, then sets its hash, while holding this lock
+        byte[] sourceHash;
+        Dataset dataset;
+        Lock writeLock = dataStore.writeLock();
+        writeLock.lock();
+        try {
+            sourceHash = dataLoader.getSourceHash();
+            dataset    = dataStore.latest();
+        } finally {
+            writeLock.unlock();
+        }
+        if (sourceHash == null || (!reload && lastResult != null && lastResult.lsn() == dataset.lsn())) {
+            return Optional.empty();
+        }
+
+        long start = System.nanoTime();
+        try {
+            long snapshotBytes = snapshotStore.write(dataset.toData(), sourceHash, dataset.lsn());
+            // Only once the snapshot is on disk: a failed snapshot leaves the log as is
+            return Optional.of(compact(dataset, start, snapshotBytes));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot checkpoint the person mutations", e);
+        }
+    }
+
+    /**
+     * Compact the write-ahead log up to the sequence number of a dataset, once it is saved.
+     */
+    private Result compact(Dataset dataset, long start, long snapshotBytes) throws IOException {
+        long bytesReclaimed = writeAheadLog.compact(dataset.lsn());
+
+        long elapsedNanos = System.nanoTime() - start;
+        duration.record(elapsedNanos, TimeUnit.NANOSECONDS);
+        reclaimed.increment(bytesReclaimed);
+
+        Result result = new Result(dataset.lsn(), elapsedNanos / 1_000_000, snapshotBytes, bytesReclaimed);
+        log.info("Checkpoint up to the person mutation {} in {} ms ({} bytes reclaimed from the write-ahead log)",
+                result.lsn(), result.durationMs(), result.bytesReclaimed());
+        lastResult = result;
+        return result;
+    }
+
+    /**
+     * @return the outcome of the last checkpoint, if any
+     */
+    public Optional<Result> getLastResult() {
+        return Optional.ofNullable(lastResult);
+    }
+}
@@ -0,0 +1,128 @@
+package com.ericbouchut.springboot.safetynet.data;
+
+import com.ericbouchut.springboot.safetynet.exception.JsonConfigurationLoadException;
+import com.ericbouchut.springboot.safetynet.model.Data;
+import com.ericbouchut.springboot.safetynet.model.FireStation;
+import com.ericbouchut.springboot.safetynet.model.MedicalRecord;
+import com.ericbouchut.springboot.safetynet.model.Person;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.time.DateTimeException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Read the CSV variant of the data file, line by line,
+ * and add each entity to the passed-in <code>Data</code>.
+ * <p>
+ * Each line holds one entity. Its first column is the name of the section
+ * of the JSON data file the entity belongs to:
+ * <pre>
+ * # Comment
+ * persons,John,Boyd,1509 Culver St,Culver,97451,841-874-6512,jaboyd@email.com
+ * firestations,1509 Culver St,3
+ * medicalrecords,John,Boyd,03/06/1984,aznol:350mg|hydrapermazol:100mg,nillacilan
+ * </pre>
+ * Medications and allergies are separated with a pipe (<code>|</code>) and can be empty.
+ * A field can be enclosed in double quotes (<code>"</code>) when it contains a comma,
+ * a double quote inside a quoted field is escaped by doubling it (<code>""</code>).
+ * Empty lines and lines starting with <code>#</code> are ignored.
+ */
+class CsvDataReader {
+    private static final char SEPARATOR = ',';
+    private static final char QUOTE = '"';
+    private static final String LIST_SEPARATOR_REGEX = "\\|";
+
+    private CsvDataReader() {
+    }
+
+    static void read(BufferedReader reader, Data data) throws IOException {
+        String line;
+        int lineNumber = 0;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            if (line.isBlank() || line.startsWith("#")) {
+                continue;
+            }
+            List<String> fields = split(line);
+            try {
+                switch (fields.get(0)) {
+                    case DataLoader.PERSONS -> {
+                        checkFieldCount(fields, 8);
+                        data.getPersons().add(new Person(
+                                fields.get(1), fields.get(2), fields.get(3), fields.get(4),
+                                fields.get(5), fields.get(6), fields.get(7)
+                        ));
+                    }
+                    case DataLoader.FIRE_STATIONS -> {
+                        checkFieldCount(fields, 3);
+                        data.getFireStations().add(new FireStation(fields.get(1), Integer.valueOf(fields.get(2))));
+                    }
+                    case DataLoader.MEDICAL_RECORDS -> {
+                        checkFieldCount(fields, 6);
+                        data.getMedicalRecords().add(new MedicalRecord(
+                                fields.get(1),
+                                fields.get(2),
+                                BirthdateDeserializer.parse(fields.get(3)),
+                                toSet(fields.get(4)),
+                                toSet(fields.get(5))
+                        ));
+                    }
+                    default -> throw new IllegalArgumentException("Unknown section: " + fields.get(0));
+                }
+            } catch (IllegalArgumentException | DateTimeException e) {
+                throw new JsonConfigurationLoadException("Invalid CSV data at line " + lineNumber + ": " + e.getMessage(), e);
+            }
+        }
+    }
+
+    private static void checkFieldCount(List<String> fields, int expected) {
+        if (fields.size() != expected) {
+            throw new IllegalArgumentException("Expected " + expected + " fields, but got " + fields.size());
+        }
+    }
+
+    private static Set<String> toSet(String field) {
+        if (field.isEmpty()) {
+            return Collections.emptySet();
+        }
+        return new HashSet<>(Arrays.asList(field.split(LIST_SEPARATOR_REGEX)));
+    }
+
+    /**
+     * Split a CSV line into fields.
+     */
+    static List<String> split(String line) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == QUOTE && i + 1 < line.length() && line.charAt(i + 1) == QUOTE) {
+                    field.append(QUOTE); // Escaped quote ""
+                    i++;
+                } else if (c == QUOTE) {
+                    quoted = false;
+                } else {
+                    field.append(c);
+                }
+            } else if (c == QUOTE) {
+                quoted = true;
+            } else if (c == SEPARATOR) {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+}
@@ -2,21 +2,82 @@ package com.ericbouchut.springboot.safetynet.data;
 
 import com.ericbouchut.springboot.safetynet.exception.JsonConfigurationLoadException;
 import com.ericbouchut.springboot.safetynet.model.Data;
+import com.ericbouchut.springboot.safetynet.model.FireStation;
+import com.ericbouchut.springboot.safetynet.model.MedicalRecord;
+import com.ericbouchut.springboot.safetynet.model.Person;
+import com.ericbouchut.springboot.safetynet.repository.Canonicalizer;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.ConstraintViolationException;
+import jakarta.validation.Validator;
+import lombok.extern.log4j.Log4j2;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.core.io.Resource;
 import org.springframework.stereotype.Component;
 
+import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashSet;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
 
 /**
  * Load the application JSON input data
  * and creates an instance of <code>{@link Data}</code>.
+ * <p>
+ * The data file is read in a streaming fashion, one entity at a time,
+ * so that the memory needed to load it does not depend on the size of the file
+ * (only on the size of the resulting <code>Data</code>).
+ * It can use one of these formats:
+ * <ul>
+ *     <li>JSON: a single object with the <code>persons</code>, <code>firestations</code>
+ *     and <code>medicalrecords</code> arrays (see <code>data/data.json</code>)</li>
+ *     <li>NDJSON (newline delimited JSON): one object per line,
+ *     either with the same arrays, or with a single entity per section, for instance
+ *     <code>{"firestations": {"address": "1509 Culver St", "station": "3"}}</code></li>
+ *     <li>CSV: when the file name ends with <code>.csv</code> (see {@link CsvDataReader})</li>
+ * </ul>
+ * After a successful load, a binary snapshot of the data is written (see {@link SnapshotStore}),
+ * and read instead of the data file at the next startup, as long as the data file does not change.
+ * <p>
+ * The entities parsed from the data file are validated (see the constraints of {@link Data}):
+ * a data file with an invalid entity (for instance, a person without first name) is rejected.
+ * The snapshot is only written from validated data, so it is not validated again.
+ * <p>
+ * The entities of each load share their equal locations and sets (see {@link Canonicalizer}),
+ * through tables dropped once loaded.
  *
  * TODO: Choose a more appropriate package for this class
  */
 @Component
+@Log4j2
 public class DataLoader {
+    // Names of the sections of the data file
+    static final String PERSONS         = "persons";
+    static final String FIRE_STATIONS   = "firestations";
+    static final String MEDICAL_RECORDS = "medicalrecords";
+
+    private static final String CSV_EXTENSION = ".csv";
+
+    /**
+     * The data parsed from the data file.
+     *
+     * @param data       the entities of the data file
+     * @param sourceHash the SHA-256 hash of the data file
+     */
+    public record DataFile(Data data, byte[] sourceHash) {}
+
     /**
      * The object used to read the JSON file and create a Java object
      * (deserialize <code>Data</code>).
@@ -28,34 +89,263 @@ public class DataLoader {
      */
     private final Resource dataFile;
 
+    /**
+     * The binary snapshot of the data, to skip the parsing of the data file when it did not change.
+     */
+    private final SnapshotStore snapshotStore;
+
+    /**
+     * Checks the constraints of the entities parsed from the data file.
+     */
+    private final Validator validator;
+
+    /**
+     * The SHA-256 hash of the data file of the last load.
+     */
+    private volatile byte[] sourceHash;
+
+    /**
+     * The sequence number of the last person mutation of the write-ahead log
+     * included in the data of the last load (0 when parsed from the data file).
+     */
+    private volatile long loadedLsn;
+
     /**
      * Parse the JSON input file to create an instance of  <code>{@link Data}</code>.
      * @param objectMapper the object in charge of deserializing the JSON data into a <code>{@link Data}</code>
      * @param dataFile the location of the JSON data input (in <code>Resource</code> notation where to read the JSON data from)
+     * @param snapshotStore the binary snapshot of the data
+     * @param validator checks the constraints of the parsed entities
      */
     public DataLoader(
             ObjectMapper objectMapper,
             @Value("${app.data.file}")
-            final Resource dataFile
+            final Resource dataFile,
+            SnapshotStore snapshotStore,
+            Validator validator
     ) {
-        this.objectMapper = objectMapper;
-        this.dataFile     = dataFile;
+        this.objectMapper  = objectMapper;
+        this.dataFile      = dataFile;
+        this.snapshotStore = snapshotStore;
+        this.validator     = validator;
     }
 
     /**
-     * Load the Safety Net JSON application data file to deserialize the <code>Data</code>.
+     * Load the Safety Net application data.
+     * <p>
+     * Read the binary snapshot when it was built from the current data file (same SHA-256 hash).
+     * It can include the person mutations checkpointed from the write-ahead log (see {@link #getLoadedLsn()}).
+     * Otherwise (no snapshot, stale or corrupt snapshot), parse the data file,
+     * then write a new snapshot for the next startup.
      *
      * @return <code>Data</code> a data object that contains all the entities
-     * @throws JsonConfigurationLoadException when an error occurs while loading the JSON file
+     * @throws JsonConfigurationLoadException when an error occurs while loading the JSON file,
+     * or when it has an invalid entity
      */
     public Data load() {
-        try {
-            return objectMapper.readValue(
-                    dataFile.getInputStream(),
-                    Data.class
+        long start = System.nanoTime();
+
+        if (snapshotStore.exists()) {
+            byte[] hash = hash();
+            Optional<SnapshotStore.Snapshot> snapshot = snapshotStore.read(hash);
+            if (snapshot.isPresent()) {
+                sourceHash = hash;
+                loadedLsn  = snapshot.get().lsn();
+                Canonicalizer canonicalizer = new Canonicalizer();
+                Data data = canonicalizer.canonicalize(snapshot.get().data());
+                log.info("Data loaded from the snapshot in {} ms ({} shared values)",
+                        elapsedMillis(start), canonicalizer.size());
+                return data;
+            }
+        }
+
+        Data data = loadDataFile();
+
+        if (snapshotStore.isEnabled()) {
+            long snapshotStart = System.nanoTime();
+            try {
+                snapshotStore.write(data, sourceHash, 0);
+                log.info("Snapshot written in {} ms", elapsedMillis(snapshotStart));
+            } catch (IOException e) {
+                // Not fatal: the next startup will parse the data file again
+                log.warn("Cannot write the snapshot of the data", e);
+            }
+        }
+        return data;
+    }
+
+    /**
+     * Load the data file, without reading nor writing the snapshot.
+     *
+     * @return <code>Data</code> a data object that contains all the entities of the data file
+     * @throws JsonConfigurationLoadException when an error occurs while loading the JSON file,
+     * or when it has an invalid entity
+     */
+    public Data loadDataFile() {
+        DataFile parsed = parseDataFile();
+        loaded(parsed.sourceHash());
+        return parsed.data();
+    }
+
+    /**
+     * Parse the data file, without reading nor writing the snapshot,
+     * and without changing the {@link #getSourceHash() hash of the loaded data file}
+     * (see {@link #loaded(byte[])}, once the data is published).
+     *
+     * @return the entities of the data file, and its hash
+     * @throws JsonConfigurationLoadException when an error occurs while loading the JSON file,
+     * or when it has an invalid entity
+     */
+    public DataFile parseDataFile() {
+        long start = System.nanoTime();
+        MessageDigest digest = sha256();
+        Canonicalizer canonicalizer = new Canonicalizer();
+        Data data = canonicalizer.canonicalize(validate(parse(digest)));
+        log.info("Data loaded from {} in {} ms ({} shared values)", dataFile, elapsedMillis(start), canonicalizer.size());
+        return new DataFile(data, digest.digest());
+    }
+
+    /**
+     * Record that the data parsed from the data file is the one in use (for instance, once reloaded).
+     *
+     * @param sourceHash the SHA-256 hash of the data file (see {@link DataFile#sourceHash()})
+     */
+    public void loaded(byte[] sourceHash) {
+        this.sourceHash = sourceHash;
+        this.loadedLsn  = 0;
+    }
+
+    /**
+     * @return the SHA-256 hash of the data file of the last load, or <code>null</code> before the first load
+     */
+    public byte[] getSourceHash() {
+        return sourceHash;
+    }
+
+    /**
+     * @return the sequence number of the last person mutation of the write-ahead log
+     * included in the data of the last load (0 when parsed from the data file)
+     */
+    public long getLoadedLsn() {
+        return loadedLsn;
+    }
+
+    /**
+     * Parse the data file, and compute its hash at the same time.
+     *
+     * @param digest updated with the content of the data file
+     * @return the data
+     */
+    private Data parse(MessageDigest digest) {
+        Data data = new Data(new HashSet<>(), new HashSet<>(), new HashSet<>());
+
+        try (InputStream inputStream = new DigestInputStream(dataFile.getInputStream(), digest)) {
+            if (isCsv()) {
+                CsvDataReader.read(
+                        new BufferedReader(new InputStreamReader(inputStream, StandardCharsets.UTF_8)),
+                        data
+                );
+            } else {
+                readJson(inputStream, data);
+            }
+        } catch (IOException e) {
+            throw new JsonConfigurationLoadException("Cannot load the JSON configuration file: " + dataFile, e);
+        }
+        return data;
+    }
+
+    /**
+     * @param data the parsed data
+     * @return the same data
+     * @throws JsonConfigurationLoadException if an entity breaks a constraint
+     */
+    private Data validate(Data data) {
+        Set<ConstraintViolation<Data>> violations = validator.validate(data);
+        if (!violations.isEmpty()) {
+            throw new JsonConfigurationLoadException(
+                    "Invalid JSON configuration file: " + dataFile + ": " + violations.stream()
+                            .map(violation -> violation.getPropertyPath() + " " + violation.getMessage()
+                                    + " (" + violation.getLeafBean() + ")")
+                            .sorted()
+                            .limit(10)
+                            .collect(Collectors.joining(", "))
+                            + (violations.size() > 10 ? ", ... (" + violations.size() + " violations)" : ""),
+                    new ConstraintViolationException(violations)
             );
+        }
+        return data;
+    }
+
+    /**
+     * @return the SHA-256 hash of the data file
+     */
+    private byte[] hash() {
+        MessageDigest digest = sha256();
+        try (InputStream inputStream = new DigestInputStream(dataFile.getInputStream(), digest)) {
+            inputStream.transferTo(OutputStream.nullOutputStream());
         } catch (IOException e) {
             throw new JsonConfigurationLoadException("Cannot load the JSON configuration file: " + dataFile, e);
         }
+        return digest.digest();
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java platform must support SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static long elapsedMillis(long startNanos) {
+        return (System.nanoTime() - startNanos) / 1_000_000;
+    }
+
+    private boolean isCsv() {
+        String filename = dataFile.getFilename();
+        return filename != null && filename.toLowerCase().endsWith(CSV_EXTENSION);
+    }
+
+    /**
+     * Read the JSON (or NDJSON) data token by token.
+     * Each entity is deserialized on its own and added right away to the <code>Data</code>.
+     */
+    private void readJson(InputStream inputStream, Data data) throws IOException {
+        try (JsonParser parser = objectMapper.createParser(inputStream)) {
+            // A JSON file has a single root object, an NDJSON file has one root object per line
+            while (parser.nextToken() == JsonToken.START_OBJECT) {
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String section = parser.currentName();
+                    parser.nextToken(); // Move to the value: an array of entities or a single entity
+
+                    switch (section) {
+                        case PERSONS         -> readEntities(parser, Person.class, data.getPersons()::add);
+                        case FIRE_STATIONS   -> readEntities(parser, FireStation.class, data.getFireStations()::add);
+                        case MEDICAL_RECORDS -> readEntities(parser, MedicalRecord.class, data.getMedicalRecords()::add);
+                        default              -> parser.skipChildren(); // Ignore unknown sections
+                    }
+                }
+            }
+            if (parser.currentToken() != null) {
+                throw new JsonConfigurationLoadException(
+                        "Unexpected token " + parser.currentToken() + " at " + parser.currentLocation()
+                );
+            }
+        }
+    }
+
+    /**
+     * Deserialize the entities of a section, one at a time.
+     * The parser must be on the value of the section: either an array of entities or a single entity.
+     */
+    private <T> void readEntities(JsonParser parser, Class<T> entityClass, Consumer<T> consumer) throws IOException {
+        if (parser.currentToken() == JsonToken.START_ARRAY) {
+            while (parser.nextToken() == JsonToken.START_OBJECT) {
+                consumer.accept(objectMapper.readValue(parser, entityClass));
+            }
+        } else {
+            consumer.accept(objectMapper.readValue(parser, entityClass));
+        }
     }
 }
@@ -0,0 +1,298 @@
+package com.ericbouchut.springboot.safetynet.data;
+
+import com.ericbouchut.springboot.safetynet.model.Data;
+import com.ericbouchut.springboot.safetynet.repository.DataStore;
+import com.ericbouchut.springboot.safetynet.repository.DatasetDiff;
+import com.ericbouchut.springboot.safetynet.repository.Dataset;
+import com.ericbouchut.springboot.safetynet.repository.WriteAheadLog;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.core.io.Resource;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * Reload the data file (<code>app.data.file</code>) when it changes, or on demand,
+ * and publish the new dataset in the {@link DataStore}.
+ * <p>
+ * The new dataset and its indexes are built in the background,
+ * then swapped atomically: requests in progress complete with the previous dataset,
+ * the next ones use the new dataset.
+ * When the reload fails (for instance, an invalid data file), the previous dataset is kept.
+ * <p>
+ * The person mutations of the {@link WriteAheadLog} (the persons created and deleted through the API,
+ * compacted, see {@link WriteAheadLog#compact(long)}) are replayed over the reloaded data:
+ * a reload does not drop the acknowledged mutations.
+ * <p>
+ * The reload mode (<code>app.data.reload.mode</code>) is either:
+ * <ul>
+ *     <li><code>incremental</code> (default): compare the new data with the live dataset by entity key,
+ *     then apply only the inserted, updated and deleted records (see {@link DatasetDiff}).
+ *     The indexes of the unchanged entities are kept.</li>
+ *     <li><code>full</code>: rebuild the dataset and all its indexes</li>
+ * </ul>
+ * <p>
+ * The file is only watched when it is on the file system (not inside a jar)
+ * and <code>app.data.reload.watch</code> is <code>true</code> (the default).
+ * Editors often write a file in several steps, hence the <code>app.data.reload.debounce</code>
+ * delay to wait for the last change before reloading.
+ */
+@Component
+@Log4j2
+public class DataReloader implements SmartLifecycle {
+    public enum Mode {
+        /** Rebuild the whole dataset */
+        FULL,
+        /** Apply only the changed records to the live dataset */
+        INCREMENTAL
+    }
+
+    private final DataLoader dataLoader;
+    private final DataStore dataStore;
+    private final Checkpointer checkpointer;
+    private final WriteAheadLog writeAheadLog;
+    private final Resource dataFile;
+    private final boolean watch;
+    private final Duration debounce;
+    private final Mode mode;
+
+    private volatile WatchService watchService;
+    private volatile Thread watcherThread;
+
+    public DataReloader(
+            DataLoader dataLoader,
+            DataStore dataStore,
+            Checkpointer checkpointer,
+            WriteAheadLog writeAheadLog,
+            @Value("${app.data.file}")
+            Resource dataFile,
+            @Value("${app.data.reload.watch:true}")
+            boolean watch,
+            @Value("${app.data.reload.debounce:500ms}")
+            Duration debounce,
+            @Value("${app.data.reload.mode:incremental}")
+            Mode mode
+    ) {
+        this.dataLoader    = dataLoader;
+        this.dataStore     = dataStore;
+        this.checkpointer  = checkpointer;
+        this.writeAheadLog = writeAheadLog;
+        this.dataFile      = dataFile;
+        this.watch         = watch;
+        this.debounce      = debounce;
+        this.mode          = mode;
+    }
+
+    /**
+     * Load the data file, then publish the new dataset, with the configured reload mode.
+     *
+     * @return the new dataset
+     * @throws com.ericbouchut.springboot.safetynet.exception.JsonConfigurationLoadException
+     * when the data file cannot be loaded (the current dataset is kept)
+     */
+    public Dataset reload() {
+        return reload(mode);
+    }
+
+    /**
+     * Load the data file, replay the person mutations of the write-ahead log over it,
+     * then publish the new dataset.
+     * <p>
+     * Reloads are serialized, but readers are never blocked.
+     * The data file is parsed without lock, then the mutations are replayed and the new dataset published
+     * while holding the {@link DataStore#writeLock()}: no person mutation (nor checkpoint) is missed in the meantime.
+     *
+     * @param mode rebuild the whole dataset, or only apply the changes
+     * @return the new dataset
+     * @throws com.ericbouchut.springboot.safetynet.exception.JsonConfigurationLoadException
+     * when the data file cannot be loaded (the current dataset is kept)
+     * @throws UncheckedIOException when the write-ahead log cannot be read (the current dataset is kept)
+     */
+    public synchronized Dataset reload(Mode mode) {
+        long start = System.nanoTime();
+        // The data file only: the snapshot can include person mutations (checkpoint)
+        DataLoader.DataFile dataFile = dataLoader.parseDataFile();
+        Data data = dataFile.data();
+
+        long applyStart;
+        DatasetDiff diff = null;
+        Dataset dataset;
+        Lock writeLock = dataStore.writeLock();
+        writeLock.lock();
+        try {
+            // The persons created and deleted through the API survive the reload
+            WriteAheadLog.replay(writeAheadLog.entries(), data.getPersons());
+
+            applyStart = System.nanoTime();
+            if (mode == Mode.FULL) {
+                dataset = dataStore.publish(data);
+            } else {
+                diff = DatasetDiff.between(dataStore.latest(), data);
+                dataset = diff.isEmpty() ? diff.base() : dataStore.publish(diff);
+            }
+            // Checkpointed with the dataset published from it
+            dataLoader.loaded(dataFile.sourceHash());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot replay the write-ahead log over the reloaded data", e);
+        } finally {
+            writeLock.unlock();
+        }
+
+        if (diff == null) {
+            log.info("Dataset version {} published in {} ms (full reload)", dataset.version(), elapsedMillis(start));
+        } else if (diff.isEmpty()) {
+            log.info("Data file unchanged, dataset version {} kept", dataset.version());
+            return dataset;
+        } else {
+            log.info(
+                    "Dataset version {} published in {} ms (incremental reload: {} inserted, {} updated, {} deleted records, diff in {} ms)",
+                    dataset.version(), elapsedMillis(start),
+                    diff.inserted(), diff.updated(), diff.deleted(), elapsedMillis(applyStart)
+            );
+        }
+        checkpoint();
+        return dataset;
+    }
+
+    /**
+     * Save the reloaded data, so that the next startup reads its snapshot instead of parsing the data file.
+     */
+    private void checkpoint() {
+        try {
+            checkpointer.checkpointReload();
+        } catch (RuntimeException e) {
+            // The reloaded data is published, and the mutations are still in the log:
+            // the next scheduled checkpoint will try again
+            log.error("Cannot checkpoint the reloaded data", e);
+        }
+    }
+
+    private static long elapsedMillis(long startNanos) {
+        return (System.nanoTime() - startNanos) / 1_000_000;
+    }
+
+    // ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+    //  File watcher (SmartLifecycle)
+    // ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+
+    @Override
+    public void start() {
+        Path path = watchedPath();
+        if (path == null) {
+            log.debug("Data file {} not watched", dataFile);
+            return;
+        }
+
+        try {
+            watchService = FileSystems.getDefault().newWatchService();
+            // Watch the directory: the file can be replaced (deleted, then created again)
+            path.getParent().register(
+                    watchService,
+                    StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_MODIFY
+            );
+        } catch (IOException e) {
+            log.warn("Cannot watch the data file {}", path, e);
+            return;
+        }
+
+        watcherThread = new Thread(() -> watch(path), "data-file-watcher");
+        watcherThread.setDaemon(true);
+        watcherThread.start();
+        log.info("Watching the data file {}", path);
+    }
+
+    @Override
+    public void stop() {
+        WatchService service = watchService;
+        if (service != null) {
+            try {
+                service.close();
+            } catch (IOException e) {
+                log.debug("Cannot close the watch service", e);
+            }
+        }
+        watchService  = null;
+        watcherThread = null;
+    }
+
+    @Override
+    public boolean isRunning() {
+        return watcherThread != null;
+    }
+
+    /**
+     * @return the path of the data file to watch, or <code>null</code> when it must not be watched
+     */
+    private Path watchedPath() {
+        if (!watch || !dataFile.isFile()) {
+            return null;
+        }
+        try {
+            return dataFile.getFile().toPath().toAbsolutePath();
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private void watch(Path path) {
+        WatchService service = watchService;
+        try {
+            while (true) {
+                WatchKey key = service.take();
+                boolean changed = pollEvents(key, path);
+
+                // Wait until the file stops changing
+                while (changed) {
+                    WatchKey next = service.poll(debounce.toMillis(), TimeUnit.MILLISECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    pollEvents(next, path);
+                }
+
+                if (changed) {
+                    try {
+                        reload();
+                    } catch (RuntimeException e) {
+                        log.error("Cannot reload the data file {}, keeping the current dataset", path, e);
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ClosedWatchServiceException e) {
+            // Stopped
+        }
+    }
+
+    /**
+     * Consume the events of a key, then reset it.
+     *
+     * @return true if one of the events is about the data file
+     */
+    private static boolean pollEvents(WatchKey key, Path path) {
+        boolean changed = false;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW
+                    || path.getFileName().equals(event.context())) {
+                changed = true;
+            }
+        }
+        key.reset();
+        return changed;
+    }
+}
@@ -0,0 +1,308 @@
+package com.ericbouchut.springboot.safetynet.data;
+
+import com.ericbouchut.springboot.safetynet.model.Data;
+import com.ericbouchut.springboot.safetynet.model.FireStation;
+import com.ericbouchut.springboot.safetynet.model.MedicalRecord;
+import com.ericbouchut.springboot.safetynet.model.Person;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Optional;
+import java.util.Set;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Read and write a compact binary snapshot of the <code>Data</code>,
+ * to start faster than when parsing the JSON data file.
+ * <p>
+ * The snapshot file (all numbers are big-endian) contains:
+ * <ul>
+ *     <li>a header:
+ *     <ul>
+ *         <li>the magic number <code>"SNDS"</code> (4 bytes)</li>
+ *         <li>the format {@link #VERSION version} (int)</li>
+ *         <li>the SHA-256 hash of the data file the snapshot was built from (32 bytes)</li>
+ *         <li>the sequence number of the last person mutation of the write-ahead log
+ *         included in the snapshot (long, 0 for none)</li>
+ *         <li>the payload length (long)</li>
+ *         <li>the CRC32 checksum of the payload (long)</li>
+ *     </ul></li>
+ *     <li>the payload: the persons, then the fire stations, then the medical records,
+ *     each collection prefixed by its size (int).
+ *     A string is written as its length in bytes (int, <code>-1</code> for <code>null</code>)
+ *     followed by its UTF-8 bytes. A date of birth is written as an epoch day (long).</li>
+ * </ul>
+ * The snapshot is read through a memory map of the file ({@link FileChannel#map}).
+ * A snapshot with another version, another source hash or an invalid checksum is ignored.
+ * <p>
+ * A snapshot is also a checkpoint of the person mutations (see {@link Checkpointer}):
+ * the write-ahead log is truncated up to the sequence number of the snapshot.
+ *
+ * @see DataLoader
+ */
+@Component
+@Log4j2
+public class SnapshotStore {
+    /**
+     * The data of a snapshot.
+     *
+     * @param data the data
+     * @param lsn  the sequence number of the last person mutation of the write-ahead log included in the data
+     */
+    public record Snapshot(Data data, long lsn) {}
+
+    static final int VERSION = 2;
+
+    private static final byte[] MAGIC = {'S', 'N', 'D', 'S'};
+    private static final int HASH_LENGTH = 32; // SHA-256
+    private static final int HEADER_LENGTH = MAGIC.length + Integer.BYTES + HASH_LENGTH + Long.BYTES + Long.BYTES + Long.BYTES;
+    private static final int NULL_LENGTH = -1;
+
+    /**
+     * Where to read/write the snapshot, or <code>null</code> when snapshots are disabled.
+     */
+    private final Path snapshotFile;
+
+    /**
+     * @param snapshotFile the path of the snapshot file,
+     *                     configured with the <code>app.data.snapshot.file</code> property.
+     *                     Snapshots are disabled when empty.
+     */
+    public SnapshotStore(
+            @Value("${app.data.snapshot.file:}")
+            String snapshotFile
+    ) {
+        this.snapshotFile = StringUtils.hasText(snapshotFile) ? Path.of(snapshotFile) : null;
+    }
+
+    public boolean isEnabled() {
+        return snapshotFile != null;
+    }
+
+    public boolean exists() {
+        return isEnabled() && Files.isRegularFile(snapshotFile);
+    }
+
+    /**
+     * Read the snapshot if it was built from a data file with the passed-in hash.
+     *
+     * @param sourceHash the SHA-256 hash of the current data file
+     * @return the snapshot,
+     * or an empty Optional if there is no snapshot, or if it is stale or corrupt
+     */
+    public Optional<Snapshot> read(byte[] sourceHash) {
+        if (!exists()) {
+            return Optional.empty();
+        }
+        try (FileChannel channel = FileChannel.open(snapshotFile, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+            byte[] magic = new byte[MAGIC.length];
+            buffer.get(magic);
+            int version = buffer.getInt();
+            if (!Arrays.equals(MAGIC, magic) || version != VERSION) {
+                log.warn("Ignoring snapshot {}: unknown format or version {}", snapshotFile, version);
+                return Optional.empty();
+            }
+
+            byte[] snapshotSourceHash = new byte[HASH_LENGTH];
+            buffer.get(snapshotSourceHash);
+            if (!Arrays.equals(sourceHash, snapshotSourceHash)) {
+                log.info("Ignoring stale snapshot {}: the data file changed", snapshotFile);
+                return Optional.empty();
+            }
+
+            long lsn = buffer.getLong();
+            long payloadLength = buffer.getLong();
+            long checksum = buffer.getLong();
+            if (payloadLength != buffer.remaining()) {
+                log.warn("Ignoring corrupt snapshot {}: truncated", snapshotFile);
+                return Optional.empty();
+            }
+            CRC32 crc32 = new CRC32();
+            crc32.update(buffer.slice());
+            if (crc32.getValue() != checksum) {
+                log.warn("Ignoring corrupt snapshot {}: invalid checksum", snapshotFile);
+                return Optional.empty();
+            }
+
+            return Optional.of(new Snapshot(readPayload(buffer), lsn));
+        } catch (IOException | RuntimeException e) {
+            log.warn("Ignoring unreadable snapshot {}", snapshotFile, e);
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Write a snapshot of the data, including the person mutations of the write-ahead log up to <code>lsn</code>.
+     * The snapshot is written to a temporary file first, then moved (atomically) to its final location,
+     * so a crash while writing it never leaves a partial snapshot behind.
+     *
+     * @param data       the data to save
+     * @param sourceHash the SHA-256 hash of the data file the data was loaded from
+     * @param lsn        the sequence number of the last person mutation included in the data
+     * @return the size of the snapshot in bytes (0 when snapshots are disabled)
+     * @throws IOException if the snapshot cannot be written
+     */
+    public long write(Data data, byte[] sourceHash, long lsn) throws IOException {
+        if (!isEnabled()) {
+            return 0;
+        }
+        Path directory = snapshotFile.toAbsolutePath().getParent();
+        Files.createDirectories(directory);
+        Path temporaryFile = Files.createTempFile(directory, snapshotFile.getFileName().toString(), ".tmp");
+
+        try (FileChannel channel = FileChannel.open(temporaryFile, StandardOpenOption.WRITE)) {
+            // Payload first (after room for the header), to compute its length and checksum
+            channel.position(HEADER_LENGTH);
+            CheckedOutputStream checkedOutputStream = new CheckedOutputStream(
+                    new BufferedOutputStream(Channels.newOutputStream(channel)),
+                    new CRC32()
+            );
+            DataOutputStream output = new DataOutputStream(checkedOutputStream);
+            writePayload(data, output);
+            output.flush();
+            long payloadLength = channel.position() - HEADER_LENGTH;
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH)
+                    .put(MAGIC)
+                    .putInt(VERSION)
+                    .put(sourceHash)
+                    .putLong(lsn)
+                    .putLong(payloadLength)
+                    .putLong(checkedOutputStream.getChecksum().getValue())
+                    .flip();
+            channel.write(header, 0);
+            channel.force(true);
+        } catch (IOException e) {
+            Files.deleteIfExists(temporaryFile);
+            throw e;
+        }
+        Files.move(temporaryFile, snapshotFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return Files.size(snapshotFile);
+    }
+
+    // ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+    //  Payload encoding
+    // ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+
+    private static void writePayload(Data data, DataOutputStream output) throws IOException {
+        output.writeInt(data.getPersons().size());
+        for (Person person : data.getPersons()) {
+            writeString(output, person.getFirstName());
+            writeString(output, person.getLastName());
+            writeString(output, person.getAddress());
+            writeString(output, person.getCity());
+            writeString(output, person.getZip());
+            writeString(output, person.getPhone());
+            writeString(output, person.getEmail());
+        }
+
+        output.writeInt(data.getFireStations().size());
+        for (FireStation fireStation : data.getFireStations()) {
+            writeString(output, fireStation.getAddress());
+            output.writeInt(fireStation.getNumber());
+        }
+
+        output.writeInt(data.getMedicalRecords().size());
+        for (MedicalRecord medicalRecord : data.getMedicalRecords()) {
+            writeString(output, medicalRecord.getFirstName());
+            writeString(output, medicalRecord.getLastName());
+            output.writeLong(medicalRecord.getDateOfBirth().toEpochDay());
+            writeStrings(output, medicalRecord.getMedications());
+            writeStrings(output, medicalRecord.getAllergies());
+        }
+    }
+
+    private static Data readPayload(ByteBuffer buffer) {
+        int personCount = buffer.getInt();
+        Set<Person> persons = new HashSet<>(personCount);
+        for (int i = 0; i < personCount; i++) {
+            persons.add(new Person(
+                    readString(buffer), readString(buffer), readString(buffer), readString(buffer),
+                    readString(buffer), readString(buffer), readString(buffer)
+            ));
+        }
+
+        int fireStationCount = buffer.getInt();
+        Set<FireStation> fireStations = new HashSet<>(fireStationCount);
+        for (int i = 0; i < fireStationCount; i++) {
+            fireStations.add(new FireStation(readString(buffer), buffer.getInt()));
+        }
+
+        int medicalRecordCount = buffer.getInt();
+        Set<MedicalRecord> medicalRecords = new HashSet<>(medicalRecordCount);
+        for (int i = 0; i < medicalRecordCount; i++) {
+            medicalRecords.add(new MedicalRecord(
+                    readString(buffer),
+                    readString(buffer),
+                    LocalDate.ofEpochDay(buffer.getLong()),
+                    readStrings(buffer),
+                    readStrings(buffer)
+            ));
+        }
+        return new Data(persons, fireStations, medicalRecords);
+    }
+
+    private static void writeString(DataOutputStream output, String value) throws IOException {
+        if (value == null) {
+            output.writeInt(NULL_LENGTH);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        output.writeInt(bytes.length);
+        output.write(bytes);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length == NULL_LENGTH) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void writeStrings(DataOutputStream output, Collection<String> values) throws IOException {
+        if (values == null) {
+            output.writeInt(NULL_LENGTH);
+            return;
+        }
+        output.writeInt(values.size());
+        for (String value : values) {
+            writeString(output, value);
+        }
+    }
+
+    private static Set<String> readStrings(ByteBuffer buffer) {
+        int size = buffer.getInt();
+        if (size == NULL_LENGTH) {
+            return null;
+        }
+        Set<String> values = new HashSet<>(size);
+        for (int i = 0; i < size; i++) {
+            values.add(readString(buffer));
+        }
+        return values;
+    }
+}
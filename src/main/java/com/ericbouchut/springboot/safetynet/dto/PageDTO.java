@@ -0,0 +1,18 @@
+package com.ericbouchut.springboot.safetynet.dto;
+
+import java.util.List;
+
+/**
+ * A response DTO (Data Transfer Object) with a page of a list
+ * (for instance, <code>GET /person?limit=100</code>).
+ *
+ * @param items      the elements of this page, in a stable order
+ * @param nextCursor the cursor of the next page (to pass in the <code>cursor</code> parameter),
+ *                   <code>null</code> on the last page
+ * @param <T>        the type of the elements
+ */
+public record PageDTO<T>(
+        List<T> items,
+        String nextCursor
+) {
+}
@@ -0,0 +1,15 @@
+package com.ericbouchut.springboot.safetynet.exception;
+
+/**
+ * Thrown when the <code>cursor</code> parameter of a page request was not returned by the application.
+ */
+public class InvalidCursorException extends SafetyNetException {
+
+    public InvalidCursorException(String message) {
+        super(message);
+    }
+
+    public InvalidCursorException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -54,4 +54,17 @@ public class ValidationExceptionHandler {
                 );
         return ResponseEntity.badRequest().body(errors);
     }
+
+    /**
+     * Handles the cursors of page requests that were not returned by the application.
+     *
+     * @param ex the exception
+     * @return a Map with {key = "cursor", value = error message}
+     */
+    @ExceptionHandler(InvalidCursorException.class)
+    public ResponseEntity<Map<String, String>> handleInvalidCursor(
+            InvalidCursorException ex
+    ) {
+        return ResponseEntity.badRequest().body(Map.of("cursor", ex.getMessage()));
+    }
 }
\ No newline at end of file
@@ -1,11 +1,11 @@
 package com.ericbouchut.springboot.safetynet.mapper;
 
 import com.ericbouchut.springboot.safetynet.dto.ChildAlertDTO;
-import com.ericbouchut.springboot.safetynet.model.MedicalRecord;
 import com.ericbouchut.springboot.safetynet.model.Person;
 import com.ericbouchut.springboot.safetynet.service.DateService;
 import org.springframework.stereotype.Component;
 
+import java.time.LocalDate;
 import java.util.List;
 
 @Component
@@ -17,11 +17,11 @@ public class ChildAlertMapper {
         this.dateService = dateService;
     }
 
-    public ChildAlertDTO toDTO(MedicalRecord childMedicalRecord, List<Person> otherHouseholdMembers) {
+    public ChildAlertDTO toDTO(Person child, LocalDate dateOfBirth, List<Person> otherHouseholdMembers) {
         return new ChildAlertDTO(
-                childMedicalRecord.getFirstName(),
-                childMedicalRecord.getLastName(),
-                dateService.calculateAge(childMedicalRecord.getDateOfBirth()),
+                child.getFirstName(),
+                child.getLastName(),
+                dateService.calculateAge(dateOfBirth),
                 otherHouseholdMembers
         );
     }
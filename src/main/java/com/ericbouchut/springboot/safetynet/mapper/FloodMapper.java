@@ -0,0 +1,46 @@
+package com.ericbouchut.springboot.safetynet.mapper;
+
+import com.ericbouchut.springboot.safetynet.dto.FloodDTO;
+import com.ericbouchut.springboot.safetynet.model.MedicalRecord;
+import com.ericbouchut.springboot.safetynet.model.Person;
+import com.ericbouchut.springboot.safetynet.service.DateService;
+import org.springframework.stereotype.Component;
+import org.springframework.util.ObjectUtils;
+
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Mapper for converting a ({@link Person} and a {@link List} of {@link MedicalRecord})
+ * to a {@link FloodDTO.PersonDTO} (household member).
+ */
+@Component
+public class FloodMapper {
+    private final MedicalHistoryMapper medicalHistoryMapper;
+    private final DateService dateService;
+
+    public FloodMapper(DateService dateService, MedicalHistoryMapper medicalHistoryMapper) {
+        this.dateService = dateService;
+        this.medicalHistoryMapper = medicalHistoryMapper;
+    }
+
+    public FloodDTO.PersonDTO toDTO(Person person, List<MedicalRecord> medicalRecords) {
+        String fullName = person.getFirstName() + " " + person.getLastName();
+
+        Optional<MedicalRecord> maybeFirstMedicalRecord = medicalRecords.stream()
+                .filter(m -> !ObjectUtils.isEmpty(m))
+                // Keep the first one and discard the rest
+                .findFirst();
+
+        int age = maybeFirstMedicalRecord
+                .map(m -> dateService.calculateAge(m.getDateOfBirth()))
+                .orElse(-1);
+
+        return new FloodDTO.PersonDTO(
+                fullName,
+                person.getPhone(),
+                age,
+                medicalHistoryMapper.toDTO(maybeFirstMedicalRecord.orElse(null))
+        );
+    }
+}
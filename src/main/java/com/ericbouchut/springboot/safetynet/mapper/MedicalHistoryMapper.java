@@ -9,19 +9,36 @@ import org.springframework.stereotype.Component;
 import org.springframework.util.ObjectUtils;
 
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.function.Function;
 
 /**
  * Mapper for converting a <code>MedicalRecord</code> entity to a <code>MedicalHistoryDTO</code>.
+ * <p>
+ * A medical history only depends on the medications and allergies of the medical record.
+ * The (immutable) <code>MedicalHistoryDTO</code> of each medical record is built once, when it is indexed
+ * (at load, and when the medical records change, see {@link Builder}), and kept with it
+ * (see {@link MedicalRecord#getMedicalHistory()}): whatever the storage of the medical records,
+ * a call neither parses the medications nor allocates.
+ * Only a medical record that was not indexed has its medical history built on each call.
+ * <p>
+ * The medications and allergies sets of the medical records must not be modified once indexed.
  *
  * @see MedicalRecord
  * @see MedicalHistoryDTO
  */
 @Component
 public class MedicalHistoryMapper {
+    private static final MedicalHistoryDTO EMPTY = new MedicalHistoryDTO(Collections.emptyList(), Collections.emptySet());
+
     private final MedicationMapper medicationMapper;
 
+    /**
+     * @param medicationMapper parses the medications of the medical records that were not indexed
+     */
     public MedicalHistoryMapper(MedicationMapper medicationMapper) {
         this.medicationMapper = medicationMapper;
     }
@@ -30,19 +47,66 @@ public class MedicalHistoryMapper {
     public MedicalHistoryDTO toDTO(@Nullable MedicalRecord medicalRecord) {
 
         if(medicalRecord == null) {
-            return new MedicalHistoryDTO(Collections.emptyList(), Collections.emptySet());
+            return EMPTY;
         }
 
-        List<MedicationDTO> medications = medicalRecord.getMedications()
-                .stream()
-                // Remove null or empty medications
-                .filter(medication -> !ObjectUtils.isEmpty(medication))
-                // .map(medication -> medicationMapper.toDTO(medication))
-                .map(medicationMapper::toDTO)
-                .toList();
+        MedicalHistoryDTO medicalHistory = medicalRecord.getMedicalHistory();
+        if (medicalHistory != null) {
+            return medicalHistory;
+        }
+        return build(medicalRecord.getMedications(), medicalRecord.getAllergies(), medicationMapper::toDTO);
+    }
 
-        Set<String> allergies = medicalRecord.getAllergies();
+    private static MedicalHistoryDTO build(
+            Set<String> medicalRecordMedications,
+            Set<String> allergies,
+            Function<String, MedicationDTO> medicationMapper
+    ) {
+        List<MedicationDTO> medications = medicalRecordMedications == null
+                ? Collections.emptyList()
+                : medicalRecordMedications
+                    .stream()
+                    // Remove null or empty medications
+                    .filter(medication -> !ObjectUtils.isEmpty(medication))
+                    .map(medicationMapper)
+                    .toList();
 
         return new MedicalHistoryDTO(medications, allergies);
     }
+
+    /**
+     * Builds the medical histories of the medical records of an index, when it is built or changed.
+     * <p>
+     * Each medication is parsed once, and the medical records with equal medications and allergies
+     * share the same medical history. The tables are dropped with the builder, once the index is built.
+     * Not thread safe.
+     */
+    public static final class Builder {
+        private final MedicationMapper medicationMapper = new MedicationMapper();
+
+        /**
+         * Key: a medication (<code>"name:dosage"</code>), Value: its parsed medication.
+         */
+        private final Map<String, MedicationDTO> medications = new HashMap<>();
+
+        /**
+         * The medical histories built, by medications, then by allergies.
+         */
+        private final Map<Set<String>, Map<Set<String>, MedicalHistoryDTO>> medicalHistories = new HashMap<>();
+
+        /**
+         * @param medicalRecord a medical record
+         * @return its medical history (the same instance for the records with equal medications and allergies)
+         */
+        public MedicalHistoryDTO build(MedicalRecord medicalRecord) {
+            Set<String> medicalRecordMedications = medicalRecord.getMedications();
+            return medicalHistories
+                    .computeIfAbsent(medicalRecordMedications, key -> new HashMap<>())
+                    .computeIfAbsent(medicalRecord.getAllergies(), allergies -> MedicalHistoryMapper.build(
+                            medicalRecordMedications,
+                            allergies,
+                            medication -> medications.computeIfAbsent(medication, medicationMapper::toDTO)
+                    ));
+        }
+    }
 }
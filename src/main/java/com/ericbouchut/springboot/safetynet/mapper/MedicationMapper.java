@@ -6,6 +6,9 @@ import org.springframework.stereotype.Component;
 
 /**
  * Mapper for converting a <code>MedicalRecord</code> entity to a <code>MedicationDTO</code>.
+ * <p>
+ * The medications parsed from the medical records of an index are shared by their medical histories
+ * (see {@link MedicalHistoryMapper.Builder}).
  *
  * @see MedicalRecord
  * @see MedicationDTO
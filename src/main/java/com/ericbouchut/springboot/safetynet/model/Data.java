@@ -17,7 +17,7 @@ import java.util.Set;
  * It is deserialized from a JSON file at application startup
  * and serialized (written to the JSON file) when the application shuts down.
  *
- * @see com.ericbouchut.springboot.safetynet.config.SafetynetConfiguration#data(DataLoader)
+ * @see com.ericbouchut.springboot.safetynet.config.SafetynetConfiguration#dataStore(DataLoader, com.ericbouchut.springboot.safetynet.repository.MedicalRecordStorage)
  *
  * @see FireStation
  * @see Person
@@ -0,0 +1,24 @@
+package com.ericbouchut.springboot.safetynet.model;
+
+/**
+ * The full name (first and last name) of a person.
+ * <p>
+ * It is the key used to link a {@link Person} to their {@link MedicalRecord}(s).
+ * <br/>
+ * IMPORTANT: Several persons can share the same full name (namesakes).
+ *
+ * @param firstName the first name
+ * @param lastName  the last name
+ */
+public record FullName(
+        String firstName,
+        String lastName
+) {
+    public static FullName of(Person person) {
+        return new FullName(person.getFirstName(), person.getLastName());
+    }
+
+    public static FullName of(MedicalRecord medicalRecord) {
+        return new FullName(medicalRecord.getFirstName(), medicalRecord.getLastName());
+    }
+}
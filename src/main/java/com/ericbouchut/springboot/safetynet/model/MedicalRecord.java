@@ -1,14 +1,20 @@
 package com.ericbouchut.springboot.safetynet.model;
 
+import com.ericbouchut.springboot.safetynet.data.BirthdateDeserializer;
 import com.ericbouchut.springboot.safetynet.data.DataLoader;
+import com.ericbouchut.springboot.safetynet.dto.MedicalHistoryDTO;
 import com.fasterxml.jackson.annotation.JsonFormat;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
 import jakarta.validation.constraints.NotBlank;
 import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.NotNull;
 import jakarta.validation.constraints.Past;
-import lombok.AllArgsConstructor;
 import lombok.Data;
+import lombok.EqualsAndHashCode;
 import lombok.NoArgsConstructor;
+import lombok.ToString;
 import org.springframework.validation.annotation.Validated;
 
 import java.time.LocalDate;
@@ -28,7 +34,6 @@ import java.util.Set;
  */
 @Data
 @NoArgsConstructor
-@AllArgsConstructor
 @Validated
 public class MedicalRecord {
     @NotBlank
@@ -46,16 +51,44 @@ public class MedicalRecord {
      *     <li><code>yyyy</code> denotes the year (4 digits)</li>
      * </ul>
      * Example: <code>"12/31/2025"</code>
+     * <p>
+     * The date is read with a hand-written parser ({@link BirthdateDeserializer}),
+     * the pattern of <code>@JsonFormat</code> is only used to write it.
      *
-     * @see com.ericbouchut.springboot.safetynet.config.SafetynetConfiguration#data(DataLoader)
+     * @see com.ericbouchut.springboot.safetynet.config.SafetynetConfiguration#dataStore(DataLoader, com.ericbouchut.springboot.safetynet.repository.MedicalRecordStorage)
      */
     // TODO: REST API v2 should take into account the timezone and use ZonedDate instead of LocalDate
     @JsonProperty("birthdate") // Custom JSON field name
     @JsonFormat(pattern = "MM/dd/yyyy") // "month(2 digits)/dayOfMonth(2 digits)/year(4 digits)"
-    @NotBlank
+    @JsonDeserialize(using = BirthdateDeserializer.class)
+    @NotNull
     @Past  // must be a past date
     private LocalDate dateOfBirth;
 
     private Set<@NotEmpty String> medications;
     private Set<@NotEmpty String> allergies;
+
+    /**
+     * The medical history of this medical record, built once when it is indexed
+     * (see {@link com.ericbouchut.springboot.safetynet.repository.MedicalRecordIndex}),
+     * <code>null</code> if it was not. Neither serialized nor compared.
+     */
+    @JsonIgnore
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
+    private transient MedicalHistoryDTO medicalHistory;
+
+    public MedicalRecord(
+            String firstName,
+            String lastName,
+            LocalDate dateOfBirth,
+            Set<String> medications,
+            Set<String> allergies
+    ) {
+        this.firstName   = firstName;
+        this.lastName    = lastName;
+        this.dateOfBirth = dateOfBirth;
+        this.medications = medications;
+        this.allergies   = allergies;
+    }
 }
@@ -24,7 +24,7 @@ import java.util.Objects;
  * The <b>unicity</b> of a <code>Person</code>
  * is solely based on the above fields.
  *
- * @see com.ericbouchut.springboot.safetynet.config.SafetynetConfiguration#data(DataLoader)
+ * @see com.ericbouchut.springboot.safetynet.config.SafetynetConfiguration#dataStore(DataLoader, com.ericbouchut.springboot.safetynet.repository.MedicalRecordStorage)
  * @see com.ericbouchut.springboot.safetynet.model.Data
  */
 @Data
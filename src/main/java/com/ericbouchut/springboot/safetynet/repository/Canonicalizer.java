@@ -0,0 +1,136 @@
+package com.ericbouchut.springboot.safetynet.repository;
+
+import com.ericbouchut.springboot.safetynet.model.Data;
+import com.ericbouchut.springboot.safetynet.model.FireStation;
+import com.ericbouchut.springboot.safetynet.model.MedicalRecord;
+import com.ericbouchut.springboot.safetynet.model.Person;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Share the equal values of the entities of one load, instead of keeping a copy per entity.
+ * <p>
+ * The data repeats the same cities, zip codes, addresses, medications and allergies many times,
+ * and the parser allocates a new <code>String</code> (and a new <code>Set</code>) for each occurrence.
+ * The canonicalizer replaces each of them with the first equal instance it has seen:
+ * <ul>
+ *     <li>the cities, zip codes and addresses of the persons and fire stations,</li>
+ *     <li>the sets of medications and allergies of the medical records
+ *     (replaced with unmodifiable sets in the same order, of shared strings, and a single empty set).</li>
+ * </ul>
+ * The other fields (names, phones, emails) are almost unique per entity: they are kept as is,
+ * so the tables only hold the few distinct values of these fields.
+ * <p>
+ * A canonicalizer is scoped to one load (see {@link #canonicalize(Data)}):
+ * its tables are dropped with it once the data is loaded,
+ * so they neither grow with the values of the previous loads nor retain them. Not thread safe.
+ */
+public class Canonicalizer {
+
+    /**
+     * Key and value: the same string (the canonical instance).
+     */
+    private final Map<String, String> strings = new HashMap<>();
+
+    /**
+     * Key and value: the same unmodifiable set (the canonical instance).
+     */
+    private final Map<Set<String>, Set<String>> sets = new HashMap<>();
+
+    /**
+     * Canonicalize all the entities of the data, in place.
+     *
+     * @param data the data (for instance, just loaded)
+     * @return the same data
+     */
+    public Data canonicalize(Data data) {
+        data.getPersons().forEach(this::canonicalize);
+        data.getFireStations().forEach(this::canonicalize);
+        data.getMedicalRecords().forEach(this::canonicalize);
+        return data;
+    }
+
+    /**
+     * Replace the location of a person with its canonical instances (equal values: same hash code).
+     *
+     * @param person a person
+     * @return the same person
+     */
+    public Person canonicalize(Person person) {
+        person.setAddress(canonical(person.getAddress()));
+        person.setCity(canonical(person.getCity()));
+        person.setZip(canonical(person.getZip()));
+        return person;
+    }
+
+    /**
+     * @param fireStation a fire station
+     * @return the same fire station, with its canonical address
+     */
+    public FireStation canonicalize(FireStation fireStation) {
+        fireStation.setAddress(canonical(fireStation.getAddress()));
+        return fireStation;
+    }
+
+    /**
+     * @param medicalRecord a medical record
+     * @return the same medical record, with its canonical medications and allergies
+     */
+    public MedicalRecord canonicalize(MedicalRecord medicalRecord) {
+        medicalRecord.setMedications(canonical(medicalRecord.getMedications()));
+        medicalRecord.setAllergies(canonical(medicalRecord.getAllergies()));
+        return medicalRecord;
+    }
+
+    /**
+     * @param value a string, or <code>null</code>
+     * @return the canonical instance equal to this string
+     */
+    public String canonical(String value) {
+        if (value == null) {
+            return null;
+        }
+        String canonical = strings.putIfAbsent(value, value);
+        return canonical == null ? value : canonical;
+    }
+
+    /**
+     * @param values a set of strings, or <code>null</code>
+     * @return the canonical unmodifiable set equal to this set (of canonical strings),
+     * or this set if it has a <code>null</code> element
+     */
+    public Set<String> canonical(Set<String> values) {
+        if (values == null) {
+            return null;
+        }
+        if (values.isEmpty()) {
+            return Collections.emptySet();
+        }
+        Set<String> canonical = sets.get(values);
+        if (canonical != null) {
+            return canonical;
+        }
+
+        Set<String> copy = new LinkedHashSet<>(values.size());
+        for (String value : values) {
+            if (value == null) {
+                return values;
+            }
+            copy.add(canonical(value));
+        }
+        canonical = copy.size() == 1 ? Collections.singleton(copy.iterator().next()) : Collections.unmodifiableSet(copy);
+        sets.put(canonical, canonical);
+        return canonical;
+    }
+
+    /**
+     * @return the number of strings and sets in the tables
+     */
+    public int size() {
+        return strings.size() + sets.size();
+    }
+}
@@ -0,0 +1,145 @@
+package com.ericbouchut.springboot.safetynet.repository;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.BinaryOperator;
+
+/**
+ * A concurrent map bounded by size, that evicts an entry not used recently (an approximate LRU),
+ * for the caches read by all the requests.
+ * <p>
+ * A read never takes a lock: the entries are held by a <code>ConcurrentHashMap</code>,
+ * and a hit only sets the <i>referenced</i> flag of its entry (when not set yet).
+ * Beyond the maximum size, the eviction uses the CLOCK algorithm (second chance):
+ * the keys are queued in insertion order, and the first key is either evicted if it was not referenced
+ * since it was queued, or queued again with its flag cleared.
+ * So an entry read since it was inserted (or since the previous pass) survives the next pass.
+ * <p>
+ * The size can exceed the maximum size while concurrent puts run
+ * (and be a little lower once they are done, as each of them evicts an entry for the same excess).
+ *
+ * @param <K> the type of the keys
+ * @param <V> the type of the values
+ */
+public class ClockCache<K, V> {
+
+    private static final class Node<V> {
+        final V value;
+        volatile boolean referenced;
+
+        Node(V value) {
+            this.value = value;
+        }
+    }
+
+    private final int maxSize;
+
+    /**
+     * Called once per evicted entry (for instance, to count them).
+     */
+    private final Runnable onEviction;
+
+    private final ConcurrentHashMap<K, Node<V>> entries = new ConcurrentHashMap<>();
+
+    /**
+     * The keys of the entries, in the order of their insertion (or of their second chance).
+     */
+    private final Queue<K> clock = new ConcurrentLinkedQueue<>();
+
+    /**
+     * @param maxSize    the maximum number of entries
+     * @param onEviction called once per evicted entry
+     */
+    public ClockCache(int maxSize, Runnable onEviction) {
+        this.maxSize    = maxSize;
+        this.onEviction = onEviction;
+    }
+
+    /**
+     * @param key the key to look up
+     * @return the value of this key (now referenced), or <code>null</code> if there is none
+     */
+    public V get(K key) {
+        Node<V> node = entries.get(key);
+        if (node == null) {
+            return null;
+        }
+        // Read before written: a hot entry is not written by every hit
+        if (!node.referenced) {
+            node.referenced = true;
+        }
+        return node.value;
+    }
+
+    /**
+     * Add an entry, then evict the entries beyond the maximum size.
+     *
+     * @param key   the key
+     * @param value the value of this key
+     * @param merge the value to keep, from the current value of this key (if any) and the new one
+     * @return the value of this key, once put
+     */
+    public V put(K key, V value, BinaryOperator<V> merge) {
+        boolean[] inserted = new boolean[1];
+        Node<V> kept = entries.compute(key, (k, node) -> {
+            if (node == null) {
+                inserted[0] = true;
+                return new Node<>(value);
+            }
+            V merged = merge.apply(node.value, value);
+            return merged == node.value ? node : new Node<>(merged);
+        });
+        if (inserted[0]) {
+            // Queued once the others were evicted: the entry just put is not the one evicted
+            evict();
+            clock.offer(key);
+        }
+        return kept.value;
+    }
+
+    /**
+     * Add an entry, or replace the value of its key.
+     *
+     * @see #put(Object, Object, BinaryOperator)
+     */
+    public V put(K key, V value) {
+        return put(key, value, (previous, next) -> next);
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Remove all the entries (the entries put concurrently may be kept).
+     */
+    public void clear() {
+        entries.clear();
+        clock.clear();
+    }
+
+    private void evict() {
+        while (entries.size() > maxSize) {
+            K key = clock.poll();
+            if (key == null) {
+                return;
+            }
+            Node<V> node = entries.get(key);
+            if (node == null) {
+                // Removed by clear()
+                continue;
+            }
+            if (node.referenced) {
+                // Second chance
+                node.referenced = false;
+                clock.offer(key);
+            } else if (entries.remove(key, node)) {
+                onEviction.run();
+            } else {
+                // Replaced in the meantime: keep it for the next pass
+                clock.offer(key);
+            }
+        }
+    }
+}
@@ -0,0 +1,262 @@
+package com.ericbouchut.springboot.safetynet.repository;
+
+import com.ericbouchut.springboot.safetynet.model.Data;
+import lombok.extern.log4j.Log4j2;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
+
+/**
+ * Hold the current {@link Dataset} shared by the repositories.
+ * <p>
+ * A new dataset (for instance, after a reload of the data file) is built aside,
+ * then published atomically with {@link #publish(Data)}.
+ * Writes (for instance, to create a person) publish a new version of the dataset
+ * with {@link #update(UnaryOperator)}, or with {@link #publish(Dataset, Dataset)}
+ * when the new version was computed with side effects that cannot be applied again to another version
+ * (these writers hold the {@link #writeLock()}).
+ * Readers never block: they only read a reference to an immutable dataset.
+ * <p>
+ * A thread can <b>pin</b> the current dataset (see {@link #pin()}),
+ * so that all the repository calls made while handling a request
+ * use the same dataset version, even if a new one is published in the meantime.
+ * <p>
+ * The components that derive their own state from the dataset are notified of each new dataset
+ * (see {@link #subscribe(Consumer)}).
+ *
+ * @see com.ericbouchut.springboot.safetynet.config.DatasetPinningFilter
+ */
+@Log4j2
+public class DataStore {
+    private final AtomicReference<Dataset> current;
+
+    /**
+     * Notified of each published dataset.
+     */
+    private final List<Consumer<Dataset>> listeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * Builds the index of the medical records of the published data (where they are stored).
+     */
+    private final MedicalRecordIndex.Factory medicalRecordIndexes;
+
+    /**
+     * Held by the writers that compute a new dataset from the latest one with side effects,
+     * see {@link #writeLock()}.
+     */
+    private final Lock writeLock = new ReentrantLock();
+
+    /**
+     * The dataset pinned by the current thread, if any.
+     */
+    private final ThreadLocal<Dataset> pinned = new ThreadLocal<>();
+
+    /**
+     * @param data the initial data
+     */
+    public DataStore(Data data) {
+        this(data, 0);
+    }
+
+    /**
+     * @param data the initial data
+     * @param lsn  the sequence number of the last person mutation of the write-ahead log included in the data
+     */
+    public DataStore(Data data, long lsn) {
+        this(data, lsn, MedicalRecordIndex::new);
+    }
+
+    /**
+     * @param data    the initial data
+     * @param lsn     the sequence number of the last person mutation of the write-ahead log included in the data
+     * @param medicalRecordIndexes builds the index of the medical records (of this data, and of the data published later)
+     * @see com.ericbouchut.springboot.safetynet.config.SafetynetConfiguration#dataStore(com.ericbouchut.springboot.safetynet.data.DataLoader, MedicalRecordStorage)
+     */
+    public DataStore(Data data, long lsn, MedicalRecordIndex.Factory medicalRecordIndexes) {
+        this.medicalRecordIndexes = medicalRecordIndexes;
+        this.current = new AtomicReference<>(Dataset.of(data, 1, medicalRecordIndexes).withLsn(lsn));
+    }
+
+    /**
+     * @return the dataset pinned by the current thread if any, otherwise the latest dataset
+     */
+    public Dataset current() {
+        Dataset dataset = pinned.get();
+        return dataset != null ? dataset : current.get();
+    }
+
+    /**
+     * @return the latest published dataset (ignores the pinned dataset)
+     */
+    public Dataset latest() {
+        return current.get();
+    }
+
+    /**
+     * Pin the latest dataset for the current thread, until {@link #unpin()} is called.
+     *
+     * @return the pinned dataset
+     */
+    public Dataset pin() {
+        Dataset dataset = current.get();
+        pinned.set(dataset);
+        return dataset;
+    }
+
+    public void unpin() {
+        pinned.remove();
+    }
+
+    /**
+     * Wrap a task to run on another thread (for instance, in a pool)
+     * with the dataset of the current thread pinned, so that it reads the same version as the caller.
+     *
+     * @param task the task
+     * @return a task that pins the current dataset while it runs, then restores the previous one
+     */
+    public <T> Supplier<T> withCurrentDataset(Supplier<T> task) {
+        Dataset dataset = current();
+        return () -> {
+            Dataset previous = pinned.get();
+            pinned.set(dataset);
+            try {
+                return task.get();
+            } finally {
+                // The task can also run on the calling thread
+                if (previous != null) {
+                    pinned.set(previous);
+                } else {
+                    pinned.remove();
+                }
+            }
+        };
+    }
+
+    /**
+     * The lock of the writers that compute a new dataset from the latest one with side effects
+     * (the person writer logs its mutations, the reloader checkpoints the reloaded data):
+     * while they hold it, no other of these writers can publish a dataset,
+     * so the one they computed theirs from is still the latest one when they publish it
+     * with {@link #publish(Dataset, Dataset)}.
+     * Readers never take it.
+     *
+     * @return the lock of the writers
+     */
+    public Lock writeLock() {
+        return writeLock;
+    }
+
+    /**
+     * Call a listener with the latest dataset, then with each dataset published after it.
+     * <p>
+     * The listener runs on the publishing thread, right after the publication:
+     * it must be fast, or only do its work when the entities it depends on changed
+     * (see {@link Dataset#generation(Dataset.EntityType)}).
+     * The datasets published at the same time by several threads can be passed out of order.
+     * An exception thrown by the listener is logged, and does not fail the publication.
+     *
+     * @param listener the listener
+     */
+    public void subscribe(Consumer<Dataset> listener) {
+        listeners.add(listener);
+        listener.accept(current.get());
+    }
+
+    /**
+     * Build a dataset (and its indexes) from the passed-in data,
+     * then make it the current one.
+     *
+     * @param data the new data
+     * @return the new current dataset
+     */
+    public Dataset publish(Data data) {
+        // Build the indexes before publishing, outside the update loop
+        Dataset dataset = Dataset.of(data, 0, medicalRecordIndexes);
+        // The person mutations logged so far are either replayed over the new data (reload), or replaced by it
+        return update(previous -> dataset.withLsn(previous.lsn())).orElseThrow();
+    }
+
+    /**
+     * Apply the changes of a diff to the latest dataset,
+     * then make the result the current dataset.
+     * <p>
+     * Only the changed records are applied: the indexes of the unchanged entities are kept.
+     *
+     * @param diff the changes, computed against the latest dataset (see {@link DatasetDiff#between(Dataset, Data)})
+     * @return the new current dataset
+     * @throws IllegalStateException if another dataset was published since the diff was computed
+     * (nothing is published: compute the diff again)
+     */
+    public Dataset publish(DatasetDiff diff) {
+        return publish(diff.base(), diff.base().apply(diff, diff.base().version()));
+    }
+
+    /**
+     * Publish a new version of a dataset, only if this dataset is still the latest one (compare-and-set).
+     * <p>
+     * Unlike {@link #update(UnaryOperator)}, the new version is not computed again
+     * from the dataset published in the meantime by another writer, if any:
+     * it is rejected, since it was computed from an older dataset (see {@link #writeLock()}).
+     *
+     * @param base the dataset the new version was computed from
+     * @param next the new version
+     * @return the new current dataset (with the next version number)
+     * @throws IllegalStateException if another dataset was published since <code>base</code> (nothing is published)
+     */
+    public Dataset publish(Dataset base, Dataset next) {
+        Dataset published = next.withVersion(base.version() + 1);
+        if (!current.compareAndSet(base, published)) {
+            throw new IllegalStateException(
+                    "Dataset version " + base.version() + " is not the latest one anymore: version "
+                            + current.get().version() + " was published since"
+            );
+        }
+        notifyListeners(published);
+        return published;
+    }
+
+    /**
+     * Publish a new version of the latest dataset, without lock (compare-and-set).
+     * <p>
+     * When another writer published a version in the meantime,
+     * the change is applied again to this version, so no update is lost.
+     * Hence, the change must not have any side effect:
+     * it returns a new dataset and leaves the passed-in one unchanged.
+     *
+     * @param change compute the next dataset from the latest one,
+     *               or return the latest one as is when there is nothing to change
+     * @return the new current dataset (with the next version number),
+     * or empty if the change returned the latest dataset as is
+     */
+    public Optional<Dataset> update(UnaryOperator<Dataset> change) {
+        while (true) {
+            Dataset previous = current.get();
+            Dataset next = change.apply(previous);
+            if (next == previous) {
+                return Optional.empty();
+            }
+            next = next.withVersion(previous.version() + 1);
+            if (current.compareAndSet(previous, next)) {
+                notifyListeners(next);
+                return Optional.of(next);
+            }
+        }
+    }
+
+    private void notifyListeners(Dataset dataset) {
+        for (Consumer<Dataset> listener : listeners) {
+            try {
+                listener.accept(dataset);
+            } catch (RuntimeException e) {
+                log.error("Dataset version {} listener failed", dataset.version(), e);
+            }
+        }
+    }
+}
@@ -0,0 +1,262 @@
+package com.ericbouchut.springboot.safetynet.repository;
+
+import com.ericbouchut.springboot.safetynet.model.Data;
+import com.ericbouchut.springboot.safetynet.model.FullName;
+import com.ericbouchut.springboot.safetynet.model.Person;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * A version of the application data, with the indexes of the repositories.
+ * <p>
+ * Immutable: a change produces a new dataset, that the {@link DataStore} publishes as the next version.
+ * <p>
+ * The {@link DataStore} publishes a whole <code>Dataset</code> at once,
+ * so a request never sees the persons of one version with the fire stations of another one.
+ * <p>
+ * Each version of the index of an entity type has its own generation (see {@link #generation(EntityType)}):
+ * a change of the persons publishes a new version of the dataset, but keeps the generation of the fire stations.
+ *
+ * @param version        the version number, incremented each time a new dataset is published
+ * @param lsn            the sequence number of the last person mutation of the {@link WriteAheadLog}
+ *                       included in this dataset (0 for none)
+ * @param persons        the persons and their indexes
+ * @param fireStations   the fire stations and their indexes
+ * @param medicalRecords the medical records and their index
+ * @param census         the census of each station number, derived from the three entities above
+ * @param households     the households, derived from the persons and the medical records
+ * @param distributionLists the emails by city and the phone numbers by station number,
+ *                       derived from the persons and the fire stations
+ * @param personTable    the persons and their medical records stored by column,
+ *                       maintained with the persons and the medical records (see {@link PersonTable})
+ */
+public record Dataset(
+        long version,
+        long lsn,
+        PersonIndex persons,
+        FireStationIndex fireStations,
+        MedicalRecordIndex medicalRecords,
+        StationCensusIndex census,
+        HouseholdIndex households,
+        DistributionListIndex distributionLists,
+        PersonTable personTable
+) {
+    /**
+     * The entities of a dataset, each with its own index.
+     */
+    public enum EntityType { PERSONS, FIRE_STATIONS, MEDICAL_RECORDS }
+
+    private static final AtomicLong NEXT_GENERATION = new AtomicLong();
+
+    /**
+     * @return a new generation, greater than the previous ones, for a new index
+     */
+    static long nextGeneration() {
+        return NEXT_GENERATION.incrementAndGet();
+    }
+
+    /**
+     * Build a dataset, and all its indexes, from the data (medical records on the heap).
+     *
+     * @param data    the data (for instance, loaded from the data file)
+     * @param version the version of the dataset
+     * @return a new dataset
+     */
+    public static Dataset of(Data data, long version) {
+        return of(data, version, MedicalRecordIndex::new);
+    }
+
+    /**
+     * Build a dataset, and all its indexes, from the data.
+     *
+     * @param data    the data (for instance, loaded from the data file)
+     * @param version the version of the dataset
+     * @param medicalRecordIndexes builds the index of the medical records (where they are stored)
+     * @return a new dataset
+     */
+    public static Dataset of(Data data, long version, MedicalRecordIndex.Factory medicalRecordIndexes) {
+        PersonIndex persons = new PersonIndex(data.getPersons());
+        FireStationIndex fireStations = new FireStationIndex(data.getFireStations());
+        MedicalRecordIndex medicalRecords = medicalRecordIndexes.of(data.getMedicalRecords());
+        return new Dataset(
+                version,
+                0,
+                persons,
+                fireStations,
+                medicalRecords,
+                StationCensusIndex.of(persons, fireStations, medicalRecords),
+                HouseholdIndex.of(persons, medicalRecords),
+                DistributionListIndex.of(persons, fireStations),
+                PersonTable.of(persons, medicalRecords)
+        );
+    }
+
+    /**
+     * Apply the changes of a diff to this dataset.
+     * <p>
+     * The indexes of the entities that did not change are reused as is,
+     * and only the census, households and distribution lists affected by the changes are rebuilt.
+     * This dataset is left unchanged.
+     *
+     * @param diff    the changes
+     * @param version the version of the new dataset
+     * @return a new dataset
+     */
+    public Dataset apply(DatasetDiff diff, long version) {
+        PersonIndex nextPersons = persons.apply(diff);
+        MedicalRecordIndex nextMedicalRecords = medicalRecords.apply(diff);
+        Dataset next = new Dataset(
+                version,
+                lsn,
+                nextPersons,
+                fireStations.apply(diff),
+                nextMedicalRecords,
+                census,
+                households,
+                distributionLists,
+                personTable.apply(diff, nextPersons, nextMedicalRecords)
+        );
+
+        // The station numbers, addresses and cities affected, before and after the changes
+        Set<Integer> censusNumbers = new HashSet<>();
+        Set<Integer> phoneNumbers = new HashSet<>();
+        Set<String> addresses = new HashSet<>();
+        Set<String> cities = new HashSet<>();
+        diff.insertedFireStations().forEach(fireStation -> censusNumbers.add(fireStation.getNumber()));
+        diff.deletedFireStations().forEach(fireStation -> censusNumbers.add(fireStation.getNumber()));
+        // The households and the distribution lists hold the phone and email of the updated persons
+        for (Collection<Person> changed : List.of(diff.insertedPersons(), diff.updatedPersons(), diff.deletedPersons())) {
+            addAll(changed, Person::getAddress, addresses);
+            addAll(changed, Person::getCity, cities);
+        }
+        for (Dataset dataset : new Dataset[]{this, next}) {
+            dataset.addStationNumbersServing(diff.insertedPersons(), censusNumbers);
+            dataset.addStationNumbersServing(diff.deletedPersons(), censusNumbers);
+            dataset.addStationNumbersServing(diff.updatedPersons(), phoneNumbers);
+            for (FullName fullName : diff.medicalRecords().keySet()) {
+                dataset.addStationNumbersServing(dataset.persons().getByFullName(fullName), censusNumbers);
+                addAll(dataset.persons().getByFullName(fullName), Person::getAddress, addresses);
+            }
+        }
+        // The medical records do not change the phone numbers, but the other changes do
+        phoneNumbers.addAll(censusNumbers);
+        return next.withDerivedIndexes(
+                census.update(censusNumbers, next),
+                households.update(addresses, next),
+                distributionLists.update(cities, phoneNumbers, next)
+        );
+    }
+
+    /**
+     * Remove, then add persons.
+     * Only the census and the phone numbers of the station numbers serving them,
+     * their households and the emails of their cities are rebuilt.
+     *
+     * @param added   the persons to add
+     * @param removed the persons to remove
+     * @return a copy of this dataset with these changes (same version),
+     * or this dataset if there is no change
+     */
+    public Dataset withPersons(Collection<Person> added, Collection<Person> removed) {
+        if (added.isEmpty() && removed.isEmpty()) {
+            return this;
+        }
+        Dataset next = new Dataset(
+                version, lsn, persons.with(added, removed), fireStations, medicalRecords,
+                census, households, distributionLists, personTable.with(added, removed, medicalRecords)
+        );
+
+        Set<Integer> numbers = new HashSet<>();
+        Set<String> addresses = new HashSet<>();
+        Set<String> cities = new HashSet<>();
+        for (Collection<Person> changed : List.of(added, removed)) {
+            addStationNumbersServing(changed, numbers);
+            addAll(changed, Person::getAddress, addresses);
+            addAll(changed, Person::getCity, cities);
+        }
+        return next.withDerivedIndexes(
+                census.update(numbers, next),
+                households.update(addresses, next),
+                distributionLists.update(cities, numbers, next)
+        );
+    }
+
+    /**
+     * @param lsn the sequence number of the last person mutation included in the dataset
+     * @return a copy of this dataset with another sequence number
+     */
+    public Dataset withLsn(long lsn) {
+        return new Dataset(
+                version, lsn, persons, fireStations, medicalRecords, census, households, distributionLists, personTable
+        );
+    }
+
+    /**
+     * @param version the new version
+     * @return a copy of this dataset with another version
+     */
+    public Dataset withVersion(long version) {
+        return new Dataset(
+                version, lsn, persons, fireStations, medicalRecords, census, households, distributionLists, personTable
+        );
+    }
+
+    private Dataset withDerivedIndexes(
+            StationCensusIndex census,
+            HouseholdIndex households,
+            DistributionListIndex distributionLists
+    ) {
+        return new Dataset(
+                version, lsn, persons, fireStations, medicalRecords, census, households, distributionLists, personTable
+        );
+    }
+
+    /**
+     * @param persons persons
+     * @param numbers where to add the numbers of the stations serving the addresses of these persons
+     */
+    private void addStationNumbersServing(Collection<Person> persons, Set<Integer> numbers) {
+        for (Person person : persons) {
+            numbers.addAll(fireStations.getNumbersByAddress(person.getAddress()));
+        }
+    }
+
+    /**
+     * @param persons persons
+     * @param field   a field of a person (for instance, their address)
+     * @param values  where to add the values of this field
+     */
+    private static void addAll(Collection<Person> persons, Function<Person, String> field, Set<String> values) {
+        for (Person person : persons) {
+            values.add(field.apply(person));
+        }
+    }
+
+    /**
+     * @param entityType an entity type
+     * @return the generation of the index of this entity type: it changes only when these entities change
+     */
+    public long generation(EntityType entityType) {
+        return switch (entityType) {
+            case PERSONS         -> persons.generation();
+            case FIRE_STATIONS   -> fireStations.generation();
+            case MEDICAL_RECORDS -> medicalRecords.generation();
+        };
+    }
+
+    /**
+     * @return the data of this dataset (for instance, to save it)
+     */
+    public Data toData() {
+        return new Data(
+                new HashSet<>(persons.getAll()),
+                new HashSet<>(fireStations.getAll()),
+                new HashSet<>(medicalRecords.getAll())
+        );
+    }
+}
@@ -0,0 +1,155 @@
+package com.ericbouchut.springboot.safetynet.repository;
+
+import com.ericbouchut.springboot.safetynet.model.Data;
+import com.ericbouchut.springboot.safetynet.model.FireStation;
+import com.ericbouchut.springboot.safetynet.model.FullName;
+import com.ericbouchut.springboot.safetynet.model.MedicalRecord;
+import com.ericbouchut.springboot.safetynet.model.Person;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * The changes between a {@link Dataset} and new data (for instance, the data file reloaded),
+ * compared by entity key:
+ * <ul>
+ *     <li><code>Person</code>: its "primary key" (see {@link Person#equals(Object)}).
+ *     A person whose phone or email changed is updated.</li>
+ *     <li><code>FireStation</code>: its address and station number</li>
+ *     <li><code>MedicalRecord</code>: its full name.
+ *     The medical records of a full name (namesakes) are replaced together.</li>
+ * </ul>
+ *
+ * @param base                 the dataset these changes were computed against (see {@link DataStore#publish(DatasetDiff)})
+ * @param insertedPersons      the persons to add
+ * @param updatedPersons       the new version of the persons whose details changed
+ * @param deletedPersons       the persons to remove
+ * @param insertedFireStations the fire stations to add
+ * @param deletedFireStations  the fire stations to remove
+ * @param medicalRecords       Key: a full name, Value: its new medical records (empty to delete them)
+ * @param insertedMedicalRecords the number of medical records added
+ * @param updatedMedicalRecords  the number of medical records changed
+ * @param deletedMedicalRecords  the number of medical records removed
+ */
+public record DatasetDiff(
+        Dataset base,
+        Set<Person> insertedPersons,
+        Set<Person> updatedPersons,
+        Set<Person> deletedPersons,
+        Set<FireStation> insertedFireStations,
+        Set<FireStation> deletedFireStations,
+        Map<FullName, List<MedicalRecord>> medicalRecords,
+        int insertedMedicalRecords,
+        int updatedMedicalRecords,
+        int deletedMedicalRecords
+) {
+    /**
+     * Compare a dataset with new data.
+     *
+     * @param dataset the live dataset
+     * @param data    the new data
+     * @return the changes to apply to the dataset to get the new data
+     */
+    public static DatasetDiff between(Dataset dataset, Data data) {
+        // Persons
+        Map<Person, Person> livePersons = dataset.persons().getAll().stream()
+                .collect(Collectors.toMap(Function.identity(), Function.identity()));
+
+        Set<Person> insertedPersons = new HashSet<>();
+        Set<Person> updatedPersons  = new HashSet<>();
+        for (Person person : data.getPersons()) {
+            Person livePerson = livePersons.get(person);
+            if (livePerson == null) {
+                insertedPersons.add(person);
+            } else if (!sameDetails(livePerson, person)) {
+                updatedPersons.add(person);
+            }
+        }
+        Set<Person> deletedPersons = difference(livePersons.keySet(), data.getPersons());
+
+        // Fire stations
+        Set<FireStation> liveFireStations = dataset.fireStations().getAll();
+        Set<FireStation> insertedFireStations = difference(data.getFireStations(), liveFireStations);
+        Set<FireStation> deletedFireStations  = difference(liveFireStations, data.getFireStations());
+
+        // Medical records
+        Map<FullName, Set<MedicalRecord>> newMedicalRecords = data.getMedicalRecords().stream()
+                .collect(Collectors.groupingBy(FullName::of, Collectors.toSet()));
+        Map<FullName, List<MedicalRecord>> medicalRecords = new HashMap<>();
+        int inserted = 0;
+        int updated  = 0;
+        int deleted  = 0;
+
+        for (Map.Entry<FullName, Set<MedicalRecord>> entry : newMedicalRecords.entrySet()) {
+            List<MedicalRecord> liveRecords = dataset.medicalRecords().getByFullName(entry.getKey());
+            if (liveRecords.isEmpty()) {
+                inserted += entry.getValue().size();
+            } else if (!entry.getValue().equals(new HashSet<>(liveRecords))) {
+                updated += entry.getValue().size();
+            } else {
+                continue;
+            }
+            medicalRecords.put(entry.getKey(), List.copyOf(entry.getValue()));
+        }
+        for (MedicalRecord liveRecord : dataset.medicalRecords().getAll()) {
+            FullName fullName = FullName.of(liveRecord);
+            if (!newMedicalRecords.containsKey(fullName)) {
+                medicalRecords.put(fullName, List.of());
+                deleted++;
+            }
+        }
+
+        return new DatasetDiff(
+                dataset,
+                insertedPersons, updatedPersons, deletedPersons,
+                insertedFireStations, deletedFireStations,
+                medicalRecords, inserted, updated, deleted
+        );
+    }
+
+    /**
+     * @return the number of inserted records (all entities)
+     */
+    public int inserted() {
+        return insertedPersons.size() + insertedFireStations.size() + insertedMedicalRecords;
+    }
+
+    /**
+     * @return the number of updated records (all entities)
+     */
+    public int updated() {
+        return updatedPersons.size() + updatedMedicalRecords;
+    }
+
+    /**
+     * @return the number of deleted records (all entities)
+     */
+    public int deleted() {
+        return deletedPersons.size() + deletedFireStations.size() + deletedMedicalRecords;
+    }
+
+    public boolean isEmpty() {
+        return inserted() + updated() + deleted() == 0;
+    }
+
+    /**
+     * @return true if the non-key fields of both persons are equal
+     */
+    private static boolean sameDetails(Person person, Person other) {
+        return Objects.equals(person.getPhone(), other.getPhone())
+                && Objects.equals(person.getEmail(), other.getEmail());
+    }
+
+    private static <T> Set<T> difference(Collection<T> from, Set<T> excluded) {
+        return from.stream()
+                .filter(element -> !excluded.contains(element))
+                .collect(Collectors.toSet());
+    }
+}
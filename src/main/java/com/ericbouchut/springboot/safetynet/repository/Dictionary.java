@@ -0,0 +1,138 @@
+package com.ericbouchut.springboot.safetynet.repository;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The dictionary encoding of a column of a {@link PersonTable}:
+ * each distinct value is stored once, and the rows hold its code (an <code>int</code>).
+ * <p>
+ * The codes are dense, in the order the values were first added, and never change:
+ * a value is only added (a value no longer used by any row keeps its code),
+ * so the rows of the previous versions of the table stay valid.
+ * <code>null</code> is a value like the others, with the code {@link #NULL}.
+ * <p>
+ * Immutable: {@link Editor} adds values to a copy, that shares its structure with this dictionary.
+ */
+public final class Dictionary {
+    /**
+     * The code returned for a value that is not in the dictionary.
+     */
+    public static final int ABSENT = -1;
+
+    /**
+     * The code of <code>null</code>.
+     */
+    public static final int NULL = 0;
+
+    static final Dictionary EMPTY = empty();
+
+    /**
+     * Key: a value (except <code>null</code>), Value: its code.
+     */
+    private final PersistentHashMap<String, Integer> codes;
+
+    /**
+     * Key: a code, Value: its value (<code>null</code> for {@link #NULL}).
+     */
+    private final ObjectColumn<String> values;
+
+    private Dictionary(PersistentHashMap<String, Integer> codes, ObjectColumn<String> values) {
+        this.codes  = codes;
+        this.values = values;
+    }
+
+    /**
+     * @return a dictionary of <code>null</code> only
+     */
+    private static Dictionary empty() {
+        ObjectColumn.Editor<String> values = ObjectColumn.<String>empty().edit();
+        values.add(null);
+        return new Dictionary(PersistentHashMap.empty(), values.build());
+    }
+
+    /**
+     * @param value a value
+     * @return the code of this value, or {@link #ABSENT} if it was never added
+     */
+    public int code(String value) {
+        if (value == null) {
+            return NULL;
+        }
+        Integer code = codes.get(value);
+        return code == null ? ABSENT : code;
+    }
+
+    /**
+     * @param code a code returned by this dictionary
+     * @return its value
+     */
+    public String value(int code) {
+        return code == NULL ? null : values.get(code);
+    }
+
+    /**
+     * @return the number of distinct values (including <code>null</code>)
+     */
+    public int size() {
+        return values.size();
+    }
+
+    Editor edit() {
+        return new Editor(this);
+    }
+
+    /**
+     * Adds values to a copy of a dictionary, then builds it: not thread safe.
+     */
+    static final class Editor {
+        private final PersistentHashMap<String, Integer> codes;
+
+        /**
+         * The codes of the values added by this editor (added to the codes at once by {@link #build()}).
+         */
+        private final Map<String, Integer> addedCodes = new HashMap<>();
+
+        private final ObjectColumn.Editor<String> values;
+
+        private Editor(Dictionary dictionary) {
+            this.codes  = dictionary.codes;
+            this.values = dictionary.values.edit();
+        }
+
+        /**
+         * @see Dictionary#code(String)
+         */
+        int code(String value) {
+            if (value == null) {
+                return NULL;
+            }
+            Integer code = codes.get(value);
+            if (code == null) {
+                code = addedCodes.get(value);
+            }
+            return code == null ? ABSENT : code;
+        }
+
+        /**
+         * @param value a value of the column
+         * @return its code (a new one the first time this value is added)
+         */
+        int add(String value) {
+            if (value == null) {
+                return NULL;
+            }
+            int code = code(value);
+            if (code == ABSENT) {
+                code = values.size();
+                addedCodes.put(value, code);
+                values.add(value);
+            }
+            return code;
+        }
+
+        Dictionary build() {
+            return new Dictionary(codes.plusAll(addedCodes), values.build());
+        }
+    }
+}
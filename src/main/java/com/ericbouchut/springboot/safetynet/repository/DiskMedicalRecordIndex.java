@@ -0,0 +1,180 @@
+package com.ericbouchut.springboot.safetynet.repository;
+
+import com.ericbouchut.springboot.safetynet.model.FullName;
+import com.ericbouchut.springboot.safetynet.model.MedicalRecord;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.ref.Cleaner;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The medical records of a {@link Dataset}, encoded in a local file,
+ * indexed by full name (see {@link MedicalRecordIndex.Storage#DISK}).
+ * <p>
+ * Only the key index (see {@link EncodedMedicalRecordIndex}) and the working set
+ * (the medical records read recently, see {@link MedicalRecordCache}) are in memory.
+ * A miss reads the candidate records with positional reads (<code>FileChannel.read(ByteBuffer, long)</code>):
+ * the concurrent requests share the channel, without locking.
+ * <p>
+ * Each index has its own file, named <code>medical-records-*.bin</code> in <code>app.medical-records.disk.directory</code>,
+ * opened with <code>DELETE_ON_CLOSE</code> (on POSIX systems, the file is unlinked as soon as it is opened),
+ * and its channel is closed by a <code>Cleaner</code> when the index is garbage collected.
+ */
+public class DiskMedicalRecordIndex extends EncodedMedicalRecordIndex {
+    static final String FILE_PREFIX = "medical-records-";
+    static final String FILE_SUFFIX = ".bin";
+
+    /**
+     * The size of the buffer where the records are encoded before they are written in the file.
+     */
+    static final int CHUNK_SIZE = 64 * 1024;
+
+    private static final Cleaner CLEANER = Cleaner.create();
+
+    private static final AtomicLong NEXT_ID = new AtomicLong();
+
+    /**
+     * Identifies this index in the cache shared with the other versions.
+     */
+    private final long id;
+
+    private final FileChannel channel;
+    private final Path directory;
+    private final MedicalRecordCache cache;
+
+    private DiskMedicalRecordIndex(Layout layout, FileChannel channel, Path directory, MedicalRecordCache cache) {
+        super(layout);
+        this.id        = NEXT_ID.incrementAndGet();
+        this.channel   = channel;
+        this.directory = directory;
+        this.cache     = cache;
+        CLEANER.register(this, new Closer(channel));
+    }
+
+    /**
+     * Encode the medical records (without duplicates) in a new file.
+     *
+     * @param medicalRecords the medical records
+     * @param directory      where to create the file
+     * @param cache          the working set
+     * @return a new index
+     * @throws UncheckedIOException if the file cannot be written
+     */
+    public static DiskMedicalRecordIndex of(Collection<MedicalRecord> medicalRecords, Path directory, MedicalRecordCache cache) {
+        return of(Encoding.of(medicalRecords), directory, cache);
+    }
+
+    private static DiskMedicalRecordIndex of(Encoding encoding, Path directory, MedicalRecordCache cache) {
+        try {
+            Files.createDirectories(directory);
+            Path file = Files.createTempFile(directory, FILE_PREFIX, FILE_SUFFIX);
+            Layout layout;
+            try (FileChannel output = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                ChunkedOutput chunks = new ChunkedOutput(output);
+                layout = encoding.writeTo(chunks);
+                chunks.flush();
+            } catch (IOException | RuntimeException e) {
+                Files.deleteIfExists(file);
+                throw e;
+            }
+            FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.DELETE_ON_CLOSE);
+            return new DiskMedicalRecordIndex(layout, channel, directory, cache);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot write the medical records in " + directory, e);
+        }
+    }
+
+    /**
+     * @param fullName a full name
+     * @return the medical records with this full name, from the cache, or read from the file (unmodifiable)
+     */
+    @Override
+    public List<MedicalRecord> getByFullName(FullName fullName) {
+        return cache.get(id, fullName, () -> super.getByFullName(fullName));
+    }
+
+    @Override
+    protected ByteBuffer read(int offset, int length) {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        try {
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, offset + buffer.position()) < 0) {
+                    throw new IOException("Unexpected end of file at " + (offset + buffer.position()));
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot read a medical record", e);
+        }
+        return buffer.flip();
+    }
+
+    @Override
+    protected MedicalRecordIndex rebuild(Encoding encoding) {
+        return of(encoding, directory, cache);
+    }
+
+    /**
+     * Encodes the records in a buffer reused for all of them, written in the file each time it is full
+     * (a record larger than the buffer gets its own).
+     */
+    private static final class ChunkedOutput implements Output {
+        private final FileChannel channel;
+        private final ByteBuffer chunk = ByteBuffer.allocate(CHUNK_SIZE);
+
+        /**
+         * The buffer returned by the last call, not written yet.
+         */
+        private ByteBuffer current;
+
+        private ChunkedOutput(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        @Override
+        public ByteBuffer next(int length) throws IOException {
+            if (current != null && current.remaining() >= length) {
+                return current;
+            }
+            flush();
+            current = length <= CHUNK_SIZE ? chunk.clear() : ByteBuffer.allocate(length);
+            return current;
+        }
+
+        /**
+         * Write the records encoded so far in the file.
+         */
+        void flush() throws IOException {
+            if (current == null) {
+                return;
+            }
+            current.flip();
+            while (current.hasRemaining()) {
+                channel.write(current);
+            }
+            current = null;
+        }
+    }
+
+    /**
+     * Closes (and so deletes) the file of an index that is no longer reachable.
+     * Does not reference the index.
+     */
+    private record Closer(FileChannel channel) implements Runnable {
+        @Override
+        public void run() {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                // At worst, the file is left in the directory, and deleted at the next startup
+            }
+        }
+    }
+}
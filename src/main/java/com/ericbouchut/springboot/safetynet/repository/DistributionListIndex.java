@@ -0,0 +1,153 @@
+package com.ericbouchut.springboot.safetynet.repository;
+
+import com.ericbouchut.springboot.safetynet.model.Person;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.function.Function;
+
+/**
+ * The distribution lists of a {@link Dataset}, used to alert the residents:
+ * <ul>
+ *     <li>the email addresses of the residents of each city</li>
+ *     <li>the phone numbers of the residents served by each station number</li>
+ * </ul>
+ * A list is deduplicated, sorted and unmodifiable, so it is returned as is to every request.
+ * <p>
+ * Immutable: when persons or fire stations change,
+ * only the lists of the cities and station numbers they affect are rebuilt
+ * (see {@link #update(Collection, Collection, Dataset)}), the other ones are shared with the previous index.
+ */
+public class DistributionListIndex {
+
+    /**
+     * Key: a city, Value: the email addresses of its residents.
+     */
+    private final Map<String, List<String>> emailsByCity;
+
+    /**
+     * Key: a station number, Value: the phone numbers of the residents of the addresses it serves.
+     */
+    private final Map<Integer, List<String>> phonesByNumber;
+
+    private DistributionListIndex(Map<String, List<String>> emailsByCity, Map<Integer, List<String>> phonesByNumber) {
+        this.emailsByCity   = emailsByCity;
+        this.phonesByNumber = phonesByNumber;
+    }
+
+    /**
+     * Build the distribution lists of all the cities and station numbers.
+     *
+     * @param persons      the persons
+     * @param fireStations the fire stations
+     * @return a new index
+     */
+    public static DistributionListIndex of(PersonIndex persons, FireStationIndex fireStations) {
+        Map<String, List<String>> emailsByCity = new HashMap<>();
+        for (Person person : persons.getAll()) {
+            if (person.getCity() != null) {
+                emailsByCity.computeIfAbsent(person.getCity(), city -> emails(city, persons));
+            }
+        }
+        Map<Integer, List<String>> phonesByNumber = new HashMap<>();
+        for (Integer number : fireStations.getNumbers()) {
+            phonesByNumber.put(number, phones(number, persons, fireStations));
+        }
+        return new DistributionListIndex(Map.copyOf(emailsByCity), Map.copyOf(phonesByNumber));
+    }
+
+    /**
+     * Rebuild the distribution lists of some cities and station numbers from a new version of the data.
+     *
+     * @param cities  the cities affected by a change
+     * @param numbers the station numbers affected by a change
+     * @param dataset the data after the change
+     * @return a new index, or this index if there is no list to rebuild
+     */
+    public DistributionListIndex update(Collection<String> cities, Collection<Integer> numbers, Dataset dataset) {
+        if (cities.isEmpty() && numbers.isEmpty()) {
+            return this;
+        }
+        PersonIndex persons = dataset.persons();
+        FireStationIndex fireStations = dataset.fireStations();
+        return new DistributionListIndex(
+                update(emailsByCity, cities, city -> emails(city, persons)),
+                update(phonesByNumber, numbers, number -> phones(number, persons, fireStations))
+        );
+    }
+
+    /**
+     * @param city a city
+     * @return the email addresses of its residents (empty for an unknown city)
+     */
+    public List<String> getEmailsByCity(String city) {
+        if (city == null) {
+            return List.of();
+        }
+        return emailsByCity.getOrDefault(city, List.of());
+    }
+
+    /**
+     * @param fireStationNumber a station number
+     * @return the phone numbers of the residents it serves (empty for an unknown station number)
+     */
+    public List<String> getPhonesByNumber(Integer fireStationNumber) {
+        if (fireStationNumber == null) {
+            return List.of();
+        }
+        return phonesByNumber.getOrDefault(fireStationNumber, List.of());
+    }
+
+    /**
+     * @return a copy of the lists, with the lists of the passed-in keys rebuilt
+     * (and removed when they become empty)
+     */
+    private static <K> Map<K, List<String>> update(
+            Map<K, List<String>> listsByKey,
+            Collection<K> keys,
+            Function<K, List<String>> listBuilder
+    ) {
+        if (keys.isEmpty()) {
+            return listsByKey;
+        }
+        Map<K, List<String>> newListsByKey = new HashMap<>(listsByKey);
+        for (K key : new HashSet<>(keys)) {
+            if (key == null) {
+                continue;
+            }
+            List<String> list = listBuilder.apply(key);
+            if (list.isEmpty()) {
+                newListsByKey.remove(key);
+            } else {
+                newListsByKey.put(key, list);
+            }
+        }
+        return Map.copyOf(newListsByKey);
+    }
+
+    private static List<String> emails(String city, PersonIndex persons) {
+        return sortedDistinct(persons.getByCity(city), Person::getEmail);
+    }
+
+    private static List<String> phones(Integer number, PersonIndex persons, FireStationIndex fireStations) {
+        List<Person> residents = fireStations.getAddressesByNumber(number).stream()
+                .flatMap(address -> persons.getByAddress(address).stream())
+                .toList();
+        return sortedDistinct(residents, Person::getPhone);
+    }
+
+    private static List<String> sortedDistinct(Collection<Person> persons, Function<Person, String> field) {
+        TreeSet<String> values = new TreeSet<>();
+        for (Person person : persons) {
+            String value = field.apply(person);
+            if (value != null) {
+                values.add(value);
+            }
+        }
+        return List.copyOf(values);
+    }
+}
@@ -0,0 +1,494 @@
+package com.ericbouchut.springboot.safetynet.repository;
+
+import com.ericbouchut.springboot.safetynet.dto.MedicalHistoryDTO;
+import com.ericbouchut.springboot.safetynet.mapper.MedicalHistoryMapper;
+import com.ericbouchut.springboot.safetynet.model.FullName;
+import com.ericbouchut.springboot.safetynet.model.MedicalRecord;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The medical records of a {@link Dataset} stored encoded outside the heap (in memory or in a file),
+ * indexed by full name. A record is decoded into a new <code>MedicalRecord</code> each time it is read.
+ * <p>
+ * The heap only holds a compact key index: the hash codes of the full names, sorted,
+ * and the offset of each record in the encoded records (8 bytes per medical record),
+ * and the medical history of each record, built when it is encoded (see {@link MedicalHistoryMapper.Builder}),
+ * set on the record when it is decoded (a reference per medical record: the medical histories are shared
+ * by the records with equal medications and allergies, and copied with the records that did not change).
+ * <p>
+ * Encoding of a record: the first name, the last name, the date of birth (epoch day),
+ * the medications and the allergies, where
+ * <ul>
+ *     <li>a string is its length in bytes then its UTF-8 bytes (-1 for <code>null</code>),</li>
+ *     <li>a set is its size then its elements, in their iteration order (-1 for <code>null</code>),</li>
+ *     <li>a date is its epoch day ({@link Long#MIN_VALUE} for <code>null</code>).</li>
+ * </ul>
+ * The records are written in the order of the key index, so the record at a position
+ * ends where the record at the next position starts (the encoded records are limited to 2 GB).
+ * The size of each record is computed before it is written (see {@link Encoding}):
+ * the storage is allocated once, and the records are encoded straight into it.
+ * <p>
+ * Immutable: a change writes a new index, where the records that did not change are copied as encoded
+ * (medical records only change on reload).
+ *
+ * @see OffHeapMedicalRecordIndex
+ * @see DiskMedicalRecordIndex
+ */
+public abstract class EncodedMedicalRecordIndex extends MedicalRecordIndex {
+    private static final int NULL_LENGTH = -1;
+
+    private static final long NULL_DATE = Long.MIN_VALUE;
+
+    /**
+     * The key index of encoded records.
+     *
+     * @param hashes           the hash codes of the full names of the records, sorted
+     * @param offsets          key: the position of a hash code in <code>hashes</code>, value: the offset of its record
+     * @param medicalHistories key: the position of a hash code in <code>hashes</code>, value: the medical history of its record
+     * @param size             the number of bytes of the encoded records
+     */
+    protected record Layout(int[] hashes, int[] offsets, MedicalHistoryDTO[] medicalHistories, int size) {}
+
+    private final int[] hashes;
+    private final int[] offsets;
+    private final MedicalHistoryDTO[] medicalHistories;
+    private final int encodedSize;
+
+    protected EncodedMedicalRecordIndex(Layout layout) {
+        this.hashes           = layout.hashes();
+        this.offsets          = layout.offsets();
+        this.medicalHistories = layout.medicalHistories();
+        this.encodedSize      = layout.size();
+    }
+
+    /**
+     * Where the records of a new index are written, in the order of its key index.
+     */
+    protected interface Output {
+        /**
+         * @param length the number of bytes of the next record
+         * @return a buffer with at least this number of bytes remaining, where the record is written
+         */
+        ByteBuffer next(int length) throws IOException;
+    }
+
+    /**
+     * The records of a new index, sorted by the hash code of their full name, and their layout:
+     * each record is either a new one, encoded when written,
+     * or a record of the index the new one is derived from, copied as encoded (without decoding it).
+     */
+    protected static final class Encoding {
+        private final Layout layout;
+
+        /**
+         * Key: a position in the key index, Value: the new record, or <code>null</code> for a copied record.
+         */
+        private final MedicalRecord[] records;
+
+        /**
+         * Key: a position in the key index, Value: the offset of the copied record in the source.
+         */
+        private final int[] sourceOffsets;
+
+        private final EncodedMedicalRecordIndex source;
+
+        private Encoding(Layout layout, MedicalRecord[] records, int[] sourceOffsets, EncodedMedicalRecordIndex source) {
+            this.layout        = layout;
+            this.records       = records;
+            this.sourceOffsets = sourceOffsets;
+            this.source        = source;
+        }
+
+        /**
+         * @param medicalRecords the medical records (duplicates are dropped)
+         * @return the encoding of these new records
+         * @throws IllegalArgumentException if the encoded records exceed 2 GB
+         */
+        public static Encoding of(Collection<MedicalRecord> medicalRecords) {
+            return merge(null, new int[0], sortByHash(new HashSet<>(medicalRecords)));
+        }
+
+        /**
+         * @param source the index the new one is derived from
+         * @param diff   the medical record changes
+         * @return the encoding of the records of the source that did not change (copied), and of the new records
+         * @throws IllegalArgumentException if the encoded records exceed 2 GB
+         */
+        static Encoding of(EncodedMedicalRecordIndex source, DatasetDiff diff) {
+            // Only the candidates of the changed full names are decoded
+            boolean[] replaced = new boolean[source.size()];
+            Set<MedicalRecord> added = new LinkedHashSet<>();
+            for (Map.Entry<FullName, List<MedicalRecord>> entry : diff.medicalRecords().entrySet()) {
+                FullName fullName = entry.getKey();
+                int hash = fullName.hashCode();
+                for (int i = source.firstIndexOf(hash); i < source.hashes.length && source.hashes[i] == hash; i++) {
+                    if (fullName.equals(FullName.of(source.decode(i)))) {
+                        replaced[i] = true;
+                    }
+                }
+                added.addAll(entry.getValue());
+            }
+
+            int kept = 0;
+            int[] keptPositions = new int[source.size()];
+            for (int i = 0; i < replaced.length; i++) {
+                if (!replaced[i]) {
+                    keptPositions[kept++] = i;
+                }
+            }
+            return merge(source, Arrays.copyOf(keptPositions, kept), sortByHash(added));
+        }
+
+        /**
+         * @return the number of bytes of the encoded records
+         */
+        public int size() {
+            return layout.size();
+        }
+
+        /**
+         * Write the records, in order.
+         *
+         * @param output where to write them
+         * @return the key index of the written records
+         */
+        public Layout writeTo(Output output) throws IOException {
+            CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+                    .onMalformedInput(CodingErrorAction.REPLACE)
+                    .onUnmappableCharacter(CodingErrorAction.REPLACE);
+            int[] offsets = layout.offsets();
+            for (int i = 0; i < offsets.length; i++) {
+                int length = (i + 1 < offsets.length ? offsets[i + 1] : layout.size()) - offsets[i];
+                ByteBuffer buffer = output.next(length);
+                int end = buffer.position() + length;
+                if (records[i] == null) {
+                    ByteBuffer encoded = source.read(sourceOffsets[i], length);
+                    buffer.put(encoded.limit(encoded.position() + length));
+                } else {
+                    write(records[i], buffer, encoder);
+                }
+                if (buffer.position() != end) {
+                    throw new IllegalStateException("Medical record " + i + " not encoded in " + length + " bytes");
+                }
+            }
+            return layout;
+        }
+
+        /**
+         * @return the records, sorted by the hash code of their full name
+         */
+        private static MedicalRecord[] sortByHash(Set<MedicalRecord> medicalRecords) {
+            MedicalRecord[] records = medicalRecords.toArray(new MedicalRecord[0]);
+
+            // Sort the records by the hash code of their full name (high bits), then by position (low bits)
+            long[] keys = new long[records.length];
+            for (int i = 0; i < records.length; i++) {
+                keys[i] = (long) FullName.of(records[i]).hashCode() << 32 | i;
+            }
+            Arrays.sort(keys);
+
+            MedicalRecord[] sorted = new MedicalRecord[records.length];
+            for (int i = 0; i < keys.length; i++) {
+                sorted[i] = records[(int) keys[i]];
+            }
+            return sorted;
+        }
+
+        /**
+         * Merge the copied records (already sorted) and the new ones, by hash code, and compute their offsets.
+         *
+         * @param source        the index of the copied records, <code>null</code> if none
+         * @param keptPositions the positions of the copied records in the source, in order
+         * @param added         the new records, sorted by hash code
+         */
+        private static Encoding merge(EncodedMedicalRecordIndex source, int[] keptPositions, MedicalRecord[] added) {
+            int size = keptPositions.length + added.length;
+            int[] hashes = new int[size];
+            int[] offsets = new int[size];
+            MedicalHistoryDTO[] medicalHistories = new MedicalHistoryDTO[size];
+            MedicalRecord[] records = new MedicalRecord[size];
+            int[] sourceOffsets = new int[size];
+            MedicalHistoryMapper.Builder medicalHistoryBuilder = new MedicalHistoryMapper.Builder();
+
+            long offset = 0;
+            int k = 0;
+            int a = 0;
+            for (int i = 0; i < size; i++) {
+                int keptHash = k < keptPositions.length ? source.hashes[keptPositions[k]] : Integer.MAX_VALUE;
+                int addedHash = a < added.length ? FullName.of(added[a]).hashCode() : Integer.MAX_VALUE;
+                long length;
+                if (a == added.length || (k < keptPositions.length && keptHash <= addedHash)) {
+                    int position = keptPositions[k++];
+                    hashes[i]           = keptHash;
+                    sourceOffsets[i]    = source.offsets[position];
+                    medicalHistories[i] = source.medicalHistories[position];
+                    length              = source.length(position);
+                } else {
+                    records[i]          = added[a++];
+                    hashes[i]           = addedHash;
+                    medicalHistories[i] = medicalHistoryBuilder.build(records[i]);
+                    length              = encodedLength(records[i]);
+                }
+                offsets[i] = (int) offset;
+                offset += length;
+                if (offset > Integer.MAX_VALUE) {
+                    throw new IllegalArgumentException("The encoded medical records exceed 2 GB");
+                }
+            }
+            return new Encoding(new Layout(hashes, offsets, medicalHistories, (int) offset), records, sourceOffsets, source);
+        }
+    }
+
+    /**
+     * Read the bytes of an encoded record.
+     *
+     * @param offset the offset of the record
+     * @param length its number of bytes
+     * @return a buffer positioned at the start of the record
+     */
+    protected abstract ByteBuffer read(int offset, int length);
+
+    /**
+     * @param encoding the records
+     * @return a new index of the same kind with these records
+     */
+    protected abstract MedicalRecordIndex rebuild(Encoding encoding);
+
+    /**
+     * Return a new index with the medical record changes of a diff.
+     * <p>
+     * Only the records with the changed full names are decoded (to find the ones replaced), and only the new
+     * records are encoded: the other ones are copied as encoded from this index.
+     *
+     * @param diff the changes
+     * @return this index if no medical record changed, otherwise a new index
+     */
+    @Override
+    public MedicalRecordIndex apply(DatasetDiff diff) {
+        if (diff.medicalRecords().isEmpty()) {
+            return this;
+        }
+        return rebuild(Encoding.of(this, diff));
+    }
+
+    /**
+     * @return all the medical records, decoded (unmodifiable)
+     */
+    @Override
+    public Set<MedicalRecord> getAll() {
+        Set<MedicalRecord> medicalRecords = new HashSet<>(offsets.length);
+        for (int i = 0; i < offsets.length; i++) {
+            medicalRecords.add(decode(i));
+        }
+        return Collections.unmodifiableSet(medicalRecords);
+    }
+
+    /**
+     * @param fullName a full name
+     * @return the medical records with this full name, decoded
+     */
+    @Override
+    public List<MedicalRecord> getByFullName(FullName fullName) {
+        int hash = fullName.hashCode();
+        List<MedicalRecord> medicalRecords = new ArrayList<>(1);
+        // Several full names can have the same hash code: decode the candidates to compare them
+        for (int i = firstIndexOf(hash); i < hashes.length && hashes[i] == hash; i++) {
+            MedicalRecord medicalRecord = decode(i);
+            if (fullName.equals(FullName.of(medicalRecord))) {
+                medicalRecords.add(medicalRecord);
+            }
+        }
+        return medicalRecords;
+    }
+
+    @Override
+    public int size() {
+        return offsets.length;
+    }
+
+    /**
+     * @return the number of bytes of the encoded records
+     */
+    public int encodedSize() {
+        return encodedSize;
+    }
+
+    /**
+     * @param i a position in the key index
+     * @return its record, decoded, with its medical history
+     */
+    private MedicalRecord decode(int i) {
+        MedicalRecord medicalRecord = read(read(offsets[i], length(i)));
+        medicalRecord.setMedicalHistory(medicalHistories[i]);
+        return medicalRecord;
+    }
+
+    /**
+     * @param i a position in the key index
+     * @return the number of bytes of its record
+     */
+    private int length(int i) {
+        return (i + 1 < offsets.length ? offsets[i + 1] : encodedSize) - offsets[i];
+    }
+
+    /**
+     * @return the position of the first hash code equal to this one, or of the first greater one
+     */
+    private int firstIndexOf(int hash) {
+        int low = 0;
+        int high = hashes.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (hashes[middle] < hash) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * @return the number of bytes written by {@link #write(MedicalRecord, ByteBuffer, CharsetEncoder)}
+     */
+    private static long encodedLength(MedicalRecord medicalRecord) {
+        return encodedLength(medicalRecord.getFirstName())
+                + encodedLength(medicalRecord.getLastName())
+                + Long.BYTES
+                + encodedLength(medicalRecord.getMedications())
+                + encodedLength(medicalRecord.getAllergies());
+    }
+
+    private static long encodedLength(Set<String> values) {
+        long length = Integer.BYTES;
+        if (values != null) {
+            for (String value : values) {
+                length += encodedLength(value);
+            }
+        }
+        return length;
+    }
+
+    /**
+     * @return the length prefix and the number of UTF-8 bytes of the value
+     * (an unpaired surrogate is replaced with a single byte, as the encoder does)
+     */
+    private static long encodedLength(String value) {
+        long length = Integer.BYTES;
+        if (value == null) {
+            return length;
+        }
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                length += 1;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < value.length() && Character.isLowSurrogate(value.charAt(i + 1))) {
+                length += 4;
+                i++;
+            } else if (Character.isSurrogate(c)) {
+                length += 1;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+
+    private static void write(MedicalRecord medicalRecord, ByteBuffer output, CharsetEncoder encoder) {
+        writeString(medicalRecord.getFirstName(), output, encoder);
+        writeString(medicalRecord.getLastName(), output, encoder);
+        LocalDate dateOfBirth = medicalRecord.getDateOfBirth();
+        output.putLong(dateOfBirth == null ? NULL_DATE : dateOfBirth.toEpochDay());
+        writeStrings(medicalRecord.getMedications(), output, encoder);
+        writeStrings(medicalRecord.getAllergies(), output, encoder);
+    }
+
+    /**
+     * Encode the string straight into the buffer, then write its length before it.
+     */
+    private static void writeString(String value, ByteBuffer output, CharsetEncoder encoder) {
+        if (value == null) {
+            output.putInt(NULL_LENGTH);
+            return;
+        }
+        int lengthPosition = output.position();
+        output.putInt(0);
+        encoder.reset();
+        CoderResult result = encoder.encode(CharBuffer.wrap(value), output, true);
+        if (!result.isUnderflow() || !encoder.flush(output).isUnderflow()) {
+            throw new IllegalStateException("Medical record string not encoded: " + result);
+        }
+        output.putInt(lengthPosition, output.position() - lengthPosition - Integer.BYTES);
+    }
+
+    private static void writeStrings(Set<String> values, ByteBuffer output, CharsetEncoder encoder) {
+        if (values == null) {
+            output.putInt(NULL_LENGTH);
+            return;
+        }
+        output.putInt(values.size());
+        for (String value : values) {
+            writeString(value, output, encoder);
+        }
+    }
+
+    private static MedicalRecord read(ByteBuffer input) {
+        String firstName = readString(input);
+        String lastName = readString(input);
+        long epochDay = input.getLong();
+        return new MedicalRecord(
+                firstName,
+                lastName,
+                epochDay == NULL_DATE ? null : LocalDate.ofEpochDay(epochDay),
+                readStrings(input),
+                readStrings(input)
+        );
+    }
+
+    private static String readString(ByteBuffer input) {
+        int length = input.getInt();
+        if (length == NULL_LENGTH) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        input.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return the set, in the order it was written (unmodifiable)
+     */
+    private static Set<String> readStrings(ByteBuffer input) {
+        int size = input.getInt();
+        if (size == NULL_LENGTH) {
+            return null;
+        }
+        if (size == 0) {
+            return Collections.emptySet();
+        }
+        Set<String> values = new LinkedHashSet<>(size * 2);
+        for (int i = 0; i < size; i++) {
+            values.add(readString(input));
+        }
+        return Collections.unmodifiableSet(values);
+    }
+}
@@ -0,0 +1,242 @@
+package com.ericbouchut.springboot.safetynet.repository;
+
+import com.ericbouchut.springboot.safetynet.model.FireStation;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * The fire stations of a {@link Dataset},
+ * indexed by station number and by address, and sorted in the {@link #ORDER} (to read them page by page).
+ * <p>
+ * Built once. The indexes are immutable,
+ * so the getters return them as is (no copy per request).
+ * Immutable maps reject null keys, hence the null checks in the getters.
+ * A fire station without address or without number is kept in {@link #getAll()} and the pages,
+ * but not in the indexes by number and by address (it serves no address, or has no number to find it by).
+ */
+public class FireStationIndex {
+    /**
+     * The order of the pages of fire stations: by address, then station number
+     * (a <code>null</code> address is sorted as an empty one, a <code>null</code> number first).
+     */
+    public static final Comparator<FireStation> ORDER = Comparator
+            .comparing((FireStation fireStation) -> Objects.toString(fireStation.getAddress(), ""))
+            .thenComparing(FireStation::getNumber, Comparator.nullsFirst(Comparator.naturalOrder()));
+
+    private final Set<FireStation> fireStations;
+
+    /**
+     * Key: a station number, Value: the fire stations sharing this number.
+     */
+    private final Map<Integer, List<FireStation>> fireStationsByNumber;
+
+    /**
+     * Key: a station number, Value: the addresses of the fire stations sharing this number.
+     */
+    private final Map<Integer, Set<String>> addressesByNumber;
+
+    /**
+     * Reverse index. Key: an address, Value: the numbers of the stations serving this address.
+     */
+    private final Map<String, Set<Integer>> numbersByAddress;
+
+    private final SortedIndex<FireStation> sortedFireStations;
+
+    /**
+     * Identifies this version of the index, see {@link Dataset#generation(Dataset.EntityType)}.
+     */
+    private final long generation = Dataset.nextGeneration();
+
+    private FireStationIndex(
+            Set<FireStation> fireStations,
+            Map<Integer, List<FireStation>> fireStationsByNumber,
+            Map<Integer, Set<String>> addressesByNumber,
+            Map<String, Set<Integer>> numbersByAddress,
+            SortedIndex<FireStation> sortedFireStations
+    ) {
+        this.fireStations         = fireStations;
+        this.fireStationsByNumber = fireStationsByNumber;
+        this.addressesByNumber    = addressesByNumber;
+        this.numbersByAddress     = numbersByAddress;
+        this.sortedFireStations   = sortedFireStations;
+    }
+
+    public FireStationIndex(Collection<FireStation> fireStations) {
+        this.fireStations = Set.copyOf(fireStations);
+        List<FireStation> indexed = indexed(this.fireStations);
+
+        this.fireStationsByNumber = Map.copyOf(
+                indexed.stream()
+                        .collect(Collectors.groupingBy(
+                                FireStation::getNumber,
+                                Collectors.toUnmodifiableList()
+                        ))
+        );
+        this.addressesByNumber = Map.copyOf(
+                indexed.stream()
+                        .collect(Collectors.groupingBy(
+                                FireStation::getNumber,
+                                Collectors.mapping(FireStation::getAddress, Collectors.toUnmodifiableSet())
+                        ))
+        );
+        this.numbersByAddress = Map.copyOf(
+                indexed.stream()
+                        .collect(Collectors.groupingBy(
+                                FireStation::getAddress,
+                                Collectors.mapping(FireStation::getNumber, Collectors.toUnmodifiableSet())
+                        ))
+        );
+        this.sortedFireStations = SortedIndex.of(this.fireStations, ORDER);
+    }
+
+    /**
+     * Return a new index with the fire station changes of a diff.
+     * <p>
+     * Only the buckets of the changed station numbers and addresses are rebuilt,
+     * the other ones are shared with this index.
+     *
+     * @param diff the changes
+     * @return this index if no fire station changed, otherwise a new index
+     */
+    public FireStationIndex apply(DatasetDiff diff) {
+        Set<FireStation> inserted = diff.insertedFireStations();
+        Set<FireStation> deleted  = diff.deletedFireStations();
+        if (inserted.isEmpty() && deleted.isEmpty()) {
+            return this;
+        }
+
+        Set<FireStation> newFireStations = new HashSet<>(fireStations);
+        newFireStations.removeAll(deleted);
+        newFireStations.addAll(inserted);
+
+        List<FireStation> indexedInserted = indexed(inserted);
+        List<FireStation> indexedDeleted  = indexed(deleted);
+        return new FireStationIndex(
+                Set.copyOf(newFireStations),
+                update(fireStationsByNumber, indexedInserted, indexedDeleted, FireStation::getNumber, Function.identity(), List::copyOf),
+                update(addressesByNumber, indexedInserted, indexedDeleted, FireStation::getNumber, FireStation::getAddress, Set::copyOf),
+                update(numbersByAddress, indexedInserted, indexedDeleted, FireStation::getAddress, FireStation::getNumber, Set::copyOf),
+                sortedFireStations.with(inserted, deleted)
+        );
+    }
+
+    /**
+     * @param fireStations fire stations
+     * @return the ones with an address and a number (the keys of the indexes by number and by address)
+     */
+    private static List<FireStation> indexed(Collection<FireStation> fireStations) {
+        return fireStations.stream()
+                .filter(fireStation -> fireStation.getAddress() != null && fireStation.getNumber() != null)
+                .toList();
+    }
+
+    /**
+     * Copy an index, and rebuild only the buckets of the keys of the inserted or deleted fire stations.
+     *
+     * @param index          the index to copy
+     * @param inserted       the fire stations to add
+     * @param deleted        the fire stations to remove
+     * @param keyExtractor   the key of a fire station in this index
+     * @param valueExtractor the value of a fire station in this index
+     * @param bucketFactory  create an immutable bucket
+     * @return a new immutable index
+     */
+    private static <K, V, C extends Collection<V>> Map<K, C> update(
+            Map<K, C> index,
+            Collection<FireStation> inserted,
+            Collection<FireStation> deleted,
+            Function<FireStation, K> keyExtractor,
+            Function<FireStation, V> valueExtractor,
+            Function<Collection<V>, C> bucketFactory
+    ) {
+        Map<K, Collection<V>> changedBuckets = new HashMap<>();
+        Function<K, Collection<V>> copyBucket = key ->
+                index.containsKey(key) ? new ArrayList<>(index.get(key)) : new ArrayList<>();
+
+        for (FireStation fireStation : deleted) {
+            changedBuckets.computeIfAbsent(keyExtractor.apply(fireStation), copyBucket)
+                    .remove(valueExtractor.apply(fireStation));
+        }
+        for (FireStation fireStation : inserted) {
+            Collection<V> bucket = changedBuckets.computeIfAbsent(keyExtractor.apply(fireStation), copyBucket);
+            V value = valueExtractor.apply(fireStation);
+            if (!bucket.contains(value)) {
+                bucket.add(value);
+            }
+        }
+
+        Map<K, C> newIndex = new HashMap<>(index);
+        changedBuckets.forEach((key, bucket) -> {
+            if (bucket.isEmpty()) {
+                newIndex.remove(key);
+            } else {
+                newIndex.put(key, bucketFactory.apply(bucket));
+            }
+        });
+        return Map.copyOf(newIndex);
+    }
+
+    /**
+     * @return all the fire stations (unmodifiable)
+     */
+    public Set<FireStation> getAll() {
+        return fireStations;
+    }
+
+    /**
+     * @return the station numbers (unmodifiable)
+     */
+    public Set<Integer> getNumbers() {
+        return fireStationsByNumber.keySet();
+    }
+
+    /**
+     * @param after the fire station after which the page starts (in the {@link #ORDER}),
+     *              <code>null</code> to start with the first fire station
+     * @param limit the maximum number of fire stations
+     * @return a page of fire stations (unmodifiable)
+     * @see SortedIndex#after(Object, int)
+     */
+    public List<FireStation> getPage(FireStation after, int limit) {
+        return sortedFireStations.after(after, limit);
+    }
+
+    public List<FireStation> getByNumber(Integer fireStationNumber) {
+        if (fireStationNumber == null) {
+            return Collections.emptyList();
+        }
+        return fireStationsByNumber.getOrDefault(fireStationNumber, Collections.emptyList());
+    }
+
+    public Set<String> getAddressesByNumber(Integer fireStationNumber) {
+        if (fireStationNumber == null) {
+            return Collections.emptySet();
+        }
+        return addressesByNumber.getOrDefault(fireStationNumber, Collections.emptySet());
+    }
+
+    public Set<Integer> getNumbersByAddress(String address) {
+        if (address == null) {
+            return Collections.emptySet();
+        }
+        return numbersByAddress.getOrDefault(address, Collections.emptySet());
+    }
+
+    /**
+     * @return the generation of this index: a new index (for instance, after a change) has a new generation
+     */
+    public long generation() {
+        return generation;
+    }
+}
@@ -1,20 +1,21 @@
 package com.ericbouchut.springboot.safetynet.repository;
 
-import com.ericbouchut.springboot.safetynet.model.Data;
 import com.ericbouchut.springboot.safetynet.model.FireStation;
 import org.springframework.stereotype.Component;
 
 import java.util.List;
 import java.util.Set;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
 
 @Component
 public class FireStationRepository {
-    private final Data data;
+    /**
+     * Holds the current fire stations and their indexes (by station number, by address).
+     * The indexes are immutable, so the finders return them as is (no copy per request).
+     */
+    private final DataStore dataStore;
 
-    public FireStationRepository(Data data) {
-        this.data = data;
+    public FireStationRepository(DataStore dataStore) {
+        this.dataStore = dataStore;
     }
 
     // ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
@@ -25,30 +26,57 @@ public class FireStationRepository {
      * @return all the fire stations (no duplicates)
      */
     public Set<FireStation> getAllFireStations() {
-        return data.getFireStations();
+        return fireStations().getAll();
+    }
+
+    /**
+     * Return a page of the fire stations, in the {@link FireStationIndex#ORDER}.
+     *
+     * @param after the fire station after which the page starts, <code>null</code> for the first page
+     * @param limit the maximum number of fire stations
+     * @return the fire stations of the page (unmodifiable)
+     */
+    public List<FireStation> getFireStationsPage(FireStation after, int limit) {
+        return fireStations().getPage(after, limit);
     }
 
     /**
      * Return the fire stations that have the same station {@link FireStation#number}.
      * @param fireStationNumber the name of a fire station
-     * @return the fire stations with a given number
+     * @return the fire stations with a given number (unmodifiable)
      */
     public List<FireStation> getFireStationsByNumber(Integer fireStationNumber) {
-        return data.getFireStations()
-                .stream()
-                .filter(s -> s.getNumber().equals(fireStationNumber))
-                .toList();
+        return fireStations().getByNumber(fireStationNumber);
     }
 
     /**
      * @param fireStationNumber a (station) number shared by one or more fire stations
-     * @return the addresses of fire stations that share the same number (no duplicate)
+     * @return the addresses of fire stations that share the same number (no duplicate, unmodifiable)
      */
     public Set<String> getFireStationAddressesByNumber(Integer fireStationNumber) {
-        return data.getFireStations()
-                .stream()
-                .filter(fireStation -> fireStation.getNumber().equals(fireStationNumber))
-                .map(FireStation::getAddress)
-                .collect(Collectors.toSet());
+        return fireStations().getAddressesByNumber(fireStationNumber);
+    }
+
+    /**
+     * IMPORTANT: An address can be served by several fire stations.
+     *
+     * @param address an address
+     * @return the numbers of the fire stations serving this address (no duplicate, unmodifiable)
+     */
+    public Set<Integer> getFireStationNumbersByAddress(String address) {
+        return fireStations().getNumbersByAddress(address);
+    }
+
+    /**
+     * @param fireStationNumber a (station) number shared by one or more fire stations
+     * @return the census of the residents served by the fire stations with this number
+     * (empty for an unknown number)
+     */
+    public StationCensusIndex.Census getCensusByNumber(Integer fireStationNumber) {
+        return dataStore.current().census().getByNumber(fireStationNumber);
+    }
+
+    private FireStationIndex fireStations() {
+        return dataStore.current().fireStations();
     }
 }
@@ -0,0 +1,184 @@
+package com.ericbouchut.springboot.safetynet.repository;
+
+import com.ericbouchut.springboot.safetynet.model.FullName;
+import com.ericbouchut.springboot.safetynet.model.MedicalRecord;
+import com.ericbouchut.springboot.safetynet.model.Person;
+
+import java.time.LocalDate;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * The households of a {@link Dataset}: the persons living at the same address, in the same city and zip code,
+ * with the date of birth of their medical record.
+ * <p>
+ * A household is built once per version of the data, so a child alert is a single lookup:
+ * the members are not searched, nor joined with their medical records, for each request.
+ * <p>
+ * Immutable: when persons or medical records change,
+ * only the households of the addresses they affect are rebuilt (see {@link #update(Collection, Dataset)}),
+ * the other ones are shared with the previous index.
+ */
+public class HouseholdIndex {
+
+    private static final Comparator<Person> BY_NAME =
+            Comparator.comparing(Person::getLastName).thenComparing(Person::getFirstName);
+
+    /**
+     * The persons living at the same address, in the same city and zip code.
+     *
+     * @param address      the address
+     * @param city         the city
+     * @param zip          the zip code
+     * @param members      the members of the household, sorted by last name then first name
+     * @param datesOfBirth the date of birth of each member (same position),
+     *                     <code>null</code> for a member without medical record
+     */
+    public record Household(
+            String address,
+            String city,
+            String zip,
+            List<Person> members,
+            List<LocalDate> datesOfBirth
+    ) {
+        /**
+         * @param index the position of a member
+         * @return the other members of the household:
+         * a view of the members without this one (the members are not copied)
+         */
+        public List<Person> membersOtherThan(int index) {
+            Objects.checkIndex(index, members.size());
+            return new AbstractList<>() {
+                @Override
+                public Person get(int i) {
+                    return members.get(i < index ? i : i + 1);
+                }
+
+                @Override
+                public int size() {
+                    return members.size() - 1;
+                }
+            };
+        }
+
+        private boolean isLocatedIn(String city, String zip) {
+            return (city == null || city.equals(this.city)) && (zip == null || zip.equals(this.zip));
+        }
+    }
+
+    /**
+     * Key: an address, Value: the households at this address (one per city and zip code).
+     */
+    private final Map<String, List<Household>> householdsByAddress;
+
+    private HouseholdIndex(Map<String, List<Household>> householdsByAddress) {
+        this.householdsByAddress = householdsByAddress;
+    }
+
+    /**
+     * Build the households of all the persons.
+     *
+     * @param persons        the persons
+     * @param medicalRecords the medical records
+     * @return a new index
+     */
+    public static HouseholdIndex of(PersonIndex persons, MedicalRecordIndex medicalRecords) {
+        Map<String, List<Household>> householdsByAddress = new HashMap<>();
+        for (Person person : persons.getAll()) {
+            if (person.getAddress() == null) {
+                continue;
+            }
+            householdsByAddress.computeIfAbsent(
+                    person.getAddress(),
+                    address -> households(address, persons, medicalRecords)
+            );
+        }
+        return new HouseholdIndex(Map.copyOf(householdsByAddress));
+    }
+
+    /**
+     * Rebuild the households of some addresses from a new version of the data.
+     *
+     * @param addresses the addresses affected by a change
+     * @param dataset   the data after the change
+     * @return a new index, or this index if there is no address to rebuild
+     */
+    public HouseholdIndex update(Collection<String> addresses, Dataset dataset) {
+        if (addresses.isEmpty()) {
+            return this;
+        }
+        Map<String, List<Household>> newHouseholdsByAddress = new HashMap<>(householdsByAddress);
+        for (String address : new HashSet<>(addresses)) {
+            if (address == null) {
+                continue;
+            }
+            List<Household> households = households(address, dataset.persons(), dataset.medicalRecords());
+            if (households.isEmpty()) {
+                newHouseholdsByAddress.remove(address);
+            } else {
+                newHouseholdsByAddress.put(address, households);
+            }
+        }
+        return new HouseholdIndex(Map.copyOf(newHouseholdsByAddress));
+    }
+
+    /**
+     * @param address the address
+     * @param city    the city, or <code>null</code> for any city
+     * @param zip     the zip code, or <code>null</code> for any zip code
+     * @return the households at this address, in this city and zip code
+     * (several ones if the same address exists in several cities)
+     */
+    public List<Household> get(String address, String city, String zip) {
+        if (address == null) {
+            return List.of();
+        }
+        List<Household> households = householdsByAddress.getOrDefault(address, List.of());
+        if (city == null && zip == null) {
+            return households;
+        }
+        return households.stream()
+                .filter(household -> household.isLocatedIn(city, zip))
+                .toList();
+    }
+
+    /**
+     * Group the persons living at an address by city and zip code.
+     * The date of birth of a member is the one of the first medical record with their full name.
+     */
+    private static List<Household> households(String address, PersonIndex persons, MedicalRecordIndex medicalRecords) {
+        Map<List<String>, List<Person>> membersByLocation = new LinkedHashMap<>();
+        persons.getByAddress(address).stream()
+                .sorted(BY_NAME)
+                .forEach(person -> membersByLocation
+                        .computeIfAbsent(Arrays.asList(person.getCity(), person.getZip()), location -> new ArrayList<>())
+                        .add(person));
+
+        List<Household> households = new ArrayList<>(membersByLocation.size());
+        membersByLocation.forEach((location, members) -> {
+            LocalDate[] datesOfBirth = new LocalDate[members.size()];
+            for (int i = 0; i < datesOfBirth.length; i++) {
+                List<MedicalRecord> memberRecords = medicalRecords.getByFullName(FullName.of(members.get(i)));
+                datesOfBirth[i] = memberRecords.isEmpty() ? null : memberRecords.get(0).getDateOfBirth();
+            }
+            households.add(new Household(
+                    address,
+                    location.get(0),
+                    location.get(1),
+                    List.copyOf(members),
+                    Collections.unmodifiableList(Arrays.asList(datesOfBirth))
+            ));
+        });
+        return List.copyOf(households);
+    }
+}
@@ -0,0 +1,126 @@
+package com.ericbouchut.springboot.safetynet.repository;
+
+import java.util.Arrays;
+
+/**
+ * An immutable array of <code>int</code> (a column of a {@link PersonTable}),
+ * that shares its structure with the column it was changed from.
+ * <p>
+ * The values are stored in chunks of {@value #CHUNK_SIZE}: a change copies the chunks it writes
+ * (once per {@link Editor}) and the array of the chunks, not the whole column.
+ */
+final class IntColumn {
+    private static final int CHUNK_BITS = 10;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+    private static final int MASK = CHUNK_SIZE - 1;
+
+    static final IntColumn EMPTY = new IntColumn(new int[0][], 0);
+
+    private final int[][] chunks;
+    private final int size;
+
+    private IntColumn(int[][] chunks, int size) {
+        this.chunks = chunks;
+        this.size   = size;
+    }
+
+    int get(int index) {
+        return chunks[index >>> CHUNK_BITS][index & MASK];
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * A scan of the column, chunk by chunk.
+     *
+     * @param value a value
+     * @return the indexes of this value, in order
+     */
+    int[] indexesOf(int value) {
+        int[] indexes = new int[16];
+        int count = 0;
+        for (int chunk = 0; chunk * CHUNK_SIZE < size; chunk++) {
+            int[] values = chunks[chunk];
+            int length = Math.min(CHUNK_SIZE, size - chunk * CHUNK_SIZE);
+            for (int i = 0; i < length; i++) {
+                if (values[i] == value) {
+                    if (count == indexes.length) {
+                        indexes = Arrays.copyOf(indexes, count * 2);
+                    }
+                    indexes[count++] = chunk * CHUNK_SIZE + i;
+                }
+            }
+        }
+        return Arrays.copyOf(indexes, count);
+    }
+
+    /**
+     * @return an editor of a copy of this column (this column is left unchanged)
+     */
+    Editor edit() {
+        return new Editor(this);
+    }
+
+    /**
+     * Changes a copy of a column, then builds it: not thread safe.
+     */
+    static final class Editor {
+        private int[][] chunks;
+
+        /**
+         * Key: a chunk, Value: <code>true</code> if it was copied by this editor (it can be written).
+         */
+        private boolean[] owned;
+
+        private int size;
+
+        private Editor(IntColumn column) {
+            this.chunks = column.chunks.clone();
+            this.owned  = new boolean[chunks.length];
+            this.size   = column.size;
+        }
+
+        int get(int index) {
+            return chunks[index >>> CHUNK_BITS][index & MASK];
+        }
+
+        void set(int index, int value) {
+            int chunk = index >>> CHUNK_BITS;
+            if (!owned[chunk]) {
+                chunks[chunk] = chunks[chunk].clone();
+                owned[chunk]  = true;
+            }
+            chunks[chunk][index & MASK] = value;
+        }
+
+        /**
+         * Append a value.
+         */
+        void add(int value) {
+            int chunk = size >>> CHUNK_BITS;
+            if (chunk == chunks.length) {
+                chunks = Arrays.copyOf(chunks, Math.max(4, chunks.length * 2));
+                owned  = Arrays.copyOf(owned, chunks.length);
+            }
+            if (chunks[chunk] == null) {
+                chunks[chunk] = new int[CHUNK_SIZE];
+                owned[chunk]  = true;
+            }
+            size++;
+            set(size - 1, value);
+        }
+
+        int size() {
+            return size;
+        }
+
+        /**
+         * @return the column, with the changes (this editor must no longer be used)
+         */
+        IntColumn build() {
+            return new IntColumn(chunks, size);
+        }
+    }
+}
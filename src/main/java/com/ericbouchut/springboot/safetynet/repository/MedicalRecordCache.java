@@ -0,0 +1,153 @@
+package com.ericbouchut.springboot.safetynet.repository;
+
+import com.ericbouchut.springboot.safetynet.model.FullName;
+import com.ericbouchut.springboot.safetynet.model.MedicalRecord;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.cache.CacheMeterBinder;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * The working set of the medical records stored on disk (see {@link DiskMedicalRecordIndex}):
+ * the decoded medical records of the full names read recently.
+ * <p>
+ * Shared by the successive versions of the index (an entry is keyed by the index and the full name):
+ * the entries of a replaced index are no longer read, and are evicted at the next pass.
+ * An entry not read recently is evicted beyond <code>app.medical-records.disk.cache-size</code> full names
+ * (see {@link ClockCache}): a hit takes no lock.
+ * <p>
+ * The statistics are published as the <code>cache.gets</code> (hit and miss), <code>cache.puts</code>,
+ * <code>cache.evictions</code>, <code>cache.size</code> and <code>cache.hit.ratio</code> metrics,
+ * with the tag <code>cache=medical-records</code>, and the time to read the medical records of a miss
+ * as the <code>safetynet.medical-records.miss</code> timer.
+ * <p>
+ * The cached medical records are shared by the requests: they must not be modified.
+ * Two requests that miss the same entry at the same time both read it.
+ */
+public class MedicalRecordCache {
+
+    /**
+     * @param indexId  the id of the index the medical records were read from
+     * @param fullName the full name of the medical records
+     */
+    private record Key(long indexId, FullName fullName) {}
+
+    private final int maxSize;
+
+    private final ClockCache<Key, List<MedicalRecord>> entries;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder puts = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    private final Timer missDuration;
+
+    /**
+     * @param maxSize       the maximum number of full names (<code>app.medical-records.disk.cache-size</code>),
+     *                      0 to disable the cache
+     * @param meterRegistry where to publish the statistics
+     */
+    public MedicalRecordCache(int maxSize, MeterRegistry meterRegistry) {
+        this.maxSize = maxSize;
+        this.entries = new ClockCache<>(maxSize, evictions::increment);
+
+        new MedicalRecordCacheMetrics(this).bindTo(meterRegistry);
+        this.missDuration = Timer.builder("safetynet.medical-records.miss")
+                .description("Time to read from disk the medical records of a full name missing from the cache")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Return the cached medical records of a full name, or read them and cache them.
+     *
+     * @param indexId  the id of the index
+     * @param fullName the full name
+     * @param loader   reads the medical records of this full name from the index, on a miss
+     * @return the medical records with this full name (unmodifiable)
+     */
+    public List<MedicalRecord> get(long indexId, FullName fullName, Supplier<List<MedicalRecord>> loader) {
+        Key key = new Key(indexId, fullName);
+        List<MedicalRecord> cached = entries.get(key);
+        if (cached != null) {
+            hits.increment();
+            return cached;
+        }
+        misses.increment();
+
+        long start = System.nanoTime();
+        List<MedicalRecord> medicalRecords = List.copyOf(loader.get());
+        missDuration.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+
+        if (maxSize > 0) {
+            entries.put(key, medicalRecords);
+            puts.increment();
+        }
+        return medicalRecords;
+    }
+
+    /**
+     * @return the number of full names in the cache
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * @return the ratio of the reads found in the cache (0 before the first read)
+     */
+    public double hitRatio() {
+        long hitCount = hits.sum();
+        long total = hitCount + misses.sum();
+        return total == 0 ? 0 : (double) hitCount / total;
+    }
+
+    /**
+     * Publishes the statistics of the cache.
+     */
+    private static final class MedicalRecordCacheMetrics extends CacheMeterBinder<MedicalRecordCache> {
+
+        private MedicalRecordCacheMetrics(MedicalRecordCache cache) {
+            super(cache, "medical-records", Tags.empty());
+        }
+
+        @Override
+        protected Long size() {
+            return (long) getCache().size();
+        }
+
+        @Override
+        protected long hitCount() {
+            return getCache().hits.sum();
+        }
+
+        @Override
+        protected Long missCount() {
+            return getCache().misses.sum();
+        }
+
+        @Override
+        protected Long evictionCount() {
+            return getCache().evictions.sum();
+        }
+
+        @Override
+        protected long putCount() {
+            return getCache().puts.sum();
+        }
+
+        @Override
+        protected void bindImplementationSpecificMetrics(MeterRegistry registry) {
+            Gauge.builder("cache.hit.ratio", getCache(), MedicalRecordCache::hitRatio)
+                    .tags(getTagsWithCacheName())
+                    .description("The ratio of the reads found in the cache")
+                    .register(registry);
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package com.ericbouchut.springboot.safetynet.repository;
+
+import com.ericbouchut.springboot.safetynet.mapper.MedicalHistoryMapper;
+import com.ericbouchut.springboot.safetynet.model.FullName;
+import com.ericbouchut.springboot.safetynet.model.MedicalRecord;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * The medical records of a {@link Dataset}, indexed by full name.
+ * <p>
+ * Built once. Medical records are read-only,
+ * so the index and its buckets are immutable.
+ * <p>
+ * The medical history of each medical record is built when it is indexed, and kept with it
+ * (see {@link MedicalHistoryMapper.Builder}).
+ * <p>
+ * This index holds the <code>MedicalRecord</code>s on the heap.
+ * See {@link OffHeapMedicalRecordIndex} and {@link DiskMedicalRecordIndex} to store them elsewhere ({@link Storage}).
+ */
+public class MedicalRecordIndex {
+    /**
+     * Where the medical records are stored (<code>app.medical-records.storage</code>).
+     */
+    public enum Storage {
+        /**
+         * <code>MedicalRecord</code> objects on the heap: read without decoding.
+         */
+        HEAP,
+        /**
+         * Encoded in a direct buffer outside the heap (see {@link OffHeapMedicalRecordIndex}):
+         * less heap to trace and copy for the garbage collector, but decoded on each read.
+         */
+        OFF_HEAP,
+        /**
+         * Encoded in a local file (see {@link DiskMedicalRecordIndex}), with the recently read ones in memory:
+         * the memory does not depend on the number of medical records, but a miss reads the file.
+         */
+        DISK
+    }
+
+    /**
+     * Builds the medical record index of a new dataset (see {@link MedicalRecordStorage}).
+     */
+    @FunctionalInterface
+    public interface Factory {
+        MedicalRecordIndex of(Collection<MedicalRecord> medicalRecords);
+    }
+
+    private final Set<MedicalRecord> medicalRecords;
+
+    /**
+     * Key: a full name, Value: the medical records with this full name.
+     * <br/>
+     * The value is a list (bucket), because namesakes have distinct medical records
+     * with the same full name.
+     */
+    private final Map<FullName, List<MedicalRecord>> medicalRecordsByFullName;
+
+    /**
+     * Identifies this version of the index, see {@link Dataset#generation(Dataset.EntityType)}.
+     */
+    private final long generation = Dataset.nextGeneration();
+
+    private MedicalRecordIndex(
+            Set<MedicalRecord> medicalRecords,
+            Map<FullName, List<MedicalRecord>> medicalRecordsByFullName
+    ) {
+        this.medicalRecords           = medicalRecords;
+        this.medicalRecordsByFullName = medicalRecordsByFullName;
+    }
+
+    /**
+     * An empty index, for the subclasses that store the medical records elsewhere.
+     */
+    protected MedicalRecordIndex() {
+        this(Set.of(), Map.of());
+    }
+
+    public MedicalRecordIndex(Collection<MedicalRecord> medicalRecords) {
+        this.medicalRecords = Set.copyOf(medicalRecords);
+        buildMedicalHistories(this.medicalRecords);
+
+        this.medicalRecordsByFullName = Map.copyOf(
+                this.medicalRecords.stream()
+                        .collect(Collectors.groupingBy(
+                                FullName::of,
+                                Collectors.toUnmodifiableList()
+                        ))
+        );
+    }
+
+    /**
+     * Return a new index with the medical record changes of a diff.
+     * The buckets of the unchanged full names are shared with this index.
+     *
+     * @param diff the changes
+     * @return this index if no medical record changed, otherwise a new index
+     */
+    public MedicalRecordIndex apply(DatasetDiff diff) {
+        if (diff.medicalRecords().isEmpty()) {
+            return this;
+        }
+
+        Set<MedicalRecord> newMedicalRecords = new HashSet<>(medicalRecords);
+        Map<FullName, List<MedicalRecord>> newIndex = new HashMap<>(medicalRecordsByFullName);
+
+        MedicalHistoryMapper.Builder medicalHistories = new MedicalHistoryMapper.Builder();
+        diff.medicalRecords().forEach((fullName, records) -> {
+            records.forEach(record -> record.setMedicalHistory(medicalHistories.build(record)));
+            getByFullName(fullName).forEach(newMedicalRecords::remove);
+            newMedicalRecords.addAll(records);
+            if (records.isEmpty()) {
+                newIndex.remove(fullName);
+            } else {
+                newIndex.put(fullName, List.copyOf(records));
+            }
+        });
+        return new MedicalRecordIndex(Set.copyOf(newMedicalRecords), Map.copyOf(newIndex));
+    }
+
+    /**
+     * Build the medical history of each medical record, and keep it with the record.
+     */
+    private static void buildMedicalHistories(Collection<MedicalRecord> medicalRecords) {
+        MedicalHistoryMapper.Builder medicalHistories = new MedicalHistoryMapper.Builder();
+        for (MedicalRecord medicalRecord : medicalRecords) {
+            medicalRecord.setMedicalHistory(medicalHistories.build(medicalRecord));
+        }
+    }
+
+    /**
+     * @return all the medical records (unmodifiable)
+     */
+    public Set<MedicalRecord> getAll() {
+        return medicalRecords;
+    }
+
+    public List<MedicalRecord> getByFullName(FullName fullName) {
+        return medicalRecordsByFullName.getOrDefault(fullName, Collections.emptyList());
+    }
+
+    /**
+     * @return the number of medical records
+     */
+    public int size() {
+        return medicalRecords.size();
+    }
+
+    /**
+     * @return the generation of this index: a new index (for instance, after a change) has a new generation
+     */
+    public long generation() {
+        return generation;
+    }
+}
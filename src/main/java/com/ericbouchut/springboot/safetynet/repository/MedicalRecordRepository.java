@@ -1,6 +1,6 @@
 package com.ericbouchut.springboot.safetynet.repository;
 
-import com.ericbouchut.springboot.safetynet.model.Data;
+import com.ericbouchut.springboot.safetynet.model.FullName;
 import com.ericbouchut.springboot.safetynet.model.MedicalRecord;
 import com.ericbouchut.springboot.safetynet.model.Person;
 import org.springframework.stereotype.Component;
@@ -13,10 +13,13 @@ import java.util.stream.Collectors;
 
 @Component
 public class MedicalRecordRepository {
-    private final Data data;
+    /**
+     * Holds the current medical records and their index by full name.
+     */
+    private final DataStore dataStore;
 
-    public MedicalRecordRepository(Data data) {
-        this.data = data;
+    public MedicalRecordRepository(DataStore dataStore) {
+        this.dataStore = dataStore;
     }
 
     // ~~~~~~~~~~~~~~~~~~~~~~~~~~
@@ -32,11 +35,7 @@ public class MedicalRecordRepository {
      * @return the medical records of personS with the same first and last name than the passed-in person
      */
     public List<MedicalRecord> getMedicalRecordsByPerson(Person person) {
-        return data.getMedicalRecords()
-                .stream()
-                .filter(m -> m.getLastName().equals(person.getLastName())
-                        && m.getFirstName().equals(person.getFirstName()))
-                .toList();
+        return getMedicalRecordsByFullName(FullName.of(person));
     }
 
     /**
@@ -49,25 +48,29 @@ public class MedicalRecordRepository {
      * @return the medical records of personS with the given first and last names
      */
     public List<MedicalRecord> getMedicalRecordsByFistNameAndLastName(String firstName, String lastName) {
-        return data.getMedicalRecords()
-                .stream()
-                .filter(m -> m.getLastName().equals(lastName)
-                        && m.getFirstName().equals(firstName))
-                .toList();
+        return getMedicalRecordsByFullName(new FullName(firstName, lastName));
     }
 
     /**
+     * Join each person with their medical records in a single pass over the persons
+     * (one key lookup per person).
+     *
      * @param persons list of people whose medical records we want to retrieve and associate.
      * @return a Map with (key, value) pairs, where the key is a <code>Person</code> and the value is this person's list of medical records.
      */
     public Map<Person, List<MedicalRecord>> getMedicalRecordsByPersons(Set<Person> persons) {
+        MedicalRecordIndex medicalRecords = dataStore.current().medicalRecords();
         return persons.stream()
                 .collect(
                     Collectors.toMap(
                         // Function.identity() <=> person -> person
-                        Function.identity(),            // Key:   person
-                        this::getMedicalRecordsByPerson // Value: List<MedicalRecord>
+                        Function.identity(),                                  // Key:   person
+                        person -> medicalRecords.getByFullName(FullName.of(person)) // Value: List<MedicalRecord>
                     )
                 );
     }
+
+    private List<MedicalRecord> getMedicalRecordsByFullName(FullName fullName) {
+        return dataStore.current().medicalRecords().getByFullName(fullName);
+    }
 }
@@ -0,0 +1,98 @@
+package com.ericbouchut.springboot.safetynet.repository;
+
+import com.ericbouchut.springboot.safetynet.model.MedicalRecord;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collection;
+
+/**
+ * Builds the medical record index of each new dataset, where <code>app.medical-records.storage</code> says:
+ * <ul>
+ *     <li><code>heap</code> (default): {@link MedicalRecordIndex},</li>
+ *     <li><code>off-heap</code>: {@link OffHeapMedicalRecordIndex},</li>
+ *     <li><code>disk</code>: {@link DiskMedicalRecordIndex}, a file in <code>app.medical-records.disk.directory</code>,
+ *     with the medical records of the <code>app.medical-records.disk.cache-size</code> full names
+ *     read most recently in memory (see {@link MedicalRecordCache}).</li>
+ * </ul>
+ * With the <code>disk</code> storage, the files left in the directory by a previous run
+ * (for instance, after a crash) are deleted at startup.
+ */
+@Component
+@Log4j2
+public class MedicalRecordStorage implements MedicalRecordIndex.Factory {
+
+    private final MedicalRecordIndex.Storage storage;
+
+    private final Path directory;
+
+    /**
+     * The working set of the <code>disk</code> storage (<code>null</code> for the other storages).
+     */
+    private final MedicalRecordCache cache;
+
+    /**
+     * @param storage       where to store the medical records (<code>app.medical-records.storage</code>)
+     * @param directory     where to create the files of the <code>disk</code> storage
+     *                      (<code>app.medical-records.disk.directory</code>)
+     * @param cacheSize     the number of full names whose medical records are kept in memory
+     *                      by the <code>disk</code> storage (<code>app.medical-records.disk.cache-size</code>)
+     * @param meterRegistry where to publish the statistics of the cache
+     */
+    public MedicalRecordStorage(
+            @Value("${app.medical-records.storage:heap}")
+            MedicalRecordIndex.Storage storage,
+            @Value("${app.medical-records.disk.directory:${app.data.directory:./data}}")
+            Path directory,
+            @Value("${app.medical-records.disk.cache-size:10000}")
+            int cacheSize,
+            MeterRegistry meterRegistry
+    ) {
+        this.storage   = storage;
+        this.directory = directory;
+        if (storage == MedicalRecordIndex.Storage.DISK) {
+            this.cache = new MedicalRecordCache(cacheSize, meterRegistry);
+            deleteLeftoverFiles();
+        } else {
+            this.cache = null;
+        }
+        log.info("Medical records stored: {}", storage);
+    }
+
+    @Override
+    public MedicalRecordIndex of(Collection<MedicalRecord> medicalRecords) {
+        return switch (storage) {
+            case HEAP     -> new MedicalRecordIndex(medicalRecords);
+            case OFF_HEAP -> OffHeapMedicalRecordIndex.of(medicalRecords);
+            case DISK     -> DiskMedicalRecordIndex.of(medicalRecords, directory, cache);
+        };
+    }
+
+    /**
+     * @return the working set of the <code>disk</code> storage, <code>null</code> for the other storages
+     */
+    public MedicalRecordCache getCache() {
+        return cache;
+    }
+
+    private void deleteLeftoverFiles() {
+        if (!Files.isDirectory(directory)) {
+            return;
+        }
+        String glob = DiskMedicalRecordIndex.FILE_PREFIX + "*" + DiskMedicalRecordIndex.FILE_SUFFIX;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, glob)) {
+            for (Path file : files) {
+                Files.deleteIfExists(file);
+            }
+        } catch (IOException e) {
+            // Not fatal: the files only use disk space
+            log.warn("Cannot delete the medical record files left in {}", directory, e);
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package com.ericbouchut.springboot.safetynet.repository;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * A secondary (hash) index that maps a key to the values that share this key.
+ * <p>
+ * The key of a value is computed with the <code>keyExtractor</code> passed to the constructor.
+ * Values with a <code>null</code> key are not indexed.
+ * <br/>
+ * Example: index persons by city, to turn a full scan of all the persons into a key lookup.
+ * <p>
+ * An index is immutable once built: {@link #with(Collection, Collection)} returns a new index
+ * that shares its structure with this one (the map and the buckets are {@link PersistentHashMap persistent}),
+ * so a change costs <code>O(log N)</code> per changed value, not a copy of the index.
+ * So readers can use an index without any lock while a writer builds the next one.
+ *
+ * @param <K> the type of the key
+ * @param <V> the type of the indexed values
+ */
+public class MultiValueIndex<K, V> {
+    private final PersistentHashMap<K, PersistentHashSet<V>> valuesByKey;
+
+    private final Function<V, K> keyExtractor;
+
+    private MultiValueIndex(PersistentHashMap<K, PersistentHashSet<V>> valuesByKey, Function<V, K> keyExtractor) {
+        this.valuesByKey  = valuesByKey;
+        this.keyExtractor = keyExtractor;
+    }
+
+    /**
+     * Build an index and add all the passed-in values to it.
+     *
+     * @param values       the values to index
+     * @param keyExtractor the function that computes the key of a value
+     * @return a new index with all the values
+     */
+    public static <K, V> MultiValueIndex<K, V> of(Collection<V> values, Function<V, K> keyExtractor) {
+        return new MultiValueIndex<K, V>(PersistentHashMap.empty(), keyExtractor).with(values, Collections.emptyList());
+    }
+
+    /**
+     * Return a new index, with some values removed then others added.
+     * <p>
+     * Only the paths to the buckets of the keys of these values are copied,
+     * the rest is shared with this index (which is left unchanged).
+     *
+     * @param added   the values to add (they replace the values equal to them)
+     * @param removed the values to remove
+     * @return a new index
+     */
+    public MultiValueIndex<K, V> with(Collection<V> added, Collection<V> removed) {
+        PersistentHashMap<K, PersistentHashSet<V>> newValuesByKey = valuesByKey;
+
+        for (V value : removed) {
+            K key = keyExtractor.apply(value);
+            PersistentHashSet<V> values = (key == null) ? null : newValuesByKey.get(key);
+            if (values != null) {
+                values = values.minus(value);
+                // Do not keep empty buckets around
+                newValuesByKey = values.isEmpty() ? newValuesByKey.minus(key) : newValuesByKey.plus(key, values);
+            }
+        }
+        for (V value : added) {
+            K key = keyExtractor.apply(value);
+            if (key != null) {
+                PersistentHashSet<V> values = newValuesByKey.get(key);
+                newValuesByKey = newValuesByKey.plus(key, (values == null ? PersistentHashSet.<V>empty() : values).plus(value));
+            }
+        }
+        return new MultiValueIndex<>(newValuesByKey, keyExtractor);
+    }
+
+    /**
+     * @param key the key to look up
+     * @return the values with this key (unmodifiable), or an empty set if there are none
+     */
+    public Set<V> get(K key) {
+        Set<V> values = key == null ? null : valuesByKey.get(key);
+        return values == null ? Collections.emptySet() : values;
+    }
+}
@@ -0,0 +1,108 @@
+package com.ericbouchut.springboot.safetynet.repository;
+
+import java.util.Arrays;
+
+/**
+ * An immutable array of references (a column of a {@link PersonTable}, or the values of a {@link Dictionary}),
+ * that shares its structure with the column it was changed from, as {@link IntColumn} does.
+ *
+ * @param <E> the type of the values
+ */
+final class ObjectColumn<E> {
+    private static final int CHUNK_BITS = 10;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+    private static final int MASK = CHUNK_SIZE - 1;
+
+    private static final ObjectColumn<?> EMPTY = new ObjectColumn<>(new Object[0][], 0);
+
+    private final Object[][] chunks;
+    private final int size;
+
+    private ObjectColumn(Object[][] chunks, int size) {
+        this.chunks = chunks;
+        this.size   = size;
+    }
+
+    @SuppressWarnings("unchecked")
+    static <E> ObjectColumn<E> empty() {
+        return (ObjectColumn<E>) EMPTY;
+    }
+
+    @SuppressWarnings("unchecked")
+    E get(int index) {
+        return (E) chunks[index >>> CHUNK_BITS][index & MASK];
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * @return an editor of a copy of this column (this column is left unchanged)
+     */
+    Editor<E> edit() {
+        return new Editor<>(this);
+    }
+
+    /**
+     * Changes a copy of a column, then builds it: not thread safe.
+     */
+    static final class Editor<E> {
+        private Object[][] chunks;
+
+        /**
+         * Key: a chunk, Value: <code>true</code> if it was copied by this editor (it can be written).
+         */
+        private boolean[] owned;
+
+        private int size;
+
+        private Editor(ObjectColumn<E> column) {
+            this.chunks = column.chunks.clone();
+            this.owned  = new boolean[chunks.length];
+            this.size   = column.size;
+        }
+
+        @SuppressWarnings("unchecked")
+        E get(int index) {
+            return (E) chunks[index >>> CHUNK_BITS][index & MASK];
+        }
+
+        void set(int index, E value) {
+            int chunk = index >>> CHUNK_BITS;
+            if (!owned[chunk]) {
+                chunks[chunk] = chunks[chunk].clone();
+                owned[chunk]  = true;
+            }
+            chunks[chunk][index & MASK] = value;
+        }
+
+        /**
+         * Append a value.
+         */
+        void add(E value) {
+            int chunk = size >>> CHUNK_BITS;
+            if (chunk == chunks.length) {
+                chunks = Arrays.copyOf(chunks, Math.max(4, chunks.length * 2));
+                owned  = Arrays.copyOf(owned, chunks.length);
+            }
+            if (chunks[chunk] == null) {
+                chunks[chunk] = new Object[CHUNK_SIZE];
+                owned[chunk]  = true;
+            }
+            size++;
+            set(size - 1, value);
+        }
+
+        int size() {
+            return size;
+        }
+
+        /**
+         * @return the column, with the changes (this editor must no longer be used)
+         */
+        ObjectColumn<E> build() {
+            return new ObjectColumn<>(chunks, size);
+        }
+    }
+}
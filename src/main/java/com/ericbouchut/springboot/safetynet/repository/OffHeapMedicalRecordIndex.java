@@ -0,0 +1,69 @@
+package com.ericbouchut.springboot.safetynet.repository;
+
+import com.ericbouchut.springboot.safetynet.model.MedicalRecord;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Collection;
+
+/**
+ * The medical records of a {@link Dataset}, encoded in a direct <code>ByteBuffer</code> (outside the heap),
+ * indexed by full name (see {@link MedicalRecordIndex.Storage#OFF_HEAP}).
+ * <p>
+ * The garbage collector neither traces nor copies the medical records:
+ * only the key index is on the heap (see {@link EncodedMedicalRecordIndex}).
+ * The buffer is freed when the index is garbage collected.
+ */
+public class OffHeapMedicalRecordIndex extends EncodedMedicalRecordIndex {
+    /**
+     * The encoded records. Read-only, and only read with a duplicate (own position) per decoding.
+     */
+    private final ByteBuffer buffer;
+
+    private OffHeapMedicalRecordIndex(Layout layout, ByteBuffer buffer) {
+        super(layout);
+        this.buffer = buffer;
+    }
+
+    /**
+     * Encode the medical records (without duplicates) in a new buffer.
+     *
+     * @param medicalRecords the medical records
+     * @return a new index
+     */
+    public static OffHeapMedicalRecordIndex of(Collection<MedicalRecord> medicalRecords) {
+        return of(Encoding.of(medicalRecords));
+    }
+
+    /**
+     * Write the records straight into a new buffer of their exact size (no copy on the heap).
+     */
+    private static OffHeapMedicalRecordIndex of(Encoding encoding) {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(encoding.size());
+        Layout layout;
+        try {
+            layout = encoding.writeTo(length -> buffer);
+        } catch (IOException e) {
+            // Writing in a buffer does not throw
+            throw new IllegalStateException(e);
+        }
+        return new OffHeapMedicalRecordIndex(layout, buffer.flip().asReadOnlyBuffer());
+    }
+
+    @Override
+    protected ByteBuffer read(int offset, int length) {
+        return buffer.duplicate().position(offset);
+    }
+
+    @Override
+    protected MedicalRecordIndex rebuild(Encoding encoding) {
+        return of(encoding);
+    }
+
+    /**
+     * @return the number of bytes of the encoded records (outside the heap)
+     */
+    public int offHeapSize() {
+        return buffer.capacity();
+    }
+}
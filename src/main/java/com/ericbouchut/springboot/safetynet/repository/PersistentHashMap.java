@@ -0,0 +1,374 @@
+package com.ericbouchut.springboot.safetynet.repository;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * An immutable hash map that shares its structure with the map it was changed from
+ * (a hash array mapped trie).
+ * <p>
+ * The entries are stored in a tree of branches of up to 32 children, selected by 5 bits of the hash of the key.
+ * {@link #plus(Object, Object)} and {@link #minus(Object)} copy the branches on the path to the key only,
+ * so a change costs <code>O(log32 N)</code> instead of a copy of the whole map,
+ * and the previous map is left unchanged: readers can use a map without any lock while a writer changes it.
+ * <p>
+ * Keys and values must not be <code>null</code>.
+ *
+ * @param <K> the type of the keys
+ * @param <V> the type of the values
+ */
+final class PersistentHashMap<K, V> {
+    private static final int BITS = 5;
+    private static final int MASK = (1 << BITS) - 1;
+
+    private static final PersistentHashMap<?, ?> EMPTY = new PersistentHashMap<>(null, 0);
+
+    /**
+     * An entry, with the hash of its key.
+     */
+    private record Leaf(int hash, Object key, Object value) {}
+
+    /**
+     * The entries whose keys have the same hash.
+     */
+    private record Collision(int hash, Leaf[] leaves) {}
+
+    /**
+     * The children (leaves, collisions or branches) of the bits of the hash at a level of the tree:
+     * the bit <code>i</code> of the bitmap is set when there is a child for these bits equal to <code>i</code>.
+     */
+    private record Branch(int bitmap, Object[] children) {}
+
+    /**
+     * A leaf, collision or branch, <code>null</code> if the map is empty.
+     */
+    private final Object root;
+
+    private final int size;
+
+    private PersistentHashMap(Object root, int size) {
+        this.root = root;
+        this.size = size;
+    }
+
+    @SuppressWarnings("unchecked")
+    static <K, V> PersistentHashMap<K, V> empty() {
+        return (PersistentHashMap<K, V>) EMPTY;
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * @param key the key to look up
+     * @return the value of this key, or <code>null</code> if there is no such key
+     */
+    @SuppressWarnings("unchecked")
+    V get(Object key) {
+        Leaf leaf = leaf(key);
+        return leaf == null ? null : (V) leaf.value();
+    }
+
+    boolean containsKey(Object key) {
+        return leaf(key) != null;
+    }
+
+    /**
+     * @param key   the key
+     * @param value the value of this key
+     * @return a new map where this key has this value (it replaces the previous entry of an equal key),
+     * or this map if this key already has this very value
+     */
+    PersistentHashMap<K, V> plus(K key, V value) {
+        Leaf previous = leaf(key);
+        if (previous != null && previous.value() == value) {
+            return this;
+        }
+        return new PersistentHashMap<>(
+                insert(root, 0, new Leaf(hash(key), key, value)),
+                previous == null ? size + 1 : size
+        );
+    }
+
+    /**
+     * @param entries the entries to add (they replace the entries of equal keys)
+     * @return a new map with these entries, or this map if there is none.
+     * An empty map is built at once, bottom up (instead of copying the path to each key).
+     */
+    PersistentHashMap<K, V> plusAll(Map<? extends K, ? extends V> entries) {
+        if (entries.isEmpty()) {
+            return this;
+        }
+        if (!isEmpty()) {
+            PersistentHashMap<K, V> map = this;
+            for (Map.Entry<? extends K, ? extends V> entry : entries.entrySet()) {
+                map = map.plus(entry.getKey(), entry.getValue());
+            }
+            return map;
+        }
+        Leaf[] leaves = new Leaf[entries.size()];
+        int i = 0;
+        for (Map.Entry<? extends K, ? extends V> entry : entries.entrySet()) {
+            leaves[i++] = new Leaf(hash(entry.getKey()), entry.getKey(), entry.getValue());
+        }
+        return new PersistentHashMap<>(build(leaves, 0, leaves.length, 0), leaves.length);
+    }
+
+    /**
+     * @param key the key to remove
+     * @return a new map without this key, or this map if there is no such key
+     */
+    PersistentHashMap<K, V> minus(Object key) {
+        if (!containsKey(key)) {
+            return this;
+        }
+        return new PersistentHashMap<>(remove(root, 0, hash(key), key), size - 1);
+    }
+
+    /**
+     * @return the keys, in no particular order
+     */
+    @SuppressWarnings("unchecked")
+    Iterator<K> keys() {
+        Iterator<Leaf> leaves = new LeafIterator(root);
+        return new Iterator<>() {
+            @Override
+            public boolean hasNext() {
+                return leaves.hasNext();
+            }
+
+            @Override
+            public K next() {
+                return (K) leaves.next().key();
+            }
+        };
+    }
+
+    private static int hash(Object key) {
+        int hash = key.hashCode();
+        // Spread the high bits to the lower levels of the tree, as HashMap does
+        return hash ^ (hash >>> 16);
+    }
+
+    private static int bit(int hash, int shift) {
+        return 1 << ((hash >>> shift) & MASK);
+    }
+
+    /**
+     * @return the position of the child of this bit in the children of a branch
+     */
+    private static int index(int bitmap, int bit) {
+        return Integer.bitCount(bitmap & (bit - 1));
+    }
+
+    private Leaf leaf(Object key) {
+        int hash = hash(key);
+        Object node = root;
+        for (int shift = 0; node instanceof Branch branch; shift += BITS) {
+            int bit = bit(hash, shift);
+            if ((branch.bitmap() & bit) == 0) {
+                return null;
+            }
+            node = branch.children()[index(branch.bitmap(), bit)];
+        }
+        if (node instanceof Leaf leaf) {
+            return leaf.hash() == hash && leaf.key().equals(key) ? leaf : null;
+        }
+        if (node instanceof Collision collision && collision.hash() == hash) {
+            for (Leaf leaf : collision.leaves()) {
+                if (leaf.key().equals(key)) {
+                    return leaf;
+                }
+            }
+        }
+        return null;
+    }
+
+    private static Object insert(Object node, int shift, Leaf leaf) {
+        if (node == null) {
+            return leaf;
+        }
+        if (node instanceof Leaf existing) {
+            if (existing.hash() != leaf.hash()) {
+                return branch(existing, existing.hash(), leaf, shift);
+            }
+            return existing.key().equals(leaf.key()) ? leaf : new Collision(leaf.hash(), new Leaf[]{existing, leaf});
+        }
+        if (node instanceof Collision collision) {
+            if (collision.hash() != leaf.hash()) {
+                return branch(collision, collision.hash(), leaf, shift);
+            }
+            Leaf[] leaves = collision.leaves();
+            for (int i = 0; i < leaves.length; i++) {
+                if (leaves[i].key().equals(leaf.key())) {
+                    Leaf[] newLeaves = leaves.clone();
+                    newLeaves[i] = leaf;
+                    return new Collision(leaf.hash(), newLeaves);
+                }
+            }
+            Leaf[] newLeaves = Arrays.copyOf(leaves, leaves.length + 1);
+            newLeaves[leaves.length] = leaf;
+            return new Collision(leaf.hash(), newLeaves);
+        }
+
+        Branch branch = (Branch) node;
+        int bit = bit(leaf.hash(), shift);
+        int index = index(branch.bitmap(), bit);
+        Object[] children = branch.children();
+        if ((branch.bitmap() & bit) == 0) {
+            Object[] newChildren = new Object[children.length + 1];
+            System.arraycopy(children, 0, newChildren, 0, index);
+            newChildren[index] = leaf;
+            System.arraycopy(children, index, newChildren, index + 1, children.length - index);
+            return new Branch(branch.bitmap() | bit, newChildren);
+        }
+        Object[] newChildren = children.clone();
+        newChildren[index] = insert(children[index], shift + BITS, leaf);
+        return new Branch(branch.bitmap(), newChildren);
+    }
+
+    /**
+     * @param leaves the leaves (of distinct keys), the range is reordered by the bits of their hash at this level
+     * @return the node of the leaves of this range, at this level of the tree
+     */
+    private static Object build(Leaf[] leaves, int from, int to, int shift) {
+        if (to - from == 1) {
+            return leaves[from];
+        }
+        boolean sameHash = true;
+        for (int i = from + 1; i < to && sameHash; i++) {
+            sameHash = leaves[i].hash() == leaves[from].hash();
+        }
+        if (sameHash) {
+            return new Collision(leaves[from].hash(), Arrays.copyOfRange(leaves, from, to));
+        }
+
+        // A counting sort of the range by the bits of the hash at this level
+        int[] starts = new int[(1 << BITS) + 1];
+        for (int i = from; i < to; i++) {
+            starts[((leaves[i].hash() >>> shift) & MASK) + 1]++;
+        }
+        for (int bits = 0; bits < 1 << BITS; bits++) {
+            starts[bits + 1] += starts[bits];
+        }
+        Leaf[] sorted = new Leaf[to - from];
+        int[] next = starts.clone();
+        for (int i = from; i < to; i++) {
+            sorted[next[(leaves[i].hash() >>> shift) & MASK]++] = leaves[i];
+        }
+        System.arraycopy(sorted, 0, leaves, from, sorted.length);
+
+        int bitmap = 0;
+        Object[] children = new Object[1 << BITS];
+        int count = 0;
+        for (int bits = 0; bits < 1 << BITS; bits++) {
+            if (starts[bits + 1] > starts[bits]) {
+                bitmap |= 1 << bits;
+                children[count++] = build(leaves, from + starts[bits], from + starts[bits + 1], shift + BITS);
+            }
+        }
+        return new Branch(bitmap, Arrays.copyOf(children, count));
+    }
+
+    /**
+     * @return the branch (or branches, while the bits of both hashes are equal) of a leaf or collision and a leaf
+     * whose hashes differ
+     */
+    private static Object branch(Object node, int nodeHash, Leaf leaf, int shift) {
+        int nodeBit = bit(nodeHash, shift);
+        int leafBit = bit(leaf.hash(), shift);
+        if (nodeBit == leafBit) {
+            return new Branch(nodeBit, new Object[]{branch(node, nodeHash, leaf, shift + BITS)});
+        }
+        return new Branch(
+                nodeBit | leafBit,
+                Integer.compareUnsigned(nodeBit, leafBit) < 0 ? new Object[]{node, leaf} : new Object[]{leaf, node}
+        );
+    }
+
+    /**
+     * @return the node without the entry of this key (that exists), <code>null</code> if it was the only entry
+     */
+    private static Object remove(Object node, int shift, int hash, Object key) {
+        if (node instanceof Leaf) {
+            return null;
+        }
+        if (node instanceof Collision collision) {
+            Leaf[] leaves = collision.leaves();
+            if (leaves.length == 2) {
+                return leaves[0].key().equals(key) ? leaves[1] : leaves[0];
+            }
+            return new Collision(hash, Arrays.stream(leaves).filter(leaf -> !leaf.key().equals(key)).toArray(Leaf[]::new));
+        }
+
+        Branch branch = (Branch) node;
+        int bit = bit(hash, shift);
+        int index = index(branch.bitmap(), bit);
+        Object[] children = branch.children();
+        Object child = remove(children[index], shift + BITS, hash, key);
+        if (child == null) {
+            if (children.length == 1) {
+                return null;
+            }
+            Object[] newChildren = new Object[children.length - 1];
+            System.arraycopy(children, 0, newChildren, 0, index);
+            System.arraycopy(children, index + 1, newChildren, index, newChildren.length - index);
+            // A single leaf (or collision) is found at any level: move it up
+            return newChildren.length == 1 && !(newChildren[0] instanceof Branch)
+                    ? newChildren[0]
+                    : new Branch(branch.bitmap() & ~bit, newChildren);
+        }
+        if (children.length == 1 && !(child instanceof Branch)) {
+            return child;
+        }
+        Object[] newChildren = children.clone();
+        newChildren[index] = child;
+        return new Branch(branch.bitmap(), newChildren);
+    }
+
+    /**
+     * Iterate over the leaves of a tree, depth first.
+     */
+    private static final class LeafIterator implements Iterator<Leaf> {
+        /**
+         * The nodes left to visit: each one holds at least one leaf.
+         */
+        private final Deque<Object> pending = new ArrayDeque<>();
+
+        private LeafIterator(Object root) {
+            if (root != null) {
+                pending.push(root);
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return !pending.isEmpty();
+        }
+
+        @Override
+        public Leaf next() {
+            while (!pending.isEmpty()) {
+                Object node = pending.pop();
+                if (node instanceof Leaf leaf) {
+                    return leaf;
+                }
+                Object[] children = node instanceof Collision collision ? collision.leaves() : ((Branch) node).children();
+                for (int i = children.length - 1; i >= 0; i--) {
+                    pending.push(children[i]);
+                }
+            }
+            throw new NoSuchElementException();
+        }
+    }
+
+}
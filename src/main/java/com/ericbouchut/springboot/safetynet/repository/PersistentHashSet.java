@@ -0,0 +1,77 @@
+package com.ericbouchut.springboot.safetynet.repository;
+
+import java.util.AbstractSet;
+import java.util.Collection;
+import java.util.Iterator;
+
+/**
+ * An immutable hash set that shares its structure with the set it was changed from,
+ * see {@link PersistentHashMap}.
+ * <p>
+ * {@link #plus(Object)} and {@link #minus(Object)} cost <code>O(log32 N)</code> and return a new set:
+ * the methods of {@link java.util.Set} that would modify this one throw an <code>UnsupportedOperationException</code>.
+ *
+ * @param <E> the type of the elements
+ */
+final class PersistentHashSet<E> extends AbstractSet<E> {
+    private static final PersistentHashSet<?> EMPTY = new PersistentHashSet<>(PersistentHashMap.empty());
+
+    /**
+     * Each element is mapped to itself.
+     */
+    private final PersistentHashMap<E, E> elements;
+
+    private PersistentHashSet(PersistentHashMap<E, E> elements) {
+        this.elements = elements;
+    }
+
+    @SuppressWarnings("unchecked")
+    static <E> PersistentHashSet<E> empty() {
+        return (PersistentHashSet<E>) EMPTY;
+    }
+
+    /**
+     * @param elements the elements (not <code>null</code>)
+     * @return a set of these elements (the last one of equal elements is kept)
+     */
+    static <E> PersistentHashSet<E> of(Collection<? extends E> elements) {
+        PersistentHashSet<E> set = empty();
+        for (E element : elements) {
+            set = set.plus(element);
+        }
+        return set;
+    }
+
+    /**
+     * @param element the element to add (not <code>null</code>), it replaces an equal element
+     * @return a new set with this element, or this set if it already holds this very instance
+     */
+    PersistentHashSet<E> plus(E element) {
+        PersistentHashMap<E, E> newElements = elements.plus(element, element);
+        return newElements == elements ? this : new PersistentHashSet<>(newElements);
+    }
+
+    /**
+     * @param element the element to remove
+     * @return a new set without the element equal to this one, or this set if there is no such element
+     */
+    PersistentHashSet<E> minus(Object element) {
+        PersistentHashMap<E, E> newElements = elements.minus(element);
+        return newElements == elements ? this : new PersistentHashSet<>(newElements);
+    }
+
+    @Override
+    public boolean contains(Object element) {
+        return element != null && elements.containsKey(element);
+    }
+
+    @Override
+    public Iterator<E> iterator() {
+        return elements.keys();
+    }
+
+    @Override
+    public int size() {
+        return elements.size();
+    }
+}
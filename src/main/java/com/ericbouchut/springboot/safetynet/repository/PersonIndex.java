@@ -0,0 +1,171 @@
+package com.ericbouchut.springboot.safetynet.repository;
+
+import com.ericbouchut.springboot.safetynet.model.FullName;
+import com.ericbouchut.springboot.safetynet.model.Person;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * The persons of a {@link Dataset} and their secondary indexes
+ * (by address, by city and by full name), and the persons sorted in the {@link #ORDER} (to read them page by page).
+ * <p>
+ * Immutable: a change ({@link #with(Person)}, {@link #without(Person)}, {@link #apply(DatasetDiff)})
+ * returns a new index, so readers can stream over the persons of a dataset
+ * while a writer prepares the next version.
+ * The persons and the indexes are persistent structures ({@link PersistentHashSet}, {@link MultiValueIndex},
+ * {@link SortedIndex}): both versions share everything but the paths to the changed persons,
+ * so a batch of changes costs <code>O(log N)</code> per changed person, not a copy of the index.
+ */
+public class PersonIndex {
+    /**
+     * The order of the pages of persons: by last name, first name, address, city and zip
+     * (the fields of {@link Person#equals(Object)}, a <code>null</code> field is sorted as an empty one).
+     */
+    public static final Comparator<Person> ORDER = Comparator
+            .comparing((Person person) -> Objects.toString(person.getLastName(), ""))
+            .thenComparing(person -> Objects.toString(person.getFirstName(), ""))
+            .thenComparing(person -> Objects.toString(person.getAddress(), ""))
+            .thenComparing(person -> Objects.toString(person.getCity(), ""))
+            .thenComparing(person -> Objects.toString(person.getZip(), ""));
+
+    private final PersistentHashSet<Person> persons;
+
+    private final MultiValueIndex<String, Person> personsByAddress;
+    private final MultiValueIndex<String, Person> personsByCity;
+    private final MultiValueIndex<FullName, Person> personsByFullName;
+    private final SortedIndex<Person> sortedPersons;
+
+    /**
+     * Identifies this version of the index, see {@link Dataset#generation(Dataset.EntityType)}.
+     */
+    private final long generation = Dataset.nextGeneration();
+
+    public PersonIndex(Collection<Person> persons) {
+        this.persons = PersistentHashSet.of(persons);
+
+        this.personsByAddress  = MultiValueIndex.of(this.persons, Person::getAddress);
+        this.personsByCity     = MultiValueIndex.of(this.persons, Person::getCity);
+        this.personsByFullName = MultiValueIndex.of(this.persons, FullName::of);
+        this.sortedPersons     = SortedIndex.of(this.persons, ORDER);
+    }
+
+    private PersonIndex(
+            PersistentHashSet<Person> persons,
+            MultiValueIndex<String, Person> personsByAddress,
+            MultiValueIndex<String, Person> personsByCity,
+            MultiValueIndex<FullName, Person> personsByFullName,
+            SortedIndex<Person> sortedPersons
+    ) {
+        this.persons           = persons;
+        this.personsByAddress  = personsByAddress;
+        this.personsByCity     = personsByCity;
+        this.personsByFullName = personsByFullName;
+        this.sortedPersons     = sortedPersons;
+    }
+
+    /**
+     * @return all the persons (unmodifiable)
+     */
+    public Set<Person> getAll() {
+        return persons;
+    }
+
+    public boolean contains(Person person) {
+        return persons.contains(person);
+    }
+
+    /**
+     * @param person the person to add
+     * @return a new index with this person, or this index if this person already exists
+     */
+    public PersonIndex with(Person person) {
+        return contains(person) ? this : with(List.of(person), List.of());
+    }
+
+    /**
+     * @param person the person to remove
+     * @return a new index without this person, or this index if this person does not exist
+     */
+    public PersonIndex without(Person person) {
+        return contains(person) ? with(List.of(), List.of(person)) : this;
+    }
+
+    /**
+     * Apply the person changes of a diff.
+     *
+     * @param diff the changes
+     * @return a new index, or this index if no person changed
+     */
+    public PersonIndex apply(DatasetDiff diff) {
+        if (diff.insertedPersons().isEmpty() && diff.updatedPersons().isEmpty() && diff.deletedPersons().isEmpty()) {
+            return this;
+        }
+        // Same key, new details: replace the previous instance
+        List<Person> removed = new ArrayList<>(diff.deletedPersons());
+        removed.addAll(diff.updatedPersons());
+        List<Person> added = new ArrayList<>(diff.insertedPersons());
+        added.addAll(diff.updatedPersons());
+        return with(added, removed);
+    }
+
+    /**
+     * Return a new index, with some persons removed then others added.
+     * Only the paths to the changed persons are copied, the rest is shared with this index.
+     *
+     * @param added   the persons to add
+     * @param removed the persons to remove (the instances equal to these ones, see {@link Person#equals(Object)})
+     * @return a new index
+     */
+    public PersonIndex with(Collection<Person> added, Collection<Person> removed) {
+        PersistentHashSet<Person> newPersons = persons;
+        for (Person person : removed) {
+            newPersons = newPersons.minus(person);
+        }
+        for (Person person : added) {
+            newPersons = newPersons.plus(person);
+        }
+
+        return new PersonIndex(
+                newPersons,
+                personsByAddress.with(added, removed),
+                personsByCity.with(added, removed),
+                personsByFullName.with(added, removed),
+                sortedPersons.with(added, removed)
+        );
+    }
+
+    public Set<Person> getByAddress(String address) {
+        return personsByAddress.get(address);
+    }
+
+    public Set<Person> getByCity(String city) {
+        return personsByCity.get(city);
+    }
+
+    public Set<Person> getByFullName(FullName fullName) {
+        return personsByFullName.get(fullName);
+    }
+
+    /**
+     * @param after the person after which the page starts (in the {@link #ORDER}),
+     *              <code>null</code> to start with the first person
+     * @param limit the maximum number of persons
+     * @return a page of persons (unmodifiable)
+     * @see SortedIndex#after(Object, int)
+     */
+    public List<Person> getPage(Person after, int limit) {
+        return sortedPersons.after(after, limit);
+    }
+
+    /**
+     * @return the generation of this index: a new index (for instance, after a change) has a new generation
+     */
+    public long generation() {
+        return generation;
+    }
+}
@@ -1,19 +1,30 @@
 package com.ericbouchut.springboot.safetynet.repository;
 
-import com.ericbouchut.springboot.safetynet.model.Data;
+import com.ericbouchut.springboot.safetynet.model.FullName;
 import com.ericbouchut.springboot.safetynet.model.Person;
 import org.springframework.stereotype.Component;
 
-import java.util.*;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
 import java.util.stream.Collectors;
-import java.util.stream.Stream;
 
 @Component
 public class PersonRepository {
-    private final Data data;
+    /**
+     * Holds the current persons and their indexes (by address, by city, by full name).
+     */
+    private final DataStore dataStore;
+
+    /**
+     * Applies the person mutations (create, delete) in batches, on a single thread.
+     */
+    private final PersonWriter personWriter;
 
-    public PersonRepository(Data data) {
-        this.data = data;
+    public PersonRepository(DataStore dataStore, PersonWriter personWriter) {
+        this.dataStore    = dataStore;
+        this.personWriter = personWriter;
     }
 
     // ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
@@ -21,7 +32,18 @@ public class PersonRepository {
     // ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
 
     public Set<Person> getAllPersons() {
-        return data.getPersons();
+        return persons().getAll();
+    }
+
+    /**
+     * Return a page of the persons, in the {@link PersonIndex#ORDER}.
+     *
+     * @param after the person after which the page starts, <code>null</code> for the first page
+     * @param limit the maximum number of persons
+     * @return the persons of the page (unmodifiable)
+     */
+    public List<Person> getPersonsPage(Person after, int limit) {
+        return persons().getPage(after, limit);
     }
 
     /**
@@ -31,43 +53,48 @@ public class PersonRepository {
      * @return an Optional person, or empty if the person already exists
      */
     public Optional<Person> createPerson(Person person) {
-        if (data.getPersons().add(person)) {
+        // Writes always go to the latest dataset (not to the one pinned by the request).
+        // The wait is bounded: the writer fails the future when stopped, or after app.person.writer.timeout
+        if (personWriter.create(person).join()) {
             return Optional.of(person);
         }
         return Optional.empty();
     }
 
     public boolean deletePerson(Person person) {
-        return data.getPersons().remove(person);
+        return personWriter.delete(person).join();
     }
 
     // ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
     //  Custom Finder Methods
     // ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
 
+    /**
+     * @param searchedCity the city
+     * @return the email addresses of the residents of this city, without duplicates.
+     * This list is precomputed and shared: it must not be modified.
+     */
     public List<String> getEmailsByCity(String searchedCity) {
-        if (searchedCity.isEmpty()){
-            return Collections.emptyList();
-        }
+        return dataStore.current().distributionLists().getEmailsByCity(searchedCity);
+    }
 
-        return data.getPersons()
-                .stream()
-                .filter(person -> person.getCity() != null && person.getCity().equals(searchedCity))
-                .map(Person::getEmail)
-                .toList();
+    /**
+     * @param fireStationNumber the number of a fire station
+     * @return the phone numbers of the residents served by the fire stations with this number, without duplicates.
+     * This list is precomputed and shared: it must not be modified.
+     */
+    public List<String> getPhonesByFireStationNumber(Integer fireStationNumber) {
+        return dataStore.current().distributionLists().getPhonesByNumber(fireStationNumber);
     }
 
     /**
      * Return the person living at a given address.
      *
      * @param address the address
-     * @return the persons living at the passed-in address (noi duplicates)
+     * @return the persons living at the passed-in address (no duplicates)
      */
     public Set<Person> getPersonsByAddress(String address) {
-        return data.getPersons()
-                .stream()
-                .filter(p -> p.getAddress() != null && p.getAddress().equals(address))
-                .collect(Collectors.toSet());
+        return persons().getByAddress(address);
     }
 
     /**
@@ -77,20 +104,41 @@ public class PersonRepository {
      * @return the persons living at one of the passed addresses
      */
     public Set<Person> getPersonsByAddresses(Collection<String> addresses) {
-        return data.getPersons()
-                .stream()
-                .filter(p -> addresses.contains(p.getAddress()))
+        PersonIndex persons = persons();
+        return addresses.stream()
+                .map(persons::getByAddress)
+                .flatMap(Set::stream)
                 .collect(Collectors.toSet());
     }
 
+    /**
+     * Return the households at an address, with the date of birth of their members.
+     *
+     * @param address the address
+     * @param city    the city, or <code>null</code> for any city
+     * @param zip     the zip code, or <code>null</code> for any zip code
+     * @return the households at this address (one per city and zip code)
+     */
+    public List<HouseholdIndex.Household> getHouseholds(String address, String city, String zip) {
+        return dataStore.current().households().get(address, city, zip);
+    }
+
+    /**
+     * @return the persons and their medical records of the current dataset, stored by column
+     */
+    public PersonTable getPersonTable() {
+        return dataStore.current().personTable();
+    }
+
     /**
      * @return a set of persons with the same full name (i.e., first and last name)
      */
     public Set<Person> getPersonsByFirstNameAndLastName(String firstName, String lastName) {
-        return data.getPersons()
-                .stream()
-                .filter(p -> p.getLastName().equals(lastName) && p.getFirstName().equals(firstName))
-                .collect(Collectors.toSet());
+        return persons().getByFullName(new FullName(firstName, lastName));
+    }
+
+    private PersonIndex persons() {
+        return dataStore.current().persons();
     }
 
 }
@@ -0,0 +1,561 @@
+package com.ericbouchut.springboot.safetynet.repository;
+
+import com.ericbouchut.springboot.safetynet.model.FullName;
+import com.ericbouchut.springboot.safetynet.model.MedicalRecord;
+import com.ericbouchut.springboot.safetynet.model.Person;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The persons of a {@link Dataset} stored by column (struct of arrays), joined with their medical records.
+ * <p>
+ * A person is a row, identified by an <code>int</code> id (from 0 to {@link #rowCount()} - 1).
+ * Each field is a column with one element per row:
+ * <ul>
+ *     <li>the names, address, city and zip are dictionary encoded (see {@link Dictionary}):
+ *     a city shared by 100,000 persons is stored once, and a row holds its <code>int</code> code,</li>
+ *     <li>the phone and email (almost unique) reference the strings of the person,</li>
+ *     <li>the date of birth is an epoch day ({@link #NO_DATE_OF_BIRTH} without medical record),
+ *     read from the medical records when the person is added, then updated when their medical records change,</li>
+ *     <li>the medical record itself is only read from the {@link MedicalRecordIndex} on demand
+ *     (see {@link #medicalRecord(int)}), so that the table does not keep the medical records on the heap
+ *     when they are stored off-heap or on disk.</li>
+ * </ul>
+ * The residents of an address are found by their ids (no scan), and a scan reads primitive arrays sequentially
+ * (no <code>Person</code>, <code>String</code> nor <code>LocalDate</code> to dereference).
+ * <p>
+ * A projection of the {@link PersonIndex} and the {@link MedicalRecordIndex} of a dataset (which stay the reference),
+ * built once by {@link #of(PersonIndex, MedicalRecordIndex)} when the data is loaded,
+ * then maintained by each change of the dataset ({@link #with(Collection, Collection, MedicalRecordIndex)},
+ * {@link #apply(DatasetDiff, PersonIndex, MedicalRecordIndex)}).
+ * Immutable: a change returns a new table, that shares the unchanged chunks of the columns
+ * (see {@link IntColumn}) and the dictionaries with this one.
+ * The id of a deleted person is reused by the next person added.
+ */
+public class PersonTable {
+    /**
+     * The date of birth of a person without medical record (or without date of birth).
+     */
+    public static final int NO_DATE_OF_BIRTH = Integer.MIN_VALUE;
+
+    /**
+     * The codes of the row of a deleted person.
+     */
+    private static final int DELETED = Dictionary.ABSENT;
+
+    /**
+     * The ids of the deleted persons (a stack).
+     */
+    private record FreeIds(int id, FreeIds next) {}
+
+    /**
+     * The first and last names.
+     */
+    private final Dictionary names;
+    private final Dictionary addressDictionary;
+    private final Dictionary cityDictionary;
+    private final Dictionary zipDictionary;
+
+    // The columns: key: an id, value: the code of the field in its dictionary
+    private final IntColumn firstNames;
+    private final IntColumn lastNames;
+    private final IntColumn addresses;
+    private final IntColumn cities;
+    private final IntColumn zips;
+    private final ObjectColumn<String> phones;
+    private final ObjectColumn<String> emails;
+
+    /**
+     * Key: an id, Value: the epoch day of the date of birth.
+     */
+    private final IntColumn datesOfBirth;
+
+    /**
+     * Key: an address code, Value: the ids of its residents.
+     */
+    private final PersistentHashMap<Integer, int[]> idsByAddress;
+
+    /**
+     * The ids of the deleted persons, reused first (<code>null</code> if there is none).
+     */
+    private final FreeIds freeIds;
+
+    /**
+     * The number of persons.
+     */
+    private final int size;
+
+    /**
+     * The medical records joined with the rows.
+     */
+    private final MedicalRecordIndex medicalRecords;
+
+    private PersonTable(
+            Dictionary names,
+            Dictionary addressDictionary,
+            Dictionary cityDictionary,
+            Dictionary zipDictionary,
+            IntColumn firstNames,
+            IntColumn lastNames,
+            IntColumn addresses,
+            IntColumn cities,
+            IntColumn zips,
+            ObjectColumn<String> phones,
+            ObjectColumn<String> emails,
+            IntColumn datesOfBirth,
+            PersistentHashMap<Integer, int[]> idsByAddress,
+            FreeIds freeIds,
+            int size,
+            MedicalRecordIndex medicalRecords
+    ) {
+        this.names             = names;
+        this.addressDictionary = addressDictionary;
+        this.cityDictionary    = cityDictionary;
+        this.zipDictionary     = zipDictionary;
+        this.firstNames        = firstNames;
+        this.lastNames         = lastNames;
+        this.addresses         = addresses;
+        this.cities            = cities;
+        this.zips              = zips;
+        this.phones            = phones;
+        this.emails            = emails;
+        this.datesOfBirth      = datesOfBirth;
+        this.idsByAddress      = idsByAddress;
+        this.freeIds           = freeIds;
+        this.size              = size;
+        this.medicalRecords    = medicalRecords;
+    }
+
+    /**
+     * Build the table of the persons of a dataset, when the data is loaded:
+     * the medical records of each person are read once, for their date of birth.
+     * <p>
+     * The persons are added address by address, so that the residents of an address are contiguous rows.
+     *
+     * @param persons        the persons
+     * @param medicalRecords their medical records
+     * @return a new table
+     */
+    public static PersonTable of(PersonIndex persons, MedicalRecordIndex medicalRecords) {
+        PersonTable empty = new PersonTable(
+                Dictionary.EMPTY, Dictionary.EMPTY, Dictionary.EMPTY, Dictionary.EMPTY,
+                IntColumn.EMPTY, IntColumn.EMPTY, IntColumn.EMPTY, IntColumn.EMPTY, IntColumn.EMPTY,
+                ObjectColumn.empty(), ObjectColumn.empty(), IntColumn.EMPTY,
+                PersistentHashMap.empty(), null, 0, medicalRecords
+        );
+        Map<String, List<Person>> personsByAddress = new LinkedHashMap<>();
+        for (Person person : persons.getAll()) {
+            personsByAddress.computeIfAbsent(person.getAddress(), address -> new ArrayList<>()).add(person);
+        }
+
+        Editor editor = empty.edit();
+        for (List<Person> residents : personsByAddress.values()) {
+            for (Person person : residents) {
+                editor.put(person, medicalRecords);
+            }
+        }
+        return editor.build(medicalRecords);
+    }
+
+    /**
+     * Remove, then add persons (see {@link Dataset#withPersons(Collection, Collection)}).
+     *
+     * @param added          the persons to add (an existing person is updated)
+     * @param removed        the persons to remove
+     * @param medicalRecords the medical records, to join with the persons added
+     * @return a new table with these changes, or this table if there is no change
+     */
+    public PersonTable with(Collection<Person> added, Collection<Person> removed, MedicalRecordIndex medicalRecords) {
+        if (added.isEmpty() && removed.isEmpty()) {
+            return this;
+        }
+        Editor editor = edit();
+        removed.forEach(editor::remove);
+        for (Person person : added) {
+            editor.put(person, medicalRecords);
+        }
+        return editor.build(medicalRecords);
+    }
+
+    /**
+     * Apply the person and medical record changes of a diff (see {@link Dataset#apply(DatasetDiff, long)}).
+     * The dates of birth of the persons whose medical records changed are read from the diff.
+     *
+     * @param diff               the changes
+     * @param nextPersons        the persons, with these changes
+     * @param nextMedicalRecords the medical records, with these changes
+     * @return a new table with these changes, or this table if there is no change
+     */
+    public PersonTable apply(DatasetDiff diff, PersonIndex nextPersons, MedicalRecordIndex nextMedicalRecords) {
+        if (diff.insertedPersons().isEmpty() && diff.updatedPersons().isEmpty() && diff.deletedPersons().isEmpty()
+                && diff.medicalRecords().isEmpty()) {
+            return this;
+        }
+        Editor editor = edit();
+        diff.deletedPersons().forEach(editor::remove);
+        for (Person person : diff.updatedPersons()) {
+            editor.put(person, nextMedicalRecords);
+        }
+        for (Person person : diff.insertedPersons()) {
+            editor.put(person, nextMedicalRecords);
+        }
+        for (Map.Entry<FullName, List<MedicalRecord>> entry : diff.medicalRecords().entrySet()) {
+            int dateOfBirth = dateOfBirth(entry.getValue());
+            for (Person person : nextPersons.getByFullName(entry.getKey())) {
+                editor.setDateOfBirth(person, dateOfBirth);
+            }
+        }
+        return editor.build(nextMedicalRecords);
+    }
+
+    /**
+     * @return the number of persons
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return the number of rows, including the rows of the deleted persons (not reused yet)
+     */
+    public int rowCount() {
+        return lastNames.size();
+    }
+
+    // ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+    //  Finders: return rows
+    // ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+
+    /**
+     * @param addresses addresses (duplicates allowed)
+     * @return the rows of the residents of these addresses, grouped by address (no duplicates)
+     */
+    public int[] rowsAt(Collection<String> addresses) {
+        int[][] rowsByAddress = addresses.stream()
+                .mapToInt(addressDictionary::code)
+                .filter(code -> code != Dictionary.ABSENT)
+                .distinct()
+                .mapToObj(idsByAddress::get)
+                .filter(ids -> ids != null)
+                .toArray(int[][]::new);
+
+        int count = 0;
+        for (int[] ids : rowsByAddress) {
+            count += ids.length;
+        }
+        int[] rows = new int[count];
+        int i = 0;
+        for (int[] ids : rowsByAddress) {
+            System.arraycopy(ids, 0, rows, i, ids.length);
+            i += ids.length;
+        }
+        return rows;
+    }
+
+    /**
+     * A scan of the city column.
+     *
+     * @param city a city
+     * @return the rows of the residents of this city, in order
+     */
+    public int[] rowsInCity(String city) {
+        int code = cityDictionary.code(city);
+        // The rows of the deleted persons hold ABSENT codes
+        return code == Dictionary.ABSENT ? new int[0] : cities.indexesOf(code);
+    }
+
+    /**
+     * A scan of the last name column.
+     *
+     * @param fullName a full name
+     * @return the rows of the persons with this full name (namesakes), in order
+     */
+    public int[] rowsByFullName(FullName fullName) {
+        int firstName = names.code(fullName.firstName());
+        int lastName  = names.code(fullName.lastName());
+        if (firstName == Dictionary.ABSENT || lastName == Dictionary.ABSENT) {
+            return new int[0];
+        }
+        int[] rows = lastNames.indexesOf(lastName);
+        int count = 0;
+        for (int row : rows) {
+            if (firstNames.get(row) == firstName) {
+                rows[count++] = row;
+            }
+        }
+        return Arrays.copyOf(rows, count);
+    }
+
+    /**
+     * @param rows     rows of this table
+     * @param epochDay a day
+     * @return the number of these rows with a date of birth after this day (excluded)
+     */
+    public int countBornAfter(int[] rows, long epochDay) {
+        int count = 0;
+        for (int row : rows) {
+            int dateOfBirth = datesOfBirth.get(row);
+            if (dateOfBirth != NO_DATE_OF_BIRTH && dateOfBirth > epochDay) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    // ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+    //  Fields of a row
+    // ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+
+    public String firstName(int row) {
+        return names.value(firstNames.get(row));
+    }
+
+    public String lastName(int row) {
+        return names.value(lastNames.get(row));
+    }
+
+    public String address(int row) {
+        return addressDictionary.value(addresses.get(row));
+    }
+
+    public String city(int row) {
+        return cityDictionary.value(cities.get(row));
+    }
+
+    public String zip(int row) {
+        return zipDictionary.value(zips.get(row));
+    }
+
+    public String phone(int row) {
+        return phones.get(row);
+    }
+
+    public String email(int row) {
+        return emails.get(row);
+    }
+
+    /**
+     * @return the epoch day of the date of birth of this row, or {@link #NO_DATE_OF_BIRTH}
+     */
+    public int dateOfBirth(int row) {
+        return datesOfBirth.get(row);
+    }
+
+    /**
+     * @return the medical record of this row (the first one with its full name), or <code>null</code>
+     */
+    public MedicalRecord medicalRecord(int row) {
+        List<MedicalRecord> records = medicalRecords.getByFullName(new FullName(firstName(row), lastName(row)));
+        return records.isEmpty() ? null : records.get(0);
+    }
+
+    /**
+     * @return a new <code>Person</code> with the fields of this row
+     * (equal to the person of the {@link PersonIndex}, see {@link Person#equals(Object)})
+     */
+    public Person person(int row) {
+        return new Person(firstName(row), lastName(row), address(row), city(row), zip(row), phone(row), email(row));
+    }
+
+    /**
+     * @param medicalRecords the medical records of a full name
+     * @return the epoch day of the date of birth of the first one, or {@link #NO_DATE_OF_BIRTH}
+     */
+    private static int dateOfBirth(List<MedicalRecord> medicalRecords) {
+        if (medicalRecords.isEmpty()) {
+            return NO_DATE_OF_BIRTH;
+        }
+        LocalDate dateOfBirth = medicalRecords.get(0).getDateOfBirth();
+        return dateOfBirth == null ? NO_DATE_OF_BIRTH : (int) dateOfBirth.toEpochDay();
+    }
+
+    private Editor edit() {
+        return new Editor();
+    }
+
+    /**
+     * Changes a copy of this table: each chunk of a column is copied once, by its first change.
+     * Not thread safe.
+     */
+    private final class Editor {
+        private final Dictionary.Editor nameEditor    = names.edit();
+        private final Dictionary.Editor addressEditor = addressDictionary.edit();
+        private final Dictionary.Editor cityEditor    = cityDictionary.edit();
+        private final Dictionary.Editor zipEditor     = zipDictionary.edit();
+
+        private final IntColumn.Editor firstNameColumn   = firstNames.edit();
+        private final IntColumn.Editor lastNameColumn    = lastNames.edit();
+        private final IntColumn.Editor addressColumn     = addresses.edit();
+        private final IntColumn.Editor cityColumn        = cities.edit();
+        private final IntColumn.Editor zipColumn         = zips.edit();
+        private final ObjectColumn.Editor<String> phoneColumn = phones.edit();
+        private final ObjectColumn.Editor<String> emailColumn = emails.edit();
+        private final IntColumn.Editor dateOfBirthColumn = datesOfBirth.edit();
+
+        /**
+         * Key: an address code, Value: the new ids of its residents (empty if there is none left),
+         * added to {@link #idsByAddress} at once by {@link #build(MedicalRecordIndex)}.
+         */
+        private final Map<Integer, int[]> changedIdsByAddress = new HashMap<>();
+
+        private FreeIds newFreeIds = freeIds;
+        private int newSize = size;
+
+        /**
+         * Add a person (their date of birth is read from the medical records),
+         * or update the phone and email of an existing person.
+         */
+        void put(Person person, MedicalRecordIndex medicalRecords) {
+            int id = id(person);
+            if (id != Dictionary.ABSENT) {
+                phoneColumn.set(id, person.getPhone());
+                emailColumn.set(id, person.getEmail());
+                return;
+            }
+
+            int dateOfBirth = dateOfBirth(medicalRecords.getByFullName(FullName.of(person)));
+            int address = addressEditor.add(person.getAddress());
+            if (newFreeIds != null) {
+                id = newFreeIds.id();
+                newFreeIds = newFreeIds.next();
+                firstNameColumn.set(id, nameEditor.add(person.getFirstName()));
+                lastNameColumn.set(id, nameEditor.add(person.getLastName()));
+                addressColumn.set(id, address);
+                cityColumn.set(id, cityEditor.add(person.getCity()));
+                zipColumn.set(id, zipEditor.add(person.getZip()));
+                phoneColumn.set(id, person.getPhone());
+                emailColumn.set(id, person.getEmail());
+                dateOfBirthColumn.set(id, dateOfBirth);
+            } else {
+                id = lastNameColumn.size();
+                firstNameColumn.add(nameEditor.add(person.getFirstName()));
+                lastNameColumn.add(nameEditor.add(person.getLastName()));
+                addressColumn.add(address);
+                cityColumn.add(cityEditor.add(person.getCity()));
+                zipColumn.add(zipEditor.add(person.getZip()));
+                phoneColumn.add(person.getPhone());
+                emailColumn.add(person.getEmail());
+                dateOfBirthColumn.add(dateOfBirth);
+            }
+
+            int[] ids = ids(address);
+            int[] newIds = Arrays.copyOf(ids, ids.length + 1);
+            newIds[ids.length] = id;
+            changedIdsByAddress.put(address, newIds);
+            newSize++;
+        }
+
+        /**
+         * Remove a person, if present: their id is freed.
+         */
+        void remove(Person person) {
+            int id = id(person);
+            if (id == Dictionary.ABSENT) {
+                return;
+            }
+            int address = addressColumn.get(id);
+            int[] ids = ids(address);
+            int[] newIds = new int[ids.length - 1];
+            int i = 0;
+            for (int other : ids) {
+                if (other != id) {
+                    newIds[i++] = other;
+                }
+            }
+            changedIdsByAddress.put(address, newIds);
+
+            for (IntColumn.Editor column : new IntColumn.Editor[]{
+                    firstNameColumn, lastNameColumn, addressColumn, cityColumn, zipColumn
+            }) {
+                column.set(id, DELETED);
+            }
+            phoneColumn.set(id, null);
+            emailColumn.set(id, null);
+            dateOfBirthColumn.set(id, NO_DATE_OF_BIRTH);
+            newFreeIds = new FreeIds(id, newFreeIds);
+            newSize--;
+        }
+
+        /**
+         * @param person      a person (ignored if absent)
+         * @param dateOfBirth the epoch day of their new date of birth, or {@link #NO_DATE_OF_BIRTH}
+         */
+        void setDateOfBirth(Person person, int dateOfBirth) {
+            int id = id(person);
+            if (id != Dictionary.ABSENT) {
+                dateOfBirthColumn.set(id, dateOfBirth);
+            }
+        }
+
+        /**
+         * @return the id of this person (same fields as {@link Person#equals(Object)}),
+         * or {@link Dictionary#ABSENT} if there is no such person
+         */
+        private int id(Person person) {
+            int address = addressEditor.code(person.getAddress());
+            if (address == Dictionary.ABSENT) {
+                return Dictionary.ABSENT;
+            }
+            int[] ids = ids(address);
+            int firstName = nameEditor.code(person.getFirstName());
+            int lastName  = nameEditor.code(person.getLastName());
+            int city      = cityEditor.code(person.getCity());
+            int zip       = zipEditor.code(person.getZip());
+            for (int id : ids) {
+                if (lastNameColumn.get(id) == lastName && firstNameColumn.get(id) == firstName
+                        && cityColumn.get(id) == city && zipColumn.get(id) == zip) {
+                    return id;
+                }
+            }
+            return Dictionary.ABSENT;
+        }
+
+        /**
+         * @return the ids of the residents of this address code (empty if there is none)
+         */
+        private int[] ids(int address) {
+            int[] ids = changedIdsByAddress.get(address);
+            if (ids == null) {
+                ids = idsByAddress.get(address);
+            }
+            return ids == null ? new int[0] : ids;
+        }
+
+        PersonTable build(MedicalRecordIndex medicalRecords) {
+            PersistentHashMap<Integer, int[]> newIdsByAddress = idsByAddress;
+            Map<Integer, int[]> addedIds = new HashMap<>();
+            for (Map.Entry<Integer, int[]> entry : changedIdsByAddress.entrySet()) {
+                if (entry.getValue().length == 0) {
+                    newIdsByAddress = newIdsByAddress.minus(entry.getKey());
+                } else {
+                    addedIds.put(entry.getKey(), entry.getValue());
+                }
+            }
+            return new PersonTable(
+                    nameEditor.build(),
+                    addressEditor.build(),
+                    cityEditor.build(),
+                    zipEditor.build(),
+                    firstNameColumn.build(),
+                    lastNameColumn.build(),
+                    addressColumn.build(),
+                    cityColumn.build(),
+                    zipColumn.build(),
+                    phoneColumn.build(),
+                    emailColumn.build(),
+                    dateOfBirthColumn.build(),
+                    newIdsByAddress.plusAll(addedIds),
+                    newFreeIds,
+                    newSize,
+                    medicalRecords
+            );
+        }
+    }
+}
@@ -0,0 +1,377 @@
+package com.ericbouchut.springboot.safetynet.repository;
+
+import com.ericbouchut.springboot.safetynet.model.Person;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import com.ericbouchut.springboot.safetynet.repository.WriteAheadLog.Operation;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * The single writer of the persons.
+ * <p>
+ * Request threads do not change the persons themselves:
+ * they put their mutation in a bounded queue, then wait for its result (a future).
+ * A single writer thread drains the queue in batches,
+ * applies each batch to the latest dataset at once (one new version of the person indexes per batch),
+ * publishes the new dataset, and then completes the futures of the batch.
+ * <p>
+ * The mutations of a batch are applied in the queue order,
+ * so a <code>create</code> followed by a <code>delete</code> of the same person both succeed.
+ * When the queue is full, the callers wait for some room (back pressure).
+ * <p>
+ * The mutations submitted before the writer starts are queued, and applied once it starts.
+ * Once the writer is stopped (or if its thread dies), the new mutations are rejected,
+ * and the queued ones are failed.
+ * The wait for some room, and the future, are bounded by <code>app.person.writer.timeout</code>:
+ * a mutation that times out may still be applied later.
+ * <p>
+ * The successful mutations of a batch are committed to the {@link WriteAheadLog} before being published
+ * (one <code>fsync</code> per batch), and the log is replayed when the writer starts.
+ * The results of a batch are computed, logged and published while holding the {@link DataStore#writeLock()}:
+ * a reload cannot publish another dataset in the meantime, so the batch is applied to the very dataset
+ * its results were computed against.
+ * <p>
+ * Metrics:
+ * <ul>
+ *     <li><code>safetynet.person.writer.queue.depth</code>: the number of mutations waiting in the queue</li>
+ *     <li><code>safetynet.person.writer.batch.size</code>: the number of mutations applied per batch</li>
+ * </ul>
+ */
+@Component
+@Log4j2
+public class PersonWriter implements SmartLifecycle {
+
+    /**
+     * A pending change, and its result: true if the person was created (or deleted).
+     */
+    private record Mutation(Operation operation, Person person, CompletableFuture<Boolean> result) {}
+
+    /**
+     * Before the web server starts (and so after it stops, once the requests in progress are drained):
+     * the write-ahead log is replayed before the first request, and the writer applies the mutations
+     * of the last requests. The web server starts at <code>DEFAULT_PHASE - 2048</code>.
+     */
+    static final int PHASE = SmartLifecycle.DEFAULT_PHASE - 4096;
+
+    static final Duration DEFAULT_TIMEOUT = Duration.ofSeconds(30);
+
+    private final DataStore dataStore;
+    private final WriteAheadLog writeAheadLog;
+    private final BlockingQueue<Mutation> queue;
+    private final int maxBatchSize;
+    private final DistributionSummary batchSize;
+    private final Duration timeout;
+
+    private volatile Thread writerThread;
+
+    /**
+     * True once the writer is stopped, or its thread died: the new mutations are rejected.
+     */
+    private volatile boolean stopped;
+
+    /**
+     * A person writer without write-ahead log (the mutations are lost on restart).
+     */
+    public PersonWriter(
+            DataStore dataStore,
+            MeterRegistry meterRegistry,
+            int queueCapacity,
+            int maxBatchSize
+    ) {
+        this(dataStore, new WriteAheadLog(null, WriteAheadLog.Durability.SYNC, Duration.ZERO),
+                meterRegistry, queueCapacity, maxBatchSize);
+    }
+
+    public PersonWriter(
+            DataStore dataStore,
+            WriteAheadLog writeAheadLog,
+            MeterRegistry meterRegistry,
+            int queueCapacity,
+            int maxBatchSize
+    ) {
+        this(dataStore, writeAheadLog, meterRegistry, queueCapacity, maxBatchSize, DEFAULT_TIMEOUT);
+    }
+
+    @Autowired
+    public PersonWriter(
+            DataStore dataStore,
+            WriteAheadLog writeAheadLog,
+            MeterRegistry meterRegistry,
+            @Value("${app.person.writer.queue-capacity:1024}")
+            int queueCapacity,
+            @Value("${app.person.writer.max-batch-size:256}")
+            int maxBatchSize,
+            @Value("${app.person.writer.timeout:30s}")
+            Duration timeout
+    ) {
+        this.dataStore     = dataStore;
+        this.writeAheadLog = writeAheadLog;
+        this.queue        = new ArrayBlockingQueue<>(queueCapacity);
+        this.maxBatchSize = maxBatchSize;
+        this.timeout      = timeout;
+
+        Gauge.builder("safetynet.person.writer.queue.depth", queue, BlockingQueue::size)
+                .description("Number of person mutations waiting for the writer")
+                .register(meterRegistry);
+        this.batchSize = DistributionSummary.builder("safetynet.person.writer.batch.size")
+                .description("Number of person mutations applied per batch")
+                .register(meterRegistry);
+    }
+
+    /**
+     * @param person the person to create
+     * @return true once created, false if this person already exists
+     * (completed exceptionally if the writer is stopped, or after <code>app.person.writer.timeout</code>)
+     */
+    public CompletableFuture<Boolean> create(Person person) {
+        return submit(Operation.CREATE, person);
+    }
+
+    /**
+     * @param person the person to delete
+     * @return true once deleted, false if this person does not exist
+     * (completed exceptionally if the writer is stopped, or after <code>app.person.writer.timeout</code>)
+     */
+    public CompletableFuture<Boolean> delete(Person person) {
+        return submit(Operation.DELETE, person);
+    }
+
+    private CompletableFuture<Boolean> submit(Operation operation, Person person) {
+        Mutation mutation = new Mutation(operation, person, new CompletableFuture<>());
+        if (stopped) {
+            mutation.result().completeExceptionally(stoppedException());
+            return mutation.result();
+        }
+        try {
+            // Wait for some room when the queue is full
+            if (!queue.offer(mutation, timeout.toNanos(), TimeUnit.NANOSECONDS)) {
+                mutation.result().completeExceptionally(
+                        new IllegalStateException("The person writer queue is still full after " + timeout)
+                );
+                return mutation.result();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            mutation.result().completeExceptionally(e);
+            return mutation.result();
+        }
+        // Stopped while queuing: the queue may have been drained already
+        if (stopped && queue.remove(mutation)) {
+            mutation.result().completeExceptionally(stoppedException());
+        }
+        return mutation.result().orTimeout(timeout.toNanos(), TimeUnit.NANOSECONDS);
+    }
+
+    // ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+    //  Writer thread (SmartLifecycle)
+    // ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+
+    /**
+     * Replay the write-ahead log, then start the writer thread.
+     */
+    @Override
+    public void start() {
+        stopped = false;
+        try {
+            replay(writeAheadLog.open(dataStore.latest().lsn()));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot open the write-ahead log", e);
+        }
+
+        writerThread = new Thread(this::run, "person-writer");
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    @Override
+    public void stop() {
+        stopped = true;
+        Thread thread = writerThread;
+        writerThread = null;
+        if (thread != null) {
+            thread.interrupt();
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        // Queued before the start, or while stopping
+        failQueuedMutations();
+        try {
+            writeAheadLog.close();
+        } catch (IOException e) {
+            log.error("Cannot close the write-ahead log", e);
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return writerThread != null;
+    }
+
+    @Override
+    public int getPhase() {
+        return PHASE;
+    }
+
+    private void run() {
+        List<Mutation> batch = new ArrayList<>(maxBatchSize);
+        try {
+            while (true) {
+                batch.add(queue.take());
+                queue.drainTo(batch, maxBatchSize - 1);
+                apply(batch);
+                batch.clear();
+            }
+        } catch (InterruptedException e) {
+            // Stopped
+        } catch (Throwable e) {
+            log.error("The person writer thread died", e);
+            throw e;
+        } finally {
+            // Reject the next mutations (the writer may have died), and fail the ones left
+            stopped = true;
+            batch.forEach(mutation -> mutation.result().completeExceptionally(stoppedException()));
+            failQueuedMutations();
+        }
+    }
+
+    private void failQueuedMutations() {
+        List<Mutation> mutations = new ArrayList<>();
+        queue.drainTo(mutations);
+        mutations.forEach(mutation -> mutation.result().completeExceptionally(stoppedException()));
+    }
+
+    private static IllegalStateException stoppedException() {
+        return new IllegalStateException("The person writer is stopped");
+    }
+
+    /**
+     * Apply the mutations read from the write-ahead log (without logging them again).
+     */
+    private void replay(List<WriteAheadLog.Entry> entries) throws IOException {
+        if (entries.isEmpty()) {
+            return;
+        }
+        long start = System.nanoTime();
+        // Skip the mutations already included in the data (checkpoint)
+        long checkpointLsn = dataStore.latest().lsn();
+        List<Mutation> mutations = entries.stream()
+                .filter(entry -> entry.lsn() > checkpointLsn)
+                .map(entry -> new Mutation(entry.operation(), entry.person(), new CompletableFuture<>()))
+                .toList();
+        publish(mutations, new boolean[mutations.size()], false);
+        long lastLsn = entries.get(entries.size() - 1).lsn();
+        dataStore.update(dataset -> lastLsn > dataset.lsn() ? dataset.withLsn(lastLsn) : dataset);
+        log.info("{} person mutations replayed from the write-ahead log in {} ms",
+                mutations.size(), (System.nanoTime() - start) / 1_000_000);
+    }
+
+    /**
+     * Apply a batch of mutations to the latest dataset, log and publish it, then complete the futures.
+     */
+    private void apply(List<Mutation> batch) {
+        batchSize.record(batch.size());
+        try {
+            boolean[] results = new boolean[batch.size()];
+            publish(batch, results, true);
+
+            // Complete once published, so that the callers read their own writes
+            for (int i = 0; i < batch.size(); i++) {
+                batch.get(i).result().complete(results[i]);
+            }
+        } catch (IOException | RuntimeException e) {
+            log.error("Cannot apply a batch of {} person mutations", batch.size(), e);
+            batch.forEach(mutation -> mutation.result().completeExceptionally(e));
+        }
+    }
+
+    /**
+     * Apply mutations in order to the latest dataset, log the successful ones, then publish the new dataset.
+     *
+     * @param mutations the mutations to apply
+     * @param results   set to the result of each mutation
+     * @param logged    true to log the mutations (false when they are replayed from the log)
+     * @throws IOException when the write-ahead log cannot be written (nothing is published)
+     */
+    private void publish(List<Mutation> mutations, boolean[] results, boolean logged) throws IOException {
+        Lock writeLock = dataStore.writeLock();
+        writeLock.lock();
+        try {
+            publish(dataStore.latest(), mutations, results, logged);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * @param base the dataset to apply the mutations to, the latest one
+     * @see #publish(List, boolean[], boolean)
+     */
+    private void publish(Dataset base, List<Mutation> mutations, boolean[] results, boolean logged) throws IOException {
+        PersonIndex persons = base.persons();
+
+        // Key: a person changed by these mutations, Value: this person after the mutations (null if deleted)
+        Map<Person, Person> changes = new HashMap<>();
+
+        for (int i = 0; i < mutations.size(); i++) {
+            Person person = mutations.get(i).person();
+            boolean exists = changes.containsKey(person)
+                    ? changes.get(person) != null
+                    : persons.contains(person);
+
+            if (mutations.get(i).operation() == Operation.CREATE) {
+                results[i] = !exists;
+                if (!exists) {
+                    changes.put(person, person);
+                }
+            } else {
+                results[i] = exists;
+                if (exists) {
+                    changes.put(person, null);
+                }
+            }
+        }
+
+        if (changes.isEmpty()) {
+            return;
+        }
+
+        // Write-ahead: log the successful mutations before publishing them
+        long lsn = 0;
+        if (logged && writeAheadLog.isEnabled()) {
+            for (int i = 0; i < mutations.size(); i++) {
+                if (results[i]) {
+                    lsn = writeAheadLog.append(mutations.get(i).operation(), mutations.get(i).person());
+                }
+            }
+            writeAheadLog.commit();
+        }
+
+        List<Person> removed = changes.keySet().stream().filter(persons::contains).toList();
+        List<Person> added   = changes.values().stream().filter(Objects::nonNull).toList();
+        Dataset updated = base.withPersons(added, removed);
+        // Tell the checkpoint which logged mutations this dataset includes
+        dataStore.publish(base, lsn > 0 ? updated.withLsn(lsn) : updated);
+    }
+}
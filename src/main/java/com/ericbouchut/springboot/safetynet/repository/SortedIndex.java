@@ -0,0 +1,200 @@
+package com.ericbouchut.springboot.safetynet.repository;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * The values of a collection sorted in a total order, to read them page by page.
+ * <p>
+ * A page starts <b>after</b> a value (the last one of the previous page), not at an offset:
+ * it is found by a search in a balanced (AVL) tree, so reading a page costs <code>O(log N + page size)</code>,
+ * and the next pages stay consistent when values are added or removed in the meantime
+ * (none is skipped or repeated, even if the last value of the previous page was removed).
+ * <p>
+ * The order must be consistent with <code>equals</code> (no tie between two different values).
+ * <p>
+ * An index is immutable once built: {@link #with(Collection, Collection)} returns a new index
+ * that shares the unchanged subtrees with this one (only the path to each changed value is copied),
+ * so a change costs <code>O(log N)</code> per changed value, not a copy of the index.
+ *
+ * @param <V> the type of the indexed values
+ */
+public class SortedIndex<V> {
+    /**
+     * A node of the tree, immutable.
+     *
+     * @param height the height of the subtree of this node
+     * @param size   the number of values in the subtree of this node
+     */
+    private record Node<V>(V value, Node<V> left, Node<V> right, int height, int size) {
+        static <V> Node<V> of(V value, Node<V> left, Node<V> right) {
+            return new Node<>(
+                    value,
+                    left,
+                    right,
+                    Math.max(SortedIndex.height(left), SortedIndex.height(right)) + 1,
+                    SortedIndex.size(left) + SortedIndex.size(right) + 1
+            );
+        }
+    }
+
+    /**
+     * <code>null</code> if the index is empty.
+     */
+    private final Node<V> root;
+
+    private final Comparator<? super V> comparator;
+
+    private SortedIndex(Node<V> root, Comparator<? super V> comparator) {
+        this.root       = root;
+        this.comparator = comparator;
+    }
+
+    /**
+     * Build an index with all the passed-in values.
+     *
+     * @param values     the values to index
+     * @param comparator the order of the values
+     * @return a new index with all the values (the last duplicate, in this order, is kept)
+     */
+    public static <V> SortedIndex<V> of(Collection<? extends V> values, Comparator<? super V> comparator) {
+        return new SortedIndex<V>(null, comparator).with(values, List.of());
+    }
+
+    /**
+     * Return a new index, with some values removed then others added.
+     *
+     * @param added   the values to add (they replace the values equal to them in this order)
+     * @param removed the values to remove (the values equal to these ones in this order,
+     *                that is to say equal to them, see {@link Object#equals(Object)})
+     * @return a new index
+     */
+    public SortedIndex<V> with(Collection<? extends V> added, Collection<? extends V> removed) {
+        Node<V> newRoot = root;
+        for (V value : removed) {
+            newRoot = remove(newRoot, value);
+        }
+        for (V value : added) {
+            newRoot = insert(newRoot, value);
+        }
+        return newRoot == root ? this : new SortedIndex<>(newRoot, comparator);
+    }
+
+    /**
+     * Return a page of values.
+     *
+     * @param after the value after which the page starts (it need not be in the index),
+     *              <code>null</code> to start with the first value
+     * @param limit the maximum number of values
+     * @return the values after <code>after</code> (at most <code>limit</code>), in order (unmodifiable)
+     */
+    public List<V> after(V after, int limit) {
+        // The nodes after <code>after</code> whose value and right subtree are not read yet, the next one on top
+        Deque<Node<V>> pending = new ArrayDeque<>();
+        for (Node<V> node = root; node != null; ) {
+            if (after == null || comparator.compare(node.value(), after) > 0) {
+                pending.push(node);
+                node = node.left();
+            } else {
+                node = node.right();
+            }
+        }
+        List<V> page = new ArrayList<>(Math.max(0, Math.min(limit, size())));
+        while (page.size() < limit && !pending.isEmpty()) {
+            Node<V> node = pending.pop();
+            page.add(node.value());
+            for (Node<V> next = node.right(); next != null; next = next.left()) {
+                pending.push(next);
+            }
+        }
+        return Collections.unmodifiableList(page);
+    }
+
+    public int size() {
+        return size(root);
+    }
+
+    private Node<V> insert(Node<V> node, V value) {
+        if (node == null) {
+            return Node.of(value, null, null);
+        }
+        int comparison = comparator.compare(value, node.value());
+        if (comparison < 0) {
+            return balance(node.value(), insert(node.left(), value), node.right());
+        }
+        if (comparison > 0) {
+            return balance(node.value(), node.left(), insert(node.right(), value));
+        }
+        return node.value() == value ? node : new Node<>(value, node.left(), node.right(), node.height(), node.size());
+    }
+
+    private Node<V> remove(Node<V> node, V value) {
+        if (node == null) {
+            return null;
+        }
+        int comparison = comparator.compare(value, node.value());
+        if (comparison < 0) {
+            Node<V> left = remove(node.left(), value);
+            return left == node.left() ? node : balance(node.value(), left, node.right());
+        }
+        if (comparison > 0) {
+            Node<V> right = remove(node.right(), value);
+            return right == node.right() ? node : balance(node.value(), node.left(), right);
+        }
+        if (node.left() == null) {
+            return node.right();
+        }
+        if (node.right() == null) {
+            return node.left();
+        }
+        Node<V> first = node.right();
+        while (first.left() != null) {
+            first = first.left();
+        }
+        return balance(first.value(), node.left(), removeFirst(node.right()));
+    }
+
+    private static <V> Node<V> removeFirst(Node<V> node) {
+        return node.left() == null ? node.right() : balance(node.value(), removeFirst(node.left()), node.right());
+    }
+
+    /**
+     * @return a node of this value and subtrees (whose heights differ by 2 at most), rotated to be balanced
+     */
+    private static <V> Node<V> balance(V value, Node<V> left, Node<V> right) {
+        if (height(left) > height(right) + 1) {
+            if (height(left.left()) >= height(left.right())) {
+                return Node.of(left.value(), left.left(), Node.of(value, left.right(), right));
+            }
+            return Node.of(
+                    left.right().value(),
+                    Node.of(left.value(), left.left(), left.right().left()),
+                    Node.of(value, left.right().right(), right)
+            );
+        }
+        if (height(right) > height(left) + 1) {
+            if (height(right.right()) >= height(right.left())) {
+                return Node.of(right.value(), Node.of(value, left, right.left()), right.right());
+            }
+            return Node.of(
+                    right.left().value(),
+                    Node.of(value, left, right.left().left()),
+                    Node.of(right.value(), right.left().right(), right.right())
+            );
+        }
+        return Node.of(value, left, right);
+    }
+
+    private static int height(Node<?> node) {
+        return node == null ? 0 : node.height();
+    }
+
+    private static int size(Node<?> node) {
+        return node == null ? 0 : node.size();
+    }
+}
@@ -0,0 +1,189 @@
+package com.ericbouchut.springboot.safetynet.repository;
+
+import com.ericbouchut.springboot.safetynet.model.FullName;
+import com.ericbouchut.springboot.safetynet.model.MedicalRecord;
+import com.ericbouchut.springboot.safetynet.model.Person;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * The census of each station number of a {@link Dataset}:
+ * the dates of birth of the residents of the addresses it serves (one per distinct medical record).
+ * <p>
+ * The adults and children counts depend on the current date,
+ * so a census keeps the sorted dates of birth: the children are the ones born after a cutoff day
+ * (see {@link #getByNumber(Integer)} and {@link Census#childrenCount(long)}).
+ * <p>
+ * Immutable: when persons, fire stations or medical records change,
+ * only the census of the station numbers they affect are rebuilt (see {@link #update(Collection, Dataset)}),
+ * the other ones are shared with the previous index.
+ */
+public class StationCensusIndex {
+
+    /**
+     * The census of a station number.
+     */
+    public static final class Census {
+        private static final Census EMPTY = new Census(new long[0]);
+
+        /**
+         * The counts computed for a cutoff day (the current day), reused until the day changes.
+         */
+        private record Counts(long childCutoffEpochDay, long childrenCount) {}
+
+        /**
+         * The epoch days of the dates of birth, sorted.
+         */
+        private final long[] birthEpochDays;
+
+        private volatile Counts counts;
+
+        private Census(long[] birthEpochDays) {
+            this.birthEpochDays = birthEpochDays;
+        }
+
+        /**
+         * @return the number of residents with a medical record
+         */
+        public long totalCount() {
+            return birthEpochDays.length;
+        }
+
+        /**
+         * @param childCutoffEpochDay the persons born after this epoch day are children
+         * @return the number of children.
+         * Computed once per cutoff (that is, once per day), then returned as is.
+         */
+        public long childrenCount(long childCutoffEpochDay) {
+            Counts current = counts;
+            if (current == null || current.childCutoffEpochDay() != childCutoffEpochDay) {
+                current = new Counts(childCutoffEpochDay, birthEpochDays.length - countUpTo(childCutoffEpochDay));
+                counts = current;
+            }
+            return current.childrenCount();
+        }
+
+        /**
+         * @param childCutoffEpochDay the persons born after this epoch day are children
+         * @return the number of adults
+         */
+        public long adultsCount(long childCutoffEpochDay) {
+            return totalCount() - childrenCount(childCutoffEpochDay);
+        }
+
+        /**
+         * @return the number of dates of birth up to the passed-in day (included), by binary search
+         */
+        private int countUpTo(long epochDay) {
+            int low  = 0;
+            int high = birthEpochDays.length;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (birthEpochDays[middle] <= epochDay) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return low;
+        }
+    }
+
+    /**
+     * Key: a station number, Value: its census.
+     */
+    private final Map<Integer, Census> censusByNumber;
+
+    private StationCensusIndex(Map<Integer, Census> censusByNumber) {
+        this.censusByNumber = censusByNumber;
+    }
+
+    /**
+     * Build the census of all the station numbers.
+     *
+     * @param persons        the persons
+     * @param fireStations   the fire stations
+     * @param medicalRecords the medical records
+     * @return a new index
+     */
+    public static StationCensusIndex of(
+            PersonIndex persons,
+            FireStationIndex fireStations,
+            MedicalRecordIndex medicalRecords
+    ) {
+        Map<Integer, Census> censusByNumber = new HashMap<>();
+        for (Integer number : fireStations.getNumbers()) {
+            censusByNumber.put(number, census(number, persons, fireStations, medicalRecords));
+        }
+        return new StationCensusIndex(Map.copyOf(censusByNumber));
+    }
+
+    /**
+     * Rebuild the census of some station numbers from a new version of the data.
+     *
+     * @param numbers the station numbers affected by a change
+     * @param dataset the data after the change
+     * @return a new index, or this index if there is no station number to rebuild
+     */
+    public StationCensusIndex update(Collection<Integer> numbers, Dataset dataset) {
+        if (numbers.isEmpty()) {
+            return this;
+        }
+        Map<Integer, Census> newCensusByNumber = new HashMap<>(censusByNumber);
+        for (Integer number : new HashSet<>(numbers)) {
+            if (dataset.fireStations().getByNumber(number).isEmpty()) {
+                newCensusByNumber.remove(number);
+            } else {
+                newCensusByNumber.put(
+                        number,
+                        census(number, dataset.persons(), dataset.fireStations(), dataset.medicalRecords())
+                );
+            }
+        }
+        return new StationCensusIndex(Map.copyOf(newCensusByNumber));
+    }
+
+    /**
+     * @param fireStationNumber a station number
+     * @return its census (empty for an unknown station number)
+     */
+    public Census getByNumber(Integer fireStationNumber) {
+        if (fireStationNumber == null) {
+            return Census.EMPTY;
+        }
+        return censusByNumber.getOrDefault(fireStationNumber, Census.EMPTY);
+    }
+
+    /**
+     * Collect the distinct medical records of the residents served by a station number
+     * (namesakes share their medical records), then sort their dates of birth.
+     */
+    private static Census census(
+            Integer number,
+            PersonIndex persons,
+            FireStationIndex fireStations,
+            MedicalRecordIndex medicalRecords
+    ) {
+        Set<MedicalRecord> residentRecords = new HashSet<>();
+        for (String address : fireStations.getAddressesByNumber(number)) {
+            for (Person person : persons.getByAddress(address)) {
+                residentRecords.addAll(medicalRecords.getByFullName(FullName.of(person)));
+            }
+        }
+
+        long[] birthEpochDays = residentRecords.stream()
+                .map(MedicalRecord::getDateOfBirth)
+                .filter(Objects::nonNull)
+                .mapToLong(LocalDate::toEpochDay)
+                .toArray();
+        Arrays.sort(birthEpochDays);
+        return new Census(birthEpochDays);
+    }
+}
@@ -0,0 +1,638 @@
+package com.ericbouchut.springboot.safetynet.repository;
+
+import com.ericbouchut.springboot.safetynet.model.Person;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only write-ahead log of the person mutations (create, delete),
+ * so that they survive a restart.
+ * <p>
+ * The {@link PersonWriter} appends the mutations of a batch, then commits them
+ * before publishing the batch: all the concurrent writes of a batch share a single <code>fsync</code>
+ * (group commit). The durability (<code>app.person.wal.durability</code>) is either:
+ * <ul>
+ *     <li><code>sync</code>: each batch is written and forced to disk
+ *     before the callers get their response</li>
+ *     <li><code>batched</code>: each batch is written to the file (it survives a crash of the application),
+ *     and forced to disk every <code>app.person.wal.flush-interval</code></li>
+ *     <li><code>async</code>: the batches are buffered in memory,
+ *     then written and forced to disk every <code>app.person.wal.flush-interval</code></li>
+ * </ul>
+ * At startup, the log is replayed on top of the data loaded from the data file (or its snapshot),
+ * and on top of the data file reloaded (see {@link #replay(List, Set)}).
+ * <p>
+ * After a checkpoint (see {@link com.ericbouchut.springboot.safetynet.data.Checkpointer}),
+ * the records included in the checkpoint are compacted ({@link #compact(long)}):
+ * only the last mutations of each person are kept, the ones needed to replay them over another data file.
+ * So the log grows with the number of persons changed, not with the number of mutations.
+ * <p>
+ * The log file (all numbers are big-endian) contains the magic number <code>"SNWL"</code> (4 bytes),
+ * the format {@link #VERSION version} (int), the base sequence number (long: the records of the log come after it),
+ * then the records. A record is:
+ * <ul>
+ *     <li>the payload length (int)</li>
+ *     <li>the CRC32 checksum of the payload (int)</li>
+ *     <li>the payload: the log sequence number (long), the operation (byte),
+ *     then the fields of the person (strings, written as in {@link com.ericbouchut.springboot.safetynet.data.SnapshotStore})</li>
+ * </ul>
+ * A truncated or corrupt record (for instance, when the application crashed during a write)
+ * ends the log: it is dropped, with the records after it.
+ * <p>
+ * When a commit fails, its records are discarded (their sequence numbers are reused),
+ * and the file is truncated back to the last record written, so that the failed mutations are never replayed.
+ * If the file cannot be truncated back, the log is failed: the next appends and commits are refused.
+ */
+@Component
+@Log4j2
+public class WriteAheadLog implements AutoCloseable {
+    static final int VERSION = 2;
+
+    private static final byte[] MAGIC = {'S', 'N', 'W', 'L'};
+    private static final int HEADER_LENGTH = MAGIC.length + Integer.BYTES + Long.BYTES;
+    private static final int RECORD_HEADER_LENGTH = Integer.BYTES + Integer.BYTES;
+    private static final int NULL_LENGTH = -1;
+
+    /**
+     * Larger than any record: a larger length is corrupt.
+     */
+    static final int MAX_RECORD_LENGTH = 1 << 20;
+
+    public enum Durability {
+        /** Force each batch to disk before acknowledging it */
+        SYNC,
+        /** Write each batch, force it to disk periodically */
+        BATCHED,
+        /** Buffer the batches in memory, write and force them periodically */
+        ASYNC
+    }
+
+    public enum Operation { CREATE, DELETE }
+
+    /**
+     * A logged mutation.
+     *
+     * @param lsn       the log sequence number, incremented for each record
+     * @param operation create or delete
+     * @param person    the person created or deleted
+     */
+    public record Entry(long lsn, Operation operation, Person person) {}
+
+    /**
+     * Where to write the log, or <code>null</code> when the log is disabled.
+     */
+    private final Path logFile;
+    private final Durability durability;
+    private final Duration flushInterval;
+
+    /**
+     * The open log file (package-private: the tests close it to make the writes fail).
+     */
+    FileChannel channel;
+    private ScheduledExecutorService flusher;
+
+    /**
+     * The records appended since the last write to the file.
+     */
+    private final ByteArrayOutputStream pending = new ByteArrayOutputStream();
+
+    /**
+     * True when some records were written to the file, but not forced to disk yet.
+     */
+    private boolean dirty;
+
+    private long lastLsn;
+
+    /**
+     * The length of the file up to the last record written, and the sequence number of this record.
+     */
+    private long writtenLength;
+    private long writtenLsn;
+
+    /**
+     * Why the log is failed (a failed write that could not be undone), <code>null</code> while it works.
+     */
+    private IOException failure;
+
+    /**
+     * @param logFile       the path of the log file, configured with the <code>app.person.wal.file</code> property.
+     *                      The log is disabled when empty.
+     * @param durability    when to force the log to disk
+     * @param flushInterval how often to force the log to disk (<code>batched</code> and <code>async</code> durability)
+     */
+    public WriteAheadLog(
+            @Value("${app.person.wal.file:}")
+            String logFile,
+            @Value("${app.person.wal.durability:sync}")
+            Durability durability,
+            @Value("${app.person.wal.flush-interval:100ms}")
+            Duration flushInterval
+    ) {
+        this.logFile       = StringUtils.hasText(logFile) ? Path.of(logFile) : null;
+        this.durability    = durability;
+        this.flushInterval = flushInterval;
+    }
+
+    public boolean isEnabled() {
+        return logFile != null;
+    }
+
+    public Durability getDurability() {
+        return durability;
+    }
+
+    /**
+     * Read the records of the log, then open it to append new records.
+     *
+     * @param minLsn the sequence number of the last mutation already saved elsewhere (checkpoint):
+     *               the new records are numbered after it, even if the log is missing
+     * @return the records to replay, in the log order (empty when the log is disabled)
+     * @throws IOException when the log cannot be read or opened
+     */
+    public synchronized List<Entry> open(long minLsn) throws IOException {
+        if (!isEnabled()) {
+            return List.of();
+        }
+
+        List<Entry> entries = new ArrayList<>();
+        long[] baseLsn = new long[1];
+        long validLength = read(entries, new ArrayList<>(), baseLsn);
+        // The records compacted by a checkpoint come before the base sequence number
+        lastLsn = Math.max(Math.max(minLsn, baseLsn[0]), entries.isEmpty() ? 0 : entries.get(entries.size() - 1).lsn());
+
+        if (logFile.getParent() != null) {
+            Files.createDirectories(logFile.getParent());
+        }
+        channel = FileChannel.open(logFile, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        if (validLength == 0) {
+            // New (or unreadable) log: start over with a header
+            channel.truncate(0);
+            channel.write(header(lastLsn), 0);
+            channel.force(false);
+            validLength = HEADER_LENGTH;
+        } else if (channel.size() > validLength) {
+            log.warn("Dropping the {} bytes at the end of the write-ahead log {} (truncated or corrupt record)",
+                    channel.size() - validLength, logFile);
+            channel.truncate(validLength);
+        }
+        channel.position(validLength);
+        writtenLength = validLength;
+        writtenLsn    = lastLsn;
+        failure       = null;
+
+        if (durability != Durability.SYNC) {
+            flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "wal-flusher");
+                thread.setDaemon(true);
+                return thread;
+            });
+            long intervalMillis = Math.max(1, flushInterval.toMillis());
+            flusher.scheduleWithFixedDelay(this::flushQuietly, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+        }
+
+        log.info("Write-ahead log {} opened ({} records to replay, {} durability)", logFile, entries.size(), durability);
+        return entries;
+    }
+
+    /**
+     * Append a record to the current batch (not written yet, see {@link #commit()}).
+     *
+     * @return the log sequence number of the record
+     * @throws IllegalStateException when the log is failed
+     */
+    public synchronized long append(Operation operation, Person person) {
+        if (failure != null) {
+            throw new IllegalStateException("The write-ahead log " + logFile + " is failed", failure);
+        }
+        long lsn = ++lastLsn;
+        ByteArrayOutputStream payloadBytes = new ByteArrayOutputStream(128);
+        try (DataOutputStream payload = new DataOutputStream(payloadBytes)) {
+            payload.writeLong(lsn);
+            payload.writeByte(operation.ordinal());
+            writeString(payload, person.getFirstName());
+            writeString(payload, person.getLastName());
+            writeString(payload, person.getAddress());
+            writeString(payload, person.getCity());
+            writeString(payload, person.getZip());
+            writeString(payload, person.getPhone());
+            writeString(payload, person.getEmail());
+        } catch (IOException e) {
+            // Cannot happen with a ByteArrayOutputStream
+            throw new UncheckedIOException(e);
+        }
+
+        CRC32 crc = new CRC32();
+        crc.update(payloadBytes.toByteArray());
+        ByteBuffer recordHeader = ByteBuffer.allocate(RECORD_HEADER_LENGTH)
+                .putInt(payloadBytes.size())
+                .putInt((int) crc.getValue());
+        pending.writeBytes(recordHeader.array());
+        pending.writeBytes(payloadBytes.toByteArray());
+        return lsn;
+    }
+
+    /**
+     * Commit the records appended since the last commit, according to the durability.
+     *
+     * @throws IOException when the records cannot be written: they are discarded
+     */
+    public synchronized void commit() throws IOException {
+        if (!isEnabled()) {
+            pending.reset();
+            return;
+        }
+        if (failure != null) {
+            pending.reset();
+            throw new IOException("The write-ahead log " + logFile + " is failed", failure);
+        }
+        long lengthBefore = writtenLength;
+        long lsnBefore    = writtenLsn;
+        try {
+            switch (durability) {
+                case SYNC -> {
+                    write();
+                    channel.force(false);
+                    dirty = false;
+                }
+                case BATCHED -> write();
+                case ASYNC -> {
+                    // Written by the flusher
+                }
+            }
+        } catch (IOException e) {
+            discard(lengthBefore, lsnBefore, e);
+            throw e;
+        }
+    }
+
+    /**
+     * Write the pending records, then force the log to disk.
+     *
+     * @throws IOException when the records cannot be written
+     */
+    public synchronized void flush() throws IOException {
+        if (channel == null || failure != null) {
+            return;
+        }
+        write();
+        if (dirty) {
+            channel.force(false);
+            dirty = false;
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (flusher != null) {
+            flusher.shutdownNow();
+            flusher = null;
+        }
+        if (channel != null) {
+            try {
+                flush();
+            } finally {
+                channel.close();
+                channel = null;
+            }
+        }
+    }
+
+    /**
+     * Read all the records of the log, including the pending ones (they are written first).
+     *
+     * @return the records, in the log order (empty when the log is disabled or closed)
+     * @throws IOException when the log cannot be read
+     */
+    public synchronized List<Entry> entries() throws IOException {
+        if (channel == null) {
+            return List.of();
+        }
+        flush();
+        List<Entry> entries = new ArrayList<>();
+        read(entries, new ArrayList<>(), new long[1]);
+        return entries;
+    }
+
+    /**
+     * Apply logged mutations to persons, in the log order, the way the {@link PersonWriter} applied them:
+     * the creation of an existing person, and the deletion of a missing one, are ignored.
+     *
+     * @param entries the records of the log
+     * @param persons the persons to change
+     */
+    public static void replay(List<Entry> entries, Set<Person> persons) {
+        for (Entry entry : entries) {
+            if (entry.operation() == Operation.CREATE) {
+                persons.add(entry.person());
+            } else {
+                persons.remove(entry.person());
+            }
+        }
+    }
+
+    /**
+     * Compact the records up to a sequence number (included), once they are saved elsewhere (checkpoint).
+     * <p>
+     * Of these records, only the last ones of each person are kept (a deletion, a creation,
+     * or a deletion followed by a creation): replayed over any persons, they give the same persons as all the records.
+     * So the mutations included in a checkpoint can still be replayed over a new data file,
+     * but the log does not grow with the mutations of the same persons.
+     * <p>
+     * The kept records, then the records after the checkpoint, are copied to a new log,
+     * that replaces the current one atomically.
+     * The mutations are not appended in the meantime.
+     *
+     * @param upToLsn the sequence number of the last record to compact
+     * @return the number of bytes reclaimed
+     * @throws IOException when the log cannot be rewritten
+     */
+    public synchronized long compact(long upToLsn) throws IOException {
+        if (channel == null) {
+            return 0;
+        }
+        if (failure != null) {
+            throw new IOException("The write-ahead log " + logFile + " is failed", failure);
+        }
+        flush();
+
+        List<Entry> entries = new ArrayList<>();
+        List<Long> offsets = new ArrayList<>();
+        long validLength = read(entries, offsets, new long[1]);
+
+        // The records to compact, then the first record to keep as is
+        int keepFrom = 0;
+        while (keepFrom < entries.size() && entries.get(keepFrom).lsn() <= upToLsn) {
+            keepFrom++;
+        }
+        offsets.add(validLength);
+        long previousSize = channel.size();
+
+        Path temporaryFile = Files.createTempFile(logFile.toAbsolutePath().getParent(), logFile.getFileName().toString(), ".tmp");
+        try (FileChannel newChannel = FileChannel.open(temporaryFile, StandardOpenOption.WRITE)) {
+            newChannel.write(header(upToLsn));
+            for (int i : lastMutations(entries.subList(0, keepFrom))) {
+                transfer(offsets.get(i), offsets.get(i + 1), newChannel);
+            }
+            transfer(offsets.get(keepFrom), validLength, newChannel);
+            newChannel.force(false);
+        } catch (IOException e) {
+            Files.deleteIfExists(temporaryFile);
+            throw e;
+        }
+
+        // The current log stays open (and in use) until the new one replaces it
+        try {
+            Files.move(temporaryFile, logFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            Files.deleteIfExists(temporaryFile);
+            throw e;
+        }
+        FileChannel previousChannel = channel;
+        try {
+            channel = FileChannel.open(logFile, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            channel.position(channel.size());
+            writtenLength = channel.size();
+        } catch (IOException e) {
+            // The records would be appended to the replaced file
+            failure = e;
+            throw e;
+        } finally {
+            if (channel != previousChannel) {
+                previousChannel.close();
+            }
+        }
+
+        return previousSize - channel.size();
+    }
+
+    /**
+     * @param entries records
+     * @return the indexes of the last records of each person, in the log order:
+     * the last deletion, and the first creation after it (or the first creation, without deletion)
+     */
+    private static List<Integer> lastMutations(List<Entry> entries) {
+        // Key: a person, Value: the indexes of its last records
+        Map<Person, List<Integer>> lastMutations = new HashMap<>();
+        for (int i = 0; i < entries.size(); i++) {
+            Entry entry = entries.get(i);
+            if (entry.operation() == Operation.DELETE) {
+                // Whatever happened before, the person does not exist after it
+                lastMutations.put(entry.person(), new ArrayList<>(List.of(i)));
+            } else {
+                List<Integer> indexes = lastMutations.computeIfAbsent(entry.person(), person -> new ArrayList<>());
+                // A creation after another one is ignored: the person exists already
+                if (indexes.isEmpty() || entries.get(indexes.get(indexes.size() - 1)).operation() == Operation.DELETE) {
+                    indexes.add(i);
+                }
+            }
+        }
+        return lastMutations.values().stream().flatMap(List::stream).sorted().toList();
+    }
+
+    /**
+     * Copy a range of the log to another file.
+     */
+    private void transfer(long from, long to, FileChannel target) throws IOException {
+        long position = from;
+        while (position < to) {
+            position += channel.transferTo(position, to - position, target);
+        }
+    }
+
+    /**
+     * @return the size of the log file in bytes (0 when closed)
+     */
+    public synchronized long size() throws IOException {
+        return channel == null ? 0 : channel.size();
+    }
+
+    /**
+     * Write the pending records to the file (without forcing it to disk).
+     * When the write fails, the records written partially are removed from the file,
+     * and the records stay pending.
+     *
+     * @throws IOException when the records cannot be written
+     */
+    private void write() throws IOException {
+        if (pending.size() == 0) {
+            return;
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(pending.toByteArray());
+        try {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        } catch (IOException e) {
+            truncateTo(writtenLength, e);
+            throw e;
+        }
+        writtenLength += buffer.capacity();
+        writtenLsn     = lastLsn;
+        pending.reset();
+        dirty = true;
+    }
+
+    /**
+     * Undo a failed commit: drop its records, written or pending, and reuse their sequence numbers.
+     */
+    private void discard(long length, long lsn, IOException cause) {
+        pending.reset();
+        lastLsn    = lsn;
+        writtenLsn = lsn;
+        if (writtenLength != length) {
+            writtenLength = length;
+            truncateTo(length, cause);
+        }
+    }
+
+    /**
+     * Remove the end of the file from a length (a record written partially, or not forced).
+     * Fails the log when the file cannot be truncated.
+     */
+    private void truncateTo(long length, IOException cause) {
+        try {
+            channel.truncate(length);
+            channel.position(length);
+        } catch (IOException e) {
+            e.addSuppressed(cause);
+            failure = e;
+            log.error("The write-ahead log {} is failed: the next person mutations are refused", logFile, e);
+        }
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (IOException e) {
+            log.error("Cannot flush the write-ahead log {}", logFile, e);
+        }
+    }
+
+    private static ByteBuffer header(long baseLsn) {
+        return ByteBuffer.allocate(HEADER_LENGTH).put(MAGIC).putInt(VERSION).putLong(baseLsn).flip();
+    }
+
+    /**
+     * Read the valid records of the log.
+     *
+     * @param entries where to add the records read
+     * @param offsets where to add the offset of each record read
+     * @param baseLsn set to the base sequence number of the log
+     * @return the length of the valid part of the log (header and valid records), 0 if there is no valid header
+     */
+    private long read(List<Entry> entries, List<Long> offsets, long[] baseLsn) throws IOException {
+        if (!Files.exists(logFile)) {
+            return 0;
+        }
+
+        try (InputStream file = Files.newInputStream(logFile);
+             DataInputStream input = new DataInputStream(new BufferedInputStream(file))) {
+            byte[] magic = new byte[MAGIC.length];
+            try {
+                input.readFully(magic);
+                if (!Arrays.equals(magic, MAGIC) || input.readInt() != VERSION) {
+                    log.warn("Ignoring the write-ahead log {} (unknown format)", logFile);
+                    return 0;
+                }
+                baseLsn[0] = input.readLong();
+            } catch (EOFException e) {
+                return 0;
+            }
+
+            long fileSize = Files.size(logFile);
+            long validLength = HEADER_LENGTH;
+            while (true) {
+                try {
+                    int length = input.readInt();
+                    int checksum = input.readInt();
+                    // A corrupt length: do not allocate it
+                    if (length <= 0 || length > MAX_RECORD_LENGTH
+                            || length > fileSize - validLength - RECORD_HEADER_LENGTH) {
+                        return validLength;
+                    }
+                    byte[] payload = new byte[length];
+                    input.readFully(payload);
+
+                    CRC32 crc = new CRC32();
+                    crc.update(payload);
+                    if ((int) crc.getValue() != checksum) {
+                        return validLength;
+                    }
+                    entries.add(readEntry(ByteBuffer.wrap(payload)));
+                    offsets.add(validLength);
+                    validLength += RECORD_HEADER_LENGTH + length;
+                } catch (EOFException | RuntimeException e) {
+                    // Truncated or corrupt record: the log ends here
+                    return validLength;
+                }
+            }
+        }
+    }
+
+    private static Entry readEntry(ByteBuffer payload) {
+        long lsn = payload.getLong();
+        Operation operation = Operation.values()[payload.get()];
+        Person person = new Person(
+                readString(payload),
+                readString(payload),
+                readString(payload),
+                readString(payload),
+                readString(payload),
+                readString(payload),
+                readString(payload)
+        );
+        return new Entry(lsn, operation, person);
+    }
+
+    private static void writeString(DataOutputStream output, String value) throws IOException {
+        if (value == null) {
+            output.writeInt(NULL_LENGTH);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        output.writeInt(bytes.length);
+        output.write(bytes);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length == NULL_LENGTH) {
+            return null;
+        }
+        if (length < 0 || length > buffer.remaining()) {
+            throw new IllegalArgumentException("Corrupt string length: " + length);
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
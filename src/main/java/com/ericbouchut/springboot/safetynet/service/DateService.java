@@ -9,9 +9,31 @@ import java.time.temporal.Temporal;
 
 /**
  * This service contains utility methods to calculate dates.
+ * <p>
+ * The current date is cached for the day:
+ * the ages and the child status of all the medical records are computed
+ * from the same per-day values (today's date and the child birthdate cutoff),
+ * without calling <code>LocalDate.now()</code> for each of them.
+ * The cache rolls over at midnight (in the time zone of the {@link Clock}).
  */
 @Component
 public final class DateService {
+    /**
+     * A person aged 18 or less is a child.
+     */
+    private static final int CHILD_MAX_AGE = 18;
+
+    /**
+     * The values computed once per day.
+     *
+     * @param today               the current date
+     * @param startMillis         the start of the day (midnight, in the time zone of the clock), in epoch milliseconds
+     * @param endMillis           the start of the next day, in epoch milliseconds
+     * @param childCutoffEpochDay the epoch day of the last date of birth of the persons older than 18:
+     *                            a person born after this day is a child
+     */
+    private record Day(LocalDate today, long startMillis, long endMillis, long childCutoffEpochDay) {}
+
     /**
      * The Clock is injected to provide a way for tests to use a <b>fixed</b> date.
      *
@@ -19,8 +41,11 @@ public final class DateService {
      */
     private final Clock clock;
 
+    private volatile Day day;
+
     public DateService(Clock clock) {
         this.clock = clock;
+        this.day = computeDay();
     }
 
     /**
@@ -41,7 +66,19 @@ public final class DateService {
      * @return the age
      */
     public int calculateAge(Temporal dateOfBirth) {
-        return yearsBetween(dateOfBirth, LocalDate.now(clock));
+        LocalDate today = today().today();
+        if (!(dateOfBirth instanceof LocalDate birthDate)) {
+            return yearsBetween(dateOfBirth, today);
+        }
+
+        // Same result as yearsBetween(), without the period computation
+        int age = today.getYear() - birthDate.getYear();
+        if (today.getMonthValue() < birthDate.getMonthValue()
+                || (today.getMonthValue() == birthDate.getMonthValue()
+                    && today.getDayOfMonth() < birthDate.getDayOfMonth())) {
+            age--; // No birthday yet this year
+        }
+        return age;
     }
 
     /**
@@ -49,6 +86,50 @@ public final class DateService {
      * @return a boolean, <code>true</code> if the age calculated from the date of birth is 18 or less
      */
     public boolean isChildren(Temporal dateOfBirth) {
-        return calculateAge(dateOfBirth) <= 18;
+        if (dateOfBirth instanceof LocalDate birthDate) {
+            return birthDate.toEpochDay() > today().childCutoffEpochDay();
+        }
+        return calculateAge(dateOfBirth) <= CHILD_MAX_AGE;
+    }
+
+    /**
+     * @return the epoch day of the last date of birth of the persons older than 18 today:
+     * the persons born after this day are children
+     * @see #isChildren(Temporal)
+     */
+    public long getChildCutoffEpochDay() {
+        return today().childCutoffEpochDay();
+    }
+
+    /**
+     * @return the current date (cached for the day)
+     */
+    public LocalDate getToday() {
+        return today().today();
+    }
+
+    /**
+     * @return the values of the current day, computed again after midnight
+     * (or when the clock goes backward)
+     */
+    private Day today() {
+        Day current = day;
+        long now = clock.millis();
+        if (now < current.startMillis() || now >= current.endMillis()) {
+            current = computeDay();
+            day = current;
+        }
+        return current;
+    }
+
+    private Day computeDay() {
+        LocalDate today = LocalDate.now(clock);
+        return new Day(
+                today,
+                today.atStartOfDay(clock.getZone()).toInstant().toEpochMilli(),
+                today.plusDays(1).atStartOfDay(clock.getZone()).toInstant().toEpochMilli(),
+                // A person born on this day, or before, is 19 or older
+                today.minusYears(CHILD_MAX_AGE + 1L).toEpochDay()
+        );
     }
 }
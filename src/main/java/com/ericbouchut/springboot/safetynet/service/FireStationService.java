@@ -1,18 +1,19 @@
 package com.ericbouchut.springboot.safetynet.service;
 
 import com.ericbouchut.springboot.safetynet.dto.FireStationDTO;
+import com.ericbouchut.springboot.safetynet.dto.PageDTO;
+import com.ericbouchut.springboot.safetynet.exception.InvalidCursorException;
 import com.ericbouchut.springboot.safetynet.model.FireStation;
-import com.ericbouchut.springboot.safetynet.model.MedicalRecord;
-import com.ericbouchut.springboot.safetynet.model.Person;
 import com.ericbouchut.springboot.safetynet.repository.FireStationRepository;
-import com.ericbouchut.springboot.safetynet.repository.MedicalRecordRepository;
 import com.ericbouchut.springboot.safetynet.repository.PersonRepository;
+import com.ericbouchut.springboot.safetynet.repository.PersonTable;
+import com.ericbouchut.springboot.safetynet.repository.StationCensusIndex;
 import org.springframework.stereotype.Service;
 
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
-import java.util.Map;
 import java.util.Set;
-import java.util.stream.Collectors;
 
 @Service
 public class FireStationService {
@@ -20,20 +21,24 @@ public class FireStationService {
 
     private final FireStationRepository fireStationRepository;
     private final PersonRepository personRepository;
-    private final MedicalRecordRepository medicalRecordRepository;
+
+    /**
+     * Caches the results of the finder queries, per generation of the entities they read.
+     */
+    private final QueryCache queryCache;
 
     public FireStationService(
             DateService dateService,
 
             FireStationRepository fireStationRepository,
             PersonRepository personRepository,
-            MedicalRecordRepository medicalRecordRepository
+            QueryCache queryCache
     ) {
         this.dateService = dateService;
 
         this.fireStationRepository = fireStationRepository;
         this.personRepository = personRepository;
-        this.medicalRecordRepository = medicalRecordRepository;
+        this.queryCache = queryCache;
     }
 
     // ~~~~~~~~~~~~~~~~~~~~~~~~
@@ -47,6 +52,31 @@ public class FireStationService {
         return fireStationRepository.getAllFireStations();
     }
 
+    /**
+     * Return a page of the fire stations, sorted by address then station number.
+     *
+     * @param cursor the cursor returned with the previous page, <code>null</code> for the first page
+     * @param limit  the maximum number of fire stations
+     * @return a page of fire stations
+     * @throws InvalidCursorException if the cursor was not returned by this method
+     */
+    public PageDTO<FireStation> getFireStationsPage(String cursor, int limit) {
+        FireStation after = null;
+        if (cursor != null) {
+            List<String> key = PageCursor.decode(cursor, 2);
+            try {
+                after = new FireStation(key.get(0), key.get(1).isEmpty() ? null : Integer.valueOf(key.get(1)));
+            } catch (NumberFormatException e) {
+                throw new InvalidCursorException("Invalid cursor: " + cursor, e);
+            }
+        }
+        return PageCursor.toPage(
+                fireStationRepository.getFireStationsPage(after, limit + 1),
+                limit,
+                fireStation -> Arrays.asList(fireStation.getAddress(), fireStation.getNumber())
+        );
+    }
+
     public List<FireStation> getFireStationsByNumber(Integer fireStationNumber) {
         return fireStationRepository.getFireStationsByNumber(fireStationNumber);
     }
@@ -55,41 +85,43 @@ public class FireStationService {
     //  Custom Finder Methods
     // ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
 
+    /**
+     * The adults and children counts are read from the census of the station number,
+     * maintained when the data changes (see {@link StationCensusIndex}):
+     * only the list of persons is built, then cached until the data (or the day) changes.
+     *
+     * @param fireStationNumber the number of a fire station
+     * @return the persons served by the fire stations with this number, and the adults and children counts
+     */
     public FireStationDTO getFireStationDTOByNumber(Integer fireStationNumber) {
+        return queryCache.get(
+                "firestation",
+                Collections.singletonList(fireStationNumber),
+                () -> computeFireStationDTOByNumber(fireStationNumber)
+        );
+    }
+
+    private FireStationDTO computeFireStationDTOByNumber(Integer fireStationNumber) {
         // Naming cargo cult on steroids ;-)!
         Set<String> fireStationAddresses =
                 fireStationRepository.getFireStationAddressesByNumber(fireStationNumber);
-        Set<Person> personsServedByFireStation =
-                personRepository.getPersonsByAddresses(fireStationAddresses);
-
-        Map<Person, List<MedicalRecord>> medicalRecordsByPersonServedByFireStation =
-                medicalRecordRepository.getMedicalRecordsByPersons(personsServedByFireStation);
-
-        Map<Boolean, Long> countByIsChild = medicalRecordsByPersonServedByFireStation
-            .values()
-            .stream()
-            .flatMap(List::stream)
-            .distinct()  // TODO: Improve the design here, building a List + distinct is clunky!
-            .collect(
-                // Generate a Map with 2 entries (lists are guaranteed to exist):
-                // Key = true  => Value = count of children's medical records
-                // Key = false => Value = count of adults     medical records
-                Collectors.partitioningBy(
-                        m -> dateService.isChildren(m.getDateOfBirth()), // true (children), false (adult)
-                        Collectors.counting()      // count of the corresponding medical records
-                )
-            );
+        // The residents are read from the columns of the person table: no Person to dereference
+        PersonTable persons = personRepository.getPersonTable();
+        int[] personsServedByFireStation = persons.rowsAt(fireStationAddresses);
+
+        StationCensusIndex.Census census = fireStationRepository.getCensusByNumber(fireStationNumber);
+        long childCutoffEpochDay = dateService.getChildCutoffEpochDay();
 
         // JC> Gather the ingredients ... to build a FireStationDTO :-)
-        Long childrenCount = countByIsChild.get(true);
-        Long adultsCount   = countByIsChild.get(false);
-        List<FireStationDTO.PersonDTO> personsDTO = personsServedByFireStation.stream()
-                .map(p ->
+        Long childrenCount = census.childrenCount(childCutoffEpochDay);
+        Long adultsCount   = census.adultsCount(childCutoffEpochDay);
+        List<FireStationDTO.PersonDTO> personsDTO = Arrays.stream(personsServedByFireStation)
+                .mapToObj(row ->
                         new FireStationDTO.PersonDTO(
-                                p.getFirstName(),
-                                p.getLastName(),
-                                p.getAddress(),
-                                p.getPhone()
+                                persons.firstName(row),
+                                persons.lastName(row),
+                                persons.address(row),
+                                persons.phone(row)
                         )
                 )
                 .toList();
@@ -0,0 +1,80 @@
+package com.ericbouchut.springboot.safetynet.service;
+
+import com.ericbouchut.springboot.safetynet.dto.PageDTO;
+import com.ericbouchut.springboot.safetynet.exception.InvalidCursorException;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.Function;
+
+/**
+ * The cursors of the pages of a list.
+ * <p>
+ * A cursor is opaque for the clients: it holds the sort key of the last element of a page,
+ * so the next page starts after this element, wherever it is now
+ * (the elements added or removed since the previous page do not shift the next ones).
+ * <p>
+ * Format: the fields of the key separated by <code>U+001F</code> (unit separator),
+ * encoded in URL-safe Base64 without padding. A <code>null</code> field is encoded as an empty one.
+ */
+public final class PageCursor {
+
+    /**
+     * The maximum number of elements of a page.
+     */
+    public static final int MAX_LIMIT = 1000;
+
+    private static final String SEPARATOR = "\u001F";
+
+    private PageCursor() {
+    }
+
+    /**
+     * Return a page of the elements fetched after the cursor.
+     *
+     * @param fetched the elements after the cursor: at most <code>limit + 1</code>
+     *                (the extra one tells that there is a next page)
+     * @param limit   the maximum number of elements of the page
+     * @param key     the fields of the sort key of an element
+     * @return the page, with the cursor of its last element if there is a next page
+     */
+    public static <T> PageDTO<T> toPage(List<T> fetched, int limit, Function<T, List<?>> key) {
+        if (fetched.size() <= limit) {
+            return new PageDTO<>(fetched, null);
+        }
+        List<T> items = fetched.subList(0, limit);
+        return new PageDTO<>(items, encode(key.apply(items.get(limit - 1))));
+    }
+
+    /**
+     * @param fields the fields of a sort key
+     * @return the cursor
+     */
+    static String encode(List<?> fields) {
+        String key = String.join(SEPARATOR, fields.stream().map(field -> Objects.toString(field, "")).toList());
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(key.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @param cursor     a cursor returned by {@link #toPage(List, int, Function)}
+     * @param fieldCount the number of fields of the sort key
+     * @return the fields of the sort key
+     * @throws InvalidCursorException if it is not a cursor with this number of fields
+     */
+    public static List<String> decode(String cursor, int fieldCount) {
+        String key;
+        try {
+            key = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            throw new InvalidCursorException("Invalid cursor: " + cursor, e);
+        }
+        String[] fields = key.split(SEPARATOR, -1);
+        if (fields.length != fieldCount) {
+            throw new InvalidCursorException("Invalid cursor: " + cursor);
+        }
+        return Arrays.asList(fields);
+    }
+}
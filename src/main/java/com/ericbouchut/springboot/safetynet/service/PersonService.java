@@ -2,26 +2,53 @@ package com.ericbouchut.springboot.safetynet.service;
 
 import com.ericbouchut.springboot.safetynet.dto.ChildAlertDTO;
 import com.ericbouchut.springboot.safetynet.dto.FloodDTO;
+import com.ericbouchut.springboot.safetynet.dto.PageDTO;
 import com.ericbouchut.springboot.safetynet.dto.PersonInfoDTO;
+import com.ericbouchut.springboot.safetynet.exception.InvalidCursorException;
 import com.ericbouchut.springboot.safetynet.mapper.ChildAlertMapper;
+import com.ericbouchut.springboot.safetynet.mapper.FloodMapper;
 import com.ericbouchut.springboot.safetynet.mapper.PersonInfoMapper;
-import com.ericbouchut.springboot.safetynet.model.FireStation;
 import com.ericbouchut.springboot.safetynet.model.MedicalRecord;
 import com.ericbouchut.springboot.safetynet.model.Person;
+import com.ericbouchut.springboot.safetynet.repository.DataStore;
+import com.ericbouchut.springboot.safetynet.repository.Dataset.EntityType;
 import com.ericbouchut.springboot.safetynet.repository.FireStationRepository;
+import com.ericbouchut.springboot.safetynet.repository.HouseholdIndex;
 import com.ericbouchut.springboot.safetynet.repository.MedicalRecordRepository;
 import com.ericbouchut.springboot.safetynet.repository.PersonRepository;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
-import java.util.stream.Collectors;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 
 @Service
 public class PersonService {
+    /**
+     * What <code>/personInfo</code> and <code>/childAlert</code> read: not the fire stations.
+     */
+    private static final Set<EntityType> PERSONS_AND_MEDICAL_RECORDS =
+            Collections.unmodifiableSet(EnumSet.of(EntityType.PERSONS, EntityType.MEDICAL_RECORDS));
+
     private final DateService dateService;
 
     private final PersonRepository personRepository;
@@ -30,25 +57,77 @@ public class PersonService {
 
     private final PersonInfoMapper personInfoMapper;
     private final ChildAlertMapper childAlertMapper;
+    private final FloodMapper floodMapper;
 
+    /**
+     * Pins the dataset of the request in the flood tasks.
+     */
+    private final DataStore dataStore;
+
+    /**
+     * Caches the results of the finder queries, per generation of the entities they read.
+     */
+    private final QueryCache queryCache;
+
+    /**
+     * Computes the households of the stations of a flood request in parallel.
+     * Bounded: when its queue is full, the request thread runs the task itself.
+     */
+    private final ExecutorService floodExecutor;
+
+    /**
+     * @param floodParallelism   the number of threads computing the households of the stations
+     *                           (<code>app.flood.parallelism</code>)
+     * @param floodQueueCapacity the number of station tasks waiting for a thread
+     *                           (<code>app.flood.queue-capacity</code>)
+     */
     public PersonService(
             DateService dateService,
 
             PersonRepository personRepository,
             FireStationRepository fireStationRepository,
             MedicalRecordRepository medicalRecordRepository,
+            DataStore dataStore,
+            QueryCache queryCache,
 
             PersonInfoMapper personInfoMapper,
-            ChildAlertMapper childAlertMapper
+            ChildAlertMapper childAlertMapper,
+            FloodMapper floodMapper,
+
+            @Value("${app.flood.parallelism:4}")
+            int floodParallelism,
+            @Value("${app.flood.queue-capacity:64}")
+            int floodQueueCapacity
     ) {
         this.dateService = dateService;
 
         this.personRepository = personRepository;
         this.fireStationRepository = fireStationRepository;
         this.medicalRecordRepository = medicalRecordRepository;
+        this.dataStore = dataStore;
+        this.queryCache = queryCache;
 
         this.personInfoMapper = personInfoMapper;
         this.childAlertMapper = childAlertMapper;
+        this.floodMapper = floodMapper;
+
+        AtomicInteger threadCount = new AtomicInteger();
+        this.floodExecutor = new ThreadPoolExecutor(
+                floodParallelism, floodParallelism,
+                0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(floodQueueCapacity),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "flood-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.CallerRunsPolicy()
+        );
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        floodExecutor.shutdown();
     }
 
     // ~~~~~~~~~~~~~~~~~~~~~~~~~~
@@ -59,6 +138,39 @@ public class PersonService {
         return personRepository.getAllPersons();
     }
 
+    /**
+     * Return a page of the persons, sorted by last name, first name, address, city and zip.
+     *
+     * @param cursor the cursor returned with the previous page, <code>null</code> for the first page
+     * @param limit  the maximum number of persons
+     * @return a page of persons
+     * @throws InvalidCursorException if the cursor was not returned by this method
+     */
+    public PageDTO<Person> getPersonsPage(String cursor, int limit) {
+        Person after = null;
+        if (cursor != null) {
+            List<String> key = PageCursor.decode(cursor, 5);
+            after = Person.builder()
+                    .lastName(key.get(0))
+                    .firstName(key.get(1))
+                    .address(key.get(2))
+                    .city(key.get(3))
+                    .zip(key.get(4))
+                    .build();
+        }
+        return PageCursor.toPage(
+                personRepository.getPersonsPage(after, limit + 1),
+                limit,
+                person -> Arrays.asList(
+                        person.getLastName(),
+                        person.getFirstName(),
+                        person.getAddress(),
+                        person.getCity(),
+                        person.getZip()
+                )
+        );
+    }
+
     /**
      *
      * @param person the person you want to create
@@ -76,14 +188,19 @@ public class PersonService {
     // Custom Finder Methods
     // ~~~~~~~~~~~~~~~~~~~~~~~~~~
 
+    /**
+     * @param city the city
+     * @return an unmodifiable <code>List</code> of the email addresses of its residents, without duplicates
+     * (precomputed for each city, when the data changes)
+     */
     public List<String> getCityEmails(String city) {
         return personRepository.getEmailsByCity(city);
     }
 
     /**
-     * Return an unmodifiable <code>List</code> (not a <code>Set</code>) of phone numbers,
-     * because several persons can share the same phone number.
-     * We can have duplicate phone numbers.
+     * Return an unmodifiable <code>List</code> of phone numbers, without duplicates
+     * (several persons can share the same phone number).
+     * The list is precomputed for each station number, when the data changes.
      * <br/>
      * Important: Several fire stations can share the same station number.
      *
@@ -91,19 +208,7 @@ public class PersonService {
      * @return a list of inhabitant phone numbers that are served by fire stations sharing the same number.
      */
     public List<String> getPhoneNumbersByFireStation(Integer fireStationNumber) {
-        Set<String> fireStationAddresses = fireStationRepository.getFireStationsByNumber(fireStationNumber)
-                .stream()
-                .map(FireStation::getAddress)
-                .collect(Collectors.toSet());
-
-        return personRepository.getAllPersons()
-                .stream()
-                .filter(p -> fireStationAddresses.contains(p.getAddress()))
-                .map(Person::getPhone)
-                // The Stream now only contains phone numbers
-                // i.e., each person has benn replaced with their phone numbers
-                .distinct() // Remove duplicate phone numbers
-                .toList();
+        return personRepository.getPhonesByFireStationNumber(fireStationNumber);
     }
 
     /**
@@ -115,12 +220,22 @@ public class PersonService {
      * <br/>
      * This function returns a list because several persons can
      * have the same (first and last) name (namesake).
+     * The result is cached until the data (or the day) changes, see {@link QueryCache}.
      *
      * @param firstName the first name
      * @param lastName the last name
      * @return a list with the PersonInfoDTO of each person found
      */
     public List<PersonInfoDTO> getPersonInfo(String firstName, String lastName) {
+        return queryCache.get(
+                "personInfo",
+                Arrays.asList(firstName, lastName),
+                PERSONS_AND_MEDICAL_RECORDS,
+                () -> computePersonInfo(firstName, lastName)
+        );
+    }
+
+    private List<PersonInfoDTO> computePersonInfo(String firstName, String lastName) {
         Set<Person> persons = personRepository.getPersonsByFirstNameAndLastName(firstName, lastName);
 
         Map<Person, List<MedicalRecord>> medicalRecords = medicalRecordRepository.getMedicalRecordsByPersons(persons);
@@ -136,41 +251,127 @@ public class PersonService {
     /**
      * Return a JSON with a list of children (age <= 18) living at this address.
      * Each list entry contains the children's first name, last name, age and a list of other household members.
+     * <p>
+     * The households are read from the household index (a single lookup),
+     * and the children of a household share its list of members.
+     * The result is cached until the data (or the day) changes, see {@link QueryCache}.
      *
      * @param address used to search for children living at this address
+     * @param city    the city of the address, or <code>null</code> for any city
+     * @param zip     the zip code of the address, or <code>null</code> for any zip code
      * @return a <code>List</code> of {@link ChildAlertDTO} or an empty List if there are no children at this address
      */
-    public List<ChildAlertDTO> getChildAlerts(String address) {
-        // People living at this address
-        Set<Person> householdMembers = personRepository.getPersonsByAddress(address);
+    public List<ChildAlertDTO> getChildAlerts(String address, String city, String zip) {
+        return queryCache.get(
+                "childAlert",
+                Arrays.asList(address, city, zip),
+                PERSONS_AND_MEDICAL_RECORDS,
+                () -> computeChildAlerts(address, city, zip)
+        );
+    }
 
-        Map<Person, List<MedicalRecord>> medicalRecordsByHouseholdMember = medicalRecordRepository.getMedicalRecordsByPersons(householdMembers);
+    private List<ChildAlertDTO> computeChildAlerts(String address, String city, String zip) {
+        List<ChildAlertDTO> childAlertsDTO = new ArrayList<>();
+        for (HouseholdIndex.Household household : personRepository.getHouseholds(address, city, zip)) {
+            for (int i = 0; i < household.members().size(); i++) {
+                LocalDate dateOfBirth = household.datesOfBirth().get(i);
+                if (dateOfBirth != null && dateService.isChildren(dateOfBirth)) {
+                    childAlertsDTO.add(childAlertMapper.toDTO(
+                            household.members().get(i),
+                            dateOfBirth,
+                            household.membersOtherThan(i)
+                    ));
+                }
+            }
+        }
+        return Collections.unmodifiableList(childAlertsDTO);
+    }
 
-        List<MedicalRecord> householdMedicalRecords = medicalRecordsByHouseholdMember
-                .values()
-                .stream()
-                // Convert Stream<List<MedicalRecord>> into Stream<MedicalRecord>
-                .flatMap(List::stream)
-                .toList();
+    /**
+     * Return the households served by the fire stations, grouped by address.
+     * <p>
+     * The addresses of the stations are resolved once:
+     * an address served by several of the stations is only listed for the first one.
+     * The households of each station are computed in parallel (see <code>app.flood.parallelism</code>),
+     * then returned in the order of the stations, and by address.
+     * The result is cached until the data (or the day) changes, see {@link QueryCache}.
+     *
+     * @param fireStationNumbers the numbers of the fire stations
+     * @return a {@link FloodDTO} per address, or an empty List if the stations serve nobody
+     */
+    public List<FloodDTO> getFloodDTO(List<Integer> fireStationNumbers) {
+        return queryCache.get(
+                "flood",
+                List.of(new ArrayList<>(fireStationNumbers)),
+                () -> computeFloodDTO(fireStationNumbers)
+        );
+    }
 
-        List<ChildAlertDTO> childAlertsDTO = householdMedicalRecords.stream()
-                // Keep only children medical records in the Stream (remove adults' medical records)
-                .filter(m -> dateService.isChildren(m.getDateOfBirth()))
-                .map( childMedicalRecord -> {
-                        // Build the household members excluding this child
-                        List<Person> otherHouseHoldMembers = householdMembers.stream()
-                                .filter(p -> !p.hasFullName(childMedicalRecord.getFirstName(), childMedicalRecord.getLastName()))
-                                .toList();
-
-                        return childAlertMapper.toDTO(childMedicalRecord, otherHouseHoldMembers);
-                })
-                .toList();
+    private List<FloodDTO> computeFloodDTO(List<Integer> fireStationNumbers) {
+        Set<String> resolvedAddresses = new HashSet<>();
+        List<List<String>> addressesByStation = new ArrayList<>();
+        for (Integer fireStationNumber : new LinkedHashSet<>(fireStationNumbers)) {
+            List<String> addresses = fireStationRepository.getFireStationAddressesByNumber(fireStationNumber)
+                    .stream()
+                    .filter(resolvedAddresses::add) // Not resolved for a previous station
+                    .sorted()
+                    .toList();
+            if (!addresses.isEmpty()) {
+                addressesByStation.add(addresses);
+            }
+        }
+
+        if (addressesByStation.size() <= 1) {
+            // Nothing to run in parallel
+            return addressesByStation.isEmpty() ? List.of() : getFloodDTOByAddresses(addressesByStation.get(0));
+        }
 
-        return childAlertsDTO;
+        List<CompletableFuture<List<FloodDTO>>> floodDTOsByStation = addressesByStation.stream()
+                .map(addresses -> CompletableFuture.supplyAsync(
+                        dataStore.withCurrentDataset(() -> getFloodDTOByAddresses(addresses)),
+                        floodExecutor
+                ))
+                .toList();
+        try {
+            return floodDTOsByStation.stream()
+                    .map(CompletableFuture::join)
+                    .flatMap(List::stream)
+                    .toList();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
     }
 
-    public List<FloodDTO> getFloodDTO(List<Integer> fireStationNumbers) {
-        // TODO: Do it
-        return null;
+    /**
+     * Build the households of the addresses served by a station.
+     * The residents are read already grouped by address (address index),
+     * then joined with their medical records by full name (one key lookup per resident).
+     *
+     * @param addresses the addresses
+     * @return a {@link FloodDTO} per address with residents
+     */
+    private List<FloodDTO> getFloodDTOByAddresses(List<String> addresses) {
+        List<FloodDTO> floodDTOs = new ArrayList<>(addresses.size());
+        for (String address : addresses) {
+            Set<Person> residents = personRepository.getPersonsByAddress(address);
+            if (residents.isEmpty()) {
+                continue;
+            }
+
+            List<FloodDTO.PersonDTO> householdMembers = medicalRecordRepository.getMedicalRecordsByPersons(residents)
+                    .entrySet()
+                    .stream()
+                    .sorted(Map.Entry.comparingByKey(
+                            Comparator.comparing(Person::getLastName).thenComparing(Person::getFirstName)
+                    ))
+                    .map(entry -> floodMapper.toDTO(entry.getKey(), entry.getValue()))
+                    .toList();
+
+            floodDTOs.add(new FloodDTO(address, List.of(new FloodDTO.HouseholdDTO(householdMembers))));
+        }
+        return floodDTOs;
     }
 }
\ No newline at end of file
@@ -0,0 +1,259 @@
+package com.ericbouchut.springboot.safetynet.service;
+
+import com.ericbouchut.springboot.safetynet.repository.ClockCache;
+import com.ericbouchut.springboot.safetynet.repository.DataStore;
+import com.ericbouchut.springboot.safetynet.repository.Dataset;
+import com.ericbouchut.springboot.safetynet.repository.Dataset.EntityType;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.cache.CacheMeterBinder;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * A bounded cache of the results of the finder queries (for instance, <code>GET /childAlert</code>).
+ * <p>
+ * An entry is keyed by the query and its parameters, and remembers the generations of the entities
+ * the query reads in the dataset it was computed from (see {@link Dataset#generation(EntityType)}),
+ * and the day (the ages change at midnight).
+ * It is only returned to a request that reads the same generations on the same day:
+ * a mutation of the persons invalidates the entries of the queries that read the persons,
+ * but not the ones that only read the fire stations
+ * (a mutation that changes nothing keeps the generations, and the entries).
+ * <p>
+ * Eviction:
+ * <ul>
+ *     <li>by size: an entry not read recently is evicted beyond <code>app.query-cache.max-size</code>
+ *     entries (<code>0</code> disables the cache), see {@link ClockCache},</li>
+ *     <li>by time: an entry expires <code>app.query-cache.ttl</code> after it was computed.</li>
+ * </ul>
+ * The statistics are published as the <code>cache.gets</code> (hit and miss), <code>cache.puts</code>,
+ * <code>cache.evictions</code>, <code>cache.size</code> and <code>cache.invalidations</code> metrics,
+ * with the tag <code>cache=queries</code>.
+ * <p>
+ * A hit takes no lock.
+ * The cached results are shared by the requests: they must not be modified.
+ * Two requests that miss the same entry at the same time both compute it.
+ */
+@Component
+public class QueryCache {
+
+    /**
+     * @param query      the name of the query
+     * @param parameters the parameters of the query
+     */
+    private record Key(String query, List<Object> parameters) {}
+
+    /**
+     * @param generations    the generations of the entities read by the query, by {@link EntityType#ordinal()}
+     *                       (0 for the entities it does not read), when the value was computed
+     * @param epochDay       the day the value was computed
+     * @param value          the result of the query
+     * @param expiresAtNanos when the value expires (see {@link #ticker})
+     */
+    private record Entry(long[] generations, long epochDay, Object value, long expiresAtNanos) {}
+
+    private static final Set<EntityType> ALL_ENTITIES = Collections.unmodifiableSet(EnumSet.allOf(EntityType.class));
+
+    private final DataStore dataStore;
+    private final DateService dateService;
+    private final int maxSize;
+    private final long ttlNanos;
+
+    /**
+     * The current time in nanoseconds (<code>System::nanoTime</code>, except in tests).
+     */
+    private final LongSupplier ticker;
+
+    private final ClockCache<Key, Entry> entries;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder puts = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+
+    /**
+     * @param maxSize the maximum number of entries (<code>app.query-cache.max-size</code>), 0 to disable the cache
+     * @param ttl     the time to live of an entry (<code>app.query-cache.ttl</code>)
+     */
+    @Autowired
+    public QueryCache(
+            DataStore dataStore,
+            DateService dateService,
+            MeterRegistry meterRegistry,
+            @Value("${app.query-cache.max-size:10000}")
+            int maxSize,
+            @Value("${app.query-cache.ttl:5m}")
+            Duration ttl
+    ) {
+        this(dataStore, dateService, meterRegistry, maxSize, ttl, System::nanoTime);
+    }
+
+    QueryCache(
+            DataStore dataStore,
+            DateService dateService,
+            MeterRegistry meterRegistry,
+            int maxSize,
+            Duration ttl,
+            LongSupplier ticker
+    ) {
+        this.dataStore   = dataStore;
+        this.dateService = dateService;
+        this.maxSize     = maxSize;
+        this.ttlNanos    = ttl.toNanos();
+        this.ticker      = ticker;
+
+        this.entries     = new ClockCache<>(maxSize, evictions::increment);
+
+        new QueryCacheMetrics(this).bindTo(meterRegistry);
+    }
+
+    /**
+     * Return the cached result of a query that reads all the entities, or compute it and cache it.
+     *
+     * @see #get(String, List, Set, Supplier)
+     */
+    public <T> T get(String query, List<?> parameters, Supplier<T> loader) {
+        return get(query, parameters, ALL_ENTITIES, loader);
+    }
+
+    /**
+     * Return the cached result of a query, or compute it and cache it.
+     *
+     * @param query      the name of the query (for instance, the endpoint)
+     * @param parameters the parameters of the query (<code>null</code> elements allowed)
+     * @param reads      the entities the query reads (including through the derived indexes):
+     *                   only their changes invalidate the result
+     * @param loader     computes the result from the current dataset, on a miss
+     * @return the result of the query, computed from the current dataset on the current day
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T get(String query, List<?> parameters, Set<EntityType> reads, Supplier<T> loader) {
+        if (maxSize <= 0) {
+            return loader.get();
+        }
+        Key key = new Key(query, Collections.unmodifiableList(new ArrayList<>(parameters)));
+        long[] generations = generations(dataStore.current(), reads);
+        long epochDay = dateService.getToday().toEpochDay();
+
+        Entry entry = entries.get(key);
+        if (entry != null) {
+            if (Arrays.equals(entry.generations(), generations) && entry.epochDay() == epochDay
+                    && ticker.getAsLong() - entry.expiresAtNanos() < 0) {
+                hits.increment();
+                return (T) entry.value();
+            }
+            if (ticker.getAsLong() - entry.expiresAtNanos() >= 0) {
+                evictions.increment();
+            } else if (isOlder(entry.generations(), generations) || entry.epochDay() < epochDay) {
+                invalidations.increment();
+            }
+        }
+        misses.increment();
+
+        T value = loader.get();
+
+        Entry computed = new Entry(generations, epochDay, value, ticker.getAsLong() + ttlNanos);
+        // Never replace the result of newer entities (computed by a request that started later)
+        Entry kept = entries.put(
+                key,
+                computed,
+                (current, next) -> isOlder(next.generations(), current.generations()) ? current : next
+        );
+        if (kept == computed) {
+            puts.increment();
+        }
+        return value;
+    }
+
+    /**
+     * Remove all the entries (for instance, in tests).
+     */
+    public void clear() {
+        entries.clear();
+    }
+
+    /**
+     * @return the number of entries, including the ones that are no longer valid but not evicted yet
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    private static long[] generations(Dataset dataset, Set<EntityType> reads) {
+        long[] generations = new long[EntityType.values().length];
+        for (EntityType entityType : reads) {
+            generations[entityType.ordinal()] = dataset.generation(entityType);
+        }
+        return generations;
+    }
+
+    /**
+     * @return true if some of the generations are older than the other ones (the generations only increase)
+     */
+    private static boolean isOlder(long[] generations, long[] otherGenerations) {
+        for (int i = 0; i < generations.length; i++) {
+            if (generations[i] < otherGenerations[i]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Publishes the statistics of the cache.
+     */
+    private static final class QueryCacheMetrics extends CacheMeterBinder<QueryCache> {
+
+        private QueryCacheMetrics(QueryCache cache) {
+            super(cache, "queries", Tags.empty());
+        }
+
+        @Override
+        protected Long size() {
+            return (long) getCache().size();
+        }
+
+        @Override
+        protected long hitCount() {
+            return getCache().hits.sum();
+        }
+
+        @Override
+        protected Long missCount() {
+            return getCache().misses.sum();
+        }
+
+        @Override
+        protected Long evictionCount() {
+            return getCache().evictions.sum();
+        }
+
+        @Override
+        protected long putCount() {
+            return getCache().puts.sum();
+        }
+
+        @Override
+        protected void bindImplementationSpecificMetrics(MeterRegistry registry) {
+            FunctionCounter.builder("cache.invalidations", getCache(), cache -> cache.invalidations.sum())
+                    .tags(getTagsWithCacheName())
+                    .description("The number of entries discarded because the data or the day changed")
+                    .register(registry);
+        }
+    }
+}
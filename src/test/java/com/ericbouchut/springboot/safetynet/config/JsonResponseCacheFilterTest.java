@@ -0,0 +1,246 @@
+package com.ericbouchut.springboot.safetynet.config;
+
+import com.ericbouchut.springboot.safetynet.model.Data;
+import com.ericbouchut.springboot.safetynet.model.FireStation;
+import com.ericbouchut.springboot.safetynet.model.Person;
+import com.ericbouchut.springboot.safetynet.repository.DataStore;
+import com.ericbouchut.springboot.safetynet.repository.Dataset.EntityType;
+import com.ericbouchut.springboot.safetynet.repository.DatasetDiff;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletResponse;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JsonResponseCacheFilterTest {
+
+    private final Person johnBoyd = Person.builder()
+            .firstName("John").lastName("Boyd")
+            .address("1509 Culver St").city("Culver").zip("97451")
+            .phone("841-874-6512").email("jaboyd@email.com")
+            .build();
+
+    private final DataStore dataStore = new DataStore(new Data(new HashSet<>(), new HashSet<>(), new HashSet<>()));
+
+    private final JsonResponseCacheFilter filter = new JsonResponseCacheFilter(
+            dataStore, JsonResponseCacheFilter.paths(List.of("/person=PERSONS")), true
+    );
+
+    /**
+     * Counts the calls to the "controller".
+     */
+    private final AtomicInteger calls = new AtomicInteger();
+
+    /**
+     * The "controller": the persons of the current dataset, as JSON.
+     */
+    private final FilterChain controller = (request, response) -> {
+        calls.incrementAndGet();
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        String json = "[" + "\"x\",".repeat(dataStore.current().persons().getAll().size()) + "\"end\"]";
+        response.getOutputStream().write(json.getBytes(StandardCharsets.UTF_8));
+    };
+
+    @Test
+    void get_sameVersion_servesTheCachedBytes() throws Exception {
+        MockHttpServletResponse first = get(null, null);
+        MockHttpServletResponse second = get(null, null);
+
+        assertEquals(1, calls.get());
+        assertEquals(200, second.getStatus());
+        assertEquals("[\"end\"]", second.getContentAsString());
+        assertEquals(first.getHeader(HttpHeaders.ETAG), second.getHeader(HttpHeaders.ETAG));
+        assertTrue(second.getHeader(HttpHeaders.ETAG).matches("\"[0-9a-f]{32}\""));
+        assertEquals(MediaType.APPLICATION_JSON_VALUE, second.getContentType());
+        assertEquals(7, second.getContentLength());
+    }
+
+    @Test
+    void get_ifNoneMatch_notModified() throws Exception {
+        String etag = get(null, null).getHeader(HttpHeaders.ETAG);
+
+        MockHttpServletResponse notModified = get(etag, null);
+        assertEquals(304, notModified.getStatus());
+        assertEquals(0, notModified.getContentAsByteArray().length);
+        assertEquals(etag, notModified.getHeader(HttpHeaders.ETAG));
+
+        assertEquals(304, get("\"other\", W/" + etag, null).getStatus());
+        assertEquals(200, get("\"other\"", null).getStatus());
+        assertEquals(1, calls.get());
+    }
+
+    @Test
+    void get_newVersion_callsTheControllerAgain() throws Exception {
+        String etag = get(null, null).getHeader(HttpHeaders.ETAG);
+
+        dataStore.update(dataset -> dataset.withPersons(List.of(johnBoyd), List.of()));
+
+        MockHttpServletResponse response = get(etag, null);
+        assertEquals(200, response.getStatus());
+        assertEquals("[\"x\",\"end\"]", response.getContentAsString());
+        assertNotEquals(etag, response.getHeader(HttpHeaders.ETAG));
+        assertEquals(2, calls.get());
+    }
+
+    @Test
+    void get_otherEntitiesChanged_servesTheCachedBytes() throws Exception {
+        String etag = get(null, null).getHeader(HttpHeaders.ETAG);
+
+        dataStore.publish(DatasetDiff.between(
+                dataStore.current(),
+                new Data(new HashSet<>(), new HashSet<>(Set.of(new FireStation("1509 Culver St", 3))), new HashSet<>())
+        ));
+
+        assertEquals(304, get(etag, null).getStatus());
+        assertEquals(1, calls.get());
+    }
+
+    @Test
+    void get_concurrentMisses_callTheControllerOnce() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        FilterChain slowController = (request, response) -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            controller.doFilter(request, response);
+        };
+
+        List<MockHttpServletResponse> responses = new ArrayList<>();
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            MockHttpServletResponse response = new MockHttpServletResponse();
+            responses.add(response);
+            Thread thread = new Thread(() -> {
+                try {
+                    filter.doFilter(new MockHttpServletRequest("GET", "/person"), response, slowController);
+                } catch (ServletException | IOException e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        // Let the other requests reach the filter while the first one is computed
+        Thread.sleep(100);
+        release.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(1, calls.get());
+        for (MockHttpServletResponse response : responses) {
+            assertEquals(200, response.getStatus());
+            assertEquals("[\"end\"]", response.getContentAsString());
+        }
+    }
+
+    @Test
+    void paths_parsesTheEntitiesReadByEachPath() {
+        assertEquals(
+                Map.of(
+                        "/person", EnumSet.of(EntityType.PERSONS),
+                        "/firestation", EnumSet.of(EntityType.FIRE_STATIONS, EntityType.PERSONS),
+                        "/other", EnumSet.allOf(EntityType.class)
+                ),
+                JsonResponseCacheFilter.paths(List.of("/person=PERSONS", " /firestation=FIRE_STATIONS+PERSONS", "/other"))
+        );
+        assertThrows(IllegalArgumentException.class, () -> JsonResponseCacheFilter.paths(List.of("/person=PEOPLE")));
+    }
+
+    @Test
+    void get_acceptsGzip_servesTheCompressedBytes() throws Exception {
+        String etag = get(null, null).getHeader(HttpHeaders.ETAG);
+
+        MockHttpServletResponse compressed = get(null, "deflate, gzip;q=0.8");
+
+        assertEquals("gzip", compressed.getHeader(HttpHeaders.CONTENT_ENCODING));
+        assertEquals(HttpHeaders.ACCEPT_ENCODING, compressed.getHeader(HttpHeaders.VARY));
+        assertNotEquals(etag, compressed.getHeader(HttpHeaders.ETAG));
+        assertEquals("[\"end\"]", gunzip(compressed.getContentAsByteArray()));
+        assertEquals(304, get(compressed.getHeader(HttpHeaders.ETAG), "gzip").getStatus());
+
+        assertNull(get(null, "gzip;q=0").getHeader(HttpHeaders.CONTENT_ENCODING));
+        assertEquals(1, calls.get());
+    }
+
+    @Test
+    void get_notAcceptingJson_callsTheController() throws Exception {
+        get(null, null);
+
+        for (String accept : List.of("application/xml", "text/plain", "application/json;q=0", "not a media type")) {
+            MockHttpServletRequest request = new MockHttpServletRequest("GET", "/person");
+            request.addHeader(HttpHeaders.ACCEPT, accept);
+            MockHttpServletResponse response = new MockHttpServletResponse();
+            filter.doFilter(request, response, controller);
+            assertNull(response.getHeader(HttpHeaders.ETAG), accept);
+        }
+        assertEquals(5, calls.get());
+
+        assertTrue(JsonResponseCacheFilter.acceptsJson("application/json"));
+        assertTrue(JsonResponseCacheFilter.acceptsJson("text/html, */*;q=0.1"));
+        assertTrue(JsonResponseCacheFilter.acceptsJson("application/*"));
+    }
+
+    @Test
+    void get_otherPathOrError_notCached() throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/person");
+        request.setQueryString("city=Culver");
+        filter.doFilter(request, new MockHttpServletResponse(), controller);
+        filter.doFilter(request, new MockHttpServletResponse(), controller);
+        assertEquals(2, calls.get());
+
+        FilterChain failing = (req, res) -> {
+            calls.incrementAndGet();
+            ((HttpServletResponse) res).setStatus(500);
+            res.setContentType(MediaType.APPLICATION_JSON_VALUE);
+            res.getOutputStream().write("{}".getBytes(StandardCharsets.UTF_8));
+        };
+        MockHttpServletResponse error = new MockHttpServletResponse();
+        filter.doFilter(new MockHttpServletRequest("GET", "/person"), error, failing);
+        assertEquals(500, error.getStatus());
+        assertEquals("{}", error.getContentAsString());
+        assertNull(error.getHeader(HttpHeaders.ETAG));
+
+        get(null, null);
+        assertEquals(4, calls.get());
+    }
+
+    private MockHttpServletResponse get(String ifNoneMatch, String acceptEncoding) throws ServletException, IOException {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/person");
+        if (ifNoneMatch != null) {
+            request.addHeader(HttpHeaders.IF_NONE_MATCH, ifNoneMatch);
+        }
+        if (acceptEncoding != null) {
+            request.addHeader(HttpHeaders.ACCEPT_ENCODING, acceptEncoding);
+        }
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        filter.doFilter(request, response, controller);
+        return response;
+    }
+
+    private static String gunzip(byte[] bytes) throws IOException {
+        try (GZIPInputStream gzipStream = new GZIPInputStream(new ByteArrayInputStream(bytes))) {
+            return new String(gzipStream.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package com.ericbouchut.springboot.safetynet.config;
+
+import com.ericbouchut.springboot.safetynet.model.FireStation;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class NdjsonHttpMessageConverterTest {
+
+    private final NdjsonHttpMessageConverter converter = new NdjsonHttpMessageConverter(new ObjectMapper());
+
+    @Test
+    void write_oneJsonValuePerLine() throws IOException {
+        List<Object> values = List.of(
+                new FireStation("1509 Culver St", 3),
+                "jaboyd@email.com"
+        );
+
+        assertEquals("""
+                {"address":"1509 Culver St","station":3}
+                "jaboyd@email.com"
+                """, write(values));
+    }
+
+    @Test
+    void write_empty_noLine() throws IOException {
+        assertEquals("", write(Set.of()));
+    }
+
+    @Test
+    void canWrite_iterablesOnly_neverRead() {
+        assertTrue(converter.canWrite(Set.class, MediaType.APPLICATION_NDJSON));
+        assertFalse(converter.canWrite(Set.class, MediaType.APPLICATION_JSON));
+        assertFalse(converter.canWrite(String.class, MediaType.APPLICATION_NDJSON));
+        assertFalse(converter.canRead(List.class, MediaType.APPLICATION_NDJSON));
+    }
+
+    private String write(Iterable<?> values) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        HttpHeaders headers = new HttpHeaders();
+        HttpOutputMessage outputMessage = new HttpOutputMessage() {
+            @Override
+            public OutputStream getBody() {
+                return body;
+            }
+
+            @Override
+            public HttpHeaders getHeaders() {
+                return headers;
+            }
+        };
+        converter.write(values, MediaType.APPLICATION_NDJSON, outputMessage);
+        assertTrue(headers.getContentType().isCompatibleWith(MediaType.APPLICATION_NDJSON));
+        return body.toString(StandardCharsets.UTF_8);
+    }
+}
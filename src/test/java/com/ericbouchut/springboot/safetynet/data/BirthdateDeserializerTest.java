@@ -0,0 +1,33 @@
+package com.ericbouchut.springboot.safetynet.data;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.DateTimeException;
+import java.time.LocalDate;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BirthdateDeserializerTest {
+
+    @Test
+    void parse() {
+        assertEquals(LocalDate.of(1984, 3, 6), BirthdateDeserializer.parse("03/06/1984"));
+        assertEquals(LocalDate.of(2025, 12, 31), BirthdateDeserializer.parse("12/31/2025"));
+        assertEquals(LocalDate.of(2012, 2, 29), BirthdateDeserializer.parse("02/29/2012")); // Leap year
+    }
+
+    @Test
+    void parse_invalidFormat() {
+        assertThrows(DateTimeException.class, () -> BirthdateDeserializer.parse("3/6/1984"));
+        assertThrows(DateTimeException.class, () -> BirthdateDeserializer.parse("1984-03-06"));
+        assertThrows(DateTimeException.class, () -> BirthdateDeserializer.parse("03/0a/1984"));
+        assertThrows(DateTimeException.class, () -> BirthdateDeserializer.parse(""));
+    }
+
+    @Test
+    void parse_invalidDate() {
+        assertThrows(DateTimeException.class, () -> BirthdateDeserializer.parse("13/06/1984"));
+        assertThrows(DateTimeException.class, () -> BirthdateDeserializer.parse("02/30/2012"));
+        assertThrows(DateTimeException.class, () -> BirthdateDeserializer.parse("02/29/2013")); // Not a leap year
+    }
+}
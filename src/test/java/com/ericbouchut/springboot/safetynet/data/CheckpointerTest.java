@@ -0,0 +1,198 @@
+package com.ericbouchut.springboot.safetynet.data;
+
+import com.ericbouchut.springboot.safetynet.model.Data;
+import com.ericbouchut.springboot.safetynet.model.Person;
+import com.ericbouchut.springboot.safetynet.repository.DataStore;
+import com.ericbouchut.springboot.safetynet.repository.PersonWriter;
+import com.ericbouchut.springboot.safetynet.repository.WriteAheadLog;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CheckpointerTest {
+
+    @TempDir
+    Path temporaryDirectory;
+
+    private final Person johnDoe = person("John");
+    private final Person janeDoe = person("Jane");
+
+    @Test
+    void checkpoint_thenRestart() throws IOException {
+        Node node = new Node();
+        int initialPersons = node.dataStore.latest().persons().getAll().size();
+        assertTrue(node.personWriter.create(johnDoe).join());
+        // Compacted by the checkpoint
+        assertTrue(node.personWriter.create(janeDoe).join());
+        assertTrue(node.personWriter.delete(janeDoe).join());
+        long logSize = Files.size(walFile());
+
+        Optional<Checkpointer.Result> result = node.checkpointer.checkpoint();
+
+        assertTrue(result.isPresent());
+        assertEquals(3, result.get().lsn());
+        assertTrue(result.get().snapshotBytes() > 0);
+        assertEquals(logSize - Files.size(walFile()), result.get().bytesReclaimed());
+        assertTrue(result.get().bytesReclaimed() > 0);
+        assertEquals(result, node.checkpointer.getLastResult());
+        // No new mutation since the last checkpoint
+        assertEquals(Optional.empty(), node.checkpointer.checkpoint());
+
+        // Logged after the checkpoint
+        assertTrue(node.personWriter.create(janeDoe).join());
+        node.personWriter.stop();
+
+        // Restart: the checkpoint (with John), then the log (with Jane)
+        Node restarted = new Node();
+        try {
+            assertEquals(initialPersons + 2, restarted.dataStore.latest().persons().getAll().size());
+            assertTrue(restarted.dataStore.latest().persons().contains(johnDoe));
+            assertTrue(restarted.dataStore.latest().persons().contains(janeDoe));
+            assertEquals(4, restarted.dataStore.latest().lsn());
+        } finally {
+            restarted.personWriter.stop();
+        }
+    }
+
+    @Test
+    void checkpoint_failedSnapshot_keepsTheLog() throws IOException {
+        Node node = new Node();
+        try {
+            assertTrue(node.personWriter.create(johnDoe).join());
+            assertTrue(node.personWriter.delete(johnDoe).join());
+            long logSize = Files.size(walFile());
+            // The snapshot cannot replace a directory that is not empty
+            Path snapshotFile = temporaryDirectory.resolve("data.snapshot");
+            Files.delete(snapshotFile);
+            Files.createDirectories(snapshotFile.resolve("not-empty"));
+
+            assertThrows(UncheckedIOException.class, node.checkpointer::checkpoint);
+            assertThrows(UncheckedIOException.class, node.checkpointer::checkpointReload);
+
+            assertEquals(logSize, Files.size(walFile()));
+            assertEquals(Optional.empty(), node.checkpointer.getLastResult());
+        } finally {
+            node.personWriter.stop();
+        }
+    }
+
+    @Test
+    void checkpoint_withoutWriteAheadLog() {
+        SnapshotStore snapshotStore = new SnapshotStore(temporaryDirectory.resolve("data.snapshot").toString());
+        DataLoader dataLoader = dataLoader(snapshotStore);
+        Checkpointer checkpointer = new Checkpointer(
+                new DataStore(dataLoader.load()), dataLoader, snapshotStore,
+                new WriteAheadLog(null, WriteAheadLog.Durability.SYNC, Duration.ZERO),
+                new SimpleMeterRegistry()
+        );
+
+        assertEquals(Optional.empty(), checkpointer.checkpoint());
+    }
+
+    @Test
+    void reload_thenRestart_keepsTheMutations() throws IOException {
+        for (DataReloader.Mode mode : DataReloader.Mode.values()) {
+            for (boolean snapshot : new boolean[]{true, false}) {
+                String name = mode + "-" + snapshot;
+                Path dataFile = temporaryDirectory.resolve(name + ".json");
+                Files.copy(new ClassPathResource("data/data.json").getInputStream(), dataFile);
+                Path snapshotFile = temporaryDirectory.resolve(name + ".snapshot");
+                Path walFile = temporaryDirectory.resolve(name + ".wal");
+
+                Node node = new Node(new FileSystemResource(dataFile), snapshot ? snapshotFile : null, walFile);
+                int initialPersons = node.dataStore.latest().persons().getAll().size();
+                assertTrue(node.personWriter.create(johnDoe).join());
+                // Checkpointed before the reload
+                node.checkpointer.checkpoint();
+
+                // The data file changes: a person is added
+                Files.writeString(dataFile, Files.readString(dataFile).replaceFirst(
+                        "\"persons\": \\[",
+                        "\"persons\": [{ \"firstName\":\"Jim\", \"lastName\":\"Doe\", \"address\":\"1509 Culver St\","
+                                + " \"city\":\"Culver\", \"zip\":\"97451\", \"phone\":\"841-874-6512\", \"email\":\"jim@email.com\" },"
+                ));
+
+                // The person created through the API (and checkpointed) is replayed over the new data file
+                node.dataReloader.reload(mode);
+                assertTrue(node.dataStore.latest().persons().contains(johnDoe), name);
+                assertEquals(initialPersons + 2, node.dataStore.latest().persons().getAll().size(), name);
+                assertTrue(node.personWriter.create(janeDoe).join());
+                node.personWriter.stop();
+
+                Node restarted = new Node(new FileSystemResource(dataFile), snapshot ? snapshotFile : null, walFile);
+                try {
+                    assertEquals(initialPersons + 3, restarted.dataStore.latest().persons().getAll().size(), name);
+                    assertTrue(restarted.dataStore.latest().persons().contains(johnDoe), name);
+                    assertTrue(restarted.dataStore.latest().persons().contains(janeDoe), name);
+                } finally {
+                    restarted.personWriter.stop();
+                }
+            }
+        }
+    }
+
+    /**
+     * The beans of a running application, as wired by Spring.
+     */
+    private class Node {
+        final DataStore dataStore;
+        final PersonWriter personWriter;
+        final Checkpointer checkpointer;
+        final DataReloader dataReloader;
+
+        Node() {
+            this(new ClassPathResource("data/data.json"), temporaryDirectory.resolve("data.snapshot"), walFile());
+        }
+
+        /**
+         * @param snapshotFile <code>null</code> to disable the snapshot
+         */
+        Node(Resource dataFile, Path snapshotFile, Path walFile) {
+            SnapshotStore snapshotStore = new SnapshotStore(snapshotFile == null ? "" : snapshotFile.toString());
+            DataLoader dataLoader = dataLoader(dataFile, snapshotStore);
+            Data data = dataLoader.load();
+            WriteAheadLog writeAheadLog = new WriteAheadLog(walFile.toString(), WriteAheadLog.Durability.SYNC, Duration.ZERO);
+
+            dataStore = new DataStore(data, dataLoader.getLoadedLsn());
+            personWriter = new PersonWriter(dataStore, writeAheadLog, new SimpleMeterRegistry(), 16, 8);
+            checkpointer = new Checkpointer(dataStore, dataLoader, snapshotStore, writeAheadLog, new SimpleMeterRegistry());
+            dataReloader = new DataReloader(
+                    dataLoader, dataStore, checkpointer, writeAheadLog, dataFile, false, Duration.ZERO,
+                    DataReloader.Mode.INCREMENTAL
+            );
+            personWriter.start();
+        }
+    }
+
+    private Path walFile() {
+        return temporaryDirectory.resolve("person.wal");
+    }
+
+    private static DataLoader dataLoader(SnapshotStore snapshotStore) {
+        return dataLoader(new ClassPathResource("data/data.json"), snapshotStore);
+    }
+
+    private static DataLoader dataLoader(Resource dataFile, SnapshotStore snapshotStore) {
+        return DataLoaders.dataLoader(dataFile, snapshotStore);
+    }
+
+    private static Person person(String firstName) {
+        return Person.builder()
+                .firstName(firstName).lastName("Doe")
+                .address("1509 Culver St").city("Culver").zip("97451")
+                .phone("841-874-6512").email("jdoe@email.com")
+                .build();
+    }
+}
@@ -0,0 +1,66 @@
+package com.ericbouchut.springboot.safetynet.data;
+
+import com.ericbouchut.springboot.safetynet.model.Data;
+import com.ericbouchut.springboot.safetynet.model.FireStation;
+import com.ericbouchut.springboot.safetynet.model.MedicalRecord;
+import com.ericbouchut.springboot.safetynet.model.Person;
+
+import java.time.LocalDate;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Generate a large, deterministic <code>Data</code> set for benchmarks.
+ * <p>
+ * Each person has exactly one medical record.
+ * Persons are spread over addresses (<code>personsPerAddress</code> per address),
+ * and addresses are spread over fire stations (<code>addressesPerStation</code> per station).
+ * Cities, zips, medications and allergies repeat, as they do in real data.
+ */
+public final class DataGenerator {
+    private static final String[] CITIES = {"Culver", "Marseille", "Lyon", "Paris", "Lille"};
+    private static final String[] MEDICATIONS = {"aznol:350mg", "hydrapermazol:100mg", "pharmacol:5000mg", "terazine:10mg", "noznazol:250mg"};
+    private static final String[] ALLERGIES = {"nillacilan", "peanut", "shellfish"};
+
+    private DataGenerator() {
+    }
+
+    public static Data generate(int personCount, int personsPerAddress, int addressesPerStation) {
+        Set<Person> persons = new HashSet<>();
+        Set<MedicalRecord> medicalRecords = new HashSet<>();
+        Set<FireStation> fireStations = new HashSet<>();
+
+        for (int i = 0; i < personCount; i++) {
+            int addressNumber = i / personsPerAddress;
+            String address = address(addressNumber);
+            String city = CITIES[addressNumber % CITIES.length];
+            String firstName = "First" + i;
+            String lastName = "Last" + (i % 1000);
+
+            persons.add(new Person(
+                    firstName,
+                    lastName,
+                    address,
+                    city,
+                    "9745" + (addressNumber % CITIES.length),
+                    "841-874-" + (i % 10_000),
+                    firstName + "." + lastName + "@email.com"
+            ));
+            medicalRecords.add(new MedicalRecord(
+                    firstName,
+                    lastName,
+                    LocalDate.of(1930 + i % 95, 1 + i % 12, 1 + i % 28),
+                    Set.of(MEDICATIONS[i % MEDICATIONS.length]),
+                    i % 3 == 0 ? Set.of(ALLERGIES[i % ALLERGIES.length]) : Set.of()
+            ));
+            if (i % personsPerAddress == 0) {
+                fireStations.add(new FireStation(address, 1 + addressNumber / addressesPerStation));
+            }
+        }
+        return new Data(persons, fireStations, medicalRecords);
+    }
+
+    public static String address(int addressNumber) {
+        return addressNumber + " Culver St";
+    }
+}
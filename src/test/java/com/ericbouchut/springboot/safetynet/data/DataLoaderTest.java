@@ -1,38 +1,32 @@
 package com.ericbouchut.springboot.safetynet.data;
 
-import com.ericbouchut.springboot.safetynet.config.SafetynetConfiguration;
 import com.ericbouchut.springboot.safetynet.exception.JsonConfigurationLoadException;
 import com.ericbouchut.springboot.safetynet.model.Data;
+import com.ericbouchut.springboot.safetynet.model.FireStation;
+import com.ericbouchut.springboot.safetynet.model.MedicalRecord;
 import com.ericbouchut.springboot.safetynet.model.Person;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import org.junit.jupiter.api.Test;
-import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.boot.test.autoconfigure.json.JsonTest;
+import org.springframework.core.io.ByteArrayResource;
 import org.springframework.core.io.ClassPathResource;
 import org.springframework.core.io.Resource;
 
 
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.Set;
 
 import static org.junit.jupiter.api.Assertions.*;
 
-@JsonTest
 public class DataLoaderTest {
 
-    /**
-     * @see SafetynetConfiguration#objectMapper() objectMapper()
-     */
-    @Autowired
-    private ObjectMapper objectMapper;
-
     @Test
     public void load_shouldParseJsonCorrectly() {
         Resource dataFileResource  = new ClassPathResource("data/data.json");
 
-        DataLoader dataLoader = new DataLoader(
-            objectMapper,
-            dataFileResource
+        DataLoader dataLoader = DataLoaders.dataLoader(
+                dataFileResource
         );
         Data data = dataLoader.load();
 
@@ -68,13 +62,82 @@ public class DataLoaderTest {
     public void load_nonExistentJsonFile() {
         Resource nonExistentDataFileResource  = new ClassPathResource("non_existent.json");
 
-        DataLoader dataLoader = new DataLoader(
-                objectMapper,
+        DataLoader dataLoader = DataLoaders.dataLoader(
                 nonExistentDataFileResource
         );
 
         assertThrows(JsonConfigurationLoadException.class, dataLoader::load);
     }
 
+    @Test
+    public void load_shouldParseNdjsonCorrectly() {
+        DataLoader dataLoader = DataLoaders.dataLoader(
+                new ClassPathResource("data/data.ndjson")
+        );
+
+        assertSmallData(dataLoader.load());
+    }
+
+    @Test
+    public void load_shouldParseCsvCorrectly() {
+        DataLoader dataLoader = DataLoaders.dataLoader(
+                new ClassPathResource("data/data.csv")
+        );
+
+        assertSmallData(dataLoader.load());
+    }
+
+    @Test
+    public void load_invalidBirthdate() {
+        DataLoader dataLoader = DataLoaders.dataLoader(
+                new ByteArrayResource(
+                        "{\"medicalrecords\": [{\"firstName\": \"John\", \"lastName\": \"Boyd\", \"birthdate\": \"13/06/1984\"}]}"
+                                .getBytes(StandardCharsets.UTF_8)
+                )
+        );
+
+        assertThrows(JsonConfigurationLoadException.class, dataLoader::load);
+    }
+
+    @Test
+    public void load_personWithoutName_isRejected() {
+        DataLoader dataLoader = DataLoaders.dataLoader(
+                new ByteArrayResource(("""
+                        {"persons": [{"lastName": "Boyd", "address": "1509 Culver St", "city": "Culver",
+                                      "zip": "97451", "phone": "841-874-6512", "email": "jaboyd@email.com"}],
+                         "firestations": [{"address": "1509 Culver St", "station": "3"}],
+                         "medicalrecords": [{"firstName": "John", "lastName": "Boyd", "birthdate": "03/06/1984",
+                                             "medications": [], "allergies": []}]}
+                        """).getBytes(StandardCharsets.UTF_8)
+                )
+        );
+
+        JsonConfigurationLoadException exception = assertThrows(JsonConfigurationLoadException.class, dataLoader::load);
+        assertTrue(exception.getMessage().contains("firstName"), exception.getMessage());
+    }
+
+    /**
+     * Check the content of <code>data.ndjson</code> and <code>data.csv</code>:
+     * same entities, different formats.
+     */
+    private void assertSmallData(Data data) {
+        assertEquals(2, data.getPersons().size());
+        assertEquals(2, data.getFireStations().size());
+        assertTrue(data.getFireStations().contains(new FireStation("1509 Culver St", 3)));
+
+        assertEquals(2, data.getMedicalRecords().size());
+        assertTrue(data.getMedicalRecords().contains(
+                new MedicalRecord(
+                        "John",
+                        "Boyd",
+                        LocalDate.of(1984, 3, 6),
+                        Set.of("aznol:350mg", "hydrapermazol:100mg"),
+                        Set.of("nillacilan")
+                )
+        ));
+        assertTrue(data.getMedicalRecords().contains(
+                new MedicalRecord("Tenley", "Boyd", LocalDate.of(2012, 2, 18), Set.of(), Set.of("peanut"))
+        ));
+    }
 
 }
\ No newline at end of file
@@ -0,0 +1,34 @@
+package com.ericbouchut.springboot.safetynet.data;
+
+import com.ericbouchut.springboot.safetynet.config.SafetynetConfiguration;
+import jakarta.validation.Validation;
+import jakarta.validation.Validator;
+import org.springframework.core.io.Resource;
+
+/**
+ * Build the <code>DataLoader</code> of the tests, with the default object mapper and validator
+ * instead of the beans of the application.
+ */
+public final class DataLoaders {
+    private static final Validator VALIDATOR = Validation.buildDefaultValidatorFactory().getValidator();
+
+    private DataLoaders() {
+    }
+
+    /**
+     * @param dataFile the data file
+     * @return a loader of this data file, without binary snapshot
+     */
+    public static DataLoader dataLoader(Resource dataFile) {
+        return dataLoader(dataFile, new SnapshotStore(null));
+    }
+
+    /**
+     * @param dataFile      the data file
+     * @param snapshotStore the binary snapshot of the data
+     * @return a loader of this data file
+     */
+    public static DataLoader dataLoader(Resource dataFile, SnapshotStore snapshotStore) {
+        return new DataLoader(new SafetynetConfiguration().objectMapper(), dataFile, snapshotStore, VALIDATOR);
+    }
+}
@@ -0,0 +1,102 @@
+package com.ericbouchut.springboot.safetynet.data;
+
+import com.ericbouchut.springboot.safetynet.model.Data;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.core.io.ClassPathResource;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SnapshotStoreTest {
+
+    private static final byte[] SOURCE_HASH = new byte[32];
+
+    @TempDir
+    Path temporaryDirectory;
+
+    private Data loadDataJson(SnapshotStore snapshotStore) {
+        return DataLoaders.dataLoader(new ClassPathResource("data/data.json"), snapshotStore).load();
+    }
+
+    @Test
+    void writeThenRead() throws IOException {
+        SnapshotStore snapshotStore = new SnapshotStore(temporaryDirectory.resolve("data.snapshot").toString());
+        Data data = loadDataJson(new SnapshotStore(null));
+
+        assertTrue(snapshotStore.write(data, SOURCE_HASH, 42) > 0);
+        Optional<SnapshotStore.Snapshot> snapshot = snapshotStore.read(SOURCE_HASH);
+
+        assertTrue(snapshot.isPresent());
+        assertEquals(data, snapshot.get().data());
+        assertEquals(42, snapshot.get().lsn());
+    }
+
+    @Test
+    void read_staleSnapshot() throws IOException {
+        SnapshotStore snapshotStore = new SnapshotStore(temporaryDirectory.resolve("data.snapshot").toString());
+        snapshotStore.write(loadDataJson(new SnapshotStore(null)), SOURCE_HASH, 0);
+
+        byte[] otherSourceHash = Arrays.copyOf(SOURCE_HASH, SOURCE_HASH.length);
+        otherSourceHash[0] = 1;
+
+        assertTrue(snapshotStore.read(otherSourceHash).isEmpty());
+    }
+
+    @Test
+    void read_corruptSnapshot() throws IOException {
+        Path snapshotFile = temporaryDirectory.resolve("data.snapshot");
+        SnapshotStore snapshotStore = new SnapshotStore(snapshotFile.toString());
+        snapshotStore.write(loadDataJson(new SnapshotStore(null)), SOURCE_HASH, 0);
+
+        // Flip the last byte of the payload
+        try (FileChannel channel = FileChannel.open(snapshotFile, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer lastByte = ByteBuffer.allocate(1);
+            channel.read(lastByte, channel.size() - 1);
+            lastByte.put(0, (byte) ~lastByte.get(0));
+            channel.write(lastByte.rewind(), channel.size() - 1);
+        }
+
+        assertTrue(snapshotStore.read(SOURCE_HASH).isEmpty());
+    }
+
+    @Test
+    void read_truncatedSnapshot() throws IOException {
+        Path snapshotFile = temporaryDirectory.resolve("data.snapshot");
+        SnapshotStore snapshotStore = new SnapshotStore(snapshotFile.toString());
+        snapshotStore.write(loadDataJson(new SnapshotStore(null)), SOURCE_HASH, 0);
+
+        try (FileChannel channel = FileChannel.open(snapshotFile, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() / 2);
+        }
+
+        assertTrue(snapshotStore.read(SOURCE_HASH).isEmpty());
+    }
+
+    @Test
+    void read_disabledOrMissingSnapshot() {
+        assertTrue(new SnapshotStore(null).read(SOURCE_HASH).isEmpty());
+        assertTrue(new SnapshotStore("").read(SOURCE_HASH).isEmpty());
+        assertTrue(new SnapshotStore(temporaryDirectory.resolve("missing.snapshot").toString()).read(SOURCE_HASH).isEmpty());
+    }
+
+    @Test
+    void dataLoader_writesThenReadsTheSnapshot() {
+        Path snapshotFile = temporaryDirectory.resolve("data.snapshot");
+        SnapshotStore snapshotStore = new SnapshotStore(snapshotFile.toString());
+
+        Data fromJson = loadDataJson(snapshotStore);
+        assertTrue(Files.exists(snapshotFile));
+
+        Data fromSnapshot = loadDataJson(snapshotStore);
+        assertEquals(fromJson, fromSnapshot);
+    }
+}
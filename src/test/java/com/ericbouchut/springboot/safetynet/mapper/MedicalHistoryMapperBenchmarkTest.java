@@ -0,0 +1,78 @@
+package com.ericbouchut.springboot.safetynet.mapper;
+
+import com.ericbouchut.springboot.safetynet.data.DataGenerator;
+import com.ericbouchut.springboot.safetynet.model.Data;
+import com.ericbouchut.springboot.safetynet.model.MedicalRecord;
+import com.ericbouchut.springboot.safetynet.repository.Canonicalizer;
+import com.ericbouchut.springboot.safetynet.repository.DataStore;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Compare the time and the heap allocated to map the medical records of a generated data file (100k persons,
+ * with their strings and sets shared by the {@link Canonicalizer}, as loaded) to medical histories,
+ * without and with the medical histories built when the records are indexed (kept with each record).
+ * The allocations are reported by the JVM for the current thread, so they are approximate.
+ * <p>
+ * Run with: <code>mvn test -Pbenchmark</code>
+ */
+@Tag("benchmark")
+class MedicalHistoryMapperBenchmarkTest {
+
+    private static final int SIZE = 100_000;
+
+    private static final int ROUNDS = 20;
+
+    @Test
+    void sharing_avoidsTheParsingAndAllocations() {
+        Data data = new Canonicalizer().canonicalize(DataGenerator.generate(SIZE, 5, 10));
+        // Copies of the records, not indexed
+        List<MedicalRecord> unindexed = data.getMedicalRecords().stream()
+                .map(record -> new MedicalRecord(
+                        record.getFirstName(), record.getLastName(), record.getDateOfBirth(),
+                        record.getMedications(), record.getAllergies()
+                ))
+                .toList();
+        List<MedicalRecord> indexed = List.copyOf(new DataStore(data).current().medicalRecords().getAll());
+        MedicalHistoryMapper mapper = new MedicalHistoryMapper(new MedicationMapper());
+
+        measure("unshared", mapper, unindexed);
+        measure("shared", mapper, indexed);
+    }
+
+    private static void measure(String name, MedicalHistoryMapper mapper, List<MedicalRecord> medicalRecords) {
+        map(mapper, medicalRecords); // Warm up
+        long allocated = allocatedBytes();
+        long start = System.nanoTime();
+        long medications = 0;
+        for (int i = 0; i < ROUNDS; i++) {
+            medications += map(mapper, medicalRecords);
+        }
+        long nanos = System.nanoTime() - start;
+        allocated = allocatedBytes() - allocated;
+        assertTrue(medications > 0);
+
+        long mappings = (long) ROUNDS * medicalRecords.size();
+        System.out.printf(
+                "MedicalHistoryMapper %-8s: %,d mappings, %,.1f ns and %,d bytes allocated per mapping%n",
+                name, mappings, (double) nanos / mappings, allocated / mappings
+        );
+    }
+
+    private static long map(MedicalHistoryMapper mapper, List<MedicalRecord> medicalRecords) {
+        long medications = 0;
+        for (MedicalRecord medicalRecord : medicalRecords) {
+            medications += mapper.toDTO(medicalRecord).medications().size();
+        }
+        return medications;
+    }
+
+    private static long allocatedBytes() {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean()).getCurrentThreadAllocatedBytes();
+    }
+}
@@ -0,0 +1,120 @@
+package com.ericbouchut.springboot.safetynet.mapper;
+
+import com.ericbouchut.springboot.safetynet.dto.MedicalHistoryDTO;
+import com.ericbouchut.springboot.safetynet.dto.MedicationDTO;
+import com.ericbouchut.springboot.safetynet.model.Data;
+import com.ericbouchut.springboot.safetynet.model.FullName;
+import com.ericbouchut.springboot.safetynet.model.MedicalRecord;
+import com.ericbouchut.springboot.safetynet.repository.DataStore;
+import com.ericbouchut.springboot.safetynet.repository.DatasetDiff;
+import com.ericbouchut.springboot.safetynet.repository.MedicalRecordIndex;
+import com.ericbouchut.springboot.safetynet.repository.OffHeapMedicalRecordIndex;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MedicalHistoryMapperTest {
+
+    private final Set<String> medications = new LinkedHashSet<>(List.of("aznol:350mg", "hydrapermazol: 100mg", "", "doliprane"));
+    private final Set<String> allergies = Set.of("nillacilan");
+
+    private final MedicalRecord john = medicalRecord("John", medications, allergies);
+    private final MedicalRecord jacob = medicalRecord("Jacob", new LinkedHashSet<>(medications), Set.of("nillacilan"));
+    private final MedicalRecord tenley = medicalRecord("Tenley", medications, Set.of());
+
+    private final DataStore dataStore = new DataStore(data(john, jacob, tenley));
+    private final MedicalHistoryMapper medicalHistoryMapper = new MedicalHistoryMapper(new MedicationMapper());
+
+    @Test
+    void toDTO_parsesTheMedications() {
+        MedicalHistoryDTO medicalHistory = medicalHistoryMapper.toDTO(medicalRecord("John", medications, allergies));
+
+        assertEquals(
+                List.of(
+                        new MedicationDTO("aznol", "350mg"),
+                        new MedicationDTO("hydrapermazol", "100mg"),
+                        new MedicationDTO("doliprane", null)
+                ),
+                medicalHistory.medications()
+        );
+        assertEquals(allergies, medicalHistory.allergies());
+        assertEquals(medicalHistory, medicalHistoryMapper.toDTO(john));
+    }
+
+    @Test
+    void toDTO_indexedMedicalRecord_returnsTheMedicalHistoryBuiltWhenIndexed() {
+        MedicalHistoryDTO johnHistory = medicalHistoryMapper.toDTO(john);
+        MedicalHistoryDTO tenleyHistory = medicalHistoryMapper.toDTO(tenley);
+
+        assertSame(john.getMedicalHistory(), johnHistory);
+        // Equal medications and allergies: the same medical history
+        assertSame(johnHistory, medicalHistoryMapper.toDTO(jacob));
+        // Held by a single medical record: built once too
+        assertSame(tenleyHistory, medicalHistoryMapper.toDTO(tenley));
+        assertThrows(UnsupportedOperationException.class, () -> johnHistory.medications().clear());
+    }
+
+    @Test
+    void toDTO_afterAChangeOfTheMedicalRecords_returnsTheMedicalHistoriesOfTheNewRecords() {
+        MedicalHistoryDTO johnHistory = medicalHistoryMapper.toDTO(john);
+        MedicalRecord roger = medicalRecord("Roger", medications, Set.of());
+        MedicalRecord felicia = medicalRecord("Felicia", medications, Set.of());
+
+        // A person write keeps the medical records, and their medical histories
+        dataStore.update(dataset -> dataset.withVersion(dataset.version()));
+        assertSame(johnHistory, medicalHistoryMapper.toDTO(dataStore.latest().medicalRecords().getByFullName(FullName.of(john)).get(0)));
+
+        Data newData = data(john, roger, felicia);
+        dataStore.publish(DatasetDiff.between(dataStore.latest(), newData));
+
+        assertSame(johnHistory, medicalHistoryMapper.toDTO(john));
+        // Equal medications and allergies of the new records: the same medical history
+        assertSame(medicalHistoryMapper.toDTO(roger), medicalHistoryMapper.toDTO(felicia));
+        assertNotNull(felicia.getMedicalHistory());
+    }
+
+    @Test
+    void toDTO_decodedMedicalRecord_returnsTheSameMedicalHistoryOnEachRead() {
+        MedicalRecordIndex offHeap = OffHeapMedicalRecordIndex.of(List.of(medicalRecord("Roger", medications, allergies)));
+        FullName roger = new FullName("Roger", "Boyd");
+
+        MedicalHistoryDTO medicalHistory = medicalHistoryMapper.toDTO(offHeap.getByFullName(roger).get(0));
+
+        assertSame(medicalHistory, medicalHistoryMapper.toDTO(offHeap.getByFullName(roger).get(0)));
+        assertEquals(medicalHistoryMapper.toDTO(john), medicalHistory);
+    }
+
+    @Test
+    void toDTO_notIndexed_buildsANewMedicalHistory() {
+        MedicalRecord felicia = medicalRecord("Felicia", medications, allergies);
+
+        MedicalHistoryDTO first = medicalHistoryMapper.toDTO(felicia);
+
+        assertEquals(first, medicalHistoryMapper.toDTO(felicia));
+        assertNotSame(first, medicalHistoryMapper.toDTO(felicia));
+    }
+
+    @Test
+    void toDTO_withoutMedicalRecordOrMedications() {
+        assertEquals(List.of(), medicalHistoryMapper.toDTO(null).medications());
+        assertEquals(Set.of(), medicalHistoryMapper.toDTO(null).allergies());
+
+        MedicalHistoryDTO medicalHistory = medicalHistoryMapper.toDTO(medicalRecord("John", null, allergies));
+        assertEquals(List.of(), medicalHistory.medications());
+        assertEquals(allergies, medicalHistory.allergies());
+    }
+
+    private static Data data(MedicalRecord... medicalRecords) {
+        return new Data(new HashSet<>(), new HashSet<>(), new HashSet<>(List.of(medicalRecords)));
+    }
+
+    private static MedicalRecord medicalRecord(String firstName, Set<String> medications, Set<String> allergies) {
+        return new MedicalRecord(firstName, "Boyd", LocalDate.of(1984, 3, 6), medications, allergies);
+    }
+}
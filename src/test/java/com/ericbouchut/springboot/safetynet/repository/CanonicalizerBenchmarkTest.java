@@ -0,0 +1,67 @@
+package com.ericbouchut.springboot.safetynet.repository;
+
+import com.ericbouchut.springboot.safetynet.config.SafetynetConfiguration;
+import com.ericbouchut.springboot.safetynet.data.DataGenerator;
+import com.ericbouchut.springboot.safetynet.model.Data;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Compare the heap used by the data loaded from a large JSON file (generated: 100k to 1M persons),
+ * without and with the {@link Canonicalizer} of the load (its tables are kept until the end of the measure,
+ * to report their size: a load drops them).
+ * The heap is measured after a garbage collection, so it is approximate.
+ * <p>
+ * Run with: <code>mvn test -Pbenchmark</code>
+ */
+@Tag("benchmark")
+class CanonicalizerBenchmarkTest {
+
+    private final ObjectMapper objectMapper = new SafetynetConfiguration().objectMapper();
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void canonicalizer_reducesTheHeapOfTheLoadedData() throws IOException {
+        for (int size : new int[]{100_000, 1_000_000}) {
+            Path dataFile = directory.resolve("data-" + size + ".json");
+            objectMapper.writeValue(dataFile.toFile(), DataGenerator.generate(size, 5, 10));
+
+            long baseline = usedHeap();
+            Data data = objectMapper.readValue(dataFile.toFile(), Data.class);
+            long plainHeap = usedHeap() - baseline;
+            assertEquals(size, data.getPersons().size());
+            data = null;
+
+            baseline = usedHeap();
+            Canonicalizer canonicalizer = new Canonicalizer();
+            data = canonicalizer.canonicalize(objectMapper.readValue(dataFile.toFile(), Data.class));
+            long canonicalHeap = usedHeap() - baseline;
+            assertEquals(size, data.getPersons().size());
+
+            System.out.printf(
+                    "Canonicalizer: %,9d persons, heap: plain %,5d MB, canonical %,5d MB (saved %,5d MB, %d%%),"
+                            + " %,d shared values%n",
+                    size,
+                    plainHeap / 1_000_000, canonicalHeap / 1_000_000, (plainHeap - canonicalHeap) / 1_000_000,
+                    100 * (plainHeap - canonicalHeap) / plainHeap, canonicalizer.size()
+            );
+        }
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
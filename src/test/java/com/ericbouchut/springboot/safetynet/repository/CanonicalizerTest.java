@@ -0,0 +1,95 @@
+package com.ericbouchut.springboot.safetynet.repository;
+
+import com.ericbouchut.springboot.safetynet.model.MedicalRecord;
+import com.ericbouchut.springboot.safetynet.model.Person;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CanonicalizerTest {
+
+    private final Canonicalizer canonicalizer = new Canonicalizer();
+
+    @Test
+    void canonicalize_sharesTheLocationOfTwoPersons() {
+        Person john = person("John");
+        Person jacob = person("Jacob");
+        assertNotSame(john.getCity(), jacob.getCity());
+
+        canonicalizer.canonicalize(john);
+        canonicalizer.canonicalize(jacob);
+
+        assertSame(john.getCity(), jacob.getCity());
+        assertSame(john.getAddress(), jacob.getAddress());
+        assertSame(john.getZip(), jacob.getZip());
+        // The names, phones and emails are kept as is
+        assertNotSame(john.getLastName(), jacob.getLastName());
+        assertNotSame(john.getPhone(), jacob.getPhone());
+        assertEquals(3, canonicalizer.size());
+    }
+
+    @Test
+    void canonicalize_sharesTheEqualSetsOfTwoMedicalRecords() {
+        MedicalRecord first = medicalRecord(new HashSet<>(List.of("aznol:350mg", "hydrapermazol:100mg")));
+        MedicalRecord second = medicalRecord(new HashSet<>(List.of("hydrapermazol:100mg", "aznol:350mg")));
+
+        canonicalizer.canonicalize(first);
+        canonicalizer.canonicalize(second);
+
+        assertSame(first.getMedications(), second.getMedications());
+        assertEquals(Set.of("aznol:350mg", "hydrapermazol:100mg"), first.getMedications());
+        assertThrows(UnsupportedOperationException.class, () -> first.getMedications().add("terazine:10mg"));
+        // Both records have no allergies: a single empty set
+        assertSame(Collections.emptySet(), first.getAllergies());
+        assertSame(first.getAllergies(), second.getAllergies());
+    }
+
+    @Test
+    void canonical_keepsTheIterationOrderOfTheSet() {
+        Set<String> values = new LinkedHashSet<>(List.of("c", "a", "b"));
+
+        assertEquals(List.of("c", "a", "b"), new ArrayList<>(canonicalizer.canonical(values)));
+    }
+
+    @Test
+    void canonical_returnsTheSetAsIs_whenItHasANullElement() {
+        Set<String> values = new HashSet<>(Collections.singleton(null));
+
+        assertSame(values, canonicalizer.canonical(values));
+        assertNull(canonicalizer.canonical((Set<String>) null));
+        assertNull(canonicalizer.canonical((String) null));
+    }
+
+    @Test
+    void canonicalize_eachLoadHasItsOwnTables() {
+        Person john = canonicalizer.canonicalize(person("John"));
+        Person jacob = new Canonicalizer().canonicalize(person("Jacob"));
+
+        assertNotSame(john.getCity(), jacob.getCity());
+        assertEquals(john.getCity(), jacob.getCity());
+    }
+
+    private static Person person(String firstName) {
+        return new Person(
+                firstName,
+                new String("Boyd"),
+                new String("1509 Culver St"),
+                new String("Culver"),
+                new String("97451"),
+                new String("841-874-6512"),
+                firstName + "@email.com"
+        );
+    }
+
+    private static MedicalRecord medicalRecord(Set<String> medications) {
+        return new MedicalRecord("John", "Boyd", LocalDate.of(1984, 3, 6), medications, new HashSet<>());
+    }
+}
@@ -0,0 +1,80 @@
+package com.ericbouchut.springboot.safetynet.repository;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ClockCacheTest {
+
+    @Test
+    void put_beyondTheMaximumSize_evictsAnEntryNotReadSinceItWasPut() {
+        AtomicInteger evictions = new AtomicInteger();
+        ClockCache<String, Integer> cache = new ClockCache<>(2, evictions::incrementAndGet);
+        cache.put("a", 1);
+        cache.put("b", 2);
+        cache.get("a");
+
+        cache.put("c", 3);
+
+        assertEquals(2, cache.size());
+        assertEquals(1, evictions.get());
+        assertEquals(Integer.valueOf(1), cache.get("a"));
+        assertNull(cache.get("b"));
+        assertEquals(Integer.valueOf(3), cache.get("c"));
+    }
+
+    @Test
+    void put_allEntriesRead_evictsTheOldestOne() {
+        ClockCache<String, Integer> cache = new ClockCache<>(2, () -> {});
+        cache.put("a", 1);
+        cache.put("b", 2);
+        cache.get("a");
+        cache.get("b");
+
+        cache.put("c", 3);
+
+        assertNull(cache.get("a"));
+        assertEquals(Integer.valueOf(2), cache.get("b"));
+    }
+
+    @Test
+    void put_existingKey_keepsTheMergedValue() {
+        ClockCache<String, Integer> cache = new ClockCache<>(2, () -> {});
+        cache.put("a", 5);
+
+        assertEquals(Integer.valueOf(5), cache.put("a", 3, Math::max));
+        assertEquals(Integer.valueOf(7), cache.put("a", 7, Math::max));
+        assertEquals(Integer.valueOf(7), cache.get("a"));
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    void concurrentPuts_keepTheMaximumSize() throws InterruptedException {
+        AtomicInteger evictions = new AtomicInteger();
+        ClockCache<Integer, Integer> cache = new ClockCache<>(100, evictions::incrementAndGet);
+
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            int offset = t * 10_000;
+            Thread thread = new Thread(() -> {
+                for (int i = 0; i < 10_000; i++) {
+                    cache.put(offset + i, i);
+                    cache.get(offset + i / 2);
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        // Two puts may evict an entry each for the same excess entry
+        assertTrue(cache.size() <= 100);
+        assertEquals(40_000 - cache.size(), evictions.get());
+    }
+}
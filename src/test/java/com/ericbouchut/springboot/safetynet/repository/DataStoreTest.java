@@ -0,0 +1,157 @@
+package com.ericbouchut.springboot.safetynet.repository;
+
+import com.ericbouchut.springboot.safetynet.model.Data;
+import com.ericbouchut.springboot.safetynet.model.FireStation;
+import com.ericbouchut.springboot.safetynet.model.Person;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DataStoreTest {
+
+    private final Person johnBoyd = Person.builder()
+            .firstName("John").lastName("Boyd")
+            .address("1509 Culver St").city("Culver").zip("97451")
+            .phone("841-874-6512").email("jaboyd@email.com")
+            .build();
+
+    private final Person tenleyBoyd = Person.builder()
+            .firstName("Tenley").lastName("Boyd")
+            .address("1509 Culver St").city("Culver").zip("97451")
+            .phone("841-874-6512").email("tenz@email.com")
+            .build();
+
+    private final DataStore dataStore = new DataStore(data(johnBoyd));
+
+    @AfterEach
+    void tearDown() {
+        dataStore.unpin();
+    }
+
+    @Test
+    void publish_replacesTheDatasetAndIncrementsTheVersion() {
+        assertEquals(1, dataStore.current().version());
+
+        Dataset dataset = dataStore.publish(data(johnBoyd, tenleyBoyd));
+
+        assertEquals(2, dataset.version());
+        assertSame(dataset, dataStore.current());
+        assertEquals(2, dataStore.current().persons().getByAddress("1509 Culver St").size());
+        assertEquals(Set.of(3), dataStore.current().fireStations().getNumbersByAddress("1509 Culver St"));
+    }
+
+    @Test
+    void publishDiff_isRejected_whenAnotherDatasetWasPublishedSinceTheDiff() {
+        DatasetDiff diff = DatasetDiff.between(dataStore.latest(), data(johnBoyd, tenleyBoyd));
+        Dataset published = dataStore.update(dataset -> dataset.withPersons(List.of(), List.of(johnBoyd))).orElseThrow();
+
+        assertThrows(IllegalStateException.class, () -> dataStore.publish(diff));
+
+        assertSame(published, dataStore.latest());
+        assertEquals(2, dataStore.publish(DatasetDiff.between(dataStore.latest(), data(johnBoyd, tenleyBoyd)))
+                .persons().getAll().size());
+    }
+
+    @Test
+    void subscribe_passesTheLatestDataset_thenThePublishedOnes() {
+        List<Dataset> notified = new ArrayList<>();
+        dataStore.subscribe(notified::add);
+        dataStore.subscribe(dataset -> {
+            if (dataset.version() > 1) {
+                throw new IllegalStateException("Failed listener");
+            }
+        });
+
+        Dataset published = dataStore.publish(data(johnBoyd, tenleyBoyd));
+        dataStore.update(dataset -> dataset);
+
+        // The failed listener does not fail the publication, and the update without change is not notified
+        assertEquals(2, notified.size());
+        assertEquals(1, notified.get(0).version());
+        assertSame(published, notified.get(1));
+        assertSame(published, dataStore.latest());
+    }
+
+    @Test
+    void pin_keepsTheSameDatasetUntilUnpinned() {
+        Dataset pinned = dataStore.pin();
+
+        dataStore.publish(data(johnBoyd, tenleyBoyd));
+
+        // A request in progress completes with the dataset it started with
+        assertSame(pinned, dataStore.current());
+        assertEquals(1, dataStore.current().persons().getAll().size());
+        assertEquals(2, dataStore.latest().version());
+
+        dataStore.unpin();
+
+        assertEquals(2, dataStore.current().version());
+        assertEquals(2, dataStore.current().persons().getAll().size());
+    }
+
+    @Test
+    void pin_isPerThread() throws InterruptedException {
+        dataStore.pin();
+        dataStore.publish(data(johnBoyd, tenleyBoyd));
+
+        long[] versionSeenByOtherThread = new long[1];
+        Thread thread = new Thread(() -> versionSeenByOtherThread[0] = dataStore.current().version());
+        thread.start();
+        thread.join();
+
+        assertEquals(2, versionSeenByOtherThread[0]);
+        assertEquals(1, dataStore.current().version());
+    }
+
+    @Test
+    void withCurrentDataset_pinsTheDatasetOfTheCallerInAnotherThread() throws InterruptedException {
+        dataStore.pin();
+        Supplier<Long> task = dataStore.withCurrentDataset(() -> dataStore.current().version());
+        dataStore.publish(data(johnBoyd, tenleyBoyd));
+
+        long[] versionSeenByOtherThread = new long[1];
+        Thread thread = new Thread(() -> versionSeenByOtherThread[0] = task.get());
+        thread.start();
+        thread.join();
+        assertEquals(1, versionSeenByOtherThread[0]);
+
+        // Run by the caller: its own pinned dataset is restored
+        dataStore.unpin();
+        assertEquals(1, task.get().longValue());
+        assertEquals(2, dataStore.current().version());
+    }
+
+    @Test
+    void update_publishesANewVersionAndLeavesThePreviousOneUnchanged() {
+        Dataset previous = dataStore.latest();
+
+        Dataset updated = dataStore.update(dataset -> dataset.withPersons(List.of(tenleyBoyd), List.of()))
+                .orElseThrow();
+
+        assertEquals(2, updated.version());
+        assertEquals(2, updated.persons().getByAddress("1509 Culver St").size());
+        assertEquals(Set.of(johnBoyd), previous.persons().getAll());
+        assertEquals(Set.of(johnBoyd), previous.persons().getByAddress("1509 Culver St"));
+    }
+
+    @Test
+    void update_withoutChange_keepsTheVersion() {
+        assertTrue(dataStore.update(dataset -> dataset.withPersons(List.of(), List.of())).isEmpty());
+        assertEquals(1, dataStore.latest().version());
+    }
+
+    private static Data data(Person... persons) {
+        return new Data(
+                new HashSet<>(Set.of(persons)),
+                new HashSet<>(Set.of(new FireStation("1509 Culver St", 3))),
+                new HashSet<>()
+        );
+    }
+}
@@ -0,0 +1,119 @@
+package com.ericbouchut.springboot.safetynet.repository;
+
+import com.ericbouchut.springboot.safetynet.model.Data;
+import com.ericbouchut.springboot.safetynet.model.FireStation;
+import com.ericbouchut.springboot.safetynet.model.FullName;
+import com.ericbouchut.springboot.safetynet.model.MedicalRecord;
+import com.ericbouchut.springboot.safetynet.model.Person;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DatasetDiffTest {
+
+    private final Person johnBoyd = person("John", "jaboyd@email.com");
+    private final Person tenleyBoyd = person("Tenley", "tenz@email.com");
+    private final Person rogerBoyd = person("Roger", "jaboyd@email.com");
+
+    private final FireStation culverSt = new FireStation("1509 Culver St", 3);
+    private final FireStation fifteenthSt = new FireStation("29 15th St", 2);
+
+    private final MedicalRecord johnBoydRecord = new MedicalRecord("John", "Boyd", LocalDate.of(1984, 3, 6), Set.of("aznol:350mg"), Set.of("nillacilan"));
+    private final MedicalRecord tenleyBoydRecord = new MedicalRecord("Tenley", "Boyd", LocalDate.of(2012, 2, 18), Set.of(), Set.of("peanut"));
+
+    private final Dataset dataset = Dataset.of(
+            data(Set.of(johnBoyd, tenleyBoyd), Set.of(culverSt), Set.of(johnBoydRecord, tenleyBoydRecord)),
+            1
+    );
+
+    @Test
+    void between_sameData_isEmpty() {
+        DatasetDiff diff = DatasetDiff.between(
+                dataset,
+                data(Set.of(johnBoyd, tenleyBoyd), Set.of(culverSt), Set.of(johnBoydRecord, tenleyBoydRecord))
+        );
+
+        assertTrue(diff.isEmpty());
+    }
+
+    @Test
+    void between_detectsInsertsUpdatesAndDeletes() {
+        Person tenleyBoydNewEmail = person("Tenley", "tenley@email.com");
+        MedicalRecord johnBoydNewRecord = new MedicalRecord("John", "Boyd", LocalDate.of(1984, 3, 6), Set.of(), Set.of());
+
+        DatasetDiff diff = DatasetDiff.between(
+                dataset,
+                data(Set.of(tenleyBoydNewEmail, rogerBoyd), Set.of(fifteenthSt), Set.of(johnBoydNewRecord))
+        );
+
+        assertEquals(Set.of(rogerBoyd), diff.insertedPersons());
+        assertEquals(Set.of(tenleyBoydNewEmail), diff.updatedPersons());
+        assertEquals(Set.of(johnBoyd), diff.deletedPersons());
+        assertEquals(Set.of(fifteenthSt), diff.insertedFireStations());
+        assertEquals(Set.of(culverSt), diff.deletedFireStations());
+        assertEquals(List.of(johnBoydNewRecord), diff.medicalRecords().get(FullName.of(johnBoydRecord)));
+        assertEquals(List.of(), diff.medicalRecords().get(FullName.of(tenleyBoydRecord)));
+
+        assertEquals(2, diff.inserted());
+        assertEquals(2, diff.updated());
+        assertEquals(3, diff.deleted());
+    }
+
+    @Test
+    void apply_sameResultAsAFullRebuild() {
+        Person tenleyBoydNewEmail = person("Tenley", "tenley@email.com");
+        Data newData = data(
+                Set.of(tenleyBoydNewEmail, rogerBoyd),
+                Set.of(culverSt, fifteenthSt),
+                Set.of(tenleyBoydRecord)
+        );
+
+        Dataset applied = dataset.apply(DatasetDiff.between(dataset, newData), 2);
+        Dataset rebuilt = Dataset.of(newData, 2);
+
+        assertEquals(rebuilt.persons().getAll(), applied.persons().getAll());
+        assertEquals(
+                "tenley@email.com",
+                applied.persons().getByFullName(FullName.of(tenleyBoyd)).iterator().next().getEmail()
+        );
+        assertEquals(rebuilt.persons().getByAddress("1509 Culver St"), applied.persons().getByAddress("1509 Culver St"));
+        assertEquals(rebuilt.fireStations().getAll(), applied.fireStations().getAll());
+        assertEquals(Set.of(2), applied.fireStations().getNumbersByAddress("29 15th St"));
+        assertEquals(Set.of("29 15th St"), applied.fireStations().getAddressesByNumber(2));
+        assertEquals(List.of(culverSt), applied.fireStations().getByNumber(3));
+        assertEquals(rebuilt.medicalRecords().getAll(), applied.medicalRecords().getAll());
+        assertTrue(applied.medicalRecords().getByFullName(FullName.of(johnBoydRecord)).isEmpty());
+    }
+
+    @Test
+    void apply_keepsTheIndexesOfUnchangedEntities() {
+        Data newData = data(
+                Set.of(johnBoyd, tenleyBoyd, rogerBoyd),
+                Set.of(culverSt),
+                Set.of(johnBoydRecord, tenleyBoydRecord)
+        );
+
+        Dataset applied = dataset.apply(DatasetDiff.between(dataset, newData), 2);
+
+        assertSame(dataset.fireStations(), applied.fireStations());
+        assertSame(dataset.medicalRecords(), applied.medicalRecords());
+        assertEquals(3, applied.persons().getByAddress("1509 Culver St").size());
+    }
+
+    private static Person person(String firstName, String email) {
+        return Person.builder()
+                .firstName(firstName).lastName("Boyd")
+                .address("1509 Culver St").city("Culver").zip("97451")
+                .phone("841-874-6512").email(email)
+                .build();
+    }
+
+    private static Data data(Set<Person> persons, Set<FireStation> fireStations, Set<MedicalRecord> medicalRecords) {
+        return new Data(new HashSet<>(persons), new HashSet<>(fireStations), new HashSet<>(medicalRecords));
+    }
+}
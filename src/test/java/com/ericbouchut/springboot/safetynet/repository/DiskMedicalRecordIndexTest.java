@@ -0,0 +1,123 @@
+package com.ericbouchut.springboot.safetynet.repository;
+
+import com.ericbouchut.springboot.safetynet.model.Data;
+import com.ericbouchut.springboot.safetynet.model.FullName;
+import com.ericbouchut.springboot.safetynet.model.MedicalRecord;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DiskMedicalRecordIndexTest {
+
+    private final MedicalRecord johnBoyd = new MedicalRecord("John", "Boyd", LocalDate.of(1984, 3, 6), Set.of("aznol:350mg"), Set.of("nillacilan"));
+    private final MedicalRecord johnBoydNamesake = new MedicalRecord("John", "Boyd", LocalDate.of(2015, 1, 8), Set.of(), Set.of());
+    private final MedicalRecord tenleyBoyd = new MedicalRecord("Tenley", "Boyd", LocalDate.of(2012, 2, 18), Set.of(), Set.of("peanut"));
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void getByFullName_readsTheFile_thenTheCache() {
+        MedicalRecordStorage storage = storage(10);
+        MedicalRecordIndex index = storage.of(List.of(johnBoyd, johnBoydNamesake, tenleyBoyd));
+
+        assertInstanceOfDisk(index);
+        assertEquals(Set.of(johnBoyd, johnBoydNamesake), Set.copyOf(index.getByFullName(new FullName("John", "Boyd"))));
+        assertSame(index.getByFullName(new FullName("John", "Boyd")), index.getByFullName(new FullName("John", "Boyd")));
+        assertEquals(List.of(), index.getByFullName(new FullName("Jacob", "Boyd")));
+
+        assertEquals(2.0, meterRegistry.get("cache.gets").tag("cache", "medical-records").tag("result", "hit").functionCounter().count());
+        assertEquals(2.0, meterRegistry.get("cache.gets").tag("cache", "medical-records").tag("result", "miss").functionCounter().count());
+        assertEquals(0.5, storage.getCache().hitRatio());
+        assertEquals(2, meterRegistry.get("safetynet.medical-records.miss").timer().count());
+    }
+
+    @Test
+    void getByFullName_evictsTheLeastRecentlyUsedFullName() {
+        MedicalRecordStorage storage = storage(1);
+        MedicalRecordIndex index = storage.of(List.of(johnBoyd, tenleyBoyd));
+
+        List<MedicalRecord> tenley = index.getByFullName(new FullName("Tenley", "Boyd"));
+        assertEquals(List.of(johnBoyd), index.getByFullName(new FullName("John", "Boyd")));
+
+        assertEquals(1, storage.getCache().size());
+        assertNotSame(tenley, index.getByFullName(new FullName("Tenley", "Boyd")));
+        assertEquals(2.0, meterRegistry.get("cache.evictions").tag("cache", "medical-records").functionCounter().count());
+    }
+
+    @Test
+    void apply_writesANewFile_withTheChanges() {
+        Data data = new Data(new HashSet<>(), new HashSet<>(), new HashSet<>(Set.of(johnBoyd, tenleyBoyd)));
+        Dataset dataset = Dataset.of(data, 1, storage(10));
+        dataset.medicalRecords().getByFullName(new FullName("John", "Boyd"));
+
+        MedicalRecord johnBoydUpdated = new MedicalRecord("John", "Boyd", LocalDate.of(1984, 3, 6), Set.of(), Set.of());
+        Data newData = new Data(new HashSet<>(), new HashSet<>(), new HashSet<>(Set.of(johnBoydUpdated)));
+        MedicalRecordIndex applied = dataset.medicalRecords().apply(DatasetDiff.between(dataset, newData));
+
+        assertInstanceOfDisk(applied);
+        assertEquals(Set.of(johnBoydUpdated), applied.getAll());
+        assertEquals(List.of(johnBoydUpdated), applied.getByFullName(new FullName("John", "Boyd")));
+        // The previous version still reads its own records
+        assertEquals(List.of(johnBoyd), dataset.medicalRecords().getByFullName(new FullName("John", "Boyd")));
+    }
+
+    @Test
+    void apply_copiesTheUnchangedRecords_largerThanAChunk() {
+        Set<String> medications = new LinkedHashSet<>();
+        for (int i = 0; medications.size() * 20 < DiskMedicalRecordIndex.CHUNK_SIZE * 2; i++) {
+            medications.add("medication-" + i + ":100mg");
+        }
+        MedicalRecord large = new MedicalRecord("Large", "Boyd", LocalDate.of(1984, 3, 6), medications, Set.of());
+        Data data = new Data(new HashSet<>(), new HashSet<>(), new HashSet<>(Set.of(johnBoyd, large, tenleyBoyd)));
+        Dataset dataset = Dataset.of(data, 1, storage(0));
+
+        Data newData = new Data(new HashSet<>(), new HashSet<>(), new HashSet<>(Set.of(johnBoyd, large)));
+        MedicalRecordIndex applied = dataset.medicalRecords().apply(DatasetDiff.between(dataset, newData));
+
+        assertEquals(Set.of(johnBoyd, large), applied.getAll());
+        assertEquals(
+                new ArrayList<>(medications),
+                new ArrayList<>(applied.getByFullName(new FullName("Large", "Boyd")).get(0).getMedications())
+        );
+        assertEquals(
+                ((EncodedMedicalRecordIndex) dataset.medicalRecords()).encodedSize(),
+                ((EncodedMedicalRecordIndex) applied).encodedSize() + ((EncodedMedicalRecordIndex) DiskMedicalRecordIndex.of(
+                        List.of(tenleyBoyd), directory, storage(0).getCache()
+                )).encodedSize()
+        );
+    }
+
+    @Test
+    void medicalRecordStorage_deletesTheFilesLeftByAPreviousRun() throws IOException {
+        Path leftover = Files.createFile(directory.resolve(DiskMedicalRecordIndex.FILE_PREFIX + "1" + DiskMedicalRecordIndex.FILE_SUFFIX));
+        Path other = Files.createFile(directory.resolve("other.bin"));
+
+        storage(10);
+
+        assertFalse(Files.exists(leftover));
+        assertTrue(Files.exists(other));
+    }
+
+    private MedicalRecordStorage storage(int cacheSize) {
+        return new MedicalRecordStorage(MedicalRecordIndex.Storage.DISK, directory, cacheSize, meterRegistry);
+    }
+
+    private static void assertInstanceOfDisk(MedicalRecordIndex medicalRecords) {
+        assertTrue(medicalRecords instanceof DiskMedicalRecordIndex, medicalRecords.getClass().getName());
+    }
+}
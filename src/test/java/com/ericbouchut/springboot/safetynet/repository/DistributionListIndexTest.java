@@ -0,0 +1,115 @@
+package com.ericbouchut.springboot.safetynet.repository;
+
+import com.ericbouchut.springboot.safetynet.data.DataLoaders;
+import com.ericbouchut.springboot.safetynet.model.Data;
+import com.ericbouchut.springboot.safetynet.model.FireStation;
+import com.ericbouchut.springboot.safetynet.model.FullName;
+import com.ericbouchut.springboot.safetynet.model.Person;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ClassPathResource;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DistributionListIndexTest {
+
+    private static final List<Integer> STATION_NUMBERS = List.of(1, 2, 3, 4, 42);
+
+    private final Data data = DataLoaders.dataLoader(new ClassPathResource("data/data.json")).load();
+
+    private final Dataset dataset = Dataset.of(data, 1);
+
+    @Test
+    void of_sameListsAsAScan() {
+        assertSameListsAsAScan(dataset);
+        assertEquals(List.of(), dataset.distributionLists().getEmailsByCity("Unknown"));
+        assertEquals(List.of(), dataset.distributionLists().getEmailsByCity(null));
+        assertEquals(List.of(), dataset.distributionLists().getPhonesByNumber(42));
+        assertEquals(List.of(), dataset.distributionLists().getPhonesByNumber(null));
+    }
+
+    @Test
+    void getEmailsByCity_withoutDuplicates() {
+        List<String> emails = dataset.distributionLists().getEmailsByCity("Culver");
+
+        // Several persons of Culver share their email address
+        assertTrue(emails.size() < dataset.persons().getByCity("Culver").size());
+        assertEquals(emails.stream().distinct().sorted().toList(), emails);
+        // The same list for every request
+        assertSame(emails, dataset.distributionLists().getEmailsByCity("Culver"));
+        assertThrows(UnsupportedOperationException.class, () -> emails.add("hacker@email.com"));
+    }
+
+    @Test
+    void withPersons_rebuildsOnlyTheirCitiesAndStations() {
+        // Tenley Boyd moves from 1509 Culver St (station 3) to 29 15th St (station 2), with a new phone
+        Person tenleyBoyd = dataset.persons().getByFullName(new FullName("Tenley", "Boyd")).iterator().next();
+        Person moved = Person.builder()
+                .firstName("Tenley").lastName("Boyd")
+                .address("29 15th St").city("Culver").zip("97451")
+                .phone("841-874-0000").email("tenley@email.com")
+                .build();
+
+        Dataset updated = dataset.withPersons(List.of(moved), List.of(tenleyBoyd));
+
+        assertSameListsAsAScan(updated);
+        assertSame(dataset.distributionLists().getPhonesByNumber(1), updated.distributionLists().getPhonesByNumber(1));
+        assertTrue(updated.distributionLists().getPhonesByNumber(2).contains("841-874-0000"));
+        assertTrue(updated.distributionLists().getEmailsByCity("Culver").contains("tenley@email.com"));
+    }
+
+    @Test
+    void apply_sameListsAsAFullRebuild() {
+        Data newData = new Data(
+                new HashSet<>(data.getPersons()),
+                new HashSet<>(data.getFireStations()),
+                new HashSet<>(data.getMedicalRecords())
+        );
+        // Reginold Walker (908 73rd St, station 1) changes his phone number
+        Person reginold = dataset.persons().getByFullName(new FullName("Reginold", "Walker")).iterator().next();
+        newData.getPersons().remove(reginold);
+        newData.getPersons().add(Person.builder()
+                .firstName(reginold.getFirstName()).lastName(reginold.getLastName())
+                .address(reginold.getAddress()).city(reginold.getCity()).zip(reginold.getZip())
+                .phone("841-874-0000").email(reginold.getEmail())
+                .build());
+        // 489 Manchester St moves from station 4 to station 1
+        newData.getFireStations().remove(new FireStation("489 Manchester St", 4));
+        newData.getFireStations().add(new FireStation("489 Manchester St", 1));
+
+        Dataset applied = dataset.apply(DatasetDiff.between(dataset, newData), 2);
+
+        assertSameListsAsAScan(applied);
+        assertTrue(applied.distributionLists().getPhonesByNumber(1).contains("841-874-0000"));
+        assertFalse(applied.distributionLists().getPhonesByNumber(1).contains(reginold.getPhone()));
+    }
+
+    /**
+     * Compare the lists with the ones computed by scanning the persons.
+     */
+    private static void assertSameListsAsAScan(Dataset dataset) {
+        for (Integer number : STATION_NUMBERS) {
+            List<String> phones = dataset.persons().getAll().stream()
+                    .filter(person -> dataset.fireStations().getNumbersByAddress(person.getAddress()).contains(number))
+                    .map(Person::getPhone)
+                    .filter(Objects::nonNull)
+                    .distinct()
+                    .sorted()
+                    .toList();
+            assertEquals(phones, dataset.distributionLists().getPhonesByNumber(number), "station " + number);
+        }
+        for (String city : List.of("Culver", "Unknown")) {
+            List<String> emails = dataset.persons().getAll().stream()
+                    .filter(person -> city.equals(person.getCity()))
+                    .map(Person::getEmail)
+                    .filter(Objects::nonNull)
+                    .distinct()
+                    .sorted()
+                    .toList();
+            assertEquals(emails, dataset.distributionLists().getEmailsByCity(city), city);
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package com.ericbouchut.springboot.safetynet.repository;
+
+import com.ericbouchut.springboot.safetynet.model.Data;
+import com.ericbouchut.springboot.safetynet.model.FireStation;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FireStationRepositoryTest {
+
+    private final FireStationRepository fireStationRepository = new FireStationRepository(new DataStore(
+            new Data(
+                    new HashSet<>(),
+                    new HashSet<>(Set.of(
+                            new FireStation("1509 Culver St", 3),
+                            new FireStation("29 15th St", 2),
+                            new FireStation("834 Binoc Ave", 3),
+                            new FireStation("748 Townings Dr", 3),
+                            new FireStation("748 Townings Dr", 2)
+                    )),
+                    new HashSet<>()
+            )
+    ));
+
+    @Test
+    void getFireStationsByNumber() {
+        assertEquals(3, fireStationRepository.getFireStationsByNumber(3).size());
+        assertEquals(
+                Set.of(new FireStation("29 15th St", 2), new FireStation("748 Townings Dr", 2)),
+                Set.copyOf(fireStationRepository.getFireStationsByNumber(2))
+        );
+        assertEquals(List.of(), fireStationRepository.getFireStationsByNumber(42));
+        assertEquals(List.of(), fireStationRepository.getFireStationsByNumber(null));
+    }
+
+    @Test
+    void getFireStationAddressesByNumber() {
+        assertEquals(
+                Set.of("1509 Culver St", "834 Binoc Ave", "748 Townings Dr"),
+                fireStationRepository.getFireStationAddressesByNumber(3)
+        );
+        assertEquals(Set.of(), fireStationRepository.getFireStationAddressesByNumber(42));
+    }
+
+    @Test
+    void getFireStationAddressesByNumber_returnsTheSameImmutableSet() {
+        Set<String> addresses = fireStationRepository.getFireStationAddressesByNumber(3);
+
+        assertSame(addresses, fireStationRepository.getFireStationAddressesByNumber(3));
+        assertThrows(UnsupportedOperationException.class, () -> addresses.add("Somewhere"));
+    }
+
+    @Test
+    void getFireStationNumbersByAddress() {
+        assertEquals(Set.of(2, 3), fireStationRepository.getFireStationNumbersByAddress("748 Townings Dr"));
+        assertEquals(Set.of(3), fireStationRepository.getFireStationNumbersByAddress("1509 Culver St"));
+        assertEquals(Set.of(), fireStationRepository.getFireStationNumbersByAddress("Unknown Address"));
+        assertEquals(Set.of(), fireStationRepository.getFireStationNumbersByAddress(null));
+    }
+
+    @Test
+    void fireStationWithoutAddressOrNumber_isNotIndexed() {
+        FireStation withoutAddress = new FireStation(null, 3);
+        FireStation withoutNumber = new FireStation("29 15th St", null);
+        Data data = new Data(new HashSet<>(), new HashSet<>(Set.of(new FireStation("1509 Culver St", 3), withoutAddress)), new HashSet<>());
+        DataStore dataStore = new DataStore(data);
+        FireStationRepository repository = new FireStationRepository(dataStore);
+
+        assertEquals(Set.of("1509 Culver St"), repository.getFireStationAddressesByNumber(3));
+
+        Data newData = new Data(new HashSet<>(), new HashSet<>(Set.of(new FireStation("1509 Culver St", 3), withoutNumber)), new HashSet<>());
+        dataStore.publish(DatasetDiff.between(dataStore.latest(), newData));
+
+        assertEquals(Set.of("1509 Culver St"), repository.getFireStationAddressesByNumber(3));
+        assertEquals(Set.of(), repository.getFireStationNumbersByAddress("29 15th St"));
+        assertEquals(2, repository.getAllFireStations().size());
+    }
+}
@@ -0,0 +1,131 @@
+package com.ericbouchut.springboot.safetynet.repository;
+
+import com.ericbouchut.springboot.safetynet.data.DataLoaders;
+import com.ericbouchut.springboot.safetynet.model.Data;
+import com.ericbouchut.springboot.safetynet.model.FullName;
+import com.ericbouchut.springboot.safetynet.model.MedicalRecord;
+import com.ericbouchut.springboot.safetynet.model.Person;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ClassPathResource;
+
+import java.time.LocalDate;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HouseholdIndexTest {
+
+    private final Data data = DataLoaders.dataLoader(new ClassPathResource("data/data.json")).load();
+
+    private final Dataset dataset = Dataset.of(data, 1);
+
+    @Test
+    void of_groupsThePersonsByAddressCityAndZip() {
+        List<HouseholdIndex.Household> households = dataset.households().get("1509 Culver St", null, null);
+
+        assertEquals(1, households.size());
+        HouseholdIndex.Household boyds = households.get(0);
+        assertEquals("Culver", boyds.city());
+        assertEquals("97451", boyds.zip());
+        assertEquals(
+                List.of("Felicia", "Jacob", "John", "Roger", "Tenley"),
+                boyds.members().stream().map(Person::getFirstName).toList()
+        );
+        assertEquals(LocalDate.of(2012, 2, 18), boyds.datesOfBirth().get(4)); // Tenley
+
+        assertEquals(households, dataset.households().get("1509 Culver St", "Culver", "97451"));
+        assertEquals(List.of(), dataset.households().get("1509 Culver St", null, "00000"));
+        assertEquals(List.of(), dataset.households().get("unknown address", null, null));
+        assertEquals(List.of(), dataset.households().get(null, null, null));
+    }
+
+    @Test
+    void membersOtherThan_skipsOneMember() {
+        HouseholdIndex.Household boyds = dataset.households().get("1509 Culver St", null, null).get(0);
+        List<Person> members = boyds.members();
+
+        assertEquals(members.subList(1, 5), boyds.membersOtherThan(0));
+        assertEquals(List.of(members.get(0), members.get(1), members.get(3), members.get(4)), boyds.membersOtherThan(2));
+        assertEquals(members.subList(0, 4), boyds.membersOtherThan(4));
+        assertThrows(IndexOutOfBoundsException.class, () -> boyds.membersOtherThan(5));
+    }
+
+    @Test
+    void withPersons_rebuildsOnlyTheirAddresses() {
+        Person tenleyBoyd = dataset.persons().getByFullName(new FullName("Tenley", "Boyd")).iterator().next();
+        Person moved = Person.builder()
+                .firstName("Tenley").lastName("Boyd")
+                .address("29 15th St").city("Culver").zip("97451")
+                .phone("841-874-6513").email("tenz@email.com")
+                .build();
+
+        Dataset updated = dataset.withPersons(List.of(moved), List.of(tenleyBoyd));
+
+        assertSame(
+                dataset.households().get("908 73rd St", null, null),
+                updated.households().get("908 73rd St", null, null)
+        );
+        assertEquals(4, updated.households().get("1509 Culver St", null, null).get(0).members().size());
+        assertTrue(updated.households().get("29 15th St", null, null).get(0).members().contains(moved));
+        assertSameHouseholdsAsAFullRebuild(updated);
+    }
+
+    @Test
+    void apply_sameHouseholdsAsAFullRebuild() {
+        Data newData = new Data(new HashSet<>(data.getPersons()), new HashSet<>(data.getFireStations()), new HashSet<>());
+        // John Boyd is born again, Jacob Boyd loses his medical record
+        for (MedicalRecord medicalRecord : data.getMedicalRecords()) {
+            FullName fullName = FullName.of(medicalRecord);
+            if (fullName.equals(new FullName("Jacob", "Boyd"))) {
+                continue;
+            }
+            newData.getMedicalRecords().add(new MedicalRecord(
+                    medicalRecord.getFirstName(),
+                    medicalRecord.getLastName(),
+                    fullName.equals(new FullName("John", "Boyd")) ? LocalDate.of(2020, 1, 1) : medicalRecord.getDateOfBirth(),
+                    medicalRecord.getMedications(),
+                    medicalRecord.getAllergies()
+            ));
+        }
+        // The Stelzers leave 947 E. Rose Dr
+        newData.getPersons().removeIf(person -> "947 E. Rose Dr".equals(person.getAddress()));
+        // Reginold Walker changes his phone number
+        Person reginold = dataset.persons().getByFullName(new FullName("Reginold", "Walker")).iterator().next();
+        newData.getPersons().remove(reginold);
+        newData.getPersons().add(Person.builder()
+                .firstName(reginold.getFirstName()).lastName(reginold.getLastName())
+                .address(reginold.getAddress()).city(reginold.getCity()).zip(reginold.getZip())
+                .phone("841-874-0000").email(reginold.getEmail())
+                .build());
+
+        Dataset applied = dataset.apply(DatasetDiff.between(dataset, newData), 2);
+
+        assertSameHouseholdsAsAFullRebuild(applied);
+        HouseholdIndex.Household boyds = applied.households().get("1509 Culver St", null, null).get(0);
+        assertNull(boyds.datesOfBirth().get(1)); // Jacob
+        assertEquals(LocalDate.of(2020, 1, 1), boyds.datesOfBirth().get(2)); // John
+        assertEquals(List.of(), applied.households().get("947 E. Rose Dr", null, null));
+        assertTrue(applied.households().get("908 73rd St", null, null).get(0).members().stream()
+                .anyMatch(person -> "841-874-0000".equals(person.getPhone())));
+    }
+
+    private static void assertSameHouseholdsAsAFullRebuild(Dataset dataset) {
+        HouseholdIndex rebuilt = HouseholdIndex.of(dataset.persons(), dataset.medicalRecords());
+        Set<String> addresses = new HashSet<>();
+        dataset.persons().getAll().forEach(person -> addresses.add(person.getAddress()));
+        for (String address : addresses) {
+            List<HouseholdIndex.Household> households = dataset.households().get(address, null, null);
+            assertEquals(rebuilt.get(address, null, null), households, address);
+            // Same details, not only the same keys
+            for (int i = 0; i < households.size(); i++) {
+                assertEquals(
+                        rebuilt.get(address, null, null).get(i).members().stream().map(Person::getPhone).toList(),
+                        households.get(i).members().stream().map(Person::getPhone).toList(),
+                        address
+                );
+            }
+        }
+    }
+}
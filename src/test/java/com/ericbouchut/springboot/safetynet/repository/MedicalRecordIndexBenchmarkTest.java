@@ -0,0 +1,141 @@
+package com.ericbouchut.springboot.safetynet.repository;
+
+import com.ericbouchut.springboot.safetynet.data.DataGenerator;
+import com.ericbouchut.springboot.safetynet.model.FullName;
+import com.ericbouchut.springboot.safetynet.model.MedicalRecord;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Compare the storages of the medical records ({@link MedicalRecordIndex.Storage}), with 1M medical records:
+ * <ul>
+ *     <li>the heap used by the index (and the size of the encoded records, off-heap or on disk),</li>
+ *     <li>the GC pause: the time of a full garbage collection with the index alive,</li>
+ *     <li>the throughput of the lookups by full name, and the GC time during these lookups.</li>
+ * </ul>
+ * The lookups are skewed, as the requests are: 90% read one of {@link #HOT_SET} full names, 10% any full name.
+ * The <code>disk</code> storage is measured with a cache of {@link #CACHE_SIZE} full names (and its hit ratio
+ * and mean miss latency), and without cache.
+ * The heap and the GC times are reported by the JVM, so they are approximate.
+ * <p>
+ * Run with: <code>mvn test -Pbenchmark</code>
+ */
+@Tag("benchmark")
+class MedicalRecordIndexBenchmarkTest {
+
+    private static final int SIZE = 1_000_000;
+
+    private static final int LOOKUPS = 1_000_000;
+
+    private static final int HOT_SET = 1_000;
+
+    private static final int CACHE_SIZE = 10_000;
+
+    private static final int FULL_GCS = 5;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void offHeapAndDisk_useLessHeap_andShortenTheGcPauses() {
+        Random random = new Random(42);
+        FullName[] fullNames = new FullName[100_000];
+        for (int i = 0; i < fullNames.length; i++) {
+            int person = i % 10 == 0 ? random.nextInt(SIZE) : random.nextInt(HOT_SET) * (SIZE / HOT_SET);
+            fullNames[i] = new FullName("First" + person, "Last" + (person % 1000));
+        }
+
+        measure(MedicalRecordIndex.Storage.HEAP, 0, fullNames);
+        measure(MedicalRecordIndex.Storage.OFF_HEAP, 0, fullNames);
+        measure(MedicalRecordIndex.Storage.DISK, CACHE_SIZE, fullNames);
+        measure(MedicalRecordIndex.Storage.DISK, 0, fullNames);
+    }
+
+    private void measure(MedicalRecordIndex.Storage storage, int cacheSize, FullName[] fullNames) {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        MedicalRecordStorage medicalRecordStorage = new MedicalRecordStorage(storage, directory, cacheSize, meterRegistry);
+
+        long baseline = usedHeap();
+        Set<MedicalRecord> medicalRecords = DataGenerator.generate(SIZE, 5, 10).getMedicalRecords();
+        long start = System.nanoTime();
+        MedicalRecordIndex index = medicalRecordStorage.of(medicalRecords);
+        long buildMillis = (System.nanoTime() - start) / 1_000_000;
+        medicalRecords = null;
+        long heap = usedHeap() - baseline;
+        assertEquals(SIZE, index.size());
+
+        long gcStart = gcMillis();
+        for (int i = 0; i < FULL_GCS; i++) {
+            System.gc();
+        }
+        long fullGcMillis = (gcMillis() - gcStart) / FULL_GCS;
+
+        lookups(index, fullNames); // Warm up (and fill the cache)
+        gcStart = gcMillis();
+        start = System.nanoTime();
+        long found = lookups(index, fullNames);
+        long lookupNanos = System.nanoTime() - start;
+        long lookupGcMillis = gcMillis() - gcStart;
+        assertEquals(LOOKUPS, found);
+
+        String cache = "";
+        if (medicalRecordStorage.getCache() != null) {
+            cache = String.format(
+                    ", cache %,d: hit ratio %.2f, miss %,.1f us",
+                    cacheSize, medicalRecordStorage.getCache().hitRatio(),
+                    meterRegistry.get("safetynet.medical-records.miss").timer().mean(TimeUnit.MICROSECONDS)
+            );
+        }
+        System.out.printf(
+                "MedicalRecordIndex %-8s: %,d records, heap %,5d MB, encoded %,5d MB (built in %,d ms),"
+                        + " full GC %,4d ms, lookups %,7d/ms (GC %,d ms)%s%n",
+                storage, SIZE, heap / 1_000_000,
+                index instanceof EncodedMedicalRecordIndex encoded ? encoded.encodedSize() / 1_000_000 : 0,
+                buildMillis, fullGcMillis, LOOKUPS * 1_000_000L / lookupNanos, lookupGcMillis, cache
+        );
+    }
+
+    /**
+     * Read the medical records of {@link #LOOKUPS} full names, as a request does.
+     *
+     * @return the number of medical records found
+     */
+    private static long lookups(MedicalRecordIndex index, FullName[] fullNames) {
+        long found = 0;
+        for (int i = 0; i < LOOKUPS; i++) {
+            for (MedicalRecord medicalRecord : index.getByFullName(fullNames[i % fullNames.length])) {
+                if (medicalRecord.getMedications() != null) {
+                    found++;
+                }
+            }
+        }
+        return found;
+    }
+
+    private static long gcMillis() {
+        long millis = 0;
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            millis += Math.max(0, collector.getCollectionTime());
+        }
+        return millis;
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,76 @@
+package com.ericbouchut.springboot.safetynet.repository;
+
+import com.ericbouchut.springboot.safetynet.data.DataGenerator;
+import com.ericbouchut.springboot.safetynet.model.Data;
+import com.ericbouchut.springboot.safetynet.model.MedicalRecord;
+import com.ericbouchut.springboot.safetynet.model.Person;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Measure how {@link MedicalRecordRepository#getMedicalRecordsByPersons(Set)} scales
+ * from 1k to 1M medical records.
+ * <p>
+ * Run with: <code>mvn test -Pbenchmark</code>
+ */
+@Tag("benchmark")
+class MedicalRecordRepositoryBenchmarkTest {
+
+    /**
+     * Above this size the former scan-based join (O(persons x medical records)) takes too long to measure.
+     */
+    private static final int SCAN_JOIN_MAX_SIZE = 10_000;
+
+    @Test
+    void getMedicalRecordsByPersons_scalesLinearly() {
+        for (int size : new int[]{1_000, 10_000, 100_000, 1_000_000}) {
+            Data data = DataGenerator.generate(size, 5, 10);
+            MedicalRecordRepository medicalRecordRepository = new MedicalRecordRepository(new DataStore(data));
+            Set<Person> persons = data.getPersons();
+
+            medicalRecordRepository.getMedicalRecordsByPersons(persons); // Warm up
+            long start = System.nanoTime();
+            Map<Person, List<MedicalRecord>> join = medicalRecordRepository.getMedicalRecordsByPersons(persons);
+            long keyedJoinMillis = (System.nanoTime() - start) / 1_000_000;
+
+            assertEquals(size, join.size());
+            join.values().forEach(medicalRecords -> assertEquals(1, medicalRecords.size()));
+
+            String scanJoin = "skipped";
+            if (size <= SCAN_JOIN_MAX_SIZE) {
+                start = System.nanoTime();
+                Map<Person, List<MedicalRecord>> expected = scanJoin(persons, data.getMedicalRecords());
+                scanJoin = (System.nanoTime() - start) / 1_000_000 + " ms";
+
+                assertEquals(expected, join);
+            }
+
+            System.out.printf(
+                    "getMedicalRecordsByPersons: %,9d records, keyed join: %5d ms, scan join: %s%n",
+                    size, keyedJoinMillis, scanJoin
+            );
+        }
+    }
+
+    /**
+     * The former implementation: one scan of all the medical records per person.
+     */
+    private static Map<Person, List<MedicalRecord>> scanJoin(Set<Person> persons, Set<MedicalRecord> medicalRecords) {
+        return persons.stream()
+                .collect(Collectors.toMap(
+                        Function.identity(),
+                        person -> medicalRecords.stream()
+                                .filter(m -> m.getLastName().equals(person.getLastName())
+                                        && m.getFirstName().equals(person.getFirstName()))
+                                .toList()
+                ));
+    }
+}
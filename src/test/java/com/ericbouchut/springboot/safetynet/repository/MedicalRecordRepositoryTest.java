@@ -0,0 +1,52 @@
+package com.ericbouchut.springboot.safetynet.repository;
+
+import com.ericbouchut.springboot.safetynet.model.Data;
+import com.ericbouchut.springboot.safetynet.model.MedicalRecord;
+import com.ericbouchut.springboot.safetynet.model.Person;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MedicalRecordRepositoryTest {
+
+    private final MedicalRecord johnBoyd = new MedicalRecord("John", "Boyd", LocalDate.of(1984, 3, 6), Set.of("aznol:350mg"), Set.of("nillacilan"));
+    private final MedicalRecord johnBoydNamesake = new MedicalRecord("John", "Boyd", LocalDate.of(2015, 1, 8), Set.of(), Set.of());
+    private final MedicalRecord tenleyBoyd = new MedicalRecord("Tenley", "Boyd", LocalDate.of(2012, 2, 18), Set.of(), Set.of("peanut"));
+
+    private final MedicalRecordRepository medicalRecordRepository = new MedicalRecordRepository(new DataStore(
+            new Data(
+                    new HashSet<>(),
+                    new HashSet<>(),
+                    new HashSet<>(Set.of(johnBoyd, johnBoydNamesake, tenleyBoyd))
+            )
+    ));
+
+    @Test
+    void getMedicalRecordsByFistNameAndLastName_keepsNamesakes() {
+        assertEquals(
+                Set.of(johnBoyd, johnBoydNamesake),
+                Set.copyOf(medicalRecordRepository.getMedicalRecordsByFistNameAndLastName("John", "Boyd"))
+        );
+        assertEquals(List.of(tenleyBoyd), medicalRecordRepository.getMedicalRecordsByFistNameAndLastName("Tenley", "Boyd"));
+        assertEquals(List.of(), medicalRecordRepository.getMedicalRecordsByFistNameAndLastName("Jacob", "Boyd"));
+    }
+
+    @Test
+    void getMedicalRecordsByPersons() {
+        Person john = Person.builder().firstName("John").lastName("Boyd").address("1509 Culver St").build();
+        Person jacob = Person.builder().firstName("Jacob").lastName("Boyd").address("1509 Culver St").build();
+
+        Map<Person, List<MedicalRecord>> medicalRecordsByPerson =
+                medicalRecordRepository.getMedicalRecordsByPersons(Set.of(john, jacob));
+
+        assertEquals(2, medicalRecordsByPerson.size());
+        assertEquals(2, medicalRecordsByPerson.get(john).size());
+        assertEquals(List.of(), medicalRecordsByPerson.get(jacob));
+    }
+}
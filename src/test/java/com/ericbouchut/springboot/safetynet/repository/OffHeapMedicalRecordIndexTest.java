@@ -0,0 +1,130 @@
+package com.ericbouchut.springboot.safetynet.repository;
+
+import com.ericbouchut.springboot.safetynet.model.Data;
+import com.ericbouchut.springboot.safetynet.model.FullName;
+import com.ericbouchut.springboot.safetynet.model.MedicalRecord;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OffHeapMedicalRecordIndexTest {
+
+    private final MedicalRecord johnBoyd = new MedicalRecord(
+            "John", "Boyd", LocalDate.of(1984, 3, 6),
+            new LinkedHashSet<>(List.of("hydrapermazol:100mg", "aznol:350mg")), Set.of("nillacilan")
+    );
+    private final MedicalRecord johnBoydNamesake = new MedicalRecord("John", "Boyd", LocalDate.of(2015, 1, 8), Set.of(), Set.of());
+    private final MedicalRecord zoe = new MedicalRecord("Zo\u00e9", "\u00c7elik", null, null, Set.of("peanut"));
+
+    private final OffHeapMedicalRecordIndex index = OffHeapMedicalRecordIndex.of(List.of(johnBoyd, johnBoydNamesake, zoe));
+
+    @Test
+    void getByFullName_decodesTheRecordsWithThisFullName() {
+        assertEquals(Set.of(johnBoyd, johnBoydNamesake), Set.copyOf(index.getByFullName(new FullName("John", "Boyd"))));
+        assertEquals(List.of(zoe), index.getByFullName(new FullName("Zo\u00e9", "\u00c7elik")));
+        assertEquals(List.of(), index.getByFullName(new FullName("Jacob", "Boyd")));
+        assertEquals(3, index.size());
+        assertTrue(index.offHeapSize() > 0);
+    }
+
+    @Test
+    void getByFullName_keepsTheOrderOfTheMedications() {
+        MedicalRecord decoded = index.getByFullName(new FullName("John", "Boyd")).stream()
+                .filter(johnBoyd::equals)
+                .findFirst()
+                .orElseThrow();
+
+        assertNotSame(johnBoyd, decoded);
+        assertEquals(List.of("hydrapermazol:100mg", "aznol:350mg"), new ArrayList<>(decoded.getMedications()));
+    }
+
+    @Test
+    void getByFullName_setsTheMedicalHistoryBuiltWhenEncoded() {
+        MedicalRecord first = index.getByFullName(new FullName("Zo\u00e9", "\u00c7elik")).get(0);
+        MedicalRecord second = index.getByFullName(new FullName("Zo\u00e9", "\u00c7elik")).get(0);
+
+        assertNotSame(first, second);
+        assertSame(first.getMedicalHistory(), second.getMedicalHistory());
+        assertEquals(List.of(), first.getMedicalHistory().medications());
+        assertEquals(Set.of("peanut"), first.getMedicalHistory().allergies());
+    }
+
+    @Test
+    void getAll_decodesAllTheRecords_withoutDuplicates() {
+        OffHeapMedicalRecordIndex withDuplicates = OffHeapMedicalRecordIndex.of(List.of(johnBoyd, zoe, zoe));
+
+        assertEquals(Set.of(johnBoyd, zoe), withDuplicates.getAll());
+        assertEquals(2, withDuplicates.size());
+    }
+
+    @Test
+    void apply_sameRecordsAsTheHeapIndex() {
+        Data data = new Data(new HashSet<>(), new HashSet<>(), new HashSet<>(Set.of(johnBoyd, johnBoydNamesake, zoe)));
+        Dataset dataset = Dataset.of(data, 1, OffHeapMedicalRecordIndex::of);
+        assertInstanceOfOffHeap(dataset.medicalRecords());
+
+        MedicalRecord tenleyBoyd = new MedicalRecord("Tenley", "Boyd", LocalDate.of(2012, 2, 18), Set.of(), Set.of("peanut"));
+        Data newData = new Data(new HashSet<>(), new HashSet<>(), new HashSet<>(Set.of(johnBoyd, tenleyBoyd)));
+        MedicalRecordIndex applied = dataset.medicalRecords().apply(DatasetDiff.between(dataset, newData));
+
+        assertInstanceOfOffHeap(applied);
+        assertEquals(new MedicalRecordIndex(newData.getMedicalRecords()).getAll(), applied.getAll());
+        assertEquals(List.of(johnBoyd), applied.getByFullName(new FullName("John", "Boyd")));
+        assertEquals(List.of(), applied.getByFullName(new FullName("Zo\u00e9", "\u00c7elik")));
+        assertEquals(Set.of("peanut"), applied.getByFullName(FullName.of(tenleyBoyd)).get(0).getMedicalHistory().allergies());
+    }
+
+    @Test
+    void of_encodesTheStrings_inTheirComputedSize() {
+        // 2, 3 and 4 UTF-8 bytes, and unpaired surrogates (replaced with '?')
+        MedicalRecord unicode = new MedicalRecord(
+                "\u00e9\u20ac\ud83d\ude91", "\ud83d", null, Set.of("\ude91x", "a\ud83db"), Set.of("")
+        );
+
+        OffHeapMedicalRecordIndex encoded = OffHeapMedicalRecordIndex.of(List.of(unicode));
+
+        assertEquals(List.of("?x", "a?b"), encoded.getAll().iterator().next().getMedications().stream().sorted().toList());
+        assertEquals("\u00e9\u20ac\ud83d\ude91", encoded.getAll().iterator().next().getFirstName());
+        assertEquals(encoded.offHeapSize(), encoded.encodedSize());
+    }
+
+    @Test
+    void apply_keepsTheUnchangedRecords_inTheOrderOfTheirHashCodes() {
+        List<MedicalRecord> medicalRecords = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            medicalRecords.add(new MedicalRecord("First" + i, "Last" + i, LocalDate.ofEpochDay(i), Set.of("m" + i), Set.of()));
+        }
+        Dataset dataset = Dataset.of(new Data(new HashSet<>(), new HashSet<>(), new HashSet<>(medicalRecords)), 1, OffHeapMedicalRecordIndex::of);
+
+        List<MedicalRecord> newMedicalRecords = new ArrayList<>(medicalRecords.subList(10, 100));
+        for (int i = 100; i < 120; i++) {
+            newMedicalRecords.add(new MedicalRecord("First" + i, "Last" + i, null, Set.of(), null));
+        }
+        Data newData = new Data(new HashSet<>(), new HashSet<>(), new HashSet<>(newMedicalRecords));
+        MedicalRecordIndex applied = dataset.medicalRecords().apply(DatasetDiff.between(dataset, newData));
+
+        assertEquals(Set.copyOf(newMedicalRecords), applied.getAll());
+        for (MedicalRecord medicalRecord : newMedicalRecords) {
+            assertEquals(List.of(medicalRecord), applied.getByFullName(FullName.of(medicalRecord)));
+        }
+        assertEquals(List.of(), applied.getByFullName(FullName.of(medicalRecords.get(0))));
+        // The unchanged records keep their medical history
+        FullName kept = FullName.of(medicalRecords.get(50));
+        assertSame(
+                dataset.medicalRecords().getByFullName(kept).get(0).getMedicalHistory(),
+                applied.getByFullName(kept).get(0).getMedicalHistory()
+        );
+        assertEquals(OffHeapMedicalRecordIndex.of(newMedicalRecords).offHeapSize(), ((OffHeapMedicalRecordIndex) applied).offHeapSize());
+    }
+
+    private static void assertInstanceOfOffHeap(MedicalRecordIndex medicalRecords) {
+        assertTrue(medicalRecords instanceof OffHeapMedicalRecordIndex, medicalRecords.getClass().getName());
+    }
+}
@@ -0,0 +1,43 @@
+package com.ericbouchut.springboot.safetynet.repository;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PersistentHashMapTest {
+
+    @Test
+    void plusAll_emptyMap_isBuiltLikeOneEntryAtATime() {
+        Random random = new Random(11);
+        Map<Integer, String> entries = new HashMap<>();
+        for (int i = 0; i < 20_000; i++) {
+            // Few high bits, so that some hashes collide once spread
+            int key = random.nextInt(50_000) * 65_537;
+            entries.put(key, "v" + key);
+        }
+
+        PersistentHashMap<Integer, String> map = PersistentHashMap.<Integer, String>empty().plusAll(entries);
+
+        assertEquals(entries.size(), map.size());
+        entries.forEach((key, value) -> assertEquals(value, map.get(key)));
+        assertNull(map.get(-1));
+
+        // The map built at once is changed like any other one
+        PersistentHashMap<Integer, String> changed = map;
+        for (Integer key : entries.keySet()) {
+            if (key % 2 == 0) {
+                changed = changed.minus(key);
+            }
+        }
+        changed = changed.plusAll(Map.of(-1, "minus one"));
+        for (Map.Entry<Integer, String> entry : entries.entrySet()) {
+            assertEquals(entry.getKey() % 2 == 0 ? null : entry.getValue(), changed.get(entry.getKey()));
+        }
+        assertEquals("minus one", changed.get(-1));
+        assertEquals(entries.size(), map.size());
+    }
+}
@@ -0,0 +1,76 @@
+package com.ericbouchut.springboot.safetynet.repository;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PersistentHashSetTest {
+
+    /**
+     * A key whose hash is chosen, to collide with other keys.
+     */
+    private record Key(int hash, String name) {
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    @Test
+    void plusAndMinus_leaveThisSetUnchanged() {
+        PersistentHashSet<String> set = PersistentHashSet.of(List.of("a", "b", "c"));
+
+        PersistentHashSet<String> next = set.plus("d").minus("a");
+
+        assertEquals(Set.of("a", "b", "c"), set);
+        assertEquals(Set.of("b", "c", "d"), next);
+        assertSame(set, set.plus("a"));
+        assertSame(set, set.minus("x"));
+        assertThrows(UnsupportedOperationException.class, () -> set.add("x"));
+    }
+
+    @Test
+    void collidingHashes_areKeptApart() {
+        Key a = new Key(42, "a");
+        Key b = new Key(42, "b");
+        Key c = new Key(42, "c");
+        Key other = new Key(42 + (1 << 20), "other");
+
+        PersistentHashSet<Key> set = PersistentHashSet.of(List.of(a, b, c, other));
+
+        assertEquals(4, set.size());
+        assertTrue(set.contains(b));
+        assertFalse(set.contains(new Key(42, "d")));
+        assertEquals(Set.of(a, c, other), set.minus(b));
+        assertEquals(Set.of(c), set.minus(a).minus(b).minus(other));
+        assertEquals(Set.of(), set.minus(a).minus(b).minus(c).minus(other));
+    }
+
+    @Test
+    void randomChanges_matchAHashSet() {
+        Random random = new Random(7);
+        Set<Integer> expected = new HashSet<>();
+        PersistentHashSet<Integer> set = PersistentHashSet.empty();
+
+        for (int i = 0; i < 20_000; i++) {
+            // Few distinct values, so that removals hit
+            Integer value = random.nextInt(5_000) * 65_537;
+            if (random.nextInt(3) == 0) {
+                expected.remove(value);
+                set = set.minus(value);
+            } else {
+                expected.add(value);
+                set = set.plus(value);
+            }
+        }
+
+        assertEquals(expected.size(), set.size());
+        assertEquals(expected, set);
+        assertEquals(expected, new HashSet<>(set));
+    }
+}
@@ -0,0 +1,130 @@
+package com.ericbouchut.springboot.safetynet.repository;
+
+import com.ericbouchut.springboot.safetynet.data.DataLoaders;
+import com.ericbouchut.springboot.safetynet.model.Data;
+import com.ericbouchut.springboot.safetynet.model.Person;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ClassPathResource;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Stress test: readers stream over the persons while writers create and delete persons.
+ * <p>
+ * Readers must never fail (no <code>ConcurrentModificationException</code>),
+ * must see a consistent dataset, and no write must be lost.
+ */
+class PersonRepositoryConcurrencyTest {
+
+    private static final int WRITERS = 4;
+    private static final int READERS = 4;
+    private static final int PERSONS_PER_WRITER = 300;
+
+    @Test
+    void concurrentReadsAndWrites() throws Exception {
+        Data data = DataLoaders.dataLoader(new ClassPathResource("data/data.json")).load();
+        DataStore dataStore = new DataStore(data);
+        PersonWriter personWriter = new PersonWriter(dataStore, new SimpleMeterRegistry(), 64, 32);
+        personWriter.start();
+        PersonRepository personRepository = new PersonRepository(dataStore, personWriter);
+        int initialCount = data.getPersons().size();
+
+        ExecutorService executor = Executors.newFixedThreadPool(WRITERS + READERS);
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicBoolean writing = new AtomicBoolean(true);
+        ConcurrentLinkedQueue<Throwable> errors = new ConcurrentLinkedQueue<>();
+        List<Future<?>> writers = new ArrayList<>();
+
+        try {
+            for (int w = 0; w < WRITERS; w++) {
+                int writer = w;
+                writers.add(executor.submit(() -> {
+                    await(start);
+                    for (int i = 0; i < PERSONS_PER_WRITER; i++) {
+                        Person person = person(writer, i);
+                        assertTrue(personRepository.createPerson(person).isPresent());
+                        // Delete every other person
+                        if (i % 2 == 1) {
+                            assertTrue(personRepository.deletePerson(person(writer, i - 1)));
+                        }
+                    }
+                    return null;
+                }));
+            }
+
+            for (int r = 0; r < READERS; r++) {
+                executor.submit(() -> {
+                    await(start);
+                    while (writing.get()) {
+                        try {
+                            dataStore.pin();
+                            int total = personRepository.getAllPersons().size();
+                            long streamed = personRepository.getAllPersons().stream().count();
+                            long inStressCity = personRepository.getEmailsByCity("Stress City").size();
+                            // The same consistent snapshot during the whole "request"
+                            // (the emails of Stress City are unique, one per person)
+                            assertEquals(total, streamed);
+                            assertEquals(total, initialCount + inStressCity);
+                        } catch (Throwable e) {
+                            errors.add(e);
+                        } finally {
+                            dataStore.unpin();
+                        }
+                    }
+                });
+            }
+
+            start.countDown();
+            for (Future<?> writer : writers) {
+                writer.get(60, TimeUnit.SECONDS);
+            }
+        } finally {
+            writing.set(false);
+            executor.shutdown();
+            assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+            personWriter.stop();
+        }
+
+        assertEquals(List.of(), new ArrayList<>(errors));
+
+        // No lost update: each writer keeps half of its persons
+        int expectedCount = initialCount + WRITERS * PERSONS_PER_WRITER / 2;
+        assertEquals(expectedCount, personRepository.getAllPersons().size());
+        assertEquals(expectedCount - initialCount, personRepository.getEmailsByCity("Stress City").size());
+        // At most one version per mutation (fewer when the writer applies them in batches)
+        assertTrue(dataStore.latest().version() <= 1 + WRITERS * PERSONS_PER_WRITER * 3 / 2);
+        assertEquals(Set.of(person(0, 1)), personRepository.getPersonsByAddress(person(0, 1).getAddress()));
+    }
+
+    private static Person person(int writer, int i) {
+        return Person.builder()
+                .firstName("Writer" + writer)
+                .lastName("Person" + i)
+                .address(i + " Stress St, block " + writer)
+                .city("Stress City")
+                .zip("00000")
+                .phone("000-000-0000")
+                .email("writer" + writer + ".person" + i + "@example.com")
+                .build();
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
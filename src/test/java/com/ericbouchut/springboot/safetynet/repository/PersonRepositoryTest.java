@@ -0,0 +1,133 @@
+package com.ericbouchut.springboot.safetynet.repository;
+
+import com.ericbouchut.springboot.safetynet.data.DataLoader;
+import com.ericbouchut.springboot.safetynet.data.DataLoaders;
+import com.ericbouchut.springboot.safetynet.model.Data;
+import com.ericbouchut.springboot.safetynet.model.Person;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ClassPathResource;
+
+import java.util.List;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Check that the index-based finders return the same results
+ * as a full scan of all the persons.
+ */
+class PersonRepositoryTest {
+
+    private Data data;
+    private PersonWriter personWriter;
+    private PersonRepository personRepository;
+
+    @BeforeEach
+    void setUp() {
+        DataLoader dataLoader = DataLoaders.dataLoader(new ClassPathResource("data/data.json"));
+        data = dataLoader.load();
+        DataStore dataStore = new DataStore(data);
+        personWriter = new PersonWriter(dataStore, new SimpleMeterRegistry(), 16, 8);
+        personWriter.start();
+        personRepository = new PersonRepository(dataStore, personWriter);
+    }
+
+    @AfterEach
+    void tearDown() {
+        personWriter.stop();
+    }
+
+    @Test
+    void getEmailsByCity_sameAsScan() {
+        for (String city : distinct(Person::getCity)) {
+            List<String> expected = data.getPersons().stream()
+                    .filter(p -> city.equals(p.getCity()))
+                    .map(Person::getEmail)
+                    .distinct()
+                    .sorted()
+                    .toList();
+
+            List<String> actual = personRepository.getEmailsByCity(city);
+
+            assertEquals(expected, actual);
+        }
+        assertTrue(personRepository.getEmailsByCity("").isEmpty());
+        assertTrue(personRepository.getEmailsByCity("Unknown City").isEmpty());
+    }
+
+    @Test
+    void getPersonsByAddress_sameAsScan() {
+        for (String address : distinct(Person::getAddress)) {
+            assertEquals(
+                    scan(p -> address.equals(p.getAddress())),
+                    personRepository.getPersonsByAddress(address)
+            );
+        }
+        assertTrue(personRepository.getPersonsByAddress("Unknown Address").isEmpty());
+    }
+
+    @Test
+    void getPersonsByAddresses_sameAsScan() {
+        Set<String> addresses = Set.of("1509 Culver St", "29 15th St", "Unknown Address");
+
+        assertEquals(
+                scan(p -> addresses.contains(p.getAddress())),
+                personRepository.getPersonsByAddresses(addresses)
+        );
+    }
+
+    @Test
+    void getPersonsByFirstNameAndLastName_sameAsScan() {
+        for (Person person : data.getPersons()) {
+            String firstName = person.getFirstName();
+            String lastName  = person.getLastName();
+
+            assertEquals(
+                    scan(p -> p.hasFullName(firstName, lastName)),
+                    personRepository.getPersonsByFirstNameAndLastName(firstName, lastName)
+            );
+        }
+    }
+
+    @Test
+    void createAndDeletePerson_updateIndexes() {
+        Person person = Person.builder()
+                .firstName("Felicia")
+                .lastName("Boyd")
+                .address("12 rue des Lavandes")
+                .city("Marseille")
+                .zip("13008")
+                .phone("06 42 15 73 89")
+                .email("felicia.boyd@example.fr")
+                .build();
+
+        assertTrue(personRepository.createPerson(person).isPresent());
+        assertTrue(personRepository.createPerson(person).isEmpty()); // Already exists
+
+        assertEquals(Set.of(person), personRepository.getPersonsByAddress("12 rue des Lavandes"));
+        assertEquals(List.of("felicia.boyd@example.fr"), personRepository.getEmailsByCity("Marseille"));
+        // Namesake living at a different address
+        assertEquals(2, personRepository.getPersonsByFirstNameAndLastName("Felicia", "Boyd").size());
+
+        assertTrue(personRepository.deletePerson(person));
+        assertFalse(personRepository.deletePerson(person)); // Already deleted
+
+        assertTrue(personRepository.getPersonsByAddress("12 rue des Lavandes").isEmpty());
+        assertTrue(personRepository.getEmailsByCity("Marseille").isEmpty());
+        assertEquals(1, personRepository.getPersonsByFirstNameAndLastName("Felicia", "Boyd").size());
+    }
+
+    private Set<String> distinct(Function<Person, String> field) {
+        return data.getPersons().stream().map(field).collect(Collectors.toSet());
+    }
+
+    private Set<Person> scan(Predicate<Person> filter) {
+        return data.getPersons().stream().filter(filter).collect(Collectors.toSet());
+    }
+}
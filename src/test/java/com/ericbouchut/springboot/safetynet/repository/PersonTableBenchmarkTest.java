@@ -0,0 +1,122 @@
+package com.ericbouchut.springboot.safetynet.repository;
+
+import com.ericbouchut.springboot.safetynet.data.DataGenerator;
+import com.ericbouchut.springboot.safetynet.model.Data;
+import com.ericbouchut.springboot.safetynet.model.FullName;
+import com.ericbouchut.springboot.safetynet.model.MedicalRecord;
+import com.ericbouchut.springboot.safetynet.model.Person;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Compare the {@link PersonTable} (by column) with the object model (<code>Person</code> and <code>MedicalRecord</code>)
+ * from 100k to 1M persons:
+ * <ul>
+ *     <li>the heap used by the persons and their medical records,</li>
+ *     <li>the time to scan all the persons: count the children of a city,</li>
+ *     <li>the time to add a person to the table (a write), compared to its build when the data is loaded.</li>
+ * </ul>
+ * The heap is measured after a garbage collection, so it is approximate.
+ * The table still references the <code>MedicalRecordIndex</code> (to read the medical record of a row),
+ * so both measures include the medical records.
+ * <p>
+ * Run with: <code>mvn test -Pbenchmark</code>
+ */
+@Tag("benchmark")
+class PersonTableBenchmarkTest {
+
+    private static final String CITY = "Culver";
+
+    private static final long CHILD_CUTOFF_EPOCH_DAY = LocalDate.of(2008, 1, 1).toEpochDay();
+
+    @Test
+    void personTable_usesLessHeap_andScansFaster() {
+        for (int size : new int[]{100_000, 1_000_000}) {
+            long baseline = usedHeap();
+            Data data = DataGenerator.generate(size, 5, 10);
+            long objectsHeap = usedHeap() - baseline;
+
+            PersonIndex persons = new PersonIndex(data.getPersons());
+            MedicalRecordIndex medicalRecords = new MedicalRecordIndex(data.getMedicalRecords());
+
+            long objectsScan = Long.MAX_VALUE;
+            long objectsCount = 0;
+            for (int i = 0; i < 5; i++) {
+                long start = System.nanoTime();
+                objectsCount = countChildren(persons, medicalRecords);
+                objectsScan = Math.min(objectsScan, System.nanoTime() - start);
+            }
+
+            long start = System.nanoTime();
+            PersonTable table = PersonTable.of(persons, medicalRecords);
+            long buildMillis = (System.nanoTime() - start) / 1_000_000;
+
+            long tableScan = Long.MAX_VALUE;
+            long tableCount = 0;
+            for (int i = 0; i < 5; i++) {
+                start = System.nanoTime();
+                tableCount = table.countBornAfter(table.rowsInCity(CITY), CHILD_CUTOFF_EPOCH_DAY);
+                tableScan = Math.min(tableScan, System.nanoTime() - start);
+            }
+            assertEquals(objectsCount, tableCount);
+
+            Person newPerson = Person.builder()
+                    .firstName("New").lastName("Person")
+                    .address(DataGenerator.address(0)).city(CITY).zip("97451")
+                    .build();
+            long updateNanos = Long.MAX_VALUE;
+            for (int i = 0; i < 5; i++) {
+                start = System.nanoTime();
+                PersonTable updated = table.with(List.of(newPerson), List.of(), medicalRecords);
+                updateNanos = Math.min(updateNanos, System.nanoTime() - start);
+                assertEquals(size + 1, updated.size());
+            }
+
+            // Only the table (and the medical records it references) is left
+            data = null;
+            persons = null;
+            medicalRecords = null;
+            long tableHeap = usedHeap() - baseline;
+            assertEquals(size, table.size());
+
+            System.out.printf(
+                    "PersonTable: %,9d persons, heap: objects %,5d MB, table %,5d MB (built in %d ms, a person added in %d us),"
+                            + " scan: objects %,6d us, table %,6d us%n",
+                    size,
+                    objectsHeap / 1_000_000, tableHeap / 1_000_000, buildMillis, updateNanos / 1_000,
+                    objectsScan / 1_000, tableScan / 1_000
+            );
+        }
+    }
+
+    /**
+     * The same query on the object model: a scan of the persons,
+     * and a lookup of the medical records of each resident of the city.
+     */
+    private static long countChildren(PersonIndex persons, MedicalRecordIndex medicalRecords) {
+        LocalDate cutoff = LocalDate.ofEpochDay(CHILD_CUTOFF_EPOCH_DAY);
+        long count = 0;
+        for (Person person : persons.getAll()) {
+            if (CITY.equals(person.getCity())) {
+                List<MedicalRecord> records = medicalRecords.getByFullName(FullName.of(person));
+                if (!records.isEmpty() && records.get(0).getDateOfBirth().isAfter(cutoff)) {
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
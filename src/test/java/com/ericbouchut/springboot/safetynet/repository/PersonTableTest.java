@@ -0,0 +1,185 @@
+package com.ericbouchut.springboot.safetynet.repository;
+
+import com.ericbouchut.springboot.safetynet.data.DataLoaders;
+import com.ericbouchut.springboot.safetynet.model.Data;
+import com.ericbouchut.springboot.safetynet.model.FullName;
+import com.ericbouchut.springboot.safetynet.model.MedicalRecord;
+import com.ericbouchut.springboot.safetynet.model.Person;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ClassPathResource;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PersonTableTest {
+
+    private final Data data = DataLoaders.dataLoader(new ClassPathResource("data/data.json")).load();
+
+    private final Dataset dataset = Dataset.of(data, 1);
+
+    private final PersonTable table = dataset.personTable();
+
+    private final Person johnDoe = Person.builder()
+            .firstName("John").lastName("Doe")
+            .address("1509 Culver St").city("Culver").zip("97451")
+            .phone("841-874-0000")
+            .build();
+
+    @Test
+    void of_storesEachPersonInARow() {
+        assertEquals(data.getPersons().size(), table.size());
+        assertEquals(data.getPersons().size(), table.rowCount());
+        for (int row = 0; row < table.size(); row++) {
+            Person person = table.person(row);
+            assertTrue(data.getPersons().contains(person));
+            assertEquals(person.getPhone(), table.phone(row));
+            assertEquals(person.getEmail(), table.email(row));
+        }
+    }
+
+    @Test
+    void of_joinsTheMedicalRecords() {
+        int[] rows = table.rowsByFullName(new FullName("Tenley", "Boyd"));
+
+        assertEquals(1, rows.length);
+        assertEquals(LocalDate.of(2012, 2, 18).toEpochDay(), table.dateOfBirth(rows[0]));
+        MedicalRecord medicalRecord = table.medicalRecord(rows[0]);
+        assertEquals("Tenley", medicalRecord.getFirstName());
+        assertEquals(Set.of("peanut"), medicalRecord.getAllergies());
+    }
+
+    @Test
+    void rowsAt_returnsTheResidents_sameAsTheIndex() {
+        List<String> addresses = List.of("1509 Culver St", "29 15th St", "1509 Culver St", "unknown address");
+
+        assertEquals(
+                dataset.persons().getByAddress("1509 Culver St").size() + dataset.persons().getByAddress("29 15th St").size(),
+                table.rowsAt(addresses).length
+        );
+        assertEquals(
+                dataset.persons().getByAddress("1509 Culver St"),
+                persons(table, table.rowsAt(List.of("1509 Culver St")))
+        );
+        assertEquals(0, table.rowsAt(List.of()).length);
+    }
+
+    @Test
+    void rowsInCity_sameAsTheIndex() {
+        assertEquals(dataset.persons().getByCity("Culver"), persons(table, table.rowsInCity("Culver")));
+        assertEquals(0, table.rowsInCity("Unknown").length);
+    }
+
+    @Test
+    void countBornAfter_countsTheChildren() {
+        int[] boyds = table.rowsAt(List.of("1509 Culver St"));
+
+        // Roger (2017) and Tenley (2012)
+        assertEquals(2, table.countBornAfter(boyds, LocalDate.of(2008, 1, 1).toEpochDay()));
+        assertEquals(0, table.countBornAfter(new int[0], 0));
+    }
+
+    @Test
+    void withPersons_updatesTheTable_andLeavesThePreviousOneUnchanged() {
+        Person tenley = dataset.persons().getByFullName(new FullName("Tenley", "Boyd")).iterator().next();
+        int tenleyRow = table.rowsByFullName(new FullName("Tenley", "Boyd"))[0];
+
+        PersonTable next = dataset.withPersons(List.of(johnDoe), List.of(tenley)).personTable();
+
+        assertEquals(table.size(), next.size());
+        // The row of Tenley is reused
+        assertEquals(table.rowCount(), next.rowCount());
+        assertArrayEquals(new int[]{tenleyRow}, next.rowsByFullName(new FullName("John", "Doe")));
+        assertEquals(PersonTable.NO_DATE_OF_BIRTH, next.dateOfBirth(tenleyRow));
+        assertEquals(0, next.rowsByFullName(new FullName("Tenley", "Boyd")).length);
+        assertEquals(
+                dataset.persons().getByAddress("1509 Culver St").size(),
+                next.rowsAt(List.of("1509 Culver St")).length
+        );
+        assertTrue(persons(next, next.rowsInCity("Culver")).contains(johnDoe));
+
+        assertEquals("Tenley", table.firstName(tenleyRow));
+        assertEquals(0, table.rowsByFullName(new FullName("John", "Doe")).length);
+    }
+
+    @Test
+    void withPersons_removed_isNoLongerFound() {
+        Set<Person> boyds = dataset.persons().getByAddress("1509 Culver St");
+
+        PersonTable next = dataset.withPersons(List.of(), boyds).personTable();
+
+        assertEquals(table.size() - boyds.size(), next.size());
+        assertEquals(0, next.rowsAt(List.of("1509 Culver St")).length);
+        assertEquals(dataset.persons().getByCity("Culver").size() - boyds.size(), next.rowsInCity("Culver").length);
+    }
+
+    @Test
+    void apply_updatesTheDetails_andTheDatesOfBirth() {
+        Person tenley = dataset.persons().getByFullName(new FullName("Tenley", "Boyd")).iterator().next();
+        Person newTenley = new Person(
+                tenley.getFirstName(), tenley.getLastName(), tenley.getAddress(), tenley.getCity(), tenley.getZip(),
+                "841-874-9999", tenley.getEmail()
+        );
+        MedicalRecord newRecord = new MedicalRecord("Tenley", "Boyd", LocalDate.of(2001, 1, 1), Set.of(), Set.of());
+        Set<Person> persons = new HashSet<>(data.getPersons());
+        persons.remove(tenley);
+        persons.add(newTenley);
+        Set<MedicalRecord> medicalRecords = data.getMedicalRecords().stream()
+                .filter(record -> !record.getFirstName().equals("Tenley") || !record.getLastName().equals("Boyd"))
+                .collect(Collectors.toCollection(HashSet::new));
+        medicalRecords.add(newRecord);
+
+        DatasetDiff diff = DatasetDiff.between(dataset, new Data(persons, data.getFireStations(), medicalRecords));
+        PersonTable next = dataset.apply(diff, 2).personTable();
+
+        int row = next.rowsByFullName(new FullName("Tenley", "Boyd"))[0];
+        assertEquals("841-874-9999", next.phone(row));
+        assertEquals(LocalDate.of(2001, 1, 1).toEpochDay(), next.dateOfBirth(row));
+        assertEquals(LocalDate.of(2012, 2, 18).toEpochDay(), table.dateOfBirth(row));
+        assertEquals("841-874-6512", table.phone(row));
+    }
+
+    @Test
+    void apply_noPersonNorMedicalRecordChange_keepsTheTable() {
+        DatasetDiff diff = DatasetDiff.between(dataset, new Data(data.getPersons(), Set.of(), data.getMedicalRecords()));
+
+        assertSame(table, dataset.apply(diff, 2).personTable());
+    }
+
+    @Test
+    void manyChanges_matchThePersonIndex() {
+        Dataset current = dataset;
+        // More persons than a chunk of a column
+        for (int i = 0; i < 3_000; i++) {
+            Person person = Person.builder()
+                    .firstName("First" + i).lastName("Last" + (i % 100))
+                    .address((i % 300) + " Main St").city("City" + (i % 7)).zip("9700" + (i % 3))
+                    .build();
+            current = current.withPersons(List.of(person), List.of());
+            if (i % 3 == 0) {
+                Person removed = current.persons().getByAddress((i % 300) + " Main St").iterator().next();
+                current = current.withPersons(List.of(), List.of(removed));
+            }
+        }
+        PersonTable next = current.personTable();
+
+        assertEquals(current.persons().getAll().size(), next.size());
+        assertEquals(current.persons().getByCity("City3"), persons(next, next.rowsInCity("City3")));
+        assertEquals(current.persons().getByCity("Culver"), persons(next, next.rowsInCity("Culver")));
+        Set<Person> all = new HashSet<>();
+        for (Person person : current.persons().getAll()) {
+            all.addAll(persons(next, next.rowsAt(List.of(person.getAddress()))));
+        }
+        assertEquals(current.persons().getAll(), all);
+        assertEquals(data.getPersons().size(), table.size());
+    }
+
+    private static Set<Person> persons(PersonTable table, int[] rows) {
+        return Arrays.stream(rows).mapToObj(table::person).collect(Collectors.toSet());
+    }
+}
@@ -0,0 +1,98 @@
+package com.ericbouchut.springboot.safetynet.repository;
+
+import com.ericbouchut.springboot.safetynet.data.DataGenerator;
+import com.ericbouchut.springboot.safetynet.model.Person;
+import com.ericbouchut.springboot.safetynet.repository.WriteAheadLog.Durability;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Measure the throughput of the person mutations for each durability of the write-ahead log,
+ * with concurrent writers (the writes of a batch share one <code>fsync</code>).
+ * <p>
+ * Run with: <code>mvn test -Pbenchmark</code>
+ */
+@Tag("benchmark")
+class PersonWriterBenchmarkTest {
+
+    private static final int THREADS = 32;
+    private static final int MUTATIONS_PER_THREAD = 500;
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void throughputPerDurability() throws Exception {
+        measure("warm-up", null);
+        measure("no log", null);
+        for (Durability durability : Durability.values()) {
+            measure(durability.name().toLowerCase(), durability);
+        }
+    }
+
+    private void measure(String label, Durability durability) throws Exception {
+        DataStore dataStore = new DataStore(DataGenerator.generate(1_000, 5, 10));
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        WriteAheadLog writeAheadLog = new WriteAheadLog(
+                durability == null ? null : tempDir.resolve(label + ".wal").toString(),
+                durability == null ? Durability.SYNC : durability,
+                Duration.ofMillis(100)
+        );
+        PersonWriter personWriter = new PersonWriter(dataStore, writeAheadLog, meterRegistry, 1024, 256);
+        personWriter.start();
+
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            long start = System.nanoTime();
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < THREADS; t++) {
+                int thread = t;
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < MUTATIONS_PER_THREAD; i++) {
+                        assertTrue(personWriter.create(person(thread, i)).join());
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+            long elapsedNanos = System.nanoTime() - start;
+
+            int mutations = THREADS * MUTATIONS_PER_THREAD;
+            DistributionSummary batchSize = meterRegistry.get("safetynet.person.writer.batch.size").summary();
+            System.out.printf(
+                    "PersonWriter %-8s: %,7d mutations in %5d ms, %,9.0f mutations/s, %,6d batches (mean size %.1f)%n",
+                    label, mutations, elapsedNanos / 1_000_000, mutations * 1e9 / elapsedNanos,
+                    batchSize.count(), batchSize.mean()
+            );
+        } finally {
+            executor.shutdown();
+            personWriter.stop();
+        }
+    }
+
+    private static Person person(int thread, int i) {
+        return Person.builder()
+                .firstName("Thread" + thread)
+                .lastName("Person" + i)
+                .address(DataGenerator.address(i))
+                .city("Benchmark City")
+                .zip("00000")
+                .phone("000-000-0000")
+                .email("thread" + thread + ".person" + i + "@example.com")
+                .build();
+    }
+}
@@ -0,0 +1,185 @@
+package com.ericbouchut.springboot.safetynet.repository;
+
+import com.ericbouchut.springboot.safetynet.model.Data;
+import com.ericbouchut.springboot.safetynet.model.FireStation;
+import com.ericbouchut.springboot.safetynet.model.Person;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.context.SmartLifecycle;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PersonWriterTest {
+
+    private final Person johnBoyd = person("John");
+    private final Person tenleyBoyd = person("Tenley");
+    private final Person rogerBoyd = person("Roger");
+
+    private final DataStore dataStore = new DataStore(new Data(
+            new HashSet<>(Set.of(johnBoyd)),
+            new HashSet<>(Set.of(new FireStation("1509 Culver St", 3))),
+            new HashSet<>()
+    ));
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final PersonWriter personWriter = new PersonWriter(dataStore, meterRegistry, 16, 8);
+
+    @AfterEach
+    void tearDown() {
+        personWriter.stop();
+    }
+
+    @Test
+    void appliesTheMutationsOfABatchInOrder() {
+        // Queued before the writer starts: applied as a single batch
+        List<CompletableFuture<Boolean>> results = List.of(
+                personWriter.create(tenleyBoyd),  // true
+                personWriter.create(tenleyBoyd),  // false: already created
+                personWriter.delete(johnBoyd),    // true
+                personWriter.delete(johnBoyd),    // false: already deleted
+                personWriter.create(rogerBoyd),   // true
+                personWriter.delete(rogerBoyd),   // true
+                personWriter.create(johnBoyd)     // true: deleted before
+        );
+        assertEquals(7.0, meterRegistry.get("safetynet.person.writer.queue.depth").gauge().value());
+
+        personWriter.start();
+
+        assertEquals(
+                List.of(true, false, true, false, true, true, true),
+                results.stream().map(CompletableFuture::join).toList()
+        );
+        assertEquals(Set.of(johnBoyd, tenleyBoyd), dataStore.latest().persons().getAll());
+        // One new version for the whole batch
+        assertEquals(2, dataStore.latest().version());
+
+        DistributionSummary batchSize = meterRegistry.get("safetynet.person.writer.batch.size").summary();
+        assertEquals(1, batchSize.count());
+        assertEquals(7.0, batchSize.totalAmount());
+    }
+
+    @Test
+    void splitsTheMutationsInBatchesOfAtMostMaxBatchSize() {
+        List<CompletableFuture<Boolean>> results = new ArrayList<>();
+        for (int i = 0; i < 12; i++) {
+            results.add(personWriter.create(person("Person" + i)));
+        }
+
+        personWriter.start();
+        results.forEach(CompletableFuture::join);
+
+        assertEquals(13, dataStore.latest().persons().getAll().size());
+        assertEquals(8.0, meterRegistry.get("safetynet.person.writer.batch.size").summary().max());
+    }
+
+    @Test
+    void stop_failsThePendingMutations() {
+        CompletableFuture<Boolean> result = personWriter.create(tenleyBoyd);
+        personWriter.start();
+        personWriter.stop();
+
+        // Either applied before the stop, or failed: never left pending
+        assertTrue(result.isDone());
+        try {
+            assertTrue(result.join());
+        } catch (CompletionException e) {
+            assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+    }
+
+    @Test
+    void stop_failsTheMutationsQueuedBeforeTheStart() {
+        CompletableFuture<Boolean> result = personWriter.create(tenleyBoyd);
+
+        personWriter.stop();
+
+        CompletionException e = assertThrows(CompletionException.class, result::join);
+        assertTrue(e.getCause() instanceof IllegalStateException);
+    }
+
+    @Test
+    void submit_afterTheStop_fails() {
+        personWriter.start();
+        personWriter.stop();
+
+        CompletableFuture<Boolean> result = personWriter.create(tenleyBoyd);
+
+        assertTrue(result.isCompletedExceptionally());
+        assertEquals(Set.of(johnBoyd), dataStore.latest().persons().getAll());
+    }
+
+    @Test
+    void submit_waitsAtMostTheTimeout_whenTheQueueIsFull() {
+        PersonWriter writer = new PersonWriter(
+                dataStore, new WriteAheadLog(null, WriteAheadLog.Durability.SYNC, Duration.ZERO),
+                meterRegistry, 1, 1, Duration.ofMillis(10)
+        );
+        CompletableFuture<Boolean> queued = writer.create(tenleyBoyd);
+
+        // Not started: the queue stays full
+        CompletionException e = assertThrows(CompletionException.class, () -> writer.create(rogerBoyd).join());
+        assertTrue(e.getCause() instanceof IllegalStateException);
+        // Nor applied: times out
+        assertThrows(CompletionException.class, queued::join);
+    }
+
+    @Test
+    void startsBeforeTheWebServer() {
+        assertTrue(personWriter.getPhase() < SmartLifecycle.DEFAULT_PHASE - 2048);
+    }
+
+    @Test
+    void start_replaysTheWriteAheadLog(@TempDir Path tempDir) {
+        String logFile = tempDir.resolve("person.wal").toString();
+
+        PersonWriter writer = personWriter(logFile);
+        writer.start();
+        assertTrue(writer.create(tenleyBoyd).join());
+        assertTrue(writer.delete(johnBoyd).join());
+        assertFalse(writer.delete(johnBoyd).join()); // Not logged
+        writer.stop();
+
+        // Restart: the same data, then the logged mutations
+        DataStore restarted = new DataStore(new Data(
+                new HashSet<>(Set.of(johnBoyd)),
+                new HashSet<>(Set.of(new FireStation("1509 Culver St", 3))),
+                new HashSet<>()
+        ));
+        PersonWriter restartedWriter = new PersonWriter(
+                restarted, new WriteAheadLog(logFile, WriteAheadLog.Durability.SYNC, Duration.ZERO),
+                new SimpleMeterRegistry(), 16, 8
+        );
+        restartedWriter.start();
+        try {
+            assertEquals(Set.of(tenleyBoyd), restarted.latest().persons().getAll());
+        } finally {
+            restartedWriter.stop();
+        }
+    }
+
+    private PersonWriter personWriter(String logFile) {
+        return new PersonWriter(
+                dataStore, new WriteAheadLog(logFile, WriteAheadLog.Durability.SYNC, Duration.ZERO),
+                new SimpleMeterRegistry(), 16, 8
+        );
+    }
+
+    private static Person person(String firstName) {
+        return Person.builder()
+                .firstName(firstName).lastName("Boyd")
+                .address("1509 Culver St").city("Culver").zip("97451")
+                .phone("841-874-6512").email("jaboyd@email.com")
+                .build();
+    }
+}
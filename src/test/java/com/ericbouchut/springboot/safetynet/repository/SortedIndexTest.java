@@ -0,0 +1,68 @@
+package com.ericbouchut.springboot.safetynet.repository;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SortedIndexTest {
+
+    private final SortedIndex<String> index = SortedIndex.of(List.of("d", "b", "f", "b", "a"), Comparator.naturalOrder());
+
+    @Test
+    void of_sortsWithoutDuplicates() {
+        assertEquals(List.of("a", "b", "d", "f"), index.after(null, 10));
+        assertEquals(4, index.size());
+    }
+
+    @Test
+    void after_startsAfterTheValue_evenIfAbsent() {
+        assertEquals(List.of("a", "b"), index.after(null, 2));
+        assertEquals(List.of("d", "f"), index.after("b", 2));
+        assertEquals(List.of("d"), index.after("c", 1));
+        assertEquals(List.of(), index.after("f", 2));
+        assertEquals(List.of(), index.after("z", 2));
+        assertEquals(List.of("b", "d", "f"), index.after("a", Integer.MAX_VALUE));
+    }
+
+    @Test
+    void with_mergesTheChanges_andLeavesThisIndexUnchanged() {
+        SortedIndex<String> next = index.with(List.of("c", "g", "a", "c"), List.of("b", "f", "x"));
+
+        assertEquals(List.of("a", "c", "d", "g"), next.after(null, 10));
+        assertEquals(List.of("a", "b", "d", "f"), index.after(null, 10));
+    }
+
+    @Test
+    void with_replacesTheValuesEqualInThisOrder() {
+        SortedIndex<String> caseInsensitive = SortedIndex.of(List.of("a", "B"), String.CASE_INSENSITIVE_ORDER);
+
+        assertEquals(List.of("A", "B"), caseInsensitive.with(List.of("A"), List.of()).after(null, 10));
+    }
+
+    @Test
+    void randomChanges_matchATreeSet() {
+        Random random = new Random(7);
+        TreeSet<Integer> expected = new TreeSet<>();
+        SortedIndex<Integer> sorted = SortedIndex.of(List.<Integer>of(), Comparator.naturalOrder());
+
+        for (int i = 0; i < 5_000; i++) {
+            Integer value = random.nextInt(1_000);
+            if (random.nextInt(3) == 0) {
+                expected.remove(value);
+                sorted = sorted.with(List.of(), List.of(value));
+            } else {
+                expected.add(value);
+                sorted = sorted.with(List.of(value), List.of());
+            }
+        }
+
+        assertEquals(expected.size(), sorted.size());
+        assertEquals(List.copyOf(expected), sorted.after(null, Integer.MAX_VALUE));
+        assertEquals(List.copyOf(expected.tailSet(500, false)).subList(0, 10), sorted.after(500, 10));
+    }
+}
@@ -0,0 +1,131 @@
+package com.ericbouchut.springboot.safetynet.repository;
+
+import com.ericbouchut.springboot.safetynet.data.DataLoaders;
+import com.ericbouchut.springboot.safetynet.model.Data;
+import com.ericbouchut.springboot.safetynet.model.FireStation;
+import com.ericbouchut.springboot.safetynet.model.FullName;
+import com.ericbouchut.springboot.safetynet.model.MedicalRecord;
+import com.ericbouchut.springboot.safetynet.model.Person;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ClassPathResource;
+
+import java.time.LocalDate;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StationCensusIndexTest {
+
+    private static final List<Integer> STATION_NUMBERS = List.of(1, 2, 3, 4, 42);
+
+    /**
+     * The persons born after 2007-11-19 are children on 2026-11-19.
+     */
+    private static final long CHILD_CUTOFF = LocalDate.of(2007, 11, 19).toEpochDay();
+
+    private final Data data = DataLoaders.dataLoader(new ClassPathResource("data/data.json")).load();
+
+    private final Dataset dataset = Dataset.of(data, 1);
+
+    @Test
+    void of_sameCountsAsAScan() {
+        assertSameCountsAsAScan(dataset);
+        assertEquals(0, dataset.census().getByNumber(42).totalCount());
+        assertEquals(0, dataset.census().getByNumber(null).totalCount());
+    }
+
+    @Test
+    void childrenCount_dependsOnTheCutoff() {
+        StationCensusIndex.Census census = dataset.census().getByNumber(3);
+        long children = census.childrenCount(CHILD_CUTOFF);
+
+        // 10 years later, the children born before 2017-11-19 are adults
+        long laterChildren = census.childrenCount(LocalDate.of(2017, 11, 19).toEpochDay());
+        assertTrue(laterChildren < children);
+        assertEquals(census.totalCount() - laterChildren, census.adultsCount(LocalDate.of(2017, 11, 19).toEpochDay()));
+
+        // Back to the first cutoff
+        assertEquals(children, census.childrenCount(CHILD_CUTOFF));
+    }
+
+    @Test
+    void withPersons_rebuildsOnlyTheStationsServingThem() {
+        // A namesake of Tenley Boyd (a child) moves to 29 15th St (station 2)
+        Person tenleyBoyd = dataset.persons().getByFullName(new FullName("Tenley", "Boyd")).iterator().next();
+        Person namesake = Person.builder()
+                .firstName("Tenley").lastName("Boyd")
+                .address("29 15th St").city("Culver").zip("97451")
+                .phone("841-874-6513").email("tenz@email.com")
+                .build();
+
+        Dataset updated = dataset.withPersons(List.of(namesake), List.of(tenleyBoyd));
+
+        assertSameCountsAsAScan(updated);
+        assertSame(dataset.census().getByNumber(1), updated.census().getByNumber(1));
+        assertNotSame(dataset.census().getByNumber(2), updated.census().getByNumber(2));
+        assertEquals(
+                dataset.census().getByNumber(2).childrenCount(CHILD_CUTOFF) + 1,
+                updated.census().getByNumber(2).childrenCount(CHILD_CUTOFF)
+        );
+    }
+
+    @Test
+    void apply_sameCountsAsAFullRebuild() {
+        Data newData = new Data(new HashSet<>(data.getPersons()), new HashSet<>(data.getFireStations()), new HashSet<>());
+        // John Boyd is born again
+        for (MedicalRecord medicalRecord : data.getMedicalRecords()) {
+            boolean johnBoyd = FullName.of(medicalRecord).equals(new FullName("John", "Boyd"));
+            newData.getMedicalRecords().add(new MedicalRecord(
+                    medicalRecord.getFirstName(),
+                    medicalRecord.getLastName(),
+                    johnBoyd ? LocalDate.of(2020, 1, 1) : medicalRecord.getDateOfBirth(),
+                    medicalRecord.getMedications(),
+                    medicalRecord.getAllergies()
+            ));
+        }
+        // 489 Manchester St moves from station 4 to station 1
+        newData.getFireStations().remove(new FireStation("489 Manchester St", 4));
+        newData.getFireStations().add(new FireStation("489 Manchester St", 1));
+        // Station 2 closes 29 15th St
+        newData.getFireStations().remove(new FireStation("29 15th St", 2));
+
+        Dataset applied = dataset.apply(DatasetDiff.between(dataset, newData), 2);
+        Dataset rebuilt = Dataset.of(newData, 2);
+
+        for (Integer number : STATION_NUMBERS) {
+            assertEquals(
+                    rebuilt.census().getByNumber(number).totalCount(),
+                    applied.census().getByNumber(number).totalCount(),
+                    "station " + number
+            );
+            assertEquals(
+                    rebuilt.census().getByNumber(number).childrenCount(CHILD_CUTOFF),
+                    applied.census().getByNumber(number).childrenCount(CHILD_CUTOFF),
+                    "station " + number
+            );
+        }
+        assertSameCountsAsAScan(applied);
+    }
+
+    /**
+     * Compare the census with the counts computed by scanning the medical records of the residents.
+     */
+    private static void assertSameCountsAsAScan(Dataset dataset) {
+        for (Integer number : STATION_NUMBERS) {
+            Set<MedicalRecord> medicalRecords = dataset.fireStations().getAddressesByNumber(number).stream()
+                    .flatMap(address -> dataset.persons().getByAddress(address).stream())
+                    .flatMap(person -> dataset.medicalRecords().getByFullName(FullName.of(person)).stream())
+                    .collect(Collectors.toSet());
+            long children = medicalRecords.stream()
+                    .filter(medicalRecord -> medicalRecord.getDateOfBirth().toEpochDay() > CHILD_CUTOFF)
+                    .count();
+
+            StationCensusIndex.Census census = dataset.census().getByNumber(number);
+            assertEquals(children, census.childrenCount(CHILD_CUTOFF), "station " + number);
+            assertEquals(medicalRecords.size() - children, census.adultsCount(CHILD_CUTOFF), "station " + number);
+        }
+    }
+}
@@ -0,0 +1,274 @@
+package com.ericbouchut.springboot.safetynet.repository;
+
+import com.ericbouchut.springboot.safetynet.model.Person;
+import com.ericbouchut.springboot.safetynet.repository.WriteAheadLog.Durability;
+import com.ericbouchut.springboot.safetynet.repository.WriteAheadLog.Entry;
+import com.ericbouchut.springboot.safetynet.repository.WriteAheadLog.Operation;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WriteAheadLogTest {
+
+    @TempDir
+    Path tempDir;
+
+    private final Person johnBoyd = person("John", "jaboyd@email.com");
+    private final Person tenleyBoyd = person("Tenley", null);
+
+    @Test
+    void appendCommitThenReopen() throws IOException {
+        for (Durability durability : Durability.values()) {
+            Path file = tempDir.resolve(durability + ".wal");
+
+            try (WriteAheadLog writeAheadLog = writeAheadLog(file, durability)) {
+                assertEquals(List.of(), writeAheadLog.open(0));
+                assertEquals(1, writeAheadLog.append(Operation.CREATE, johnBoyd));
+                assertEquals(2, writeAheadLog.append(Operation.CREATE, tenleyBoyd));
+                writeAheadLog.commit();
+                assertEquals(3, writeAheadLog.append(Operation.DELETE, johnBoyd));
+                writeAheadLog.commit();
+            }
+
+            try (WriteAheadLog writeAheadLog = writeAheadLog(file, durability)) {
+                List<Entry> entries = writeAheadLog.open(0);
+
+                assertEquals(
+                        List.of(
+                                new Entry(1, Operation.CREATE, johnBoyd),
+                                new Entry(2, Operation.CREATE, tenleyBoyd),
+                                new Entry(3, Operation.DELETE, johnBoyd)
+                        ),
+                        entries,
+                        durability.name()
+                );
+                assertEquals("jaboyd@email.com", entries.get(0).person().getEmail());
+                assertNull(entries.get(1).person().getEmail());
+                // The sequence goes on
+                assertEquals(4, writeAheadLog.append(Operation.CREATE, johnBoyd));
+            }
+        }
+    }
+
+    @Test
+    void sync_writesEachCommit() throws IOException {
+        Path file = tempDir.resolve("sync.wal");
+        try (WriteAheadLog writeAheadLog = writeAheadLog(file, Durability.SYNC)) {
+            writeAheadLog.open(0);
+            long emptySize = Files.size(file);
+
+            writeAheadLog.append(Operation.CREATE, johnBoyd);
+            assertEquals(emptySize, Files.size(file));
+
+            writeAheadLog.commit();
+            assertTrue(Files.size(file) > emptySize);
+        }
+    }
+
+    @Test
+    void open_dropsATruncatedRecord() throws IOException {
+        Path file = tempDir.resolve("truncated.wal");
+        try (WriteAheadLog writeAheadLog = writeAheadLog(file, Durability.SYNC)) {
+            writeAheadLog.open(0);
+            writeAheadLog.append(Operation.CREATE, johnBoyd);
+            writeAheadLog.append(Operation.CREATE, tenleyBoyd);
+            writeAheadLog.commit();
+        }
+        // A crash in the middle of the last record
+        long size = Files.size(file);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.truncate(size - 5);
+        }
+
+        try (WriteAheadLog writeAheadLog = writeAheadLog(file, Durability.SYNC)) {
+            assertEquals(List.of(new Entry(1, Operation.CREATE, johnBoyd)), writeAheadLog.open(0));
+            assertEquals(2, writeAheadLog.append(Operation.CREATE, tenleyBoyd));
+            writeAheadLog.commit();
+        }
+
+        try (WriteAheadLog writeAheadLog = writeAheadLog(file, Durability.SYNC)) {
+            assertEquals(2, writeAheadLog.open(0).size());
+        }
+    }
+
+    @Test
+    void open_dropsACorruptRecord() throws IOException {
+        Path file = tempDir.resolve("corrupt.wal");
+        try (WriteAheadLog writeAheadLog = writeAheadLog(file, Durability.SYNC)) {
+            writeAheadLog.open(0);
+            writeAheadLog.append(Operation.CREATE, johnBoyd);
+            writeAheadLog.append(Operation.CREATE, tenleyBoyd);
+            writeAheadLog.commit();
+        }
+        byte[] bytes = Files.readAllBytes(file);
+        bytes[bytes.length - 1] ^= 0x7F;
+        Files.write(file, bytes);
+
+        try (WriteAheadLog writeAheadLog = writeAheadLog(file, Durability.SYNC)) {
+            assertEquals(List.of(new Entry(1, Operation.CREATE, johnBoyd)), writeAheadLog.open(0));
+        }
+    }
+
+    @Test
+    void open_dropsARecordWithACorruptLength() throws IOException {
+        Path file = tempDir.resolve("corrupt-length.wal");
+        try (WriteAheadLog writeAheadLog = writeAheadLog(file, Durability.SYNC)) {
+            writeAheadLog.open(0);
+            writeAheadLog.append(Operation.CREATE, johnBoyd);
+            writeAheadLog.commit();
+        }
+        // A record header announcing a huge payload
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            channel.write(ByteBuffer.allocate(8).putInt(Integer.MAX_VALUE - 8).putInt(0).flip());
+        }
+
+        try (WriteAheadLog writeAheadLog = writeAheadLog(file, Durability.SYNC)) {
+            assertEquals(List.of(new Entry(1, Operation.CREATE, johnBoyd)), writeAheadLog.open(0));
+        }
+    }
+
+    @Test
+    void commit_failed_discardsTheRecords_andFailsTheLog() throws IOException {
+        Path file = tempDir.resolve("failed.wal");
+        try (WriteAheadLog writeAheadLog = writeAheadLog(file, Durability.SYNC)) {
+            writeAheadLog.open(0);
+            writeAheadLog.append(Operation.CREATE, johnBoyd);
+            writeAheadLog.commit();
+
+            // The write fails, and so does the truncation of what may have been written
+            writeAheadLog.channel.close();
+            writeAheadLog.append(Operation.CREATE, tenleyBoyd);
+            assertThrows(IOException.class, writeAheadLog::commit);
+
+            assertThrows(IllegalStateException.class, () -> writeAheadLog.append(Operation.DELETE, johnBoyd));
+            assertThrows(IOException.class, writeAheadLog::commit);
+            assertThrows(IOException.class, () -> writeAheadLog.compact(1));
+        }
+
+        // The failed mutation is not replayed
+        try (WriteAheadLog writeAheadLog = writeAheadLog(file, Durability.SYNC)) {
+            assertEquals(List.of(new Entry(1, Operation.CREATE, johnBoyd)), writeAheadLog.open(0));
+            assertEquals(2, writeAheadLog.append(Operation.CREATE, tenleyBoyd));
+        }
+    }
+
+    @Test
+    void compact_keepsTheLastMutationsOfEachPerson_andTheRecordsAfterTheCheckpoint() throws IOException {
+        Path file = tempDir.resolve("compact.wal");
+        try (WriteAheadLog writeAheadLog = writeAheadLog(file, Durability.SYNC)) {
+            writeAheadLog.open(0);
+            writeAheadLog.append(Operation.CREATE, johnBoyd);
+            writeAheadLog.append(Operation.DELETE, johnBoyd);
+            writeAheadLog.append(Operation.CREATE, johnBoyd);
+            writeAheadLog.append(Operation.CREATE, tenleyBoyd);
+            writeAheadLog.append(Operation.DELETE, tenleyBoyd);
+            writeAheadLog.append(Operation.CREATE, tenleyBoyd);
+            writeAheadLog.commit();
+            long size = Files.size(file);
+
+            long reclaimed = writeAheadLog.compact(5);
+
+            assertTrue(reclaimed > 0);
+            assertEquals(size - reclaimed, Files.size(file));
+            // The log goes on after the compaction
+            assertEquals(7, writeAheadLog.append(Operation.DELETE, johnBoyd));
+            writeAheadLog.commit();
+            assertEquals(
+                    List.of(
+                            new Entry(2, Operation.DELETE, johnBoyd),
+                            new Entry(3, Operation.CREATE, johnBoyd),
+                            new Entry(5, Operation.DELETE, tenleyBoyd),
+                            new Entry(6, Operation.CREATE, tenleyBoyd),
+                            new Entry(7, Operation.DELETE, johnBoyd)
+                    ),
+                    writeAheadLog.entries()
+            );
+        }
+
+        // At startup, the compacted records are skipped along with the checkpoint
+        try (WriteAheadLog writeAheadLog = writeAheadLog(file, Durability.SYNC)) {
+            assertEquals(5, writeAheadLog.open(5).size());
+            assertEquals(8, writeAheadLog.append(Operation.CREATE, johnBoyd));
+        }
+    }
+
+    @Test
+    void compact_all_keepsTheSequence() throws IOException {
+        Path file = tempDir.resolve("compact-all.wal");
+        try (WriteAheadLog writeAheadLog = writeAheadLog(file, Durability.ASYNC)) {
+            writeAheadLog.open(0);
+            writeAheadLog.append(Operation.CREATE, johnBoyd);
+            writeAheadLog.append(Operation.CREATE, tenleyBoyd);
+            writeAheadLog.commit();
+
+            writeAheadLog.compact(2);
+        }
+
+        try (WriteAheadLog writeAheadLog = writeAheadLog(file, Durability.SYNC)) {
+            assertEquals(
+                    List.of(new Entry(1, Operation.CREATE, johnBoyd), new Entry(2, Operation.CREATE, tenleyBoyd)),
+                    writeAheadLog.open(0)
+            );
+            assertEquals(3, writeAheadLog.append(Operation.CREATE, johnBoyd));
+        }
+    }
+
+    @Test
+    void replay_ignoresTheCreationOfAnExistingPerson_andTheDeletionOfAMissingOne() {
+        Set<Person> persons = new HashSet<>(Set.of(johnBoyd));
+
+        WriteAheadLog.replay(
+                List.of(
+                        new Entry(1, Operation.CREATE, johnBoyd),
+                        new Entry(2, Operation.DELETE, tenleyBoyd),
+                        new Entry(3, Operation.CREATE, tenleyBoyd),
+                        new Entry(4, Operation.DELETE, johnBoyd)
+                ),
+                persons
+        );
+
+        assertEquals(Set.of(tenleyBoyd), persons);
+    }
+
+    @Test
+    void open_missingLog_startsAfterTheCheckpoint() throws IOException {
+        try (WriteAheadLog writeAheadLog = writeAheadLog(tempDir.resolve("missing.wal"), Durability.SYNC)) {
+            assertEquals(List.of(), writeAheadLog.open(41));
+            assertEquals(42, writeAheadLog.append(Operation.CREATE, johnBoyd));
+        }
+    }
+
+    @Test
+    void disabled() throws IOException {
+        try (WriteAheadLog writeAheadLog = new WriteAheadLog("", Durability.SYNC, Duration.ZERO)) {
+            assertFalse(writeAheadLog.isEnabled());
+            assertEquals(List.of(), writeAheadLog.open(0));
+            writeAheadLog.append(Operation.CREATE, johnBoyd);
+            writeAheadLog.commit();
+        }
+    }
+
+    private static WriteAheadLog writeAheadLog(Path file, Durability durability) {
+        return new WriteAheadLog(file.toString(), durability, Duration.ofMillis(10));
+    }
+
+    private static Person person(String firstName, String email) {
+        return Person.builder()
+                .firstName(firstName).lastName("Boyd")
+                .address("1509 Culver St").city("Culver").zip("97451")
+                .phone("841-874-6512").email(email)
+                .build();
+    }
+}
@@ -42,4 +42,76 @@ class DateServiceTest {
         );
         assertEquals(101, dateService.calculateAge(dateOfBirth));
     }
-}
\ No newline at end of file
+
+    @Test
+    void sameResultsAsYearsBetween() {
+        // Two years of current dates (with a leap day), and the dates of birth around the 18th birthday
+        LocalDate firstDay = LocalDate.of(2027, 1, 1);
+        for (LocalDate today = firstDay; today.isBefore(firstDay.plusYears(2)); today = today.plusDays(1)) {
+            DateService dateService = new DateService(fixedClock(today));
+
+            for (LocalDate dateOfBirth = today.minusYears(20).minusDays(3);
+                 dateOfBirth.isBefore(today.minusYears(17).plusDays(3));
+                 dateOfBirth = dateOfBirth.plusDays(1)) {
+                int expectedAge = dateService.yearsBetween(dateOfBirth, today);
+                assertEquals(expectedAge, dateService.calculateAge(dateOfBirth), dateOfBirth + " on " + today);
+                assertEquals(expectedAge <= 18, dateService.isChildren(dateOfBirth), dateOfBirth + " on " + today);
+            }
+        }
+    }
+
+    @Test
+    void rollsOverAtMidnight() {
+        ZoneId zone = ZoneId.of("Europe/Paris");
+        // One second before the 18th birthday... in Paris
+        MutableClock clock = new MutableClock(Instant.parse("2026-11-19T22:59:59Z"), zone);
+        DateService dateService = new DateService(clock);
+        LocalDate dateOfBirth = LocalDate.of(2008, 11, 20);
+
+        assertEquals(17, dateService.calculateAge(dateOfBirth));
+
+        clock.instant = Instant.parse("2026-11-19T23:00:00Z"); // Midnight in Paris
+        assertEquals(18, dateService.calculateAge(dateOfBirth));
+        assertTrue(dateService.isChildren(dateOfBirth));
+
+        clock.instant = Instant.parse("2027-11-19T23:00:00Z"); // One year later
+        assertEquals(19, dateService.calculateAge(dateOfBirth));
+        assertFalse(dateService.isChildren(dateOfBirth));
+
+        // Back in time
+        clock.instant = Instant.parse("2026-11-19T22:59:59Z");
+        assertEquals(17, dateService.calculateAge(dateOfBirth));
+    }
+
+    private static Clock fixedClock(LocalDate today) {
+        return Clock.fixed(today.atStartOfDay(ZoneId.systemDefault()).toInstant(), ZoneId.systemDefault());
+    }
+
+    /**
+     * A clock that the test moves forward (or backward).
+     */
+    static class MutableClock extends Clock {
+        Instant instant;
+        private final ZoneId zone;
+
+        MutableClock(Instant instant, ZoneId zone) {
+            this.instant = instant;
+            this.zone = zone;
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return zone;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return new MutableClock(instant, zone);
+        }
+
+        @Override
+        public Instant instant() {
+            return instant;
+        }
+    }
+}
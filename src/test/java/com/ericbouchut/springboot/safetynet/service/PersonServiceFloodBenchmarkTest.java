@@ -0,0 +1,59 @@
+package com.ericbouchut.springboot.safetynet.service;
+
+import com.ericbouchut.springboot.safetynet.data.DataGenerator;
+import com.ericbouchut.springboot.safetynet.dto.FloodDTO;
+import com.ericbouchut.springboot.safetynet.model.Data;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Measure {@link PersonService#getFloodDTO(List)} for 1, 10 and 100 stations,
+ * computed sequentially (1 thread) and in parallel.
+ * <p>
+ * Run with: <code>mvn test -Pbenchmark</code>
+ */
+@Tag("benchmark")
+class PersonServiceFloodBenchmarkTest {
+
+    private static final int STATIONS = 100;
+    private static final int PERSONS_PER_ADDRESS = 5;
+    private static final int ADDRESSES_PER_STATION = 200;
+    private static final int ITERATIONS = 20;
+
+    @Test
+    void getFloodDTO() {
+        Data data = DataGenerator.generate(STATIONS * ADDRESSES_PER_STATION * PERSONS_PER_ADDRESS,
+                PERSONS_PER_ADDRESS, ADDRESSES_PER_STATION);
+        int parallelism = Math.max(2, Runtime.getRuntime().availableProcessors());
+
+        for (int threads : new int[]{1, parallelism}) {
+            PersonService personService = PersonServiceTest.personService(data, threads);
+            try {
+                for (int stationCount : new int[]{1, 10, 100}) {
+                    List<Integer> stations = IntStream.rangeClosed(1, stationCount).boxed().toList();
+
+                    personService.getFloodDTO(stations); // Warm up
+                    long start = System.nanoTime();
+                    List<FloodDTO> floodDTOs = List.of();
+                    for (int i = 0; i < ITERATIONS; i++) {
+                        floodDTOs = personService.getFloodDTO(stations);
+                    }
+                    double millis = (System.nanoTime() - start) / 1_000_000.0 / ITERATIONS;
+
+                    assertEquals(stationCount * ADDRESSES_PER_STATION, floodDTOs.size());
+                    System.out.printf(
+                            "getFloodDTO: %3d stations, %2d threads: %8.2f ms%n",
+                            stationCount, threads, millis
+                    );
+                }
+            } finally {
+                personService.shutdown();
+            }
+        }
+    }
+}
@@ -0,0 +1,269 @@
+package com.ericbouchut.springboot.safetynet.service;
+
+import com.ericbouchut.springboot.safetynet.data.DataLoaders;
+import com.ericbouchut.springboot.safetynet.dto.ChildAlertDTO;
+import com.ericbouchut.springboot.safetynet.dto.FloodDTO;
+import com.ericbouchut.springboot.safetynet.dto.MedicalHistoryDTO;
+import com.ericbouchut.springboot.safetynet.dto.MedicationDTO;
+import com.ericbouchut.springboot.safetynet.dto.PageDTO;
+import com.ericbouchut.springboot.safetynet.exception.InvalidCursorException;
+import com.ericbouchut.springboot.safetynet.mapper.ChildAlertMapper;
+import com.ericbouchut.springboot.safetynet.mapper.FloodMapper;
+import com.ericbouchut.springboot.safetynet.mapper.MedicalHistoryMapper;
+import com.ericbouchut.springboot.safetynet.mapper.MedicationMapper;
+import com.ericbouchut.springboot.safetynet.mapper.PersonInfoMapper;
+import com.ericbouchut.springboot.safetynet.model.Data;
+import com.ericbouchut.springboot.safetynet.model.Person;
+import com.ericbouchut.springboot.safetynet.repository.DataStore;
+import com.ericbouchut.springboot.safetynet.repository.FireStationRepository;
+import com.ericbouchut.springboot.safetynet.repository.MedicalRecordRepository;
+import com.ericbouchut.springboot.safetynet.repository.PersonIndex;
+import com.ericbouchut.springboot.safetynet.repository.PersonRepository;
+import com.ericbouchut.springboot.safetynet.repository.PersonWriter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ClassPathResource;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PersonServiceTest {
+
+    private final Data data = DataLoaders.dataLoader(new ClassPathResource("data/data.json")).load();
+
+    private final DataStore dataStore = new DataStore(data);
+
+    private final PersonService personService = personService(dataStore, 4);
+
+    @AfterEach
+    void tearDown() {
+        personService.shutdown();
+    }
+
+    @Test
+    void getFloodDTO_groupsTheResidentsByAddress() {
+        List<FloodDTO> floodDTOs = personService.getFloodDTO(List.of(3));
+
+        // The addresses of station 3, sorted
+        assertEquals(
+                List.of("112 Steppes Pl", "1509 Culver St", "748 Townings Dr", "834 Binoc Ave"),
+                floodDTOs.stream().map(FloodDTO::address).toList()
+        );
+
+        FloodDTO culverSt = floodDTOs.get(1);
+        assertEquals(1, culverSt.households().size());
+        List<FloodDTO.PersonDTO> boyds = culverSt.households().get(0).householdMembers();
+        assertEquals(
+                List.of("Felicia Boyd", "Jacob Boyd", "John Boyd", "Roger Boyd", "Tenley Boyd"),
+                boyds.stream().map(FloodDTO.PersonDTO::name).toList()
+        );
+
+        FloodDTO.PersonDTO johnBoyd = boyds.get(2);
+        assertEquals("841-874-6512", johnBoyd.phone());
+        assertEquals(42, johnBoyd.age()); // Born on 1984-03-06
+        assertEquals(
+                new MedicalHistoryDTO(
+                        List.of(new MedicationDTO("aznol", "350mg"), new MedicationDTO("hydrapermazol", "100mg")),
+                        Set.of("nillacilan")
+                ),
+                johnBoyd.medicalHistoryDTO()
+        );
+    }
+
+    @Test
+    void getFloodDTO_listsEachAddressOnce() {
+        // 112 Steppes Pl is served by the stations 3 and 4
+        List<FloodDTO> floodDTOs = personService.getFloodDTO(List.of(4, 3, 4));
+
+        List<String> addresses = floodDTOs.stream().map(FloodDTO::address).toList();
+        assertEquals(
+                List.of("112 Steppes Pl", "489 Manchester St", "1509 Culver St", "748 Townings Dr", "834 Binoc Ave"),
+                addresses
+        );
+        int residents = floodDTOs.stream()
+                .mapToInt(floodDTO -> floodDTO.households().get(0).householdMembers().size())
+                .sum();
+        assertEquals(
+                data.getPersons().stream()
+                        .filter(person -> addresses.contains(person.getAddress()))
+                        .count(),
+                residents
+        );
+    }
+
+    @Test
+    void getFloodDTO_parallel_sameAsSequential() {
+        List<Integer> allStations = List.of(1, 2, 3, 4);
+        PersonService sequential = personService(data, 1);
+        try {
+            assertEquals(sequential.getFloodDTO(allStations), personService.getFloodDTO(allStations));
+        } finally {
+            sequential.shutdown();
+        }
+    }
+
+    @Test
+    void getFloodDTO_unknownStation() {
+        assertEquals(List.of(), personService.getFloodDTO(List.of(42)));
+    }
+
+    @Test
+    void getChildAlerts_listsTheChildrenWithTheOtherMembersOfTheHousehold() {
+        List<ChildAlertDTO> childAlerts = personService.getChildAlerts("1509 Culver St", null, null);
+
+        assertEquals(
+                List.of(
+                        new ChildAlertDTO("Roger", "Boyd", 9, List.of(felicia(), jacob(), john(), tenley())),
+                        new ChildAlertDTO("Tenley", "Boyd", 14, List.of(felicia(), jacob(), john(), roger()))
+                ),
+                childAlerts
+        );
+    }
+
+    @Test
+    void getChildAlerts_tellsApartTheSameAddressInAnotherCity() {
+        // A namesake of Roger Boyd, at the same address in another city
+        Person namesake = Person.builder()
+                .firstName("Roger").lastName("Boyd")
+                .address("1509 Culver St").city("Springfield").zip("97477")
+                .phone("841-874-6512").email("jaboyd@email.com")
+                .build();
+        data.getPersons().add(namesake);
+        PersonService service = personService(data, 1);
+        try {
+            assertEquals(3, service.getChildAlerts("1509 Culver St", null, null).size());
+
+            List<ChildAlertDTO> culver = service.getChildAlerts("1509 Culver St", "Culver", "97451");
+            assertEquals(List.of("Roger", "Tenley"), culver.stream().map(ChildAlertDTO::firstName).toList());
+            assertFalse(culver.get(1).otherHouseholdMembers().contains(namesake));
+
+            List<ChildAlertDTO> springfield = service.getChildAlerts("1509 Culver St", "Springfield", null);
+            assertEquals(List.of(new ChildAlertDTO("Roger", "Boyd", 9, List.of())), springfield);
+        } finally {
+            service.shutdown();
+        }
+    }
+
+    @Test
+    void getChildAlerts_noChildren() {
+        assertEquals(List.of(), personService.getChildAlerts("908 73rd St", null, null));
+        assertEquals(List.of(), personService.getChildAlerts("1509 Culver St", "Springfield", null));
+        assertEquals(List.of(), personService.getChildAlerts("unknown address", null, null));
+    }
+
+    @Test
+    void getPersonsPage_listsEachPersonOnce_inOrder() {
+        List<Person> persons = new ArrayList<>();
+        String cursor = null;
+        int pages = 0;
+        do {
+            PageDTO<Person> page = personService.getPersonsPage(cursor, 7);
+            assertTrue(page.items().size() <= 7);
+            persons.addAll(page.items());
+            cursor = page.nextCursor();
+            pages++;
+        } while (cursor != null);
+
+        List<Person> expected = new ArrayList<>(data.getPersons());
+        expected.sort(PersonIndex.ORDER);
+        assertEquals(expected, persons);
+        assertEquals((expected.size() + 6) / 7, pages);
+    }
+
+    @Test
+    void getPersonsPage_nextPageStaysValid_whenPersonsAreCreatedOrDeleted() {
+        PageDTO<Person> first = personService.getPersonsPage(null, 3);
+        Person last = first.items().get(2);
+
+        // Before the cursor (not listed), the last person of the page, and after the cursor (listed)
+        Person aaron = Person.builder()
+                .firstName("Aaron").lastName("Aaronson")
+                .address("1 Main St").city("Culver").zip("97451")
+                .build();
+        Person zoe = Person.builder()
+                .firstName("Zoe").lastName("Zimmerman")
+                .address("1 Main St").city("Culver").zip("97451")
+                .build();
+        dataStore.update(dataset -> dataset.withPersons(List.of(aaron, zoe), List.of(last)));
+
+        List<Person> next = new ArrayList<>();
+        String cursor = first.nextCursor();
+        while (cursor != null) {
+            PageDTO<Person> page = personService.getPersonsPage(cursor, 3);
+            next.addAll(page.items());
+            cursor = page.nextCursor();
+        }
+
+        List<Person> expected = new ArrayList<>(personService.getAllPersons());
+        expected.sort(PersonIndex.ORDER);
+        assertEquals(expected.subList(expected.indexOf(first.items().get(1)) + 1, expected.size()), next);
+        assertTrue(next.contains(zoe));
+        assertFalse(next.contains(aaron));
+    }
+
+    @Test
+    void getPersonsPage_invalidCursor() {
+        assertThrows(InvalidCursorException.class, () -> personService.getPersonsPage("not a cursor!", 3));
+        assertThrows(InvalidCursorException.class, () -> personService.getPersonsPage("YQ", 3)); // "a"
+    }
+
+    private Person felicia() {
+        return culverStResident("Felicia");
+    }
+
+    private Person jacob() {
+        return culverStResident("Jacob");
+    }
+
+    private Person john() {
+        return culverStResident("John");
+    }
+
+    private Person roger() {
+        return culverStResident("Roger");
+    }
+
+    private Person tenley() {
+        return culverStResident("Tenley");
+    }
+
+    private Person culverStResident(String firstName) {
+        return data.getPersons().stream()
+                .filter(person -> person.hasFullName(firstName, "Boyd") && "Culver".equals(person.getCity()))
+                .findFirst()
+                .orElseThrow();
+    }
+
+    static PersonService personService(Data data, int floodParallelism) {
+        return personService(new DataStore(data), floodParallelism);
+    }
+
+    static PersonService personService(DataStore dataStore, int floodParallelism) {
+        DateService dateService = new DateService(
+                Clock.fixed(Instant.parse("2026-11-19T00:00:00Z"), ZoneId.systemDefault())
+        );
+        MedicalHistoryMapper medicalHistoryMapper = new MedicalHistoryMapper(new MedicationMapper());
+
+        return new PersonService(
+                dateService,
+                new PersonRepository(dataStore, new PersonWriter(dataStore, new SimpleMeterRegistry(), 16, 8)),
+                new FireStationRepository(dataStore),
+                new MedicalRecordRepository(dataStore),
+                dataStore,
+                new QueryCache(dataStore, dateService, new SimpleMeterRegistry(), 1000, Duration.ofMinutes(5)),
+                new PersonInfoMapper(dateService, medicalHistoryMapper),
+                new ChildAlertMapper(dateService),
+                new FloodMapper(dateService, medicalHistoryMapper),
+                floodParallelism,
+                64
+        );
+    }
+}
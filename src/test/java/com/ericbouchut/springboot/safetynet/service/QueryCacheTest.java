@@ -0,0 +1,178 @@
+package com.ericbouchut.springboot.safetynet.service;
+
+import com.ericbouchut.springboot.safetynet.model.Data;
+import com.ericbouchut.springboot.safetynet.model.FireStation;
+import com.ericbouchut.springboot.safetynet.model.Person;
+import com.ericbouchut.springboot.safetynet.repository.DataStore;
+import com.ericbouchut.springboot.safetynet.repository.Dataset.EntityType;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class QueryCacheTest {
+
+    private final Person johnBoyd = Person.builder()
+            .firstName("John").lastName("Boyd")
+            .address("1509 Culver St").city("Culver").zip("97451")
+            .phone("841-874-6512").email("jaboyd@email.com")
+            .build();
+
+    private final Person tenleyBoyd = Person.builder()
+            .firstName("Tenley").lastName("Boyd")
+            .address("1509 Culver St").city("Culver").zip("97451")
+            .phone("841-874-6512").email("tenz@email.com")
+            .build();
+
+    private final DataStore dataStore = new DataStore(new Data(
+            new HashSet<>(Set.of(johnBoyd)),
+            new HashSet<>(Set.of(new FireStation("1509 Culver St", 3))),
+            new HashSet<>()
+    ));
+
+    private final DateServiceTest.MutableClock clock =
+            new DateServiceTest.MutableClock(Instant.parse("2026-11-19T12:00:00Z"), ZoneId.of("UTC"));
+
+    private final AtomicLong ticker = new AtomicLong();
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private final AtomicInteger loads = new AtomicInteger();
+
+    @Test
+    void get_computesOnceThenHits() {
+        QueryCache queryCache = queryCache(10);
+
+        assertEquals(1, queryCache.get("query", List.of("a"), this::load).intValue());
+        assertEquals(1, queryCache.get("query", List.of("a"), this::load).intValue());
+        // Another query or other parameters: another entry
+        assertEquals(2, queryCache.get("query", List.of("b"), this::load).intValue());
+        assertEquals(3, queryCache.get("other", List.of("a"), this::load).intValue());
+        assertEquals(4, queryCache.get("query", Arrays.asList("a", null), this::load).intValue());
+        assertEquals(4, queryCache.get("query", Arrays.asList("a", null), this::load).intValue());
+
+        assertEquals(2.0, count("cache.gets", "hit"));
+        assertEquals(4.0, count("cache.gets", "miss"));
+        assertEquals(4.0, meterRegistry.get("cache.puts").functionCounter().count());
+        assertEquals(4.0, meterRegistry.get("cache.size").gauge().value());
+    }
+
+    @Test
+    void get_newVersion_invalidatesTheEntries() {
+        QueryCache queryCache = queryCache(10);
+        queryCache.get("query", List.of("a"), this::load);
+
+        // A mutation that changes nothing keeps the version, and the entry
+        dataStore.update(dataset -> dataset.withPersons(List.of(), List.of()));
+        assertEquals(1, queryCache.get("query", List.of("a"), this::load).intValue());
+
+        dataStore.update(dataset -> dataset.withPersons(List.of(tenleyBoyd), List.of()));
+        assertEquals(2, queryCache.get("query", List.of("a"), this::load).intValue());
+        assertEquals(2, queryCache.get("query", List.of("a"), this::load).intValue());
+        assertEquals(1.0, meterRegistry.get("cache.invalidations").functionCounter().count());
+    }
+
+    @Test
+    void get_otherEntitiesChanged_keepsTheEntries() {
+        QueryCache queryCache = queryCache(10);
+        queryCache.get("stations", List.of("a"), Set.of(EntityType.FIRE_STATIONS), this::load);
+        queryCache.get("persons", List.of("a"), Set.of(EntityType.PERSONS), this::load);
+
+        dataStore.update(dataset -> dataset.withPersons(List.of(tenleyBoyd), List.of()));
+
+        // The persons changed, not the fire stations
+        assertEquals(1, queryCache.get("stations", List.of("a"), Set.of(EntityType.FIRE_STATIONS), this::load).intValue());
+        assertEquals(3, queryCache.get("persons", List.of("a"), Set.of(EntityType.PERSONS), this::load).intValue());
+        assertEquals(1.0, meterRegistry.get("cache.invalidations").functionCounter().count());
+    }
+
+    @Test
+    void get_pinnedPreviousVersion_doesNotReplaceTheNewerEntry() throws InterruptedException {
+        QueryCache queryCache = queryCache(10);
+        dataStore.pin();
+        try {
+            dataStore.update(dataset -> dataset.withPersons(List.of(tenleyBoyd), List.of()));
+            // Another request, on the latest version
+            Thread thread = new Thread(() -> queryCache.get("query", List.of("a"), this::load));
+            thread.start();
+            thread.join();
+
+            // This request still reads the previous version: it computes its own result
+            assertEquals(2, queryCache.get("query", List.of("a"), this::load).intValue());
+        } finally {
+            dataStore.unpin();
+        }
+        assertEquals(1, queryCache.get("query", List.of("a"), this::load).intValue());
+    }
+
+    @Test
+    void get_newDay_invalidatesTheEntries() {
+        QueryCache queryCache = queryCache(10);
+        queryCache.get("query", List.of("a"), this::load);
+
+        clock.instant = Instant.parse("2026-11-20T00:00:00Z");
+
+        assertEquals(2, queryCache.get("query", List.of("a"), this::load).intValue());
+    }
+
+    @Test
+    void get_evictsTheLeastRecentlyUsedEntry() {
+        QueryCache queryCache = queryCache(2);
+        queryCache.get("query", List.of("a"), this::load);
+        queryCache.get("query", List.of("b"), this::load);
+        queryCache.get("query", List.of("a"), this::load); // "b" is now the least recently used
+
+        queryCache.get("query", List.of("c"), this::load);
+
+        assertEquals(2, queryCache.size());
+        assertEquals(1, queryCache.get("query", List.of("a"), this::load).intValue());
+        assertEquals(4, queryCache.get("query", List.of("b"), this::load).intValue());
+        assertEquals(2.0, meterRegistry.get("cache.evictions").functionCounter().count());
+    }
+
+    @Test
+    void get_expiredEntry_isComputedAgain() {
+        QueryCache queryCache = queryCache(10);
+        queryCache.get("query", List.of("a"), this::load);
+
+        ticker.addAndGet(Duration.ofMinutes(5).toNanos() - 1);
+        assertEquals(1, queryCache.get("query", List.of("a"), this::load).intValue());
+
+        ticker.incrementAndGet();
+        assertEquals(2, queryCache.get("query", List.of("a"), this::load).intValue());
+        assertEquals(1.0, meterRegistry.get("cache.evictions").functionCounter().count());
+    }
+
+    @Test
+    void get_disabled() {
+        QueryCache queryCache = queryCache(0);
+
+        assertEquals(1, queryCache.get("query", List.of("a"), this::load).intValue());
+        assertEquals(2, queryCache.get("query", List.of("a"), this::load).intValue());
+        assertEquals(0, queryCache.size());
+    }
+
+    private QueryCache queryCache(int maxSize) {
+        return new QueryCache(
+                dataStore, new DateService(clock), meterRegistry, maxSize, Duration.ofMinutes(5), ticker::get
+        );
+    }
+
+    private Integer load() {
+        return loads.incrementAndGet();
+    }
+
+    private double count(String name, String result) {
+        return meterRegistry.get(name).tag("result", result).functionCounter().count();
+    }
+}